@@ -0,0 +1,104 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes a file by writing a temporary file in the same directory and moving it over the target when it is complete.
+ * Readers of the target see either the old or the new content, never a partly written file. If the writing fails or
+ * {@link #commit()} is not called, {@link #close()} deletes the temporary file and the target stays unchanged.
+ *
+ * @since 10.2026
+ *
+ */
+final class AtomicFile implements Closeable {
+
+   static final int               BUFFER_SIZE = 1 << 18;
+
+   private final Path             target, temp;
+   private final boolean          sync;
+   private final FileOutputStream fileStream;
+   private final OutputStream     stream;
+   private boolean                committed   = false;
+
+
+   /**
+    * Creates the temporary file for the given target.
+    *
+    * @param target {@link File}: the file to write.
+    * @param sync boolean: whether to force the content to the storage device before moving the file in place.
+    * @throws IOException if the temporary file can not be created.
+    */
+   AtomicFile(File target, boolean sync) throws IOException {
+      this.target = target.getAbsoluteFile().toPath();
+      this.temp = Files.createTempFile(this.target.getParent(), "." + target.getName() + "-", ".tmp");
+      this.sync = sync;
+      this.fileStream = new FileOutputStream(temp.toFile());
+      this.stream = new BufferedOutputStream(fileStream, BUFFER_SIZE);
+   }
+
+
+   /**
+    * Returns the buffered stream to the temporary file.
+    */
+   OutputStream getStream() {
+      return stream;
+   }
+
+
+   /**
+    * Flushes and closes the temporary file and moves it over the target.
+    *
+    * @throws IOException if the file can not be written or moved.
+    */
+   void commit() throws IOException {
+      stream.flush();
+      if (sync) {
+         fileStream.getChannel().force(true);
+      }
+      stream.close();
+      try {
+         Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+         Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+      committed = true;
+   }
+
+
+   /**
+    * Closes the temporary file and deletes it unless it was committed.
+    */
+   @Override
+   public void close() throws IOException {
+      if (!committed) {
+         try {
+            stream.close();
+         } finally {
+            Files.deleteIfExists(temp);
+         }
+      }
+   }
+}
@@ -0,0 +1,364 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import odml.util.Mapper;
+import odml.util.TerminologyManager;
+
+/**
+ * The {@link BatchConverter} converts many odML files concurrently. Each file is loaded with
+ * {@link Reader#FULL_CONVERSION}, i.e. its includes and links are resolved and its mappings applied by a
+ * {@link Mapper}, and the converted tree is written to an output directory. All three steps run on the same worker
+ * thread; the trees of different files are independent and the terminologies are shared through the thread-safe
+ * cache of the {@link TerminologyManager}, so that each terminology is loaded only once per batch.
+ *
+ * Memory usage is bounded independent of the number of files: a tree is dropped as soon as it is written, the
+ * {@link Result}s only carry the location of the output, and at most {@code maxInFlight} files are submitted but
+ * not yet delivered.
+ *
+ * @since 10.2026
+ *
+ */
+public class BatchConverter {
+
+   private final ExecutorService executor;
+   private final boolean         ownsExecutor;
+   private final int             maxInFlight;
+   private int                   compression = Writer.NO_COMPRESSION;
+   private boolean               atomic      = false;
+
+
+   /**
+    * Creates a {@link BatchConverter} that uses one thread per available processor.
+    */
+   public BatchConverter() {
+      this(Runtime.getRuntime().availableProcessors());
+   }
+
+
+   /**
+    * Creates a {@link BatchConverter} that converts files on the given number of threads.
+    *
+    * @param threads int: the number of threads. At most as many trees are held in memory.
+    */
+   public BatchConverter(int threads) {
+      this(Executors.newFixedThreadPool(Math.max(1, threads)), 2 * Math.max(1, threads), true);
+   }
+
+
+   /**
+    * Creates a {@link BatchConverter} that converts files on the given executor.
+    *
+    * @param executor {@link ExecutorService}: the executor the files are converted on. It is not shut down by
+    *           {@link #shutdown()}.
+    * @param maxInFlight int: the maximum number of files that are converting or converted but not yet delivered.
+    */
+   public BatchConverter(ExecutorService executor, int maxInFlight) {
+      this(executor, maxInFlight, false);
+   }
+
+
+   private BatchConverter(ExecutorService executor, int maxInFlight, boolean ownsExecutor) {
+      this.executor = executor;
+      this.maxInFlight = Math.max(1, maxInFlight);
+      this.ownsExecutor = ownsExecutor;
+   }
+
+
+   /**
+    * Sets the compression of the written files, see {@link Writer#setCompression(int)}. The default is
+    * {@link Writer#NO_COMPRESSION}.
+    *
+    * @param compression int: the compression.
+    */
+   public void setCompression(int compression) {
+      if (compression < Writer.NO_COMPRESSION || compression > Writer.PARALLEL_GZIP) {
+         throw new IllegalArgumentException("Unknown compression " + compression + "!");
+      }
+      this.compression = compression;
+   }
+
+
+   /**
+    * Returns the compression of the written files.
+    *
+    * @return int: the compression.
+    */
+   public int getCompression() {
+      return compression;
+   }
+
+
+   /**
+    * Sets whether the files are written atomically, see {@link Writer#setAtomic(boolean)}. The default is false.
+    *
+    * @param atomic boolean: true to write atomically.
+    */
+   public void setAtomic(boolean atomic) {
+      this.atomic = atomic;
+   }
+
+
+   /**
+    * Returns whether the files are written atomically.
+    *
+    * @return boolean: true if files are written atomically.
+    */
+   public boolean isAtomic() {
+      return atomic;
+   }
+
+
+   /**
+    * Converts all files at the given locations and writes them to the output directory under the name of the
+    * original file; files of the same name overwrite each other. The callback is called on the thread calling this
+    * method, one result at a time. The method returns when all results have been delivered.
+    *
+    * @param locations {@link Collection} of {@link String}s: the urls or paths of the files.
+    * @param outputDirectory {@link File}: the directory the converted files are written to.
+    * @param callback {@link Callback}: receives one {@link Result} per location.
+    * @param ordered boolean: if true the results are delivered in the order of the locations, otherwise in the order
+    *           in which the conversions completed.
+    * @throws InterruptedException if the calling thread was interrupted while waiting for results.
+    *            Files that are still converting when the callback throws or the thread is interrupted are cancelled;
+    *            their output may be incomplete unless files are written atomically.
+    */
+   public void convert(Collection<String> locations, File outputDirectory, Callback callback, boolean ordered)
+         throws InterruptedException {
+      Iterator<String> iterator = locations.iterator();
+      int index = 0;
+      // the submitted but not yet delivered files are cancelled if delivery ends early
+      boolean done = false;
+      if (ordered) {
+         Deque<Future<Result>> queue = new ArrayDeque<Future<Result>>();
+         try {
+            while (iterator.hasNext() || !queue.isEmpty()) {
+               while (iterator.hasNext() && queue.size() < maxInFlight) {
+                  queue.add(executor.submit(new ConvertTask(index++, iterator.next(), outputDirectory)));
+               }
+               Result result = get(queue.peek());
+               queue.poll();
+               callback.converted(result);
+            }
+            done = true;
+         } finally {
+            if (!done) {
+               cancel(queue);
+            }
+         }
+      } else {
+         CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+         Collection<Future<Result>> pending = new HashSet<Future<Result>>();
+         try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+               while (iterator.hasNext() && pending.size() < maxInFlight) {
+                  pending.add(completion.submit(new ConvertTask(index++, iterator.next(), outputDirectory)));
+               }
+               Future<Result> future = completion.take();
+               pending.remove(future);
+               callback.converted(get(future));
+            }
+            done = true;
+         } finally {
+            if (!done) {
+               cancel(pending);
+            }
+         }
+      }
+   }
+
+
+   private static void cancel(Collection<Future<Result>> futures) {
+      for (Future<Result> future : futures) {
+         future.cancel(true);
+      }
+      futures.clear();
+   }
+
+
+   /**
+    * Shuts down the executor if it was created by this {@link BatchConverter}.
+    */
+   public void shutdown() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+
+   private Result get(Future<Result> future) throws InterruptedException {
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         // ConvertTask catches all exceptions, only errors get here
+         throw new RuntimeException(e.getCause());
+      }
+   }
+
+
+   /**
+    * Receives the results of a batch conversion.
+    */
+   public interface Callback {
+
+      /**
+       * Called once for every location passed to
+       * {@link BatchConverter#convert(Collection, File, Callback, boolean)}.
+       *
+       * @param result {@link Result}: the outcome of converting one file.
+       */
+      void converted(Result result);
+   }
+
+
+   /**
+    * The outcome of converting one file of a batch.
+    */
+   public static class Result {
+
+      private final int       index;
+      private final String    location;
+      private final File      output;
+      private final Exception error;
+
+
+      Result(int index, String location, File output, Exception error) {
+         this.index = index;
+         this.location = location;
+         this.output = output;
+         this.error = error;
+      }
+
+
+      /**
+       * Returns the position of the file in the collection of locations.
+       *
+       * @return int: the index of the location.
+       */
+      public int getIndex() {
+         return index;
+      }
+
+
+      /**
+       * Returns the location of the file as it was passed to the {@link BatchConverter}.
+       *
+       * @return {@link String}: the url or path of the file.
+       */
+      public String getLocation() {
+         return location;
+      }
+
+
+      /**
+       * Returns the file the converted tree was written to.
+       *
+       * @return {@link File}: the output file or null if the conversion failed.
+       */
+      public File getOutput() {
+         return output;
+      }
+
+
+      /**
+       * Returns the exception that occurred while converting the file.
+       *
+       * @return {@link Exception}: the error or null if the conversion succeeded.
+       */
+      public Exception getError() {
+         return error;
+      }
+
+
+      /**
+       * Returns whether the file was converted and written successfully.
+       *
+       * @return boolean: true if the output was written, false otherwise.
+       */
+      public boolean isSuccess() {
+         return error == null;
+      }
+
+
+      @Override
+      public String toString() {
+         if (isSuccess()) {
+            return location + ": converted to " + output;
+         }
+         return location + ": " + error.getMessage();
+      }
+   }
+
+
+   /**
+    * Loads, maps and writes a single file.
+    */
+   private class ConvertTask implements Callable<Result> {
+
+      private final int    index;
+      private final String location;
+      private final File   outputDirectory;
+
+
+      ConvertTask(int index, String location, File outputDirectory) {
+         this.index = index;
+         this.location = location;
+         this.outputDirectory = outputDirectory;
+      }
+
+
+      @Override
+      public Result call() {
+         try {
+            URL url = Reader.toURL(location);
+            Section root = new Reader().read(url, Reader.FULL_CONVERSION, false);
+            if (root == null) {
+               return new Result(index, location, null, new Exception("Could not convert " + location + "!"));
+            }
+            File output = new File(outputDirectory, outputName(url));
+            Writer writer = new Writer(root);
+            writer.setCompression(compression);
+            writer.setAtomic(atomic);
+            if (!writer.write(output.getPath())) {
+               return new Result(index, location, null, new Exception("Could not write " + output + "!"));
+            }
+            return new Result(index, location, output, null);
+         } catch (Exception e) {
+            return new Result(index, location, null, e);
+         }
+      }
+
+
+      private String outputName(URL url) {
+         String name = new File(url.getPath()).getName();
+         return name.isEmpty() ? "document" + index + ".xml" : name;
+      }
+   }
+}
@@ -0,0 +1,317 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+/**
+ * The {@link BatchReader} loads many odML files concurrently. Each file is read by its own {@link Reader} on an
+ * {@link ExecutorService}, which may be passed to the constructor, e.g. one that starts a thread per task. The number
+ * of files that are loaded but not yet delivered is limited, so that memory usage stays bounded independent of the
+ * number of files.
+ *
+ * Results are handed to a {@link Callback}, either in the order of the passed locations or in the order in which
+ * loading completed. Each {@link Result} carries either the root section of the file or the exception that occurred
+ * while loading it.
+ *
+ * @since 10.2026
+ *
+ */
+public class BatchReader {
+
+   private final ExecutorService executor;
+   private final boolean         ownsExecutor;
+   private final int             maxInFlight;
+   private int                   loadOption = Reader.NO_CONVERSION;
+
+
+   /**
+    * Creates a {@link BatchReader} that uses one thread per available processor.
+    */
+   public BatchReader() {
+      this(Runtime.getRuntime().availableProcessors());
+   }
+
+
+   /**
+    * Creates a {@link BatchReader} that loads files on the given number of threads.
+    *
+    * @param threads int: the number of threads. At most twice as many files are held in memory.
+    */
+   public BatchReader(int threads) {
+      this(Executors.newFixedThreadPool(Math.max(1, threads)), 2 * Math.max(1, threads), true);
+   }
+
+
+   /**
+    * Creates a {@link BatchReader} that loads files on the given executor.
+    *
+    * @param executor {@link ExecutorService}: the executor the files are loaded on. It is not shut down by
+    *           {@link #shutdown()}.
+    * @param maxInFlight int: the maximum number of files that are loading or loaded but not yet delivered.
+    */
+   public BatchReader(ExecutorService executor, int maxInFlight) {
+      this(executor, maxInFlight, false);
+   }
+
+
+   private BatchReader(ExecutorService executor, int maxInFlight, boolean ownsExecutor) {
+      this.executor = executor;
+      this.maxInFlight = Math.max(1, maxInFlight);
+      this.ownsExecutor = ownsExecutor;
+   }
+
+
+   /**
+    * Sets the option applied when loading each file. See {@link Reader#load(String, int)} for the possible values.
+    * The default is {@link Reader#NO_CONVERSION}.
+    *
+    * @param loadOption int: the load option.
+    */
+   public void setLoadOption(int loadOption) {
+      this.loadOption = loadOption;
+   }
+
+
+   /**
+    * Returns the option applied when loading each file.
+    *
+    * @return int: the load option.
+    */
+   public int getLoadOption() {
+      return loadOption;
+   }
+
+
+   /**
+    * Loads all files at the given locations and passes the results to the callback. The callback is called on the
+    * thread calling this method, one result at a time. The method returns when all results have been delivered.
+    *
+    * @param locations {@link Collection} of {@link String}s: the urls or paths of the files.
+    * @param callback {@link Callback}: receives one {@link Result} per location.
+    * @param ordered boolean: if true the results are delivered in the order of the locations, otherwise in the order
+    *           in which loading completed.
+    * @throws InterruptedException if the calling thread was interrupted while waiting for results.
+    *            Files that are still loading when the callback throws or the thread is interrupted are cancelled.
+    */
+   public void load(Collection<String> locations, Callback callback, boolean ordered)
+         throws InterruptedException {
+      Iterator<String> iterator = locations.iterator();
+      int index = 0;
+      // the submitted but not yet delivered files are cancelled if delivery ends early
+      boolean done = false;
+      if (ordered) {
+         Deque<Future<Result>> queue = new ArrayDeque<Future<Result>>();
+         try {
+            while (iterator.hasNext() || !queue.isEmpty()) {
+               while (iterator.hasNext() && queue.size() < maxInFlight) {
+                  queue.add(executor.submit(new LoadTask(index++, iterator.next())));
+               }
+               Result result = get(queue.peek());
+               queue.poll();
+               callback.loaded(result);
+            }
+            done = true;
+         } finally {
+            if (!done) {
+               cancel(queue);
+            }
+         }
+      } else {
+         CompletionService<Result> completion = new ExecutorCompletionService<Result>(executor);
+         Collection<Future<Result>> pending = new HashSet<Future<Result>>();
+         try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+               while (iterator.hasNext() && pending.size() < maxInFlight) {
+                  pending.add(completion.submit(new LoadTask(index++, iterator.next())));
+               }
+               Future<Result> future = completion.take();
+               pending.remove(future);
+               callback.loaded(get(future));
+            }
+            done = true;
+         } finally {
+            if (!done) {
+               cancel(pending);
+            }
+         }
+      }
+   }
+
+
+   private static void cancel(Collection<Future<Result>> futures) {
+      for (Future<Result> future : futures) {
+         future.cancel(true);
+      }
+      futures.clear();
+   }
+
+
+   /**
+    * Shuts down the executor if it was created by this {@link BatchReader}.
+    */
+   public void shutdown() {
+      if (ownsExecutor) {
+         executor.shutdown();
+      }
+   }
+
+
+   private Result get(Future<Result> future) throws InterruptedException {
+      try {
+         return future.get();
+      } catch (ExecutionException e) {
+         // LoadTask catches all exceptions, only errors get here
+         throw new RuntimeException(e.getCause());
+      }
+   }
+
+
+   /**
+    * Receives the results of a batch load.
+    */
+   public interface Callback {
+
+      /**
+       * Called once for every location passed to {@link BatchReader#load(Collection, Callback, boolean)}.
+       *
+       * @param result {@link Result}: the outcome of loading one file.
+       */
+      void loaded(Result result);
+   }
+
+
+   /**
+    * The outcome of loading one file of a batch.
+    */
+   public static class Result {
+
+      private final int       index;
+      private final String    location;
+      private final Section   root;
+      private final Exception error;
+
+
+      Result(int index, String location, Section root, Exception error) {
+         this.index = index;
+         this.location = location;
+         this.root = root;
+         this.error = error;
+      }
+
+
+      /**
+       * Returns the position of the file in the collection of locations.
+       *
+       * @return int: the index of the location.
+       */
+      public int getIndex() {
+         return index;
+      }
+
+
+      /**
+       * Returns the location of the file as it was passed to the {@link BatchReader}.
+       *
+       * @return {@link String}: the url or path of the file.
+       */
+      public String getLocation() {
+         return location;
+      }
+
+
+      /**
+       * Returns the root section of the loaded file.
+       *
+       * @return {@link Section}: the root section or null if loading failed.
+       */
+      public Section getRootSection() {
+         return root;
+      }
+
+
+      /**
+       * Returns the exception that occurred while loading the file.
+       *
+       * @return {@link Exception}: the error or null if loading succeeded.
+       */
+      public Exception getError() {
+         return error;
+      }
+
+
+      /**
+       * Returns whether the file was loaded successfully.
+       *
+       * @return boolean: true if a root section is available, false otherwise.
+       */
+      public boolean isSuccess() {
+         return error == null;
+      }
+
+
+      @Override
+      public String toString() {
+         if (isSuccess()) {
+            return location + ": loaded";
+         }
+         return location + ": " + error.getMessage();
+      }
+   }
+
+
+   /**
+    * Loads a single file with its own {@link Reader}.
+    */
+   private class LoadTask implements Callable<Result> {
+
+      private final int    index;
+      private final String location;
+
+
+      LoadTask(int index, String location) {
+         this.index = index;
+         this.location = location;
+      }
+
+
+      @Override
+      public Result call() {
+         try {
+            URL url = Reader.toURL(location);
+            Section root = new Reader().read(url, loadOption, false);
+            if (root == null) {
+               return new Result(index, location, null, new Exception("Could not load " + location + "!"));
+            }
+            return new Result(index, location, root, null);
+         } catch (Exception e) {
+            return new Result(index, location, null, e);
+         }
+      }
+   }
+}
@@ -0,0 +1,804 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import org.apache.commons.codec.binary.Base64;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Layout and encoding helpers shared by the {@link BinaryReader} and the {@link BinaryWriter}.
+ *
+ * A binary odML file starts with the {@link #MAGIC} bytes, the format version and a flags byte, followed by a table of
+ * all strings used in the document. Names, types, units and text contents are stored as indices into this table. After
+ * the table come the document information (author, version, date, repository) and the section records in pre-order.
+ * A section record holds the section fields, its properties with their values and the number of subsections, whose
+ * records follow directly. Numbers are stored as unsigned LEB128 varints, signed integers zig-zag encoded. Value
+ * contents are stored according to their class, Base64 encoded binary content as raw bytes.
+ *
+ * Indexed files, marked by {@link #FLAG_INDEXED}, are followed by an index block. It holds the strings added to the
+ * table after the file was first written, the document information and an {@link Index} of all sections giving the
+ * parent, the name and the byte offset of each section record. The last 8 bytes of an indexed file hold the offset of
+ * the index block, so that single subtrees can be read without reading the whole file. In files marked by
+ * {@link #FLAG_SUMMARIZED} each index entry also holds the counters of the section, see {@link Index}.
+ *
+ * A {@link BinaryStore} can update an indexed file by appending the records of changed sections followed by a new
+ * index block. Such files are marked by {@link #FLAG_APPENDED}; their records are no longer in pre-order and have to
+ * be located through the index.
+ *
+ * @since 10.2026
+ */
+final class BinaryFormat {
+
+   static final byte[]  MAGIC         = { 'o', 'd', 'M', 'L', 'b', 'i', 'n', 0 };
+   static final int     VERSION       = 1;
+
+   static final int     TAG_NULL      = 0, TAG_STRING = 1, TAG_INT = 2, TAG_FLOAT = 3, TAG_DOUBLE = 4,
+         TAG_FALSE = 5, TAG_TRUE = 6, TAG_DATE = 7, TAG_URL = 8, TAG_BINARY = 9, TAG_LONG = 10;
+
+   static final int     FLAG_INDEXED  = 1, FLAG_APPENDED = 2, FLAG_SUMMARIZED = 4;
+   static final int     FLAGS_OFFSET  = MAGIC.length + 1;
+
+   static final Charset UTF8          = Charset.forName("UTF-8");
+
+
+   private BinaryFormat() {
+   }
+
+
+   static void writeVarLong(DataOutput out, long value) throws IOException {
+      while ((value & ~0x7FL) != 0) {
+         out.writeByte((int) ((value & 0x7F) | 0x80));
+         value >>>= 7;
+      }
+      out.writeByte((int) value);
+   }
+
+
+   static long readVarLong(DataInput in) throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+         int b = in.readUnsignedByte();
+         value |= (long) (b & 0x7F) << shift;
+         if ((b & 0x80) == 0) {
+            return value;
+         }
+      }
+      throw new IOException("Malformed varint in binary odML data!");
+   }
+
+
+   static void writeVarInt(DataOutput out, int value) throws IOException {
+      writeVarLong(out, value & 0xFFFFFFFFL);
+   }
+
+
+   static int readVarInt(DataInput in) throws IOException {
+      long value = readVarLong(in);
+      if (value > Integer.MAX_VALUE) {
+         throw new IOException("Count exceeds the valid range in binary odML data!");
+      }
+      return (int) value;
+   }
+
+
+   static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+      writeVarInt(out, bytes.length);
+      out.write(bytes);
+   }
+
+
+   static byte[] readBytes(DataInput in) throws IOException {
+      byte[] bytes = new byte[readVarInt(in)];
+      in.readFully(bytes);
+      return bytes;
+   }
+
+
+   /**
+    * Returns the class tag under which a value content is stored.
+    */
+   static int contentTag(Value value) {
+      Object content = value.getContent();
+      if (content == null) {
+         return TAG_NULL;
+      } else if (content instanceof String) {
+         return isBinary(value) ? TAG_BINARY : TAG_STRING;
+      } else if (content instanceof Integer || content instanceof Short || content instanceof Byte) {
+         return TAG_INT;
+      } else if (content instanceof Long) {
+         return TAG_LONG;
+      } else if (content instanceof Float) {
+         return TAG_FLOAT;
+      } else if (content instanceof Double) {
+         return TAG_DOUBLE;
+      } else if (content instanceof Boolean) {
+         return ((Boolean) content) ? TAG_TRUE : TAG_FALSE;
+      } else if (content instanceof Date) {
+         return TAG_DATE;
+      } else if (content instanceof URL) {
+         return TAG_URL;
+      }
+      return TAG_STRING;
+   }
+
+
+   /**
+    * Binary content is stored as raw bytes if decoding and encoding it again reproduces the stored text exactly.
+    */
+   private static boolean isBinary(Value value) {
+      if (value.getType() == null || !value.getType().equalsIgnoreCase("binary")) {
+         return false;
+      }
+      String content = (String) value.getContent();
+      if (!Base64.isBase64(content.getBytes(UTF8))) {
+         return false;
+      }
+      byte[] decoded = Base64.decodeBase64(content);
+      return content.equals(new String(Base64.encodeBase64(decoded), UTF8));
+   }
+
+
+   static void writeContent(DataOutput out, Value value, int tag, StringTable strings) throws IOException {
+      Object content = value.getContent();
+      out.writeByte(tag);
+      switch (tag) {
+         case TAG_STRING:
+         case TAG_URL:
+            writeVarInt(out, strings.indexOf(content.toString()));
+            break;
+         case TAG_BINARY:
+            writeBytes(out, Base64.decodeBase64((String) content));
+            break;
+         case TAG_INT:
+            // the zig-zag code of an int may use all 32 bits, more than readVarInt accepts
+            writeVarLong(out, zigZag((long) ((Number) content).intValue()));
+            break;
+         case TAG_LONG:
+            writeVarLong(out, zigZag(((Number) content).longValue()));
+            break;
+         case TAG_FLOAT:
+            out.writeFloat((Float) content);
+            break;
+         case TAG_DOUBLE:
+            out.writeDouble((Double) content);
+            break;
+         case TAG_DATE:
+            out.writeLong(((Date) content).getTime());
+            break;
+         default:
+            break;
+      }
+   }
+
+
+   static Object readContent(DataInput in, String[] strings) throws IOException {
+      int tag = in.readUnsignedByte();
+      switch (tag) {
+         case TAG_NULL:
+            return null;
+         case TAG_STRING:
+            return string(strings, readVarInt(in));
+         case TAG_URL:
+            return url(string(strings, readVarInt(in)));
+         case TAG_BINARY:
+            return new String(Base64.encodeBase64(readBytes(in)), UTF8);
+         case TAG_INT:
+            return (int) unZigZag(readVarLong(in));
+         case TAG_LONG:
+            return unZigZag(readVarLong(in));
+         case TAG_FLOAT:
+            return in.readFloat();
+         case TAG_DOUBLE:
+            return in.readDouble();
+         case TAG_FALSE:
+            return Boolean.FALSE;
+         case TAG_TRUE:
+            return Boolean.TRUE;
+         case TAG_DATE:
+            return new Date(in.readLong());
+         default:
+            throw new IOException("Unknown content tag " + tag + " in binary odML data!");
+      }
+   }
+
+
+   static long zigZag(long value) {
+      return (value << 1) ^ (value >> 63);
+   }
+
+
+   static long unZigZag(long value) {
+      return (value >>> 1) ^ -(value & 1);
+   }
+
+
+   /**
+    * Resolves a string reference read from the data. Index 0 stands for null.
+    */
+   static String string(String[] strings, int index) throws IOException {
+      if (index == 0) {
+         return null;
+      }
+      if (index > strings.length) {
+         throw new IOException("String reference " + index + " exceeds the string table!");
+      }
+      return strings[index - 1];
+   }
+
+
+   static URL url(String url) throws IOException {
+      return url == null ? null : new URL(url);
+   }
+
+
+   static String toString(Object o) {
+      return o == null ? null : o.toString();
+   }
+
+
+   static void writeStringTable(DataOutput out, StringTable strings) throws IOException {
+      writeVarInt(out, strings.size());
+      for (String s : strings) {
+         writeBytes(out, s.getBytes(UTF8));
+      }
+   }
+
+
+   static String[] readStringTable(DataInput in) throws IOException {
+      String[] strings = new String[readVarInt(in)];
+      for (int i = 0; i < strings.length; i++) {
+         strings[i] = new String(readBytes(in), UTF8);
+      }
+      return strings;
+   }
+
+
+   static void checkHeader(DataInput in) throws IOException {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC)) {
+         throw new IOException("Not a binary odML document!");
+      }
+      int version = in.readUnsignedByte();
+      if (version != VERSION) {
+         throw new IOException("Can not handle binary odML version: " + version + "!");
+      }
+   }
+
+
+   /**
+    * The strings of a document in the order of their first use. Index 0 is reserved for null.
+    */
+   static class StringTable implements Iterable<String> {
+
+      private final Map<String, Integer> indices = new LinkedHashMap<String, Integer>();
+
+
+      void add(String s) {
+         if (s != null && !indices.containsKey(s)) {
+            indices.put(s, indices.size() + 1);
+         }
+      }
+
+
+      /**
+       * Returns a table holding the given strings at the same positions.
+       */
+      static StringTable of(String[] strings) {
+         StringTable table = new StringTable();
+         for (String string : strings) {
+            table.add(string);
+         }
+         return table;
+      }
+
+
+      /**
+       * Returns the strings of the table starting at the given position.
+       */
+      List<String> from(int position) {
+         List<String> strings = new ArrayList<String>(indices.keySet());
+         return strings.subList(position, strings.size());
+      }
+
+
+      String[] toArray() {
+         return indices.keySet().toArray(new String[indices.size()]);
+      }
+
+
+      void add(Object o) {
+         if (o != null) {
+            add(o.toString());
+         }
+      }
+
+
+      int indexOf(String s) {
+         return s == null ? 0 : indices.get(s);
+      }
+
+
+      int size() {
+         return indices.size();
+      }
+
+
+      @Override
+      public Iterator<String> iterator() {
+         return indices.keySet().iterator();
+      }
+
+
+      /**
+       * Collects all strings of the section, its properties and values.
+       */
+      void addSection(Section section) {
+         add(section.getName());
+         add(section.getType());
+         add(section.getReference());
+         add(section.getDefinition());
+         add(section.getLocalRepository());
+         add(section.getMapping());
+         add(section.getLink());
+         add(section.getInclude());
+         for (int i = 0; i < section.propertyCount(); i++) {
+            Property property = section.getProperty(i);
+            add(property.getName());
+            add(property.getDefinition());
+            add(property.getDependency());
+            add(property.getDependencyValue());
+            add(property.getMapping());
+            for (int j = 0; j < property.valueCount(); j++) {
+               Value value = property.getWholeValue(j);
+               int tag = contentTag(value);
+               if (tag == TAG_STRING || tag == TAG_URL) {
+                  add(value.getContent());
+               }
+               add(value.getUnit());
+               add(value.getUncertainty());
+               add(value.getType());
+               add(value.getFilename());
+               add(value.getDefinition());
+               add(value.getReference());
+               add(value.getEncoder());
+               add(value.getChecksum());
+            }
+         }
+      }
+   }
+
+
+   static void writeSectionRecord(DataOutput out, Section section, StringTable strings) throws IOException {
+      writeVarInt(out, strings.indexOf(section.getName()));
+      writeVarInt(out, strings.indexOf(section.getType()));
+      writeVarInt(out, strings.indexOf(section.getReference()));
+      writeVarInt(out, strings.indexOf(section.getDefinition()));
+      writeVarInt(out, strings.indexOf(toString(section.getLocalRepository())));
+      writeVarInt(out, strings.indexOf(toString(section.getMapping())));
+      writeVarInt(out, strings.indexOf(section.getLink()));
+      writeVarInt(out, strings.indexOf(section.getInclude()));
+      out.writeBoolean(section.isTerminology());
+      writeVarInt(out, section.propertyCount());
+      for (int i = 0; i < section.propertyCount(); i++) {
+         writeProperty(out, section.getProperty(i), strings);
+      }
+      writeVarInt(out, section.sectionCount());
+   }
+
+
+   private static void writeProperty(DataOutput out, Property property, StringTable strings) throws IOException {
+      writeVarInt(out, strings.indexOf(property.getName()));
+      writeVarInt(out, strings.indexOf(property.getDefinition()));
+      writeVarInt(out, strings.indexOf(property.getDependency()));
+      writeVarInt(out, strings.indexOf(property.getDependencyValue()));
+      writeVarInt(out, strings.indexOf(toString(property.getMapping())));
+      writeVarInt(out, property.valueCount());
+      for (int i = 0; i < property.valueCount(); i++) {
+         Value value = property.getWholeValue(i);
+         writeContent(out, value, contentTag(value), strings);
+         writeVarInt(out, strings.indexOf(value.getUnit()));
+         writeVarInt(out, strings.indexOf(toString(value.getUncertainty())));
+         writeVarInt(out, strings.indexOf(value.getType()));
+         writeVarInt(out, strings.indexOf(value.getFilename()));
+         writeVarInt(out, strings.indexOf(value.getDefinition()));
+         writeVarInt(out, strings.indexOf(value.getReference()));
+         writeVarInt(out, strings.indexOf(value.getEncoder()));
+         writeVarInt(out, strings.indexOf(value.getChecksum()));
+      }
+   }
+
+
+   /**
+    * Reads the fields and properties of a section record. The number of subsections, which is the last entry of
+    * the record, is not read.
+    */
+   static Section readSectionRecord(DataInput in, String[] strings) throws IOException {
+      Section section = new Section();
+      String name = string(strings, readVarInt(in));
+      String type = string(strings, readVarInt(in));
+      if (name != null) {
+         section.setName(name);
+      }
+      if (type != null) {
+         section.setType(type);
+      }
+      section.setReference(string(strings, readVarInt(in)));
+      section.setDefinition(string(strings, readVarInt(in)));
+      section.setRepository(url(string(strings, readVarInt(in))));
+      section.setMapping(url(string(strings, readVarInt(in))));
+      section.setLink(string(strings, readVarInt(in)), true);
+      section.setInclude(string(strings, readVarInt(in)));
+      section.setAsTerminology(in.readBoolean());
+      int propertyCount = readVarInt(in);
+      List<Property> properties = new ArrayList<Property>(propertyCount);
+      for (int i = 0; i < propertyCount; i++) {
+         properties.add(readProperty(in, strings));
+      }
+      section.restoreProperties(properties);
+      section.trimToSize();
+      return section;
+   }
+
+
+   private static Property readProperty(DataInput in, String[] strings) throws IOException {
+      String name = string(strings, readVarInt(in));
+      String definition = string(strings, readVarInt(in));
+      String dependency = string(strings, readVarInt(in));
+      String dependencyValue = string(strings, readVarInt(in));
+      URL mapping = url(string(strings, readVarInt(in)));
+      int valueCount = readVarInt(in);
+      Vector<Value> values = new Vector<Value>(valueCount);
+      for (int i = 0; i < valueCount; i++) {
+         Value value = new Value();
+         value.setContent(readContent(in, strings));
+         value.setUnit(string(strings, readVarInt(in)));
+         value.setUncertainty(string(strings, readVarInt(in)));
+         value.setType(string(strings, readVarInt(in)));
+         value.setFilename(string(strings, readVarInt(in)));
+         value.setDefinition(string(strings, readVarInt(in)));
+         value.setReference(string(strings, readVarInt(in)));
+         value.setEncoder(string(strings, readVarInt(in)));
+         value.setChecksum(string(strings, readVarInt(in)));
+         values.add(value);
+      }
+      try {
+         return new Property(name, values, definition, dependency, dependencyValue, mapping);
+      } catch (Exception e) {
+         throw new IOException("Could not create property " + name + ": " + e.getMessage());
+      }
+   }
+
+
+   /**
+    * Writes the section and all its descendants as records in pre-order. If an index is passed, each record is
+    * added to it with the position of the counter at which the record starts.
+    */
+   static void writeTree(DataOutput out, Section root, StringTable strings, CountingOutputStream counter,
+                         Index index) throws IOException {
+      List<Section> stack = new ArrayList<Section>();
+      List<Integer> parents = new ArrayList<Integer>();
+      stack.add(root);
+      parents.add(-1);
+      while (!stack.isEmpty()) {
+         Section section = stack.remove(stack.size() - 1);
+         int parent = parents.remove(parents.size() - 1);
+         int position = -1;
+         if (index != null) {
+            position = index.add(parent, strings.indexOf(section.getName()), counter.getCount(),
+                  section.getRecordSummary());
+         }
+         writeSectionRecord(out, section, strings);
+         for (int i = section.sectionCount() - 1; i >= 0; i--) {
+            stack.add(section.getSection(i));
+            parents.add(position);
+         }
+      }
+   }
+
+
+   /**
+    * Reads a section and all its descendants written by {@link #writeTree(DataOutput, Section, StringTable)}.
+    */
+   static Section readTree(DataInput in, String[] strings) throws IOException {
+      Section root = readSectionRecord(in, strings);
+      List<Section> parents = new ArrayList<Section>();
+      List<Integer> remaining = new ArrayList<Integer>();
+      parents.add(root);
+      remaining.add(readVarInt(in));
+      while (!parents.isEmpty()) {
+         int last = parents.size() - 1;
+         int count = remaining.get(last);
+         if (count == 0) {
+            parents.remove(last).trimToSize();
+            remaining.remove(last);
+            continue;
+         }
+         remaining.set(last, count - 1);
+         Section section = readSectionRecord(in, strings);
+         parents.get(last).add(section);
+         parents.add(section);
+         remaining.add(readVarInt(in));
+      }
+      return root;
+   }
+
+
+   /**
+    * An {@link OutputStream} filter counting the bytes written through it.
+    */
+   static class CountingOutputStream extends FilterOutputStream {
+
+      private long count = 0;
+
+
+      CountingOutputStream(OutputStream out) {
+         this(out, 0);
+      }
+
+
+      CountingOutputStream(OutputStream out, long start) {
+         super(out);
+         this.count = start;
+      }
+
+
+      @Override
+      public void write(int b) throws IOException {
+         out.write(b);
+         count++;
+      }
+
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+         out.write(b, off, len);
+         count += len;
+      }
+
+
+      long getCount() {
+         return count;
+      }
+   }
+
+
+   /**
+    * The index of the section records of a file. Sections are numbered in pre-order, the root section is number 0.
+    * For each section the number of its parent, the string reference of its name and the offset of its record are
+    * stored. A summarized index also stores the counters of each record (see {@link Section#getRecordSummary()}),
+    * from which the sums over the subtrees are derived, so that lazily read sections know them before they are
+    * loaded.
+    */
+   static class Index {
+
+      private final boolean summarized;
+      private int           size    = 0;
+      private int[]         parents = new int[16];
+      private int[]         names   = new int[16];
+      private long[]        offsets = new long[16];
+      private int[]         summaries;
+      private int[]         firstChild, nextSibling, end, subtreeSummaries;
+
+
+      Index(boolean summarized) {
+         this.summarized = summarized;
+         this.summaries = summarized ? new int[16 * Section.SUMMARY_SIZE] : null;
+      }
+
+
+      /**
+       * Adds a section. The summary is ignored unless the index is summarized.
+       */
+      int add(int parent, int name, long offset, int[] summary) {
+         if (size == parents.length) {
+            parents = Arrays.copyOf(parents, 2 * size);
+            names = Arrays.copyOf(names, 2 * size);
+            offsets = Arrays.copyOf(offsets, 2 * size);
+            if (summarized) {
+               summaries = Arrays.copyOf(summaries, 2 * size * Section.SUMMARY_SIZE);
+            }
+         }
+         parents[size] = parent;
+         names[size] = name;
+         offsets[size] = offset;
+         if (summarized) {
+            System.arraycopy(summary, 0, summaries, size * Section.SUMMARY_SIZE, Section.SUMMARY_SIZE);
+         }
+         firstChild = null;
+         return size++;
+      }
+
+
+      boolean isSummarized() {
+         return summarized;
+      }
+
+
+      int size() {
+         return size;
+      }
+
+
+      int getParent(int section) {
+         return parents[section];
+      }
+
+
+      int getName(int section) {
+         return names[section];
+      }
+
+
+      long getOffset(int section) {
+         return offsets[section];
+      }
+
+
+      /**
+       * Returns the counters of a section, or null if the index is not summarized.
+       */
+      int[] getSummary(int section) {
+         if (!summarized) {
+            return null;
+         }
+         int from = section * Section.SUMMARY_SIZE;
+         return Arrays.copyOfRange(summaries, from, from + Section.SUMMARY_SIZE);
+      }
+
+
+      /**
+       * Returns the sums of the counters over the subtrees of the subsections of a section, or null if the index is
+       * not summarized.
+       */
+      int[] getSubsectionSummary(int section) {
+         if (!summarized) {
+            return null;
+         }
+         link();
+         int from = section * Section.SUMMARY_SIZE;
+         int[] summary = Arrays.copyOfRange(subtreeSummaries, from, from + Section.SUMMARY_SIZE);
+         for (int i = 0; i < Section.SUMMARY_SIZE; i++) {
+            summary[i] -= summaries[from + i];
+         }
+         return summary;
+      }
+
+
+      /**
+       * Returns the number of the first subsection of a section, or -1 if it has none.
+       */
+      int getFirstChild(int section) {
+         link();
+         return firstChild[section];
+      }
+
+
+      /**
+       * Returns the number of the next section with the same parent, or -1 if there is none.
+       */
+      int getNextSibling(int section) {
+         link();
+         return nextSibling[section];
+      }
+
+
+      /**
+       * Returns the number following the last descendant of a section. The section and its descendants are
+       * numbered from section to getEnd(section) - 1.
+       */
+      int getEnd(int section) {
+         link();
+         return end[section];
+      }
+
+
+      private void link() {
+         if (firstChild != null) {
+            return;
+         }
+         int[] first = new int[size];
+         int[] next = new int[size];
+         int[] last = new int[size];
+         int[] sums = summarized ? Arrays.copyOf(summaries, size * Section.SUMMARY_SIZE) : null;
+         Arrays.fill(first, -1);
+         Arrays.fill(next, -1);
+         for (int i = size - 1; i >= 0; i--) {
+            last[i] = Math.max(last[i], i + 1);
+            if (i > 0) {
+               next[i] = first[parents[i]];
+               first[parents[i]] = i;
+               last[parents[i]] = Math.max(last[parents[i]], last[i]);
+               // the descendants of a section come after it, so its sums are complete here
+               for (int j = 0; summarized && j < Section.SUMMARY_SIZE; j++) {
+                  sums[parents[i] * Section.SUMMARY_SIZE + j] += sums[i * Section.SUMMARY_SIZE + j];
+               }
+            }
+         }
+         subtreeSummaries = sums;
+         end = last;
+         nextSibling = next;
+         firstChild = first;
+      }
+
+
+      void write(DataOutput out) throws IOException {
+         writeVarInt(out, size);
+         for (int i = 0; i < size; i++) {
+            writeVarInt(out, parents[i] + 1);
+            writeVarInt(out, names[i]);
+            writeVarLong(out, offsets[i]);
+            for (int j = 0; summarized && j < Section.SUMMARY_SIZE; j++) {
+               writeVarInt(out, summaries[i * Section.SUMMARY_SIZE + j]);
+            }
+         }
+      }
+
+
+      static Index read(DataInput in, boolean summarized) throws IOException {
+         Index index = new Index(summarized);
+         int[] summary = new int[Section.SUMMARY_SIZE];
+         int size = readVarInt(in);
+         for (int i = 0; i < size; i++) {
+            int parent = readVarInt(in) - 1;
+            if (parent >= i || (i > 0 && parent < 0)) {
+               throw new IOException("Section index is not in pre-order!");
+            }
+            int name = readVarInt(in);
+            long offset = readVarLong(in);
+            for (int j = 0; summarized && j < Section.SUMMARY_SIZE; j++) {
+               summary[j] = readVarInt(in);
+            }
+            index.add(parent, name, offset, summary);
+         }
+         index.link();
+         return index;
+      }
+   }
+
+
+   /**
+    * Writes an index block. The strings are those added to the string table after the header was written.
+    */
+   static void writeIndexBlock(DataOutput out, List<String> extraStrings, StringTable strings, Section root,
+                               Index index) throws IOException {
+      writeVarInt(out, extraStrings.size());
+      for (String string : extraStrings) {
+         writeBytes(out, string.getBytes(UTF8));
+      }
+      writeVarInt(out, strings.indexOf(root.getDocumentAuthor()));
+      writeVarInt(out, strings.indexOf(root.getDocumentVersion()));
+      out.writeBoolean(root.getDocumentDate() != null);
+      if (root.getDocumentDate() != null) {
+         out.writeLong(root.getDocumentDate().getTime());
+      }
+      index.write(out);
+   }
+}
@@ -0,0 +1,88 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Date;
+
+/**
+ * The {@link BinaryReader} loads odML trees from the compact binary format written by the {@link BinaryWriter}. The
+ * tree is restored as it was written; includes and links are not resolved and no terminology mapping is applied.
+ *
+ * @since 10.2026
+ *
+ */
+public class BinaryReader {
+
+   /**
+    * Loads the binary odML document from the given file.
+    *
+    * @param file {@link String}: the url or path of the file.
+    * @return {@link Section}: the root section of the loaded document.
+    * @throws Exception if the file can not be read or is not a binary odML document.
+    */
+   public Section load(String file) throws Exception {
+      return load(Reader.toURL(file));
+   }
+
+
+   /**
+    * Loads the binary odML document from the given url. The url is stored in the root section, so that relative
+    * includes can be resolved. The stream opened on the url is closed before the method returns.
+    *
+    * @param fileURL {@link URL}: the url of the file.
+    * @return {@link Section}: the root section of the loaded document.
+    * @throws Exception if the file can not be read or is not a binary odML document.
+    */
+   public Section load(URL fileURL) throws Exception {
+      InputStream stream = fileURL.openStream();
+      try {
+         Section root = load(stream);
+         root.setFileUrl(fileURL);
+         return root;
+      } finally {
+         stream.close();
+      }
+   }
+
+
+   /**
+    * Loads the binary odML document from the given stream. The stream is not closed.
+    *
+    * @param stream {@link InputStream}: the stream the document is read from.
+    * @return {@link Section}: the root section of the loaded document.
+    * @throws Exception if the stream can not be read or does not contain a binary odML document.
+    */
+   public Section load(InputStream stream) throws Exception {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+      BinaryFormat.checkHeader(in);
+      if ((in.readUnsignedByte() & BinaryFormat.FLAG_APPENDED) != 0) {
+         throw new IOException("The binary odML document was updated in place, read it with a BinaryStore!");
+      }
+      String[] strings = BinaryFormat.readStringTable(in);
+      String author = BinaryFormat.string(strings, BinaryFormat.readVarInt(in));
+      String version = BinaryFormat.string(strings, BinaryFormat.readVarInt(in));
+      Date date = in.readBoolean() ? new Date(in.readLong()) : null;
+      Section root = BinaryFormat.readTree(in, strings);
+      root.setDocumentAuthor(author);
+      root.setDocumentVersion(version);
+      root.setDocumentDate(date);
+      return root;
+   }
+}
@@ -0,0 +1,566 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import odml.util.SectionPath;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * The {@link BinaryStore} gives random access to the sections of an indexed binary odML file, as written by a
+ * {@link BinaryWriter} with {@link BinaryWriter#setIndexed(boolean)} set to true. Opening a store reads only the
+ * string table and the section index. A single subtree, addressed by its path, can then be read without reading the
+ * rest of the file.
+ *
+ * Sections can also be read lazily. A lazily read section holds its own fields and properties, but its subsections
+ * are read from the file only when they are first accessed, e.g. through {@link Section#getSection(int)},
+ * {@link Section#sectionCount()} or the {@link javax.swing.tree.TreeNode} methods. Memory then scales with the part
+ * of the tree that is actually visited. The store must stay open as long as such sections are browsed.
+ *
+ * Trees read from a store can be saved incrementally with {@link #update(Section)}. Only the sections reported as
+ * modified by {@link Section#isModified()} are written, appended to the file together with a new index. Unchanged
+ * sections keep their records, so the time to save depends on the size of the change rather than on the size of the
+ * document. The space of replaced records is not reclaimed; write the tree with a {@link BinaryWriter} to compact the
+ * file.
+ *
+ * Reads use positioned i/o on a {@link FileChannel}, so one store may be used by several threads at a time. Updates
+ * must not run concurrently with other accesses to the store.
+ *
+ * @since 10.2026
+ *
+ */
+public class BinaryStore implements Closeable {
+
+   private final File                       file;
+   private final FileChannel                channel;
+   private final int                        headerStrings;
+   private final boolean                    summarized;
+   private volatile String[]                strings;
+   private volatile BinaryFormat.Index      index;
+   private BinaryFormat.StringTable         table = null;
+   private String                           author, version;
+   private Date                             date;
+
+
+   /**
+    * Opens the indexed binary odML file at the given location.
+    *
+    * @param fileName {@link String}: the path of the file.
+    * @throws Exception if the file can not be read or is not an indexed binary odML document.
+    */
+   public BinaryStore(String fileName) throws Exception {
+      this.file = new File(fileName);
+      this.channel = new RandomAccessFile(file, "r").getChannel();
+      try {
+         DataInputStream in = new DataInputStream(new ChannelInputStream(channel, 0));
+         BinaryFormat.checkHeader(in);
+         int flags = in.readUnsignedByte();
+         if ((flags & BinaryFormat.FLAG_INDEXED) == 0) {
+            throw new IOException("Binary odML document " + fileName + " has no section index!");
+         }
+         // the indices appended by updates are summarized like the first one
+         summarized = (flags & BinaryFormat.FLAG_SUMMARIZED) != 0;
+         String[] header = BinaryFormat.readStringTable(in);
+         headerStrings = header.length;
+         DataInputStream footer = new DataInputStream(new ChannelInputStream(channel, channel.size() - 8));
+         readIndexBlock(new DataInputStream(new ChannelInputStream(channel, footer.readLong())), header);
+      } catch (Exception e) {
+         channel.close();
+         throw e;
+      }
+   }
+
+
+   private void readIndexBlock(DataInputStream in, String[] header) throws IOException {
+      String[] extra = BinaryFormat.readStringTable(in);
+      String[] all = new String[header.length + extra.length];
+      System.arraycopy(header, 0, all, 0, header.length);
+      System.arraycopy(extra, 0, all, header.length, extra.length);
+      author = BinaryFormat.string(all, BinaryFormat.readVarInt(in));
+      version = BinaryFormat.string(all, BinaryFormat.readVarInt(in));
+      date = in.readBoolean() ? new Date(in.readLong()) : null;
+      index = BinaryFormat.Index.read(in, summarized);
+      if (index.size() == 0) {
+         throw new IOException("Section index of " + file + " is empty!");
+      }
+      strings = all;
+   }
+
+
+   /**
+    * Reads the whole tree stored in the file.
+    *
+    * @return {@link Section}: the root section of the document.
+    * @throws Exception if the file can not be read.
+    */
+   public Section getRootSection() throws Exception {
+      return getRootSection(false);
+   }
+
+
+   /**
+    * Reads the tree stored in the file. If lazy is true, only the root section itself is read and its subsections
+    * are read when they are first accessed.
+    *
+    * @param lazy boolean: whether to read subsections on demand.
+    * @return {@link Section}: the root section of the document.
+    * @throws Exception if the file can not be read.
+    */
+   public Section getRootSection(boolean lazy) throws Exception {
+      BinaryFormat.Index current = index;
+      Section root = lazy ? readLazy(current, 0) : read(current, 0);
+      root.setDocumentAuthor(author);
+      root.setDocumentVersion(version);
+      root.setDocumentDate(date);
+      root.setFileUrl(file.toURI().toURL());
+      return root;
+   }
+
+
+   /**
+    * Reads the section at the given path together with its descendants, but nothing else of the file. The path is
+    * resolved against the section index, names are matched case-insensitive like in
+    * {@link Section#getSection(String)}. Paths are always taken relative to the root section. The returned section
+    * is not attached to a parent.
+    *
+    * @param path {@link String}: the path of the section, e.g. /Recording/Stimulus.
+    * @return {@link Section}: the section or null if no section exists at the path.
+    * @throws Exception if the file can not be read.
+    */
+   public Section getSection(String path) throws Exception {
+      return getSection(path, false);
+   }
+
+
+   /**
+    * Reads the section at the given path like {@link #getSection(String)}. If lazy is true, the descendants of the
+    * section are read when they are first accessed.
+    *
+    * @param path {@link String}: the path of the section, e.g. /Recording/Stimulus.
+    * @param lazy boolean: whether to read subsections on demand.
+    * @return {@link Section}: the section or null if no section exists at the path.
+    * @throws Exception if the file can not be read.
+    */
+   public Section getSection(String path, boolean lazy) throws Exception {
+      BinaryFormat.Index current = index;
+      int section = find(current, path);
+      if (section < 0) {
+         return null;
+      }
+      if (section == 0) {
+         return getRootSection(lazy);
+      }
+      return lazy ? readLazy(current, section) : read(current, section);
+   }
+
+
+   /**
+    * Returns whether a section exists at the given path. No section records are read.
+    *
+    * @param path {@link String}: the path of the section.
+    * @return boolean: true if the index contains the path, false otherwise.
+    */
+   public boolean contains(String path) {
+      return find(index, path) >= 0;
+   }
+
+
+   /**
+    * Returns the paths of all sections stored in the file in pre-order. The root section has the empty path like in
+    * {@link Section#getPath()}.
+    *
+    * @return {@link Vector} of {@link String}s: the section paths.
+    */
+   public Vector<String> getPaths() {
+      BinaryFormat.Index current = index;
+      Vector<String> paths = new Vector<String>(current.size());
+      paths.add("");
+      for (int i = 1; i < current.size(); i++) {
+         paths.add(paths.get(current.getParent(i)) + "/" + name(current, i));
+      }
+      return paths;
+   }
+
+
+   /**
+    * Returns the number of sections stored in the file, including the root section.
+    *
+    * @return int: the number of sections.
+    */
+   public int sectionCount() {
+      return index.size();
+   }
+
+
+   /**
+    * Saves the changes of a tree read from this store. The records of all modified sections are appended to the
+    * file, followed by a new index of the tree. Subtrees that have not been loaded yet are taken over from the
+    * current index without being read. Afterwards all sections of the tree count as unmodified.
+    *
+    * @param root {@link Section}: the root section of the tree, as returned by {@link #getRootSection(boolean)}.
+    * @return int: the number of section records written.
+    * @throws Exception if the file can not be written.
+    */
+   public int update(Section root) throws Exception {
+      if (root.getParent() != null) {
+         throw new IllegalArgumentException("BinaryStore.update: only root sections can be saved!");
+      }
+      StoredRecord rootRecord = root.getStoredRecord();
+      if (rootRecord != null && rootRecord.store == this && rootRecord.position != 0) {
+         throw new IllegalArgumentException("BinaryStore.update: " + root.getName()
+               + " was read as a subtree and can not replace the stored tree!");
+      }
+      if (table == null) {
+         table = BinaryFormat.StringTable.of(strings);
+      }
+      int knownStrings = table.size();
+      RandomAccessFile raf = new RandomAccessFile(file, "rw");
+      FileChannel out = raf.getChannel();
+      long start = out.size();
+      try {
+         out.position(start);
+         BinaryFormat.CountingOutputStream counter = new BinaryFormat.CountingOutputStream(
+               new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16), start);
+         DataOutputStream data = new DataOutputStream(counter);
+         BinaryFormat.Index updated = new BinaryFormat.Index(summarized);
+         int written = 0;
+         List<Section> stack = new ArrayList<Section>();
+         List<Integer> parents = new ArrayList<Integer>();
+         stack.add(root);
+         parents.add(-1);
+         while (!stack.isEmpty()) {
+            Section section = stack.remove(stack.size() - 1);
+            int parent = parents.remove(parents.size() - 1);
+            StoredRecord record = section.getStoredRecord();
+            int position;
+            if (record != null && record.store == this) {
+               table.add(section.getName());
+               position = updated.add(parent, table.indexOf(section.getName()), record.offset,
+                     section.getRecordSummary());
+               if (!section.isLoaded()) {
+                  copySubtree(record, updated, position);
+                  continue;
+               }
+            } else {
+               table.addSection(section);
+               position = updated.add(parent, table.indexOf(section.getName()), counter.getCount(),
+                     section.getRecordSummary());
+               BinaryFormat.writeSectionRecord(data, section, table);
+               written++;
+            }
+            for (int i = section.sectionCount() - 1; i >= 0; i--) {
+               stack.add(section.getSection(i));
+               parents.add(position);
+            }
+         }
+         table.add(root.getDocumentAuthor());
+         table.add(root.getDocumentVersion());
+         long indexOffset = counter.getCount();
+         BinaryFormat.writeIndexBlock(data, table.from(headerStrings), table, root, updated);
+         data.writeLong(indexOffset);
+         data.flush();
+         markAppended(out);
+
+         relabel(root, updated);
+         strings = table.toArray();
+         index = updated;
+         author = root.getDocumentAuthor();
+         version = root.getDocumentVersion();
+         date = root.getDocumentDate();
+         return written;
+      } catch (Exception e) {
+         // drop the partly appended data, so that the file ends with the previous index again
+         out.truncate(start);
+         if (table.size() != knownStrings) {
+            table = null;
+         }
+         throw e;
+      } finally {
+         raf.close();
+      }
+   }
+
+
+   /**
+    * Closes the underlying file.
+    */
+   @Override
+   public void close() throws IOException {
+      channel.close();
+   }
+
+
+   /**
+    * Adds the index entries of the descendants of an unloaded section to the new index.
+    */
+   private void copySubtree(StoredRecord record, BinaryFormat.Index updated, int position) {
+      BinaryFormat.Index old = record.index;
+      int first = record.position;
+      int end = old.getEnd(first);
+      int[] positions = new int[end - first];
+      positions[0] = position;
+      for (int i = first + 1; i < end; i++) {
+         positions[i - first] = updated.add(positions[old.getParent(i) - first], table.indexOf(name(old, i)),
+               old.getOffset(i), old.getSummary(i));
+      }
+   }
+
+
+   /**
+    * Points the stored records of all loaded sections to their entries in the new index.
+    */
+   private void relabel(Section root, BinaryFormat.Index updated) {
+      List<Section> stack = new ArrayList<Section>();
+      stack.add(root);
+      int position = 0;
+      while (!stack.isEmpty()) {
+         Section section = stack.remove(stack.size() - 1);
+         if (section.isLoaded()) {
+            section.setStoredRecord(new StoredRecord(this, updated, position, updated.getOffset(position)));
+            for (int i = section.sectionCount() - 1; i >= 0; i--) {
+               stack.add(section.getSection(i));
+            }
+            position++;
+         } else {
+            // keeps its record and loader, which refer to the index it was read with
+            position = updated.getEnd(position);
+         }
+      }
+   }
+
+
+   private void markAppended(FileChannel out) throws IOException {
+      ByteBuffer flags = ByteBuffer.allocate(1);
+      out.read(flags, BinaryFormat.FLAGS_OFFSET);
+      int value = flags.get(0);
+      if ((value & BinaryFormat.FLAG_APPENDED) == 0) {
+         flags.clear();
+         flags.put((byte) (value | BinaryFormat.FLAG_APPENDED)).flip();
+         out.write(flags, BinaryFormat.FLAGS_OFFSET);
+      }
+   }
+
+
+   private int find(BinaryFormat.Index current, String path) {
+      if (path == null) {
+         return -1;
+      }
+      String trimmed = path.trim();
+      if (trimmed.isEmpty() || trimmed.equals("/")) {
+         return 0;
+      }
+      SectionPath sp = new SectionPath(trimmed);
+      if (!sp.isValid()) {
+         System.out.println("BinaryStore.getSection: provided path is invalid!");
+         return -1;
+      }
+      int section = 0;
+      while (true) {
+         int child = current.getFirstChild(section);
+         while (child >= 0 && !sp.nextSection().equalsIgnoreCase(name(current, child))) {
+            child = current.getNextSibling(child);
+         }
+         if (child < 0) {
+            System.out.println("BinaryStore.getSection: could not locate section: " + path + " in the file!");
+            return -1;
+         }
+         section = child;
+         if (!sp.hasRest()) {
+            return section;
+         }
+         sp = new SectionPath(sp.getRestPath());
+      }
+   }
+
+
+   private String name(BinaryFormat.Index current, int section) {
+      try {
+         String name = BinaryFormat.string(strings, current.getName(section));
+         return name == null ? "" : name;
+      } catch (IOException e) {
+         return "";
+      }
+   }
+
+
+   /**
+    * Reads a section and its descendants. Records that follow each other in the file are read sequentially.
+    */
+   private Section read(BinaryFormat.Index current, int section) throws IOException {
+      String[] table = strings;
+      int end = current.getEnd(section);
+      Section[] sections = new Section[end - section];
+      ChannelInputStream stream = new ChannelInputStream(channel, current.getOffset(section));
+      DataInputStream in = new DataInputStream(stream);
+      for (int i = section; i < end; i++) {
+         stream.seek(current.getOffset(i));
+         sections[i - section] = BinaryFormat.readSectionRecord(in, table);
+         BinaryFormat.readVarInt(in);
+         if (i > section) {
+            sections[current.getParent(i) - section].add(sections[i - section]);
+         }
+      }
+      for (int i = section; i < end; i++) {
+         sections[i - section].trimToSize();
+         sections[i - section].setStoredRecord(new StoredRecord(this, current, i, current.getOffset(i)));
+      }
+      return sections[0];
+   }
+
+
+   /**
+    * Reads a single section record. The subsections are left to a {@link SectionLoader}.
+    */
+   private Section readLazy(BinaryFormat.Index current, int section) throws IOException {
+      DataInputStream in = new DataInputStream(new ChannelInputStream(channel, current.getOffset(section), 1 << 12));
+      Section s = BinaryFormat.readSectionRecord(in, strings);
+      s.setStoredRecord(new StoredRecord(this, current, section, current.getOffset(section)));
+      if (current.getFirstChild(section) >= 0) {
+         s.setLoader(new IndexLoader(current, section));
+         if (current.isSummarized()) {
+            s.setSubsectionSummary(current.getSubsectionSummary(section));
+         }
+      }
+      return s;
+   }
+
+
+   /**
+    * Where the unchanged record of a section is stored: the store, the index the section was read with, its number
+    * in that index and the offset of its record.
+    */
+   static final class StoredRecord {
+
+      final BinaryStore        store;
+      final BinaryFormat.Index index;
+      final int                position;
+      final long               offset;
+
+
+      StoredRecord(BinaryStore store, BinaryFormat.Index index, int position, long offset) {
+         this.store = store;
+         this.index = index;
+         this.position = position;
+         this.offset = offset;
+      }
+   }
+
+
+   /**
+    * Reads the subsections of a lazily read section using the positions stored in the index.
+    */
+   private class IndexLoader implements SectionLoader {
+
+      private final BinaryFormat.Index current;
+      private final int                section;
+
+
+      IndexLoader(BinaryFormat.Index current, int section) {
+         this.current = current;
+         this.section = section;
+      }
+
+
+      @Override
+      public void loadSubsections(Section parent) throws Exception {
+         for (int child = current.getFirstChild(section); child >= 0; child = current.getNextSibling(child)) {
+            parent.add(readLazy(current, child));
+         }
+      }
+   }
+
+
+   /**
+    * Reads from a {@link FileChannel} through its own buffer, without changing the position of the channel.
+    */
+   private static class ChannelInputStream extends InputStream {
+
+      private final FileChannel channel;
+      private final ByteBuffer  buffer;
+      private long              start;
+
+
+      ChannelInputStream(FileChannel channel, long position) {
+         this(channel, position, 1 << 16);
+      }
+
+
+      ChannelInputStream(FileChannel channel, long position, int bufferSize) {
+         this.channel = channel;
+         this.buffer = ByteBuffer.allocate(bufferSize);
+         this.buffer.limit(0);
+         this.start = position;
+      }
+
+
+      /**
+       * Continues reading at the given position, keeping the buffered data if it contains the position.
+       */
+      void seek(long position) {
+         if (position >= start && position <= start + buffer.limit()) {
+            buffer.position((int) (position - start));
+         } else {
+            start = position;
+            buffer.limit(0);
+         }
+      }
+
+
+      private boolean fill() throws IOException {
+         start += buffer.limit();
+         buffer.clear();
+         int n = channel.read(buffer, start);
+         buffer.flip();
+         return n > 0;
+      }
+
+
+      @Override
+      public int read() throws IOException {
+         if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+         }
+         return buffer.get() & 0xFF;
+      }
+
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+         if (len == 0) {
+            return 0;
+         }
+         if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+         }
+         int n = Math.min(len, buffer.remaining());
+         buffer.get(b, off, n);
+         return n;
+      }
+   }
+}
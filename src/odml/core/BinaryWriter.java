@@ -0,0 +1,152 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link BinaryWriter} writes an odML tree in the compact binary format that is read by the {@link BinaryReader}.
+ * The binary format holds the same information as the xml serialization written by the {@link Writer}, but avoids
+ * parsing markup and converting numbers from and to text when the file is loaded again. See {@link BinaryFormat} for
+ * the layout.
+ *
+ * @since 10.2026
+ *
+ */
+public class BinaryWriter {
+
+   private Section odmlTree;
+   private boolean indexed = false;
+
+
+   /**
+    * Creates a binary writer for the tree starting at the passed section.
+    *
+    * @param rootSection {@link Section}: the root section of the metadata tree.
+    */
+   public BinaryWriter(Section rootSection) {
+      this.odmlTree = rootSection;
+   }
+
+
+   /**
+    * Sets whether an index of all sections is appended to the document. Indexed documents can be accessed section by
+    * section with a {@link BinaryStore}. The default is false.
+    *
+    * @param indexed boolean: whether to write the section index.
+    */
+   public void setIndexed(boolean indexed) {
+      this.indexed = indexed;
+   }
+
+
+   /**
+    * Returns whether an index of all sections is appended to the document.
+    *
+    * @return boolean: true if the index is written, false otherwise.
+    */
+   public boolean isIndexed() {
+      return indexed;
+   }
+
+
+   /**
+    * Writes the binary serialization to the file with the given name.
+    *
+    * @param fileName {@link String}: the name of the output file.
+    * @return {@link Boolean} true if operation was successful, false otherwise.
+    */
+   public boolean write(String fileName) {
+      if (odmlTree == null) {
+         System.out.println("BinaryWriter.write error: there is no metadata to write!");
+         return false;
+      }
+      try {
+         OutputStream stream = new FileOutputStream(fileName);
+         try {
+            return write(stream);
+         } finally {
+            stream.close();
+         }
+      } catch (IOException e) {
+         System.out.println("Write to file failed: " + e.getMessage());
+         return false;
+      }
+   }
+
+
+   /**
+    * Writes the binary serialization to the given output stream. The stream is flushed but not closed.
+    *
+    * @param stream {@link OutputStream}: the stream to which the document is written.
+    * @return {@link Boolean} true if operation was successful, false otherwise.
+    */
+   public boolean write(OutputStream stream) {
+      if (odmlTree == null) {
+         System.out.println("BinaryWriter.write error: there is no metadata to write!");
+         return false;
+      }
+      try {
+         BinaryFormat.CountingOutputStream counter =
+               new BinaryFormat.CountingOutputStream(new BufferedOutputStream(stream, 1 << 16));
+         DataOutputStream out = new DataOutputStream(counter);
+         writeDocument(out, counter);
+         out.flush();
+         return true;
+      } catch (IOException e) {
+         System.out.println("Writing to stream failed: " + e.getMessage());
+         return false;
+      }
+   }
+
+
+   private void writeDocument(DataOutputStream out, BinaryFormat.CountingOutputStream counter) throws IOException {
+      BinaryFormat.StringTable strings = new BinaryFormat.StringTable();
+      strings.add(odmlTree.getDocumentAuthor());
+      strings.add(odmlTree.getDocumentVersion());
+      List<Section> stack = new ArrayList<Section>();
+      stack.add(odmlTree);
+      while (!stack.isEmpty()) {
+         Section section = stack.remove(stack.size() - 1);
+         strings.addSection(section);
+         for (int i = section.sectionCount() - 1; i >= 0; i--) {
+            stack.add(section.getSection(i));
+         }
+      }
+      out.write(BinaryFormat.MAGIC);
+      out.writeByte(BinaryFormat.VERSION);
+      out.writeByte(indexed ? BinaryFormat.FLAG_INDEXED | BinaryFormat.FLAG_SUMMARIZED : 0);
+      BinaryFormat.writeStringTable(out, strings);
+      BinaryFormat.writeVarInt(out, strings.indexOf(odmlTree.getDocumentAuthor()));
+      BinaryFormat.writeVarInt(out, strings.indexOf(odmlTree.getDocumentVersion()));
+      out.writeBoolean(odmlTree.getDocumentDate() != null);
+      if (odmlTree.getDocumentDate() != null) {
+         out.writeLong(odmlTree.getDocumentDate().getTime());
+      }
+      BinaryFormat.Index index = indexed ? new BinaryFormat.Index(true) : null;
+      BinaryFormat.writeTree(out, odmlTree, strings, counter, index);
+      if (indexed) {
+         long indexOffset = counter.getCount();
+         BinaryFormat.writeIndexBlock(out, new ArrayList<String>(), strings, odmlTree, index);
+         out.writeLong(indexOffset);
+      }
+   }
+}
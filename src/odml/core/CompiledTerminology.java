@@ -0,0 +1,218 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable lookup table of the property definitions of a terminology section. Each property name maps to the
+ * definition, type, unit, dependency and allowed values given in the terminology, so that validating a property
+ * takes a hash lookup instead of a scan of the terminology and repeated calls of its accessors.
+ *
+ * The table is a snapshot of the terminology section at the time it was compiled. Tables of the terminologies
+ * loaded by the {@link odml.util.TerminologyManager} are cached there, see
+ * {@link odml.util.TerminologyManager#compile(Section)}.
+ *
+ * @since 10.2026
+ *
+ */
+public final class CompiledTerminology {
+
+   private final Map<String, Entry> entries;
+
+
+   private CompiledTerminology(Map<String, Entry> entries) {
+      this.entries = entries;
+   }
+
+
+   /**
+    * Compiles the property definitions of the given terminology section. A link of the section is resolved first,
+    * so that the table contains the linked properties as well.
+    *
+    * @param terminology {@link Section}: the terminology section.
+    * @return {@link CompiledTerminology}: the lookup table.
+    */
+   public static CompiledTerminology compile(Section terminology) {
+      Map<String, Entry> entries = new HashMap<String, Entry>();
+      synchronized (terminology) {
+         if (terminology.getLink() != null) {
+            terminology.resolveLink();
+         }
+         // as in Section.getProperty the last of several properties with the same name wins
+         for (int i = 0; i < terminology.propertyCount(); i++) {
+            Entry entry = Entry.of(terminology.getProperty(i));
+            entries.put(key(entry.getName()), entry);
+         }
+      }
+      return new CompiledTerminology(entries);
+   }
+
+
+   /**
+    * Returns the definition of the property with the given name. Matching is case-insensitive.
+    *
+    * @param propertyName {@link String}: the property name.
+    * @return {@link Entry}: the definition or null if the terminology does not define the property.
+    */
+   public Entry get(String propertyName) {
+      return entries.get(key(propertyName));
+   }
+
+
+   /**
+    * Returns the number of defined properties.
+    *
+    * @return int: the number of entries.
+    */
+   public int size() {
+      return entries.size();
+   }
+
+
+   private static String key(String name) {
+      return name == null ? "" : name.toLowerCase(Locale.ROOT);
+   }
+
+
+   /**
+    * The definition of one property of a terminology.
+    */
+   public static final class Entry {
+
+      private final String      name, definition, type, unit, dependency, dependencyValue;
+      private final Set<String> allowedValues;
+      private final URL         mapping;
+
+
+      private Entry(String name, String definition, String type, String unit, String dependency,
+            String dependencyValue, Set<String> allowedValues, URL mapping) {
+         this.name = name;
+         this.definition = definition;
+         this.type = type;
+         this.unit = unit;
+         this.dependency = dependency;
+         this.dependencyValue = dependencyValue;
+         this.allowedValues = allowedValues;
+         this.mapping = mapping;
+      }
+
+
+      /**
+       * Extracts the definition from a terminology property.
+       *
+       * @param property {@link Property}: the property as defined in the terminology.
+       * @return {@link Entry}: the definition.
+       */
+      public static Entry of(Property property) {
+         Set<String> allowed = new HashSet<String>();
+         for (int i = 0; i < property.valueCount(); i++) {
+            Object content = property.getValue(i);
+            if (content != null && !content.toString().isEmpty()) {
+               allowed.add(key(content.toString()));
+            }
+         }
+         boolean hasValues = property.valueCount() > 0;
+         return new Entry(property.getName(), property.getDefinition(), hasValues ? property.getType() : null,
+               hasValues ? property.getUnit(0) : null, property.getDependency(), property.getDependencyValue(),
+               Collections.unmodifiableSet(allowed), property.getMapping());
+      }
+
+
+      /**
+       * @return {@link String}: the property name.
+       */
+      public String getName() {
+         return name;
+      }
+
+
+      /**
+       * @return {@link String}: the definition of the property, may be null.
+       */
+      public String getDefinition() {
+         return definition;
+      }
+
+
+      /**
+       * @return {@link String}: the expected value type, may be null.
+       */
+      public String getType() {
+         return type;
+      }
+
+
+      /**
+       * @return {@link String}: the expected unit, may be null.
+       */
+      public String getUnit() {
+         return unit;
+      }
+
+
+      /**
+       * @return {@link String}: the name of a sibling property this property depends on, may be null.
+       */
+      public String getDependency() {
+         return dependency;
+      }
+
+
+      /**
+       * @return {@link String}: the value the sibling property must contain, may be null.
+       */
+      public String getDependencyValue() {
+         return dependencyValue;
+      }
+
+
+      /**
+       * @return {@link URL}: the mapping of the property defined in the terminology, may be null.
+       */
+      public URL getMapping() {
+         return mapping;
+      }
+
+
+      /**
+       * Returns the values listed in the terminology, in lower case. Terminologies that list no values return an
+       * empty set.
+       *
+       * @return {@link Set} of {@link String}s: the listed values.
+       */
+      public Set<String> getAllowedValues() {
+         return allowedValues;
+      }
+
+
+      /**
+       * Returns whether the content is one of the values listed in the terminology. Matching is case-insensitive.
+       * If the terminology lists no values, every content is allowed.
+       *
+       * @param content {@link Object}: the value content.
+       * @return boolean: true if the content is allowed.
+       */
+      public boolean isAllowed(Object content) {
+         return allowedValues.isEmpty() || (content != null && allowedValues.contains(key(content.toString())));
+      }
+   }
+}
@@ -0,0 +1,274 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Compressed streams for odML documents. Compressed input is recognized by its leading magic bytes, so that the
+ * {@link Reader} opens gzip, zlib and zip files like plain xml files. Output is compressed with gzip or zlib, gzip
+ * optionally in blocks that are compressed concurrently.
+ *
+ * @since 10.2026
+ *
+ */
+final class Compression {
+
+   static final int BUFFER_SIZE = 1 << 16;
+
+
+   private Compression() {
+   }
+
+
+   /**
+    * Returns a stream that decompresses the given stream if it starts with the magic bytes of a gzip, zlib or zip
+    * stream. Other streams are returned buffered, but otherwise unchanged. A zip stream is positioned at its first
+    * entry.
+    *
+    * @param in {@link InputStream}: the possibly compressed stream.
+    * @return {@link InputStream}: the stream of the uncompressed data.
+    * @throws IOException if the stream can not be read.
+    */
+   static InputStream decode(InputStream in) throws IOException {
+      BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+      buffered.mark(4);
+      int b0 = buffered.read(), b1 = buffered.read(), b2 = buffered.read(), b3 = buffered.read();
+      buffered.reset();
+      if (b0 == 0x1f && b1 == 0x8b) {
+         return new GZIPInputStream(buffered, BUFFER_SIZE);
+      }
+      if (b0 == 'P' && b1 == 'K' && b2 == 3 && b3 == 4) {
+         ZipInputStream zip = new ZipInputStream(buffered);
+         zip.getNextEntry();
+         return zip;
+      }
+      // zlib: deflate method, 32K window and a header checksum; xml never starts like this
+      if (b0 == 0x78 && b1 >= 0 && ((b0 << 8) | b1) % 31 == 0) {
+         return new InflaterInputStream(buffered, new Inflater(), BUFFER_SIZE);
+      }
+      return buffered;
+   }
+
+
+   /**
+    * Returns a stream that compresses the written data into the given stream. Closing the returned stream completes
+    * the compressed data but does not close the given stream.
+    *
+    * @param out {@link OutputStream}: the stream receiving the compressed data.
+    * @param method int: {@link Writer#GZIP}, {@link Writer#ZLIB} or {@link Writer#PARALLEL_GZIP}.
+    * @return {@link OutputStream}: the compressing stream.
+    * @throws IOException if the compressed header can not be written.
+    */
+   static OutputStream encode(OutputStream out, int method) throws IOException {
+      OutputStream target = new FilterOutputStream(out) {
+
+         @Override
+         public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+         }
+
+
+         @Override
+         public void close() throws IOException {
+            flush();
+         }
+      };
+      if (method == Writer.GZIP) {
+         return new GZIPOutputStream(target, BUFFER_SIZE);
+      }
+      if (method == Writer.ZLIB) {
+         return new DeflaterOutputStream(target, new Deflater(), BUFFER_SIZE) {
+
+            @Override
+            public void close() throws IOException {
+               try {
+                  super.close();
+               } finally {
+                  def.end();
+               }
+            }
+         };
+      }
+      if (method == Writer.PARALLEL_GZIP) {
+         return new ParallelGzipOutputStream(target, Runtime.getRuntime().availableProcessors());
+      }
+      throw new IOException("Unknown compression method " + method + "!");
+   }
+
+
+   /**
+    * Writes a single gzip member whose data is compressed in blocks on a {@link ForkJoinPool}, like pigz. Each block
+    * is deflated with the end of the previous block as dictionary and ends at a byte boundary, so that the
+    * concatenated blocks form one deflate stream that any gzip reader decodes. The checksum is computed while the
+    * data is written. At most two blocks per thread are held in memory.
+    */
+   static class ParallelGzipOutputStream extends OutputStream {
+
+      static final int                 BLOCK_SIZE      = 1 << 20;
+      private static final int         DICTIONARY_SIZE = 1 << 15;
+
+      private final OutputStream       out;
+      private final ForkJoinPool       pool;
+      private final int                maxInFlight;
+      private final Deque<Future<byte[]>> pending      = new ArrayDeque<Future<byte[]>>();
+      private final CRC32              crc             = new CRC32();
+      private byte[]                   block           = new byte[BLOCK_SIZE], previous = null;
+      private int                      count           = 0;
+      private long                     length          = 0;
+      private boolean                  closed          = false;
+
+
+      ParallelGzipOutputStream(OutputStream out, int threads) throws IOException {
+         this.out = out;
+         this.pool = new ForkJoinPool(Math.max(1, threads));
+         this.maxInFlight = 2 * Math.max(1, threads);
+         out.write(new byte[] { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+      }
+
+
+      @Override
+      public void write(int b) throws IOException {
+         if (count == block.length) {
+            submit(false);
+         }
+         block[count++] = (byte) b;
+      }
+
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+         while (len > 0) {
+            if (count == block.length) {
+               submit(false);
+            }
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+         }
+      }
+
+
+      @Override
+      public void close() throws IOException {
+         if (closed) {
+            return;
+         }
+         closed = true;
+         try {
+            submit(true);
+            while (!pending.isEmpty()) {
+               out.write(get(pending.poll()));
+            }
+            byte[] trailer = new byte[8];
+            long value = crc.getValue();
+            for (int i = 0; i < 4; i++) {
+               trailer[i] = (byte) (value >>> (8 * i));
+               trailer[4 + i] = (byte) (length >>> (8 * i));
+            }
+            out.write(trailer);
+            out.close();
+         } finally {
+            pool.shutdownNow();
+         }
+      }
+
+
+      private void submit(boolean last) throws IOException {
+         final byte[] data = count == block.length ? block : Arrays.copyOf(block, count);
+         final byte[] dictionary = previous;
+         final boolean finish = last;
+         crc.update(data, 0, data.length);
+         length += data.length;
+         pending.add(pool.submit(new Callable<byte[]>() {
+
+            @Override
+            public byte[] call() {
+               return deflate(data, dictionary, finish);
+            }
+         }));
+         previous = data;
+         block = new byte[BLOCK_SIZE];
+         count = 0;
+         while (pending.size() > maxInFlight || (!pending.isEmpty() && pending.peek().isDone())) {
+            out.write(get(pending.poll()));
+         }
+      }
+
+
+      private static byte[] get(Future<byte[]> future) throws IOException {
+         try {
+            return future.get();
+         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compression interrupted!", e);
+         } catch (ExecutionException e) {
+            throw new IOException("Compression failed! " + e.getCause(), e.getCause());
+         }
+      }
+
+
+      private static byte[] deflate(byte[] data, byte[] dictionary, boolean finish) {
+         Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+         try {
+            if (dictionary != null) {
+               int start = Math.max(0, dictionary.length - DICTIONARY_SIZE);
+               deflater.setDictionary(dictionary, start, dictionary.length - start);
+            }
+            deflater.setInput(data);
+            ByteArrayOutputStream result = new ByteArrayOutputStream(data.length / 4 + 64);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            if (finish) {
+               deflater.finish();
+               while (!deflater.finished()) {
+                  result.write(buffer, 0, deflater.deflate(buffer));
+               }
+            } else {
+               // a sync flush ends the block at a byte boundary, the next block continues the stream
+               int n;
+               do {
+                  n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                  result.write(buffer, 0, n);
+               } while (n == buffer.length || !deflater.needsInput());
+            }
+            return result.toByteArray();
+         } finally {
+            deflater.end();
+         }
+      }
+   }
+}
@@ -0,0 +1,566 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A write-ahead journal for an odML tree. The tree is kept as an xml snapshot written by the {@link Writer}. Each
+ * change of the tree is appended to a journal file next to the snapshot, so that a change is made durable by writing
+ * a small record instead of the whole document. Opening the journal loads the snapshot and replays the recorded
+ * changes. {@link #compact()} writes a new snapshot and starts an empty journal, either when called or periodically
+ * in the background, see {@link #startCompaction(long, long, TimeUnit)}.
+ *
+ * Changes are recorded per section: a record holds the fields and properties of a changed section, a subtree added
+ * to a section or the index of a removed subsection. Sections are addressed by their position in the tree, so
+ * renaming a section does not invalidate later records. Records are written to disk in batches of
+ * {@link #setBatchSize(int)} records; {@link #sync()} forces pending records to disk. After a crash, all records
+ * synced before are recovered, a partly written record is discarded.
+ *
+ * The tree must only be modified by one thread at a time. If compaction runs in the background, modifications must
+ * be synchronized on the {@link Journal}.
+ *
+ * @since 10.2026
+ *
+ */
+public class Journal implements Closeable {
+
+   private static final byte[]      MAGIC         = { 'o', 'd', 'M', 'L', 'j', 'r', 'n', 'l' };
+   private static final int         OP_SECTION    = 1, OP_ADD = 2, OP_REMOVE = 3, OP_DOCUMENT = 4;
+   private static final int         HEADER_LENGTH = MAGIC.length + 16;
+
+   private final File               snapshot, journalFile;
+   private final Section            root;
+   private FileOutputStream         fileStream;
+   private DataOutputStream         out;
+   private long                     size;
+   private int                      batchSize     = 64, pending = 0;
+   private long                     compactionThreshold = 1 << 20;
+   private ScheduledExecutorService compactor     = null;
+
+
+   private Journal(File snapshot, Section root) {
+      this.snapshot = snapshot;
+      this.journalFile = new File(snapshot.getPath() + ".journal");
+      this.root = root;
+   }
+
+
+   /**
+    * Opens the journaled document with the given snapshot file. The snapshot is loaded without conversion and the
+    * changes recorded in the journal file, the snapshot name with ".journal" appended, are applied. If the snapshot
+    * does not exist, a document with an empty root section is created.
+    *
+    * @param snapshotFile {@link String}: the path of the xml snapshot.
+    * @return {@link Journal}: the journal, whose root section holds the document.
+    * @throws Exception if the snapshot can not be read or the journal can not be written.
+    */
+   public static Journal open(String snapshotFile) throws Exception {
+      File snapshot = new File(snapshotFile);
+      if (!snapshot.exists()) {
+         Journal journal = new Journal(snapshot, new Section());
+         journal.compact();
+         return journal;
+      }
+      Section root = new Reader().read(snapshot.toURI().toURL(), Reader.NO_CONVERSION, false);
+      Journal journal = new Journal(snapshot, root);
+      journal.replay();
+      root.setJournal(journal);
+      return journal;
+   }
+
+
+   /**
+    * Returns the root section of the journaled document. All changes of this tree are recorded.
+    *
+    * @return {@link Section}: the root section.
+    */
+   public Section getRootSection() {
+      return root;
+   }
+
+
+   /**
+    * Sets the number of records after which the journal is forced to disk. The default is 64. A batch size of 1
+    * makes every change durable before the changing method returns.
+    *
+    * @param batchSize int: the number of records per batch.
+    */
+   public synchronized void setBatchSize(int batchSize) {
+      this.batchSize = Math.max(1, batchSize);
+   }
+
+
+   /**
+    * Returns the number of records after which the journal is forced to disk.
+    *
+    * @return int: the batch size.
+    */
+   public synchronized int getBatchSize() {
+      return batchSize;
+   }
+
+
+   /**
+    * Sets the journal size in bytes above which background compaction writes a new snapshot. The default is 1 MB.
+    *
+    * @param bytes long: the size threshold.
+    */
+   public synchronized void setCompactionThreshold(long bytes) {
+      this.compactionThreshold = bytes;
+   }
+
+
+   /**
+    * Returns the size of the journal file in bytes.
+    *
+    * @return long: the journal size including records not yet forced to disk.
+    */
+   public synchronized long getSize() {
+      return size;
+   }
+
+
+   /**
+    * Forces all recorded changes to disk.
+    *
+    * @throws IOException if writing the journal fails.
+    */
+   public synchronized void sync() throws IOException {
+      out.flush();
+      fileStream.getChannel().force(false);
+      pending = 0;
+   }
+
+
+   /**
+    * Writes the current tree as new snapshot and starts an empty journal. The new snapshot and journal are written
+    * to temporary files first and then moved in place. A journal stores the length and checksum of the snapshot it
+    * belongs to, so that a journal left over from an interrupted compaction is not applied to the new snapshot. If
+    * compaction fails, the changes are still recorded in the old journal.
+    *
+    * @throws IOException if the snapshot or the journal can not be written.
+    */
+   public synchronized void compact() throws IOException {
+      AtomicFile snapshotFile = new AtomicFile(snapshot, true);
+      AtomicFile newJournal = new AtomicFile(journalFile, true);
+      boolean closed = false, compacted = false;
+      try {
+         CountingCheckedStream checked = new CountingCheckedStream(snapshotFile.getStream());
+         if (!new Writer(root).write(checked)) {
+            throw new IOException("Could not write snapshot " + snapshot + "!");
+         }
+         DataOutputStream header = new DataOutputStream(newJournal.getStream());
+         header.write(MAGIC);
+         header.writeLong(checked.count);
+         header.writeLong(checked.getChecksum().getValue());
+         if (out != null) {
+            out.close();
+            closed = true;
+         }
+         // once the snapshot is in place, the old journal does not match it any more
+         snapshotFile.commit();
+         newJournal.commit();
+         compacted = true;
+      } finally {
+         snapshotFile.close();
+         newJournal.close();
+         if (closed && !compacted) {
+            // changes are recorded in the old journal again, it is complete as it was closed
+            openForAppend(size);
+         }
+      }
+      openForAppend(HEADER_LENGTH);
+      if (root.getJournal() != this) {
+         root.setJournal(this);
+      }
+   }
+
+
+   /**
+    * Starts compacting the journal in the background. At the given rate, a background thread writes a new snapshot
+    * if the journal has grown beyond the compaction threshold, see {@link #setCompactionThreshold(long)}.
+    *
+    * @param initialDelay long: the time before the first check.
+    * @param period long: the time between checks.
+    * @param unit {@link TimeUnit}: the unit of the times.
+    */
+   public synchronized void startCompaction(long initialDelay, long period, TimeUnit unit) {
+      if (compactor != null) {
+         return;
+      }
+      compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "odml-journal-compaction");
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+      compactor.scheduleWithFixedDelay(new Runnable() {
+
+         @Override
+         public void run() {
+            synchronized (Journal.this) {
+               if (size - HEADER_LENGTH > compactionThreshold) {
+                  try {
+                     compact();
+                  } catch (IOException e) {
+                     System.out.println("Journal: background compaction failed: " + e.getMessage());
+                  }
+               }
+            }
+         }
+      }, initialDelay, period, unit);
+   }
+
+
+   /**
+    * Stops background compaction.
+    */
+   public synchronized void stopCompaction() {
+      if (compactor != null) {
+         compactor.shutdown();
+         compactor = null;
+      }
+   }
+
+
+   /**
+    * Stops background compaction, forces all records to disk and closes the journal file. Changes of the tree are
+    * not recorded any more.
+    */
+   @Override
+   public synchronized void close() throws IOException {
+      stopCompaction();
+      root.setJournal(null);
+      sync();
+      out.close();
+   }
+
+
+   synchronized void sectionChanged(Section section) {
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream record = new DataOutputStream(bytes);
+         record.writeByte(OP_SECTION);
+         if (!writePosition(record, section)) {
+            return;
+         }
+         BinaryFormat.StringTable strings = new BinaryFormat.StringTable();
+         strings.addSection(section);
+         BinaryFormat.writeStringTable(record, strings);
+         BinaryFormat.writeSectionRecord(record, section, strings);
+         append(bytes);
+      } catch (IOException e) {
+         System.out.println("Journal: could not record change of " + section.getPath() + ": " + e.getMessage());
+      }
+   }
+
+
+   synchronized void sectionAdded(Section parent, Section section) {
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream record = new DataOutputStream(bytes);
+         record.writeByte(OP_ADD);
+         if (!writePosition(record, parent)) {
+            return;
+         }
+         BinaryFormat.StringTable strings = new BinaryFormat.StringTable();
+         List<Section> stack = new ArrayList<Section>();
+         stack.add(section);
+         while (!stack.isEmpty()) {
+            Section s = stack.remove(stack.size() - 1);
+            strings.addSection(s);
+            for (int i = 0; i < s.sectionCount(); i++) {
+               stack.add(s.getSection(i));
+            }
+         }
+         BinaryFormat.writeStringTable(record, strings);
+         BinaryFormat.writeTree(record, section, strings, null, null);
+         append(bytes);
+      } catch (IOException e) {
+         System.out.println("Journal: could not record new section " + section.getName() + ": " + e.getMessage());
+      }
+   }
+
+
+   synchronized void sectionRemoved(Section parent, int index) {
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream record = new DataOutputStream(bytes);
+         record.writeByte(OP_REMOVE);
+         if (!writePosition(record, parent)) {
+            return;
+         }
+         BinaryFormat.writeVarInt(record, index);
+         append(bytes);
+      } catch (IOException e) {
+         System.out.println("Journal: could not record removal from " + parent.getPath() + ": " + e.getMessage());
+      }
+   }
+
+
+   synchronized void documentChanged(Section section) {
+      try {
+         ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         DataOutputStream record = new DataOutputStream(bytes);
+         record.writeByte(OP_DOCUMENT);
+         BinaryFormat.StringTable strings = new BinaryFormat.StringTable();
+         strings.add(section.getDocumentAuthor());
+         strings.add(section.getDocumentVersion());
+         BinaryFormat.writeStringTable(record, strings);
+         BinaryFormat.writeVarInt(record, strings.indexOf(section.getDocumentAuthor()));
+         BinaryFormat.writeVarInt(record, strings.indexOf(section.getDocumentVersion()));
+         Date date = section.getDocumentDate();
+         record.writeBoolean(date != null);
+         if (date != null) {
+            record.writeLong(date.getTime());
+         }
+         append(bytes);
+      } catch (IOException e) {
+         System.out.println("Journal: could not record document information: " + e.getMessage());
+      }
+   }
+
+
+   /**
+    * Writes the position of a section as the indices of the sections on the way from the root. The indices refer to
+    * the subsections stored in each section, sections seen through a virtual link are not counted.
+    *
+    * @return boolean: false if the section is not part of the journaled tree, nothing is written then.
+    */
+   private boolean writePosition(DataOutputStream record, Section section) throws IOException {
+      List<Integer> indices = new ArrayList<Integer>();
+      Section s = section;
+      for (; s.getParent() != null; s = s.getParent()) {
+         // sections compare by content, the position is that of this very section
+         List<Section> siblings = s.getParent().getOwnSections();
+         int i = 0;
+         while (i < siblings.size() && siblings.get(i) != s) {
+            i++;
+         }
+         if (i == siblings.size()) {
+            return false;
+         }
+         indices.add(i);
+      }
+      if (s != root) {
+         return false;
+      }
+      BinaryFormat.writeVarInt(record, indices.size());
+      for (int i = indices.size() - 1; i >= 0; i--) {
+         BinaryFormat.writeVarInt(record, indices.get(i));
+      }
+      return true;
+   }
+
+
+   private Section readPosition(DataInputStream in) throws IOException {
+      Section section = root;
+      int depth = BinaryFormat.readVarInt(in);
+      for (int i = 0; i < depth; i++) {
+         int index = BinaryFormat.readVarInt(in);
+         List<Section> sections = section.getOwnSections();
+         if (index >= sections.size()) {
+            throw new IOException("Journal refers to a section that does not exist!");
+         }
+         section = sections.get(index);
+      }
+      return section;
+   }
+
+
+   /**
+    * Appends a record: its length, the record and the checksum of the record.
+    */
+   private void append(ByteArrayOutputStream record) throws IOException {
+      byte[] data = record.toByteArray();
+      CRC32 crc = new CRC32();
+      crc.update(data);
+      int start = out.size();
+      BinaryFormat.writeVarInt(out, data.length);
+      out.write(data);
+      out.writeInt((int) crc.getValue());
+      size += out.size() - start;
+      if (++pending >= batchSize) {
+         sync();
+      }
+   }
+
+
+   /**
+    * Applies the records of the journal file to the tree. A journal that belongs to another snapshot is ignored, an
+    * incomplete or damaged record and everything following it is cut off.
+    */
+   private void replay() throws IOException {
+      long valid = HEADER_LENGTH;
+      if (journalFile.exists() && belongsToSnapshot()) {
+         byte[] data = Files.readAllBytes(journalFile.toPath());
+         ByteArrayInputStream bytes = new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+         DataInputStream in = new DataInputStream(bytes);
+         while (bytes.available() > 0) {
+            try {
+               byte[] record = BinaryFormat.readBytes(in);
+               CRC32 crc = new CRC32();
+               crc.update(record);
+               if (in.readInt() != (int) crc.getValue()) {
+                  break;
+               }
+               apply(new DataInputStream(new ByteArrayInputStream(record)));
+            } catch (IOException e) {
+               break;
+            }
+            valid = data.length - bytes.available();
+         }
+         if (valid < data.length) {
+            System.out.println("Journal: discarding incomplete changes at the end of " + journalFile);
+         }
+         openForAppend(valid);
+      } else {
+         compact();
+      }
+   }
+
+
+   private boolean belongsToSnapshot() throws IOException {
+      if (journalFile.length() < HEADER_LENGTH) {
+         return false;
+      }
+      DataInputStream in = new DataInputStream(Files.newInputStream(journalFile.toPath()));
+      try {
+         byte[] magic = new byte[MAGIC.length];
+         in.readFully(magic);
+         if (!Arrays.equals(magic, MAGIC) || in.readLong() != snapshot.length()) {
+            return false;
+         }
+         CRC32 crc = new CRC32();
+         crc.update(Files.readAllBytes(snapshot.toPath()));
+         return in.readLong() == crc.getValue();
+      } finally {
+         in.close();
+      }
+   }
+
+
+   private void apply(DataInputStream in) throws IOException {
+      int op = in.readUnsignedByte();
+      if (op == OP_DOCUMENT) {
+         String[] strings = BinaryFormat.readStringTable(in);
+         root.setDocumentAuthor(BinaryFormat.string(strings, BinaryFormat.readVarInt(in)));
+         root.setDocumentVersion(BinaryFormat.string(strings, BinaryFormat.readVarInt(in)));
+         root.setDocumentDate(in.readBoolean() ? new Date(in.readLong()) : null);
+         return;
+      }
+      Section section = readPosition(in);
+      if (op == OP_SECTION) {
+         String[] strings = BinaryFormat.readStringTable(in);
+         assign(section, BinaryFormat.readSectionRecord(in, strings));
+      } else if (op == OP_ADD) {
+         String[] strings = BinaryFormat.readStringTable(in);
+         section.add(BinaryFormat.readTree(in, strings));
+      } else if (op == OP_REMOVE) {
+         section.removeSection(BinaryFormat.readVarInt(in));
+      } else {
+         throw new IOException("Unknown journal record " + op + "!");
+      }
+   }
+
+
+   /**
+    * Replaces the fields and properties of a section by those of the recorded section.
+    */
+   private void assign(Section section, Section recorded) {
+      if (recorded.getName() != null) {
+         section.setName(recorded.getName());
+      }
+      if (recorded.getType() != null) {
+         section.setType(recorded.getType());
+      }
+      section.setReference(recorded.getReference());
+      section.setDefinition(recorded.getDefinition());
+      section.setRepository(recorded.getLocalRepository());
+      section.setMapping(recorded.getMapping());
+      section.setLink(recorded.getLink(), true);
+      section.setInclude(recorded.getInclude());
+      section.setAsTerminology(recorded.isTerminology());
+      // add(Property) would refuse the properties of a root section without a type
+      section.restoreProperties(recorded.getOwnProperties());
+   }
+
+
+   private void openForAppend(long length) throws IOException {
+      RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+      try {
+         file.setLength(length);
+      } finally {
+         file.close();
+      }
+      fileStream = new FileOutputStream(journalFile, true);
+      out = new DataOutputStream(new BufferedOutputStream(fileStream, 1 << 16));
+      size = length;
+      pending = 0;
+   }
+
+
+   /**
+    * Computes the checksum and the length of the data written through it.
+    */
+   private static class CountingCheckedStream extends CheckedOutputStream {
+
+      private long count = 0;
+
+
+      CountingCheckedStream(OutputStream out) {
+         super(out, new CRC32());
+      }
+
+
+      @Override
+      public void write(int b) throws IOException {
+         super.write(b);
+         count++;
+      }
+
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+         super.write(b, off, len);
+         count += len;
+      }
+   }
+}
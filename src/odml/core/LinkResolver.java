@@ -0,0 +1,181 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves the links of sections, see {@link Section#resolveLink()}. A linking section is merged with its target
+ * after the link of the target itself was resolved, so the links of a chain are resolved from its end. Each section
+ * is merged only once: resolved sections are marked (see {@link Section#isLinkResolved()}) and later requests for
+ * them, e.g. from other sections linking to the same target, return immediately. The targets of absolute links are
+ * looked up once per resolver.
+ *
+ * Chains are followed without recursion. A chain that returns to one of its sections is reported and none of its
+ * sections is merged.
+ *
+ * A virtual resolver does not merge but lets the linking section see the content of its target, see
+ * {@link Section#resolveLink(boolean)}. Such a link is resolved by merging if merging would combine properties or
+ * subsections of both sections, or if the content seen through the target would contain the linking section, which
+ * would make the tree infinite.
+ *
+ * @since 10.2026
+ *
+ */
+final class LinkResolver {
+
+   private final Map<String, Section> targets = new HashMap<String, Section>();
+   private final boolean              virtual;
+
+
+   LinkResolver() {
+      this(false);
+   }
+
+
+   LinkResolver(boolean virtual) {
+      this.virtual = virtual;
+   }
+
+
+   /**
+    * Resolves the links of all sections of the tree starting at the given section. Links of subsections are
+    * resolved before the link of their parent. Sections added by resolving links are not resolved themselves.
+    */
+   void resolveAll(Section start) {
+      final List<Section> linking = new ArrayList<Section>();
+      start.walkOwn(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            return section.getTreeLinkCount() > 0 ? Result.CONTINUE : Result.SKIP_SUBSECTIONS;
+         }
+
+
+         @Override
+         public Result postVisit(Section section) {
+            if (section.getLink() != null && !section.getLink().isEmpty()) {
+               linking.add(section);
+            }
+            return Result.CONTINUE;
+         }
+      });
+      for (Section section : linking) {
+         resolve(section);
+      }
+   }
+
+
+   /**
+    * Resolves the link of the given section and the links of the sections it depends on.
+    *
+    * @return boolean: true if the section is linked and has been merged with its target, now or before.
+    */
+   boolean resolve(Section section) {
+      if (section.getLink() == null) {
+         return false;
+      }
+      Deque<Section> chain = new ArrayDeque<Section>();
+      Set<Section> onChain = Collections.newSetFromMap(new IdentityHashMap<Section, Boolean>());
+      Section current = section;
+      while (current.getLink() != null && !current.isLinkResolved()) {
+         if (!onChain.add(current)) {
+            System.out.println("Section.resolveLink: circular link at " + current.getPath() + " -> "
+                  + current.getLink() + "!");
+            return false;
+         }
+         Section target = target(current);
+         if (target == null) {
+            System.out.println("Section.resolveLink: could not find referenced section!");
+            break;
+         }
+         chain.push(current);
+         current = target;
+      }
+      // merge each section with its target after the target was merged with its own
+      while (!chain.isEmpty()) {
+         Section linked = chain.pop();
+         Section target = target(linked);
+         if (virtual && !linked.overlaps(target) && !reaches(target, linked)) {
+            linked.setVirtualTarget(target);
+         } else {
+            linked.merge(target, Section.MERGE_THIS_OVERRIDES_OTHER);
+            linked.setLinkResolved(true);
+         }
+      }
+      return section.isLinkResolved();
+   }
+
+
+   /**
+    * Returns whether the section is seen through the target, i.e. whether it can be reached from the target going
+    * down stored subsections and through virtual links. This is the case if one of the sections reached through
+    * virtual links is the section itself or one of its ancestors. Subtrees without links are skipped.
+    */
+   private static boolean reaches(Section target, Section section) {
+      final Set<Section> path = Collections.newSetFromMap(new IdentityHashMap<Section, Boolean>());
+      for (Section s = section; s != null; s = s.getParent()) {
+         path.add(s);
+      }
+      final Deque<Section> pending = new ArrayDeque<Section>();
+      Set<Section> seen = Collections.newSetFromMap(new IdentityHashMap<Section, Boolean>());
+      pending.push(target);
+      while (!pending.isEmpty()) {
+         Section next = pending.pop();
+         if (!seen.add(next)) {
+            continue;
+         }
+         if (path.contains(next)) {
+            return true;
+         }
+         next.walkOwn(new SectionVisitor() {
+            @Override
+            public Result preVisit(Section s) {
+               if (s.getTreeLinkCount() == 0) {
+                  return Result.SKIP_SUBSECTIONS;
+               }
+               if (s.getVirtualTarget() != null) {
+                  pending.push(s.getVirtualTarget());
+               }
+               return Result.CONTINUE;
+            }
+         });
+      }
+      return false;
+   }
+
+
+   private Section target(Section section) {
+      String link = section.getLink();
+      if (!link.startsWith("/")) {
+         return section.getSection(link);
+      }
+      Section target = targets.get(link);
+      if (target == null) {
+         target = section.getSection(link);
+         if (target != null) {
+            targets.put(link, target);
+         }
+      }
+      return target;
+   }
+}
@@ -47,12 +47,12 @@ import java.util.*;
  */
 public class Property implements Serializable, Cloneable, TreeNode {
 
-   private static final long     serialVersionUID = 147L;
+   private static final long     serialVersionUID = 148L;
    private String                name             = "", dependency = "",
          dependencyValue = "", definition = "";
    private URL                   mappingURL;
    private Section               parentSection    = null;
-   private Vector<Value>         values;
+   private ArrayList<Value>      values;
    public static Object[]        columns          = { "name", "reference", "value", "uncertainty",
                                                   "unit",
                                                   "type", "filename",
@@ -194,7 +194,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
                    String filename, String definition, String valueDefinition,
                    String dependency,
                    String dependencyValue, URL mapping) throws Exception {
-      Vector<Value> theValues = new Vector<Value>();
+      List<Value> theValues = new ArrayList<Value>();
       if (type == null || type.isEmpty()) {
          type = Value.inferOdmlType(value);
       }
@@ -246,7 +246,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
       String tmpFileNames = null;
       String tmpReference = null;
 
-      Vector<Value> theValues = new Vector<Value>();
+      List<Value> theValues = new ArrayList<Value>();
       for (int i = 0; i < values.size(); i++) {
          if (uncertainties.size() > 0)
             tmpUncertainty = uncertainties.get(i);
@@ -272,20 +272,20 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * nothing when so except for mandatory name, there throwing error)
     *
     * @param name {@link String} : the Property name.
-    * @param values {@link Vector}<Object>: A Vector of values.
+    * @param values {@link List}<Value>: the values, which are copied into the property.
     * @param definition String the definition of the property
     * @param dependency String
     * @param dependencyValue String
     * @param mapping {@link URL}
     * @throws Exception
     */
-   private void initialize(String name, Vector<Value> values, String definition, String dependency,
+   private void initialize(String name, List<Value> values, String definition, String dependency,
                            String dependencyValue, URL mapping) throws Exception {
       if (name.contains("/")) {
          throw new Exception("Property name must not be like a path!");
       }
       this.name = name;
-      this.values = values;
+      this.values = new ArrayList<Value>(values);
       for (Value value : this.values) {
          value.setAssociatedProperty(this);
       }
@@ -307,6 +307,16 @@ public class Property implements Serializable, Cloneable, TreeNode {
    }
 
 
+   /**
+    * Marks the parent section as changed, see {@link Section#isModified()}.
+    */
+   void markModified() {
+      if (parentSection != null) {
+         parentSection.markModified();
+      }
+   }
+
+
    /**
     * Returns the parent section of this property.
     *
@@ -317,6 +327,14 @@ public class Property implements Serializable, Cloneable, TreeNode {
    }
 
 
+   /**
+    * Returns the lock of the tree this property belongs to, see {@link Section#setLocking(boolean)}.
+    */
+   private TreeLock treeLock() {
+      return parentSection == null ? null : parentSection.treeLock();
+   }
+
+
    /**
     * Set the name of the property
     *
@@ -325,6 +343,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
     */
    public void setName(String name) {
       this.name = name;
+      markModified();
    }
 
 
@@ -350,6 +369,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
          this.definition = definition;
       else
          this.definition = "";
+      markModified();
    }
 
 
@@ -389,6 +409,14 @@ public class Property implements Serializable, Cloneable, TreeNode {
    }
 
 
+   /**
+    * Returns the values list of this property.
+    */
+   List<Value> values() {
+      return values;
+   }
+
+
    /**
     * Returns the content of the first value as {@link Float}. If content cannot be converted to float Float.NaN is
     * returned.
@@ -550,6 +578,14 @@ public class Property implements Serializable, Cloneable, TreeNode {
     */
    public boolean addValue(Object value, String id, String unit, Object uncertainty, String type,
                            String filename, String comment) {
+      TreeLock lock = treeLock();
+      return lock == null ? addValueUnlocked(value, id, unit, uncertainty, type, filename, comment)
+            : lock.write(() -> addValueUnlocked(value, id, unit, uncertainty, type, filename, comment));
+   }
+
+
+   private boolean addValueUnlocked(Object value, String id, String unit, Object uncertainty, String type,
+                                    String filename, String comment) {
       if (value == null) {
          System.out.println("! the value to add must not be null or empty!");
          return false;
@@ -565,6 +601,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
             return false;
          }
          values.add(toAdd);
+         markModified();
          if (type != null && (!type.isEmpty())) {
             if ((values.get(0).getType() != null) && (!values.get(0).getType().isEmpty())
                   && (!type.equalsIgnoreCase(values.get(0).getType()))) {
@@ -593,11 +630,25 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * {@link Property}: the property to append.
     */
    public void addValue(Property property) {
+      TreeLock lock = treeLock();
+      if (lock == null) {
+         addValueUnlocked(property);
+      } else {
+         lock.write(() -> {
+            addValueUnlocked(property);
+            return null;
+         });
+      }
+   }
+
+
+   private void addValueUnlocked(Property property) {
       for (int i = 0; i < property.valueCount(); i++) {
          Value val = property.getWholeValue(i);
          val.setAssociatedProperty(this);
          this.values.add(val);
       }
+      markModified();
    }
 
 
@@ -610,6 +661,12 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * @return {@link Boolean} true if operation succeeded, false if more than on value = value-content is stored.
     */
    public boolean setValue(Object value) {
+      TreeLock lock = treeLock();
+      return lock == null ? setValueUnlocked(value) : lock.write(() -> setValueUnlocked(value));
+   }
+
+
+   private boolean setValueUnlocked(Object value) {
       if (this.values.size() > 1) {
          System.out.println("! property has more than one value > index must be specified to know which one shall be set");
          return false;
@@ -629,6 +686,12 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * bounds.
     */
    public boolean setValueAt(Object value, int index) {
+      TreeLock lock = treeLock();
+      return lock == null ? setValueAtUnlocked(value, index) : lock.write(() -> setValueAtUnlocked(value, index));
+   }
+
+
+   private boolean setValueAtUnlocked(Object value, int index) {
       if (index < 0 || index >= this.valueCount()) {
          System.out.println("Property.setValueAt: specified index out of range!");
          return false;
@@ -636,6 +699,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
       try {
          Value toAdd = new Value(value, null);
          this.values.set(index, toAdd);
+         markModified();
       } catch (Exception e) {
          System.out.println("Property.setValueAt: An exception occurred! " + e.getMessage());
       }
@@ -722,6 +786,12 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * @return {@link Object}: the value or null if the index is out of bounds.
     */
    public Object getValue(int index) {
+      TreeLock lock = treeLock();
+      return lock == null ? getValueUnlocked(index) : lock.read(() -> getValueUnlocked(index));
+   }
+
+
+   private Object getValueUnlocked(int index) {
       try {
          return this.values.get(index).getContent();
       } catch (Exception e) {
@@ -766,6 +836,12 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * @return {@link Boolean} true if removal was successful, false if not.
     */
    public boolean removeValue(Object value) {
+      TreeLock lock = treeLock();
+      return lock == null ? removeValueUnlocked(value) : lock.write(() -> removeValueUnlocked(value));
+   }
+
+
+   private boolean removeValueUnlocked(Object value) {
       if (value == null) {
          return false;
       }
@@ -777,6 +853,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
          return false;
       }
       this.values.remove(index);
+      markModified();
       return true;
    }
 
@@ -789,6 +866,12 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * @return {@link Boolean}: true if removal was successful, false if index out of bounds.
     */
    public boolean removeValue(int index) {
+      TreeLock lock = treeLock();
+      return lock == null ? removeValueUnlocked(index) : lock.write(() -> removeValueUnlocked(index));
+   }
+
+
+   private boolean removeValueUnlocked(int index) {
       if (this.values.size() <= index) {
          return false;
       }
@@ -796,6 +879,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
          return false;
       }
       this.values.remove(index);
+      markModified();
       return true;
    }
 
@@ -1205,9 +1289,21 @@ public class Property implements Serializable, Cloneable, TreeNode {
     * @param terminologyProperty The {@link Property} as it is defined in the terminology.
     */
    public void validate(Property terminologyProperty) {
+      validate(CompiledTerminology.Entry.of(terminologyProperty), new ValidationReport(true));
+   }
+
+
+   /**
+    * Validates the property and its values against the terminology property and adds the findings to the report.
+    *
+    * @param terminologyProperty {@link CompiledTerminology.Entry}: the property as defined in the terminology.
+    * @param report {@link ValidationReport}: the report receiving the findings.
+    */
+   void validate(CompiledTerminology.Entry terminologyProperty, ValidationReport report) {
+      String path = (this.getParent() == null ? "" : this.getParent().getPath()) + "#" + this.getName();
       if (definition != null && !definition.isEmpty()) {
          if (!this.definition.equalsIgnoreCase(terminologyProperty.getDefinition())) {
-            System.out.println("Property: "
+            report.add(ValidationReport.Severity.WARNING, path, "Property: "
                         + this.getName()
                         + "contains a 'definition' that differs from terminology! Kept original definition!");
          }
@@ -1216,7 +1312,8 @@ public class Property implements Serializable, Cloneable, TreeNode {
             && !terminologyProperty.getDependency().isEmpty()) {
          if (this.getParent() != null
                && !this.getParent().containsProperty(terminologyProperty.getDependency())) {
-            System.out.println("Validation error on Property: " + this.getParent().getPath() + "#"
+            report.add(ValidationReport.Severity.ERROR, path, "Validation error on Property: "
+                  + this.getParent().getPath() + "#"
                   + this.getName() + "! \n Terminology requests a sibling property with the name: "
                   +
                   terminologyProperty.getName() + " which was not found!");
@@ -1236,7 +1333,8 @@ public class Property implements Serializable, Cloneable, TreeNode {
                   }
                }
                if (!match)
-                  System.out.println("Validation error on Property: " + this.getParent().getPath()
+                  report.add(ValidationReport.Severity.ERROR, path, "Validation error on Property: "
+                        + this.getParent().getPath()
                         + "#" + this.getName()
                         + "! \n Terminology requests a sibling property with the name: " +
                         terminologyProperty.getName() + " that contains the value: "
@@ -1245,7 +1343,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
          }
       }
       for (int i = 0; i < valueCount(); i++) {
-         values.get(i).validate(terminologyProperty);
+         values.get(i).validate(terminologyProperty, path, report);
       }
    }
 
@@ -1371,24 +1469,36 @@ public class Property implements Serializable, Cloneable, TreeNode {
 
 
    /**
-    * Creates a copy of this property.
+    * Creates a copy of this property. The copy is made in memory, it has copies of the values and no parent
+    * section.
     *
     * @return {@link Property} the copy.
-    * @throws IOException
-    * @throws ClassNotFoundException
+    * @throws IOException never, declared for compatibility with the former serialization based copy.
+    * @throws ClassNotFoundException never, declared for compatibility.
     */
    public Property copy() throws IOException, ClassNotFoundException {
-      File tempFile = File.createTempFile("property", ".ser");
-      tempFile.deleteOnExit();
-      ObjectOutputStream objOut = new ObjectOutputStream(new BufferedOutputStream(
-            new FileOutputStream(tempFile)));
-      objOut.writeObject(this);
-      objOut.close();
-
-      ObjectInputStream objIn = new ObjectInputStream(new BufferedInputStream(new FileInputStream(
-            tempFile)));
-      Property copy = (Property) objIn.readObject();
-      objIn.close();
+      return copy(null);
+   }
+
+
+   /**
+    * Creates a copy of this property and its values that belongs to the given section. The section is not changed.
+    *
+    * @param parent {@link Section}: the parent section of the copy, may be null.
+    * @return {@link Property}: the copy.
+    */
+   Property copy(Section parent) {
+      Property copy;
+      try {
+         copy = (Property) super.clone();
+      } catch (CloneNotSupportedException e) {
+         throw new AssertionError(e);
+      }
+      copy.parentSection = parent;
+      copy.values = new ArrayList<Value>(values.size());
+      for (Value value : values) {
+         copy.values.add(value.copy(copy));
+      }
       return copy;
    }
 
@@ -1598,6 +1708,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
     */
    public void setMapping(URL mappingURL) {
       this.mappingURL = mappingURL;
+      markModified();
    }
 
 
@@ -1622,6 +1733,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
     */
    public void removePropertyMapping() {
       this.mappingURL = null;
+      markModified();
    }
 
 
@@ -1686,6 +1798,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
          this.dependency = dependency;
       else
          this.dependency = "";
+      markModified();
    }
 
 
@@ -1700,6 +1813,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
          this.dependencyValue = dependencyValue;
       else
          this.dependencyValue = "";
+      markModified();
    }
 
 
@@ -2234,7 +2348,7 @@ public class Property implements Serializable, Cloneable, TreeNode {
 
    @Override
    public Enumeration<Value> children() {
-      return (this.values).elements();
+      return Collections.enumeration(this.values);
    }
 
 
@@ -0,0 +1,310 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * An immutable copy of a {@link Property} and its values, part of a {@link SectionSnapshot}. All fields are final
+ * and the values are kept in an array that is never changed, so a snapshot can be read by any number of threads
+ * without locking.
+ *
+ * @since 10.2026
+ *
+ */
+public final class PropertySnapshot {
+
+   private final String          name, definition, dependency, dependencyValue;
+   private final URL             mapping;
+   private final ValueSnapshot[] values;
+
+
+   private PropertySnapshot(String name, String definition, String dependency, String dependencyValue, URL mapping,
+         ValueSnapshot[] values) {
+      this.name = name;
+      this.definition = definition;
+      this.dependency = dependency;
+      this.dependencyValue = dependencyValue;
+      this.mapping = mapping;
+      this.values = values;
+   }
+
+
+   /**
+    * Copies the given property and its values.
+    *
+    * @param property {@link Property}: the property.
+    * @return {@link PropertySnapshot}: the immutable copy.
+    */
+   public static PropertySnapshot of(Property property) {
+      ValueSnapshot[] values = new ValueSnapshot[property.valueCount()];
+      for (int i = 0; i < values.length; i++) {
+         values[i] = new ValueSnapshot(property.getWholeValue(i));
+      }
+      return new PropertySnapshot(property.getName(), property.getDefinition(), property.getDependency(),
+            property.getDependencyValue(), property.getMapping(), values);
+   }
+
+
+   /**
+    * Creates a new {@link Property} with the content of this snapshot. The values are taken as they are, no type
+    * checking is done.
+    *
+    * @return {@link Property}: the new property or null if it could not be created.
+    */
+   public Property thaw() {
+      Vector<Value> thawed = new Vector<Value>(values.length);
+      for (ValueSnapshot value : values) {
+         thawed.add(value.thaw());
+      }
+      try {
+         return new Property(name, thawed, definition, dependency, dependencyValue, mapping);
+      } catch (Exception e) {
+         System.out.println("PropertySnapshot.thaw: could not create property " + name + ": " + e.getMessage());
+         return null;
+      }
+   }
+
+
+   /**
+    * @return {@link String}: the property name.
+    */
+   public String getName() {
+      return name;
+   }
+
+
+   /**
+    * @return {@link String}: the definition of the property, may be null.
+    */
+   public String getDefinition() {
+      return definition;
+   }
+
+
+   /**
+    * @return {@link String}: the name of a sibling property this property depends on, may be null.
+    */
+   public String getDependency() {
+      return dependency;
+   }
+
+
+   /**
+    * @return {@link String}: the value the sibling property must contain, may be null.
+    */
+   public String getDependencyValue() {
+      return dependencyValue;
+   }
+
+
+   /**
+    * @return {@link URL}: the mapping of the property, may be null.
+    */
+   public URL getMapping() {
+      return mapping;
+   }
+
+
+   /**
+    * @return int: the number of values.
+    */
+   public int valueCount() {
+      return values.length;
+   }
+
+
+   /**
+    * Returns the content of the value at the given index, see {@link Property#getValue(int)}.
+    *
+    * @param index int: the value index.
+    * @return {@link Object}: the content or null if the index is out of range.
+    */
+   public Object getValue(int index) {
+      ValueSnapshot value = getWholeValue(index);
+      return value == null ? null : value.getContent();
+   }
+
+
+   /**
+    * Returns the value at the given index with all its fields.
+    *
+    * @param index int: the value index.
+    * @return {@link ValueSnapshot}: the value or null if the index is out of range.
+    */
+   public ValueSnapshot getWholeValue(int index) {
+      if (index < 0 || index >= values.length) {
+         return null;
+      }
+      return values[index];
+   }
+
+
+   /**
+    * @return {@link List} of {@link ValueSnapshot}s: an unmodifiable list of the values.
+    */
+   public List<ValueSnapshot> getValues() {
+      return Collections.unmodifiableList(Arrays.asList(values));
+   }
+
+
+   /**
+    * @return {@link String}: the type of the first value, may be null.
+    */
+   public String getType() {
+      return values.length == 0 ? null : values[0].getType();
+   }
+
+
+   /**
+    * @return {@link String}: the unit of the first value, may be null.
+    */
+   public String getUnit() {
+      return values.length == 0 ? null : values[0].getUnit();
+   }
+
+
+   @Override
+   public String toString() {
+      return name;
+   }
+
+
+   /**
+    * An immutable copy of a {@link Value}. Dates are copied when the snapshot is taken and again when they are
+    * returned, other contents are immutable.
+    */
+   public static final class ValueSnapshot {
+
+      private final Object content, uncertainty;
+      private final String unit, type, filename, definition, reference, encoder, checksum;
+
+
+      private ValueSnapshot(Value value) {
+         content = copyDate(value.getContent());
+         uncertainty = value.getUncertainty();
+         unit = value.getUnit();
+         type = value.getType();
+         filename = value.getFilename();
+         definition = value.getDefinition();
+         reference = value.getReference();
+         encoder = value.getEncoder();
+         checksum = value.getChecksum();
+      }
+
+
+      private Value thaw() {
+         Value value = new Value();
+         value.setContent(copyDate(content));
+         value.setUncertainty(uncertainty);
+         value.setUnit(unit);
+         value.setType(type);
+         value.setFilename(filename);
+         value.setDefinition(definition);
+         value.setReference(reference);
+         value.setEncoder(encoder);
+         value.setChecksum(checksum);
+         return value;
+      }
+
+
+      private static Object copyDate(Object content) {
+         return content instanceof Date ? new Date(((Date) content).getTime()) : content;
+      }
+
+
+      /**
+       * @return {@link Object}: the content of the value.
+       */
+      public Object getContent() {
+         return copyDate(content);
+      }
+
+
+      /**
+       * @return {@link Object}: the uncertainty, may be null.
+       */
+      public Object getUncertainty() {
+         return uncertainty;
+      }
+
+
+      /**
+       * @return {@link String}: the unit, may be null.
+       */
+      public String getUnit() {
+         return unit;
+      }
+
+
+      /**
+       * @return {@link String}: the data type, may be null.
+       */
+      public String getType() {
+         return type;
+      }
+
+
+      /**
+       * @return {@link String}: the default file name, may be null.
+       */
+      public String getFilename() {
+         return filename;
+      }
+
+
+      /**
+       * @return {@link String}: the definition of the value, may be null.
+       */
+      public String getDefinition() {
+         return definition;
+      }
+
+
+      /**
+       * @return {@link String}: the reference, may be null.
+       */
+      public String getReference() {
+         return reference;
+      }
+
+
+      /**
+       * @return {@link String}: the encoder of binary content, may be null.
+       */
+      public String getEncoder() {
+         return encoder;
+      }
+
+
+      /**
+       * @return {@link String}: the checksum of binary content, may be null.
+       */
+      public String getChecksum() {
+         return checksum;
+      }
+
+
+      @Override
+      public String toString() {
+         return String.valueOf(content);
+      }
+   }
+}
@@ -27,8 +27,14 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.net.URL;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 
 /**
@@ -42,13 +48,14 @@ import java.util.Vector;
  */
 public class Reader implements Serializable {
 
-   private static final long     serialVersionUID = 146L;
+   private static final long     serialVersionUID = 147L;
    private Section               root;
    private final URL[]           schemaLocations;
-   private final Vector<Section> links            = new Vector<Section>();
-   Vector<Section>               includes         = new Vector<Section>();
+   private final List<Section>   links            = new ArrayList<Section>();
+   List<Section>                 includes         = new ArrayList<Section>();
    private URL                   fileUrl;
    boolean                       loadIncludes     = false;
+   private int                   parallelism      = 1;
    public static int             NO_CONVERSION    = 1, FULL_CONVERSION = 3, LOAD_AND_RESOLVE = 2,
            NO_VALIDATION = 4, VALIDATE = 5;
 
@@ -69,6 +76,29 @@ public class Reader implements Serializable {
    }
    
    
+   /**
+    * Sets the number of threads that are used to build the tree from the parsed document. With a parallelism of 1,
+    * the default, the sections are created one after the other. With a larger value the top-level sections of the
+    * document, which are independent of each other until the links are confirmed, are built concurrently on a
+    * {@link ForkJoinPool} and added to the root section in document order.
+    * 
+    * @param parallelism int: the number of worker threads. Values smaller than 1 are treated as 1.
+    */
+   public void setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+   }
+
+
+   /**
+    * Returns the number of threads used to build the tree from the parsed document.
+    * 
+    * @return int: the parallelism, 1 if the tree is built sequentially.
+    */
+   public int getParallelism() {
+      return parallelism;
+   }
+
+
    /**
     * Reads the odML document from the given InputStream and returns the root section of the odML tree.
     * This method does not load includes, does not resolve links and does not apply mapping information.
@@ -141,6 +171,18 @@ public class Reader implements Serializable {
     * @throws Exception
     */
    public Section load(String file, int loadOption, boolean validate) throws Exception {
+      return load(toURL(file), loadOption, validate);
+   }
+
+
+   /**
+    * Converts a file location into an {@link URL}. The location may either be an url or a file path.
+    * 
+    * @param file {@link String}: the url or path of the file.
+    * @return {@link URL}: the url of the file.
+    * @throws Exception if the location can not be converted.
+    */
+   static URL toURL(String file) throws Exception {
       URL url;
       try {
          url = new URL(file);
@@ -151,7 +193,7 @@ public class Reader implements Serializable {
             throw new Exception("Could not read from specified location! " + file);
          }
       }
-      return load(url, loadOption, validate);
+      return url;
    }
    
    
@@ -187,13 +229,53 @@ public class Reader implements Serializable {
     * @throws Exception
     */
    public Section load(InputStream stream, int option, boolean validate) throws Exception {
-      boolean isValid = true;
-      Section s;
+      if (stream != null) {
+         stream = Compression.decode(stream);
+      }
       Document dom = parseXML(stream);
       if (dom == null) {
          this.root = null;
          return null;
       }
+      return process(dom, stream, option, validate);
+   }
+
+
+   /**
+    * Loads the file identified by the passed {@link URL} like {@link #load(URL, int, boolean)}, but does not print
+    * progress information. Problems opening or parsing the file are reported by the thrown exception instead of a
+    * null return value. The stream opened on the url is closed before the method returns.
+    * 
+    * @param fileURL The URL of the file.
+    * @param option load option as described in load(String ...)
+    * @param validate defines whether the file should be validated against a schema.
+    * @return {@link Section}: the root section of the loaded file.
+    * @throws Exception if the file could not be read or parsed.
+    */
+   Section read(URL fileURL, int option, boolean validate) throws Exception {
+      this.fileUrl = fileURL;
+      InputStream stream = Compression.decode(fileURL.openStream());
+      try {
+         return process(new SAXBuilder().build(stream), stream, option, validate);
+      } finally {
+         stream.close();
+      }
+   }
+
+
+   /**
+    * Creates the odML tree from the parsed document and applies the load option.
+    * 
+    * @param dom the parsed document.
+    * @param stream the stream the document was read from.
+    * @param option defines the behaviour during load. See load(String, int) method
+    * @param validate defines whether the file should be validated against a schema.
+    * @return {@link Section}: the root section of the loaded file.
+    * @throws Exception
+    */
+   private Section process(Document dom, InputStream stream, int option, boolean validate) throws Exception {
+      boolean isValid = true;
+      Section s;
       if (validate && schemaLocations != null) {
          isValid = validateXML(stream);
       }
@@ -263,15 +345,53 @@ public class Reader implements Serializable {
       root.setRepository(url);
       root.setFileUrl(this.fileUrl);
 
+      List<Element> domSections = new ArrayList<Element>();
       for (Element domSection : rootElement.getChildren("section")) {
          if (rootElement.isAncestor(domSection)) {
-            root.add(parseSection(domSection));
+            domSections.add(domSection);
+         }
+      }
+      if (parallelism > 1 && domSections.size() > 1) {
+         createSectionsInParallel(domSections);
+      } else {
+         for (Element domSection : domSections) {
+            root.add(parseSection(domSection, links, includes));
          }
       }
+      root.trimToSize();
       confirmLinks(root);
    }
 
 
+   /**
+    * Builds the subtrees of the given top-level sections concurrently and adds them to the root section in document
+    * order. Each subtree collects its links and includes separately, they are appended to those of the
+    * {@link Reader} in document order as well. The values of the subtrees are created on the worker threads, which
+    * relies on {@link Value} using its date formats per thread.
+    * 
+    * @param domSections {@link List}: the top-level section elements of the document.
+    */
+   private void createSectionsInParallel(List<Element> domSections) {
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         List<SectionTask> tasks = new ArrayList<SectionTask>(domSections.size());
+         for (Element domSection : domSections) {
+            SectionTask task = new SectionTask(domSection);
+            tasks.add(task);
+            pool.execute(task);
+         }
+         for (SectionTask task : tasks) {
+            root.add(task.join());
+            links.addAll(task.links);
+            includes.addAll(task.includes);
+         }
+      } finally {
+         // subtrees that are still pending after a failure are not needed anymore
+         pool.shutdownNow();
+      }
+   }
+
+
    /**
     * Parses the xml file and creates the DOM representation of it.
     * @param stream - an {@link java.io.InputStream}
@@ -317,13 +437,63 @@ public class Reader implements Serializable {
 
 
    /**
-    * Parses an xml section of the metadata file and returns it. Subsections are parsed in a recursive
-    * manner.
+    * Parses an xml section of the metadata file and returns it. Subsections are parsed in document order
+    * without recursion; each section is added to its parent before its own subsections are parsed.
     * 
     * @param domSection - {@link Element}: the section that is to parse
+    * @param links - {@link List}: collects the sections that contain a link.
+    * @param includes - {@link List}: collects the sections that contain an include.
     * @return {@link Section}: the Section representation of the dom section
     */
-   private Section parseSection(Element domSection) {
+   private Section parseSection(Element domSection, List<Section> links, List<Section> includes) {
+      Section section = createSection(domSection, links, includes);
+      if (section == null) {
+         return null;
+      }
+      // pending subsection elements and the sections they are added to
+      Deque<Element> elements = new ArrayDeque<Element>();
+      Deque<Section> parents = new ArrayDeque<Section>();
+      pushSubsections(domSection, section, elements, parents);
+      while (!elements.isEmpty()) {
+         Element element = elements.pop();
+         Section parent = parents.pop();
+         Section subsection = createSection(element, links, includes);
+         if (subsection != null) {
+            parent.add(subsection);
+            pushSubsections(element, subsection, elements, parents);
+         }
+      }
+      // the subtree is complete, release the unused capacity of its lists
+      section.walkOwn(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section s) {
+            s.trimToSize();
+            return Result.CONTINUE;
+         }
+      });
+      return section;
+   }
+
+
+   private static void pushSubsections(Element domSection, Section section, Deque<Element> elements,
+         Deque<Section> parents) {
+      List<Element> children = domSection.getChildren("section");
+      for (int i = children.size() - 1; i >= 0; i--) {
+         elements.push(children.get(i));
+         parents.push(section);
+      }
+   }
+
+
+   /**
+    * Creates a section with its properties from an xml section, without its subsections.
+    * 
+    * @param domSection - {@link Element}: the section that is to parse
+    * @param links - {@link List}: collects the sections that contain a link.
+    * @param includes - {@link List}: collects the sections that contain an include.
+    * @return {@link Section}: the section or null if it could not be created.
+    */
+   private Section createSection(Element domSection, List<Section> links, List<Section> includes) {
       String type = domSection.getChildText("type");
       String name = domSection.getChildText("name");
       String reference = domSection.getChildText("reference");
@@ -372,9 +542,6 @@ public class Reader implements Serializable {
       for (Element element : domSection.getChildren("property")) {
          section.add(parseProperty(element));
       }
-      for (Element element : domSection.getChildren("section")) {
-         section.add(parseSection(element));
-      }
       return section;
    }
 
@@ -443,7 +610,12 @@ public class Reader implements Serializable {
       String reference;
       String encoder;
       String checksum;
-      content = domValue.getTextTrim();
+      // the Writer puts the content into a content element, older files have it as text of the value
+      if (domValue.getChild("content") != null) {
+         content = domValue.getChildTextTrim("content");
+      } else {
+         content = domValue.getTextTrim();
+      }
       if (content == null) {
          content = "";
       }
@@ -532,4 +704,29 @@ public class Reader implements Serializable {
       root.resolveAllLinks();
    }
 
+
+
+   /**
+    * Builds the subtree of one top-level section. Links and includes found in the subtree are kept with the task
+    * until the subtree is merged into the root section.
+    */
+   private class SectionTask extends RecursiveTask<Section> {
+
+      private static final long     serialVersionUID = 1L;
+      private final Element         domSection;
+      private final List<Section>   links            = new ArrayList<Section>();
+      private final List<Section>   includes         = new ArrayList<Section>();
+
+
+      SectionTask(Element domSection) {
+         this.domSection = domSection;
+      }
+
+
+      @Override
+      protected Section compute() {
+         return parseSection(domSection, links, includes);
+      }
+   }
+
 }
@@ -23,6 +23,9 @@ import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The {@link Section} class defines the odML section, one of the two core elements that can contain odMLProperties - if
@@ -32,28 +35,49 @@ import java.util.*;
  * consistency and missing fields like type or unit will be added from the terminology.
  * 
  * To create a valid section a name must be provided, everything else is extra.
- * 
+ *
+ * Sections, properties and values are not thread-safe. A tree that is changed must not be read by other threads at
+ * the same time; to share a tree with readers, publish immutable snapshots created by {@link #freeze()}, or switch on
+ * the read-write locking of the tree with {@link #setLocking(boolean)}.
+ *
  * @since 08.2009
  * 
  * @author Jan Grewe, Christine Seitz
  */
-public class Section extends Object implements Serializable, TreeNode {
+public class Section extends Object implements Serializable, Cloneable, TreeNode {
 
-   private static final long serialVersionUID           = 145L;
+   private static final long serialVersionUID           = 146L;
    public static final int   MERGE_THIS_OVERRIDES_OTHER = 0, MERGE_OTHER_OVERRIDES_THIS = 1,
    MERGE_COMBINE = 2;
    private String            type                       = null, definition = null, name = null,
    reference = null;
-   private Vector<Property>  properties         = new Vector<Property>();
+   private ArrayList<Property> properties       = new ArrayList<Property>();
    private URL               repositoryURL              = null, fileUrl = null;
    private String            link                       = null;
+   private boolean           linkResolved               = false;
+   private Section           linkedSection              = null;
    private String            include                    = null, author = null, version = null;
    private Date              date                       = null;
    private Section           parent, terminology = null;
    private URL               mapping                    = null;
    protected int             level;
    private boolean           isTerminology              = false;
-   protected Vector<Section> subsections = new Vector<Section>();
+   // only complete once loaded, see sections(); subclasses use the public accessors
+   private ArrayList<Section> subsections = new ArrayList<Section>();
+   private transient volatile SectionLoader loader = null;
+   private transient BinaryStore.StoredRecord stored = null;
+   private transient boolean loading = false;
+   private transient Journal journal = null;
+   private transient TreeLock treeLock = null;
+   /** Positions of the counters in a summary, see {@link #getOwnSummary()}. */
+   static final int          SUMMARY_LINKS = 0, SUMMARY_INCLUDES = 1, SUMMARY_MAPPINGS = 2, SUMMARY_PROPERTIES = 3,
+   SUMMARY_VALUES = 4, SUMMARY_BINARIES = 5, SUMMARY_SIZE = 6;
+   // the counters of this section and the sums over the subtrees of its subsections, null if they have to be
+   // recounted; if the subsection summary of a section is null, so are those of all its ancestors
+   private transient int[] ownSummary = null, subsectionSummary = null;
+   // counts the changes of the properties and subsections, see overlay()
+   private transient int contentVersion = 0;
+   private transient Overlay overlay = null;
 
 
    /**
@@ -61,7 +85,7 @@ public class Section extends Object implements Serializable, TreeNode {
     * given.
     */
    public Section() {
-      subsections = new Vector<Section>();
+      subsections = new ArrayList<Section>();
       this.level = 0;
       // rootSec = this;
    }
@@ -188,8 +212,8 @@ public class Section extends Object implements Serializable, TreeNode {
       setDefinition(definition);
       setRepository(repository);
       setMapping(mappingURL);
-      this.subsections = new Vector<Section>();
-      this.properties = new Vector<Property>();
+      this.subsections = new ArrayList<Section>();
+      this.properties = new ArrayList<Property>();
 
       if (parent != null) {
          //this.setParent(parent);
@@ -243,14 +267,16 @@ public class Section extends Object implements Serializable, TreeNode {
     * checking if this Section is consistent with the definition in the terminology. It checks the definition,
     * dependencyURLs, mappingURL, terminologyURL.
     */
-   private void validateSection() {
+   private void validateSection(ValidationReport report) {
       if (this.terminology == null)
          return;
+      String path = this.getPath();
       if (this.terminology.getDefinition() != null && (!this.terminology.getDefinition().isEmpty())) {
          if (this.getDefinition() == null || (this.getDefinition().isEmpty())) {
             this.setDefinition(this.terminology.getDefinition());
          } else if (!this.terminology.getDefinition().equalsIgnoreCase(this.getDefinition())) {
-            System.out.println("Section definition deviates from the definition in the terminology! "
+            report.add(ValidationReport.Severity.WARNING, path,
+                  "Section definition deviates from the definition in the terminology! "
                     + "No changes applied. Please double check to avoid conflicts!");
          }
       }
@@ -258,10 +284,11 @@ public class Section extends Object implements Serializable, TreeNode {
             && (!this.terminology.getMapping().toString().isEmpty())) {
          if (this.getMapping() == null || (this.getMapping().toString().isEmpty())) {
             this.setMapping(this.terminology.getMapping());
-            System.out.println("mappingURL set to one used in terminology");
+            report.add(ValidationReport.Severity.INFO, path, "mappingURL set to one used in terminology");
          } else if (!this.terminology.getMapping().toString().equalsIgnoreCase(
                this.getMapping().toString())) {
-            System.out.println("Section mapping different from the one specified in terminology! "
+            report.add(ValidationReport.Severity.WARNING, path,
+                  "Section mapping different from the one specified in terminology! "
                     + "No changes applied. Please double check to avoid conflicts!");
          }
       }
@@ -270,11 +297,13 @@ public class Section extends Object implements Serializable, TreeNode {
          if (this.getRepository() == null
                || (this.getRepository().toString().isEmpty())) {
             this.setRepository(this.terminology.getRepository());
-            System.out.println("Section repository information updated with terminology information!");
+            report.add(ValidationReport.Severity.INFO, path,
+                  "Section repository information updated with terminology information!");
          }
       }
       if (this.getProperty("name") != null) {
-         System.out.println("Warning: Section " + this.name + " contains a *name* property. Possible ambiguity with section name?");
+         report.add(ValidationReport.Severity.WARNING, path, "Warning: Section " + this.name
+               + " contains a *name* property. Possible ambiguity with section name?");
       }
    }
 
@@ -288,30 +317,434 @@ public class Section extends Object implements Serializable, TreeNode {
     *         is last), -1 otherwise.
     */
    public int add(Section section) {
+      TreeLock lock = treeLock();
+      return lock == null || loading ? addUnlocked(section) : lock.write(() -> addUnlocked(section));
+   }
+
+
+   private int addUnlocked(Section section) {
       int index = -1;
       if (section != null) {
+         if (!loading) {
+            materializeLink();
+         }
          if (this.containsSection(section.name, section.type)) {
             System.out.println("There already exists a section with that name! Will append an index to the name!");
             section.setName(section.getName() + this.getSectionsByType(section.getType()).size());
          }
          section.setParent(this);
          if (this.terminology != null) {
-            validateSection();
+            validateSection(new ValidationReport(true));
+         }
+         sections().add(section);
+         index = sections().size() - 1;
+         contentVersion++;
+         subtreeChanged(this);
+         if (!loading) {
+            stored = null;
+            Journal journal = getJournal();
+            if (journal != null) {
+               journal.sectionAdded(this, section);
+            }
          }
-         subsections.add(section);
-         index = subsections.size() - 1;
       }
       return index;
    }
 
 
+   /**
+    * Sets the loader that creates the subsections of this section when they are first accessed. Used for sections
+    * that are read lazily, e.g. from a {@link BinaryStore}.
+    * 
+    * @param loader
+    *            - {@link SectionLoader}: the loader or null if the subsections are present.
+    */
+   void setLoader(SectionLoader loader) {
+      this.loader = loader;
+   }
+
+
+   /**
+    * Returns whether the subsections of this section have been loaded, i.e. whether no {@link SectionLoader} is
+    * pending.
+    */
+   boolean isLoaded() {
+      return loader == null;
+   }
+
+
+   /**
+    * Returns whether this section was changed since it was read from or written to a {@link BinaryStore}. Changes
+    * are changes of the section fields, of its properties and their values, and adding or removing subsections.
+    * Changes within subsections do not count as changes of this section. Sections that have never been stored are
+    * always modified.
+    * 
+    * @return boolean: true if the section has to be written when the store is updated, false otherwise.
+    */
+   public boolean isModified() {
+      return stored == null;
+   }
+
+
+   /**
+    * Marks this section as changed and records the new state of the section in the journal of the tree, if any.
+    */
+   void markModified() {
+      stored = null;
+      ownSummary = null;
+      contentVersion++;
+      if (parent != null) {
+         // renaming a section changes which sections of a linked section it hides
+         parent.contentVersion++;
+      }
+      subtreeChanged(parent);
+      Journal journal = getJournal();
+      if (journal != null) {
+         journal.sectionChanged(this);
+      }
+   }
+
+
+   /**
+    * Marks this section as changed after the given subsection was removed from the given index. The removed subtree
+    * no longer belongs to the tree and drops its parent, journal and lock.
+    */
+   private void subsectionRemoved(int index, Section removed) {
+      removed.journal = null;
+      removed.treeLock = null;
+      removed.setParent(null);
+      stored = null;
+      contentVersion++;
+      subtreeChanged(this);
+      Journal journal = getJournal();
+      if (journal != null) {
+         journal.sectionRemoved(this, index);
+      }
+   }
+
+
+   /**
+    * Drops the subsection summaries of the given section and its ancestors after a change in its subtree. Stops at
+    * the first section whose summary is already dropped, the summaries above it are dropped as well.
+    */
+   private static void subtreeChanged(Section section) {
+      for (Section s = section; s != null && s.subsectionSummary != null; s = s.parent) {
+         s.subsectionSummary = null;
+      }
+   }
+
+
+   /**
+    * Returns the counters of this section alone: whether it has a link, an include, the number of mappings of the
+    * section and its properties, the number of properties, values and binary values. Indexed by the SUMMARY
+    * constants. The array is shared and must not be changed.
+    */
+   int[] getOwnSummary() {
+      int[] summary = ownSummary;
+      if (summary == null) {
+         summary = summarize(properties);
+         ownSummary = summary;
+      }
+      return summary;
+   }
+
+
+   /**
+    * Returns the counters of the record written for this section, which holds the properties seen through a
+    * virtual link as well, see {@link #getOwnSummary()}.
+    */
+   int[] getRecordSummary() {
+      return linkedSection == null ? getOwnSummary() : summarize(propertyView());
+   }
+
+
+   private int[] summarize(List<Property> properties) {
+      int[] summary = new int[SUMMARY_SIZE];
+      if (link != null && !link.isEmpty()) {
+         summary[SUMMARY_LINKS] = 1;
+      }
+      if (include != null && !include.isEmpty()) {
+         summary[SUMMARY_INCLUDES] = 1;
+      }
+      if (mapping != null) {
+         summary[SUMMARY_MAPPINGS]++;
+      }
+      for (Property property : properties) {
+         if (property.getMapping() != null) {
+            summary[SUMMARY_MAPPINGS]++;
+         }
+         summary[SUMMARY_PROPERTIES]++;
+         for (int i = 0; i < property.valueCount(); i++) {
+            summary[SUMMARY_VALUES]++;
+            if ("binary".equalsIgnoreCase(property.getWholeValue(i).getType())) {
+               summary[SUMMARY_BINARIES]++;
+            }
+         }
+      }
+      return summary;
+   }
+
+
+   /**
+    * Sets the sums of the counters over the subtrees of the subsections, e.g. from the index of a
+    * {@link BinaryStore}, so that they are known before the subsections are loaded. The array must not be changed.
+    */
+   void setSubsectionSummary(int[] summary) {
+      this.subsectionSummary = summary;
+   }
+
+
+   /**
+    * Returns the sums of the counters over this section and all sections below it. Only the parts of the tree that
+    * changed since the last call are recounted, each section is counted without recursion. Content seen through
+    * virtual links is counted where it is stored.
+    */
+   private int[] getTreeSummary() {
+      if (subsectionSummary == null) {
+         walkOwn(new SectionVisitor() {
+            @Override
+            public Result preVisit(Section section) {
+               return section.subsectionSummary == null ? Result.CONTINUE : Result.SKIP_SUBSECTIONS;
+            }
+
+
+            @Override
+            public Result postVisit(Section section) {
+               int[] summary = new int[SUMMARY_SIZE];
+               for (Section child : section.subsections) {
+                  int[] own = child.getOwnSummary();
+                  for (int i = 0; i < SUMMARY_SIZE; i++) {
+                     summary[i] += own[i] + child.subsectionSummary[i];
+                  }
+               }
+               section.subsectionSummary = summary;
+               return Result.CONTINUE;
+            }
+         });
+      }
+      int[] own = getOwnSummary();
+      int[] summary = subsectionSummary.clone();
+      for (int i = 0; i < SUMMARY_SIZE; i++) {
+         summary[i] += own[i];
+      }
+      return summary;
+   }
+
+
+   /**
+    * Returns the number of sections with a link in the tree starting at this section. The counters of a tree are
+    * kept up to date while it is changed, so this takes constant time unless the tree was changed since the last
+    * query. Properties and subsections seen through a virtual link are counted only in the linked section, see
+    * {@link #resolveLink(boolean)}.
+    * 
+    * @return int: the number of links.
+    */
+   public int getTreeLinkCount() {
+      return getTreeSummary()[SUMMARY_LINKS];
+   }
+
+
+   /**
+    * Returns the number of sections with an include in the tree starting at this section, see
+    * {@link #getTreeLinkCount()}.
+    * 
+    * @return int: the number of includes.
+    */
+   public int getTreeIncludeCount() {
+      return getTreeSummary()[SUMMARY_INCLUDES];
+   }
+
+
+   /**
+    * Returns the number of section and property mappings in the tree starting at this section, see
+    * {@link #getTreeLinkCount()}.
+    * 
+    * @return int: the number of mappings.
+    */
+   public int getTreeMappingCount() {
+      return getTreeSummary()[SUMMARY_MAPPINGS];
+   }
+
+
+   /**
+    * Returns the number of properties in the tree starting at this section, see {@link #getTreeLinkCount()}.
+    * 
+    * @return int: the number of properties.
+    */
+   public int getTreePropertyCount() {
+      return getTreeSummary()[SUMMARY_PROPERTIES];
+   }
+
+
+   /**
+    * Returns the number of values in the tree starting at this section, see {@link #getTreeLinkCount()}.
+    * 
+    * @return int: the number of values.
+    */
+   public int getTreeValueCount() {
+      return getTreeSummary()[SUMMARY_VALUES];
+   }
+
+
+   /**
+    * Returns the number of values of type binary in the tree starting at this section, see
+    * {@link #getTreeLinkCount()}.
+    * 
+    * @return int: the number of binary values.
+    */
+   public int getTreeBinaryCount() {
+      return getTreeSummary()[SUMMARY_BINARIES];
+   }
+
+
+   /**
+    * Returns the journal recording the changes of the tree this section belongs to.
+    * 
+    * @return {@link Journal}: the journal of the root section or null.
+    */
+   Journal getJournal() {
+      return journal;
+   }
+
+
+   /**
+    * Sets the journal that records the changes of the tree. Only used for root sections, the subsections take it over.
+    */
+   void setJournal(Journal journal) {
+      this.journal = journal;
+      updateLevel();
+   }
+
+
+   /**
+    * Returns the lock of the tree this section belongs to.
+    * 
+    * @return {@link TreeLock}: the lock of the root section or null if the tree is not locked.
+    */
+   TreeLock treeLock() {
+      return treeLock;
+   }
+
+
+   /**
+    * Switches the read-write locking of the tree on or off. Only possible for root sections.
+    * 
+    * With locking the tree can be changed by one thread while other threads read it. The lookups
+    * {@link #getSection(int)}, {@link #getSection(String)}, {@link #getProperty(int)},
+    * {@link #getProperty(String)}, {@link #findSectionsByType(String)} and {@link Property#getValue(int)} run
+    * without waiting and are repeated holding the read lock only if the tree was changed meanwhile. Adding, removing
+    * and merging sections and properties, resolving links and adding, setting and removing values hold the write
+    * lock. Other accesses that need to see a consistent tree, e.g. iterating over the subsections, should be wrapped
+    * with {@link #withReadLock(Supplier)} or {@link #withWriteLock(Supplier)}.
+    * 
+    * Locking should be switched on before the tree is shared with other threads.
+    * 
+    * @param locking boolean: true to lock the tree, false to stop locking.
+    */
+   public void setLocking(boolean locking) {
+      if (parent != null) {
+         System.out.println("Section.setLocking: locking can only be set for the root section!");
+         return;
+      }
+      if (locking && treeLock == null) {
+         treeLock = new TreeLock();
+         updateLevel();
+      } else if (!locking && treeLock != null) {
+         treeLock = null;
+         updateLevel();
+      }
+   }
+
+
+   /**
+    * Returns whether the tree this section belongs to is locked, see {@link #setLocking(boolean)}.
+    * 
+    * @return boolean: true if the tree is locked.
+    */
+   public boolean isLocking() {
+      return treeLock() != null;
+   }
+
+
+   /**
+    * Runs the given reading action holding the read lock of the tree. If the tree is not locked the action is run
+    * directly. The action must not change the tree.
+    * 
+    * @param action {@link Supplier}: the action.
+    * @return the result of the action.
+    */
+   public <T> T withReadLock(Supplier<T> action) {
+      TreeLock lock = treeLock();
+      return lock == null ? action.get() : lock.readLocked(action);
+   }
+
+
+   /**
+    * Runs the given changing action holding the write lock of the tree. If the tree is not locked the action is run
+    * directly.
+    * 
+    * @param action {@link Supplier}: the action.
+    * @return the result of the action.
+    * @throws IllegalStateException if the current thread is inside a read of the tree.
+    */
+   public <T> T withWriteLock(Supplier<T> action) {
+      TreeLock lock = treeLock();
+      return lock == null ? action.get() : lock.write(action);
+   }
+
+
+   /**
+    * Returns where the unchanged record of this section is stored.
+    */
+   BinaryStore.StoredRecord getStoredRecord() {
+      return stored;
+   }
+
+
+   /**
+    * Records where the record of this section is stored. This marks the section as unchanged.
+    */
+   void setStoredRecord(BinaryStore.StoredRecord stored) {
+      this.stored = stored;
+   }
+
+
+   /**
+    * Returns the subsections list after loading the subsections if this has not been done yet.
+    */
+   private ArrayList<Section> sections() {
+      if (loader != null) {
+         synchronized (this) {
+            SectionLoader l = loader;
+            // the loader is kept until the subsections are complete, so other threads wait for them; the loading
+            // thread itself gets the list while it is filled
+            if (l != null && !loading) {
+               // adding the loaded subsections does not modify this section
+               loading = true;
+               try {
+                  l.loadSubsections(this);
+                  subsections.trimToSize();
+               } catch (Exception e) {
+                  System.out.println("Section: could not load subsections of " + this.getPath() + ": "
+                        + e.getMessage());
+               } finally {
+                  loading = false;
+                  loader = null;
+               }
+            }
+         }
+      }
+      return subsections;
+   }
+
+
    /**
     * Returns the number of subsections.
     * 
     * @return - int: the number of subsections. I.e. the size of the subsections vector.
     */
    public int sectionCount() {
-      return subsections.size();
+      return sectionView().size();
    }
 
 
@@ -321,9 +754,10 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return - {@link String}[]: an array containing the types of all fist level subsections.
     */
    public String[] subsectionsNames() {
-      String[] types = new String[subsections.size()];
-      for (int i = 0; i < subsections.size(); i++) {
-         types[i] = subsections.get(i).getName();
+      List<Section> sections = sectionView();
+      String[] types = new String[sections.size()];
+      for (int i = 0; i < sections.size(); i++) {
+         types[i] = sections.get(i).getName();
       }
       return types;
    }
@@ -336,8 +770,15 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return the section of that index or null if index not valid.
     */
    public Section getSection(int index) {
-      if (index < subsections.size()) {
-         return subsections.get(index);
+      TreeLock lock = treeLock();
+      return lock == null ? getSectionUnlocked(index) : lock.read(() -> getSectionUnlocked(index));
+   }
+
+
+   private Section getSectionUnlocked(int index) {
+      List<Section> sections = sectionView();
+      if (index < sections.size()) {
+         return sections.get(index);
       } else {
          System.out.println("Section: Index exceeds number of subsections.");
          return null;
@@ -353,6 +794,12 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return the first section matching with its name
     */
    public  Section getSection(String name) {
+      TreeLock lock = treeLock();
+      return lock == null ? getSectionUnlocked(name) : lock.read(() -> getSectionUnlocked(name));
+   }
+
+
+   private Section getSectionUnlocked(String name) {
       if (name == null || name.isEmpty())
          return null;
       if(isPath(name)){
@@ -372,7 +819,7 @@ public class Section extends Object implements Serializable, TreeNode {
          }  
       }
       else{
-         Iterator<Section> iter = subsections.iterator();
+         Iterator<Section> iter = sectionView().iterator();
          while(iter.hasNext()){
             Section s = iter.next();
             if(s.getName().equalsIgnoreCase(name)){
@@ -386,15 +833,30 @@ public class Section extends Object implements Serializable, TreeNode {
 
 
    /**
-    * Returns all first level subsections.
+    * Returns all first level subsections. For a section with a virtual link these are its own subsections followed
+    * by those of the linked section that are not hidden by an own subsection of the same name and type.
+    * <b>Note:</b> the vector is a copy. Unlike in earlier versions, adding or removing elements does not change this
+    * section; use {@link #add(Section)} and {@link #removeSection(int)} for that, and {@link #getSectionList()} to
+    * read the subsections without copying them.
     * 
-    * @return Vector<Section>: the subsections or null if no subsections.
+    * @return Vector<Section>: a copy of the subsections or null if no subsections.
     */
    public Vector<Section> getSections() {
-      if (subsections.size() == 0) {
+      List<Section> sections = sectionView();
+      if (sections.size() == 0) {
          return null;
       }
-      return subsections;
+      return new Vector<Section>(sections);
+   }
+
+
+   /**
+    * Returns the first level subsections like {@link #getSections()}, but as a read-only view instead of a copy.
+    * 
+    * @return {@link List} of {@link Section}s: an unmodifiable view of the subsections, which may be empty.
+    */
+   public List<Section> getSectionList() {
+      return Collections.unmodifiableList(sectionView());
    }
 
 
@@ -430,12 +892,13 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public Vector<Section> getSectionsByType(String type) {
       Vector<Section> temp = new Vector<Section>();
-      for (int i = 0; i < subsections.size(); i++) {
-         String subsectionType = subsections.get(i).getType();
+      List<Section> sections = sectionView();
+      for (int i = 0; i < sections.size(); i++) {
+         String subsectionType = sections.get(i).getType();
          if (subsectionType.equalsIgnoreCase(type) || (subsectionType.contains("/") && 
                subsectionType.substring(0, subsectionType.indexOf("/")).equalsIgnoreCase(
                      type))) {
-            temp.add(subsections.get(i));
+            temp.add(sections.get(i));
          }
       }
       return temp;
@@ -451,57 +914,187 @@ public class Section extends Object implements Serializable, TreeNode {
     *            String the section name.
     * @return The found section or null.
     */
-   public Section findSection(String name) {
-      Section found = getSection(name);
-      if (found == null) {
-         for (int i = 0; i < sectionCount(); i++) {
-            Section temp = subsections.get(i).findSection(name);
-            if (temp != null) {
-               return temp;
-            }
+   public Section findSection(final String name) {
+      final Section[] found = new Section[1];
+      walk(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            found[0] = section.getSection(name);
+            return found[0] == null ? Result.CONTINUE : Result.TERMINATE;
          }
-         return null;
-      } else {
-         return found;
+      });
+      return found[0];
+   }
+
+   /**
+    * Finds the first child {@link Section} matching the requested type.
+    * 
+    * @param type
+    *            {@link String} the type of the section.
+    * @return {@link Section} the section or null;
+    */
+   public Section findSectionByType(final String type) {
+      final Section[] found = new Section[1];
+      walk(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            found[0] = section.getSectionByType(type);
+            return found[0] == null ? Result.CONTINUE : Result.TERMINATE;
+         }
+      });
+      return found[0];
+   }
+
+
+   /**
+    * Finds all child sections of the specified type. Recursively cycles down the tree.
+    * 
+    * @param type
+    *            {@link String} the type of sections.
+    * @return {@link Vector} of {@link Section}s, may be empty
+    */
+   public Vector<Section> findSectionsByType(final String type) {
+      TreeLock lock = treeLock();
+      return lock == null ? findSectionsByTypeUnlocked(type) : lock.read(() -> findSectionsByTypeUnlocked(type));
+   }
+
+
+   private Vector<Section> findSectionsByTypeUnlocked(final String type) {
+      final Vector<Section> temp = new Vector<Section>();
+      // the matching subsections of a section precede those found further down
+      walk(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            temp.addAll(section.getSectionsByType(type));
+            return Result.CONTINUE;
+         }
+      });
+      return temp;
+   }
+
+
+   /**
+    * Visits this section and all sections below it in document order without recursion. The visitor is called
+    * before and after the subsections of each section are visited, see {@link SectionVisitor}.
+    * 
+    * @param visitor
+    *            {@link SectionVisitor} the visitor.
+    * @return boolean: false if the visitor terminated the traversal, true if all sections were visited.
+    */
+   public boolean walk(SectionVisitor visitor) {
+      return SectionWalker.walk(this, visitor, true);
+   }
+
+
+   /**
+    * Visits the sections of the tree like {@link #walk(SectionVisitor)}, but does not follow virtual links: only the
+    * sections stored below this section are visited.
+    */
+   boolean walkOwn(SectionVisitor visitor) {
+      return SectionWalker.walk(this, visitor, false);
+   }
+
+
+   /**
+    * Returns the subsections stored in this section, without those seen through a virtual link.
+    */
+   List<Section> getOwnSections() {
+      return sections();
+   }
+
+
+   /**
+    * Returns the properties stored in this section, without those seen through a virtual link.
+    */
+   List<Property> getOwnProperties() {
+      return properties;
+   }
+
+
+   /**
+    * Replaces the properties stored in this section by the given ones. Unlike {@link #add(Property)} this does not
+    * refuse properties of a root section without a type, it is used to restore the recorded state of a section.
+    */
+   void restoreProperties(List<Property> restored) {
+      materializeLink();
+      properties.clear();
+      for (Property property : restored) {
+         properties.add(property);
+         property.setParent(this);
       }
+      markModified();
+   }
+
+
+   /**
+    * Releases the unused capacity of the lists of properties and subsections. Called by the readers once a section
+    * is complete; subsections that are not loaded yet are not loaded.
+    */
+   void trimToSize() {
+      properties.trimToSize();
+      subsections.trimToSize();
+   }
+
+
+   /**
+    * Returns whether a stored property or subsection of this section has the same name (and type) as one seen through
+    * the given section. Merging would combine these, a virtual link would hide those of the given section.
+    */
+   boolean overlaps(Section other) {
+      Set<String> names = new HashSet<String>();
+      for (Property property : properties) {
+         names.add(property.getName().toLowerCase());
+      }
+      for (Property property : other.propertyView()) {
+         if (names.contains(property.getName().toLowerCase())) {
+            return true;
+         }
+      }
+      Set<String> keys = new HashSet<String>();
+      for (Section section : sections()) {
+         keys.add(Overlay.key(section));
+      }
+      for (Section section : other.sectionView()) {
+         if (keys.contains(Overlay.key(section))) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+
+   /**
+    * Returns a lazy stream of all sections below this section in document order, i.e. each section is followed by
+    * its subsections. The tree is traversed without recursion and without collecting the sections; the stream splits
+    * into subtrees for parallel processing. The tree must not be modified while the stream is consumed. Virtual
+    * links are followed, so a section that is shared by several links is returned once per link.
+    * 
+    * @return {@link Stream} of {@link Section}s: the descendants of this section, not including it.
+    */
+   public Stream<Section> descendants() {
+      return StreamSupport.stream(new SectionSpliterator(sectionView()), false);
    }
 
+
    /**
-    * Finds the first child {@link Section} matching the requested type.
+    * Returns a lazy stream of the properties of this section and of all sections below it in document order. Like
+    * {@link #descendants()} it shows the content of virtual links.
     * 
-    * @param type
-    *            {@link String} the type of the section.
-    * @return {@link Section} the section or null;
+    * @return {@link Stream} of {@link Property}s: the properties of the subtree.
     */
-   public Section findSectionByType(String type) {
-      Section found = getSectionByType(type);
-      if (found == null) {
-         for (int i = 0; i < sectionCount(); i++) {
-            Section temp = subsections.get(i).findSectionByType(type);
-            if (temp != null) {
-               return temp;
-            }
-         }
-         return null;
-      } else {
-         return found;
-      }
+   public Stream<Property> allProperties() {
+      return StreamSupport.stream(new SectionSpliterator(this), false).flatMap(s -> s.propertyView().stream());
    }
 
 
    /**
-    * Finds all child sections of the specified type. Recursively cycles down the tree.
+    * Returns a lazy stream of the values of all properties of this section and of all sections below it in
+    * document order.
     * 
-    * @param type
-    *            {@link String} the type of sections.
-    * @return {@link Vector} of {@link Section}s, may be empty
+    * @return {@link Stream} of {@link Value}s: the values of the subtree.
     */
-   public Vector<Section> findSectionsByType(String type) {
-      Vector<Section> temp = getSectionsByType(type);
-      for (int i = 0; i < sectionCount(); i++) {
-         temp.addAll(subsections.get(i).findSectionsByType(type));
-      }
-      return temp;
+   public Stream<Value> allValues() {
+      return allProperties().flatMap(p -> p.values().stream());
    }
 
 
@@ -584,10 +1177,18 @@ public class Section extends Object implements Serializable, TreeNode {
     *            {@link Integer} the index of the section.
     */
    public boolean removeSection(int index) {
+      TreeLock lock = treeLock();
+      return lock == null ? removeSectionUnlocked(index) : lock.write(() -> removeSectionUnlocked(index));
+   }
+
+
+   private boolean removeSectionUnlocked(int index) {
+      materializeLink();
       try {
-         subsections.removeElementAt(index);
+         Section removed = sections().remove(index);
+         subsectionRemoved(index, removed);
          return true;
-      } catch (ArrayIndexOutOfBoundsException a) {
+      } catch (IndexOutOfBoundsException a) {
          System.out.println("Invalid index! Index '" + index + "' exceeds the bounds of Section array.");
          return false;
       }
@@ -602,7 +1203,21 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Boolean} true if operation succeeded. False otherwise.
     */
    public boolean removeSection(Section section) {
-      return subsections.remove(section);
+      TreeLock lock = treeLock();
+      return lock == null ? removeSectionUnlocked(section) : lock.write(() -> removeSectionUnlocked(section));
+   }
+
+
+   private boolean removeSectionUnlocked(Section section) {
+      // sections seen through a virtual link are replaced by copies, which are at the same position
+      int index = sectionView().indexOf(section);
+      if (index < 0) {
+         return false;
+      }
+      materializeLink();
+      Section removed = sections().remove(index);
+      subsectionRemoved(index, removed);
+      return true;
    }
 
 
@@ -614,14 +1229,23 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return boolean: true if removing successful, false otherwise
     */
    public boolean removeSection(String name) {
+      TreeLock lock = treeLock();
+      return lock == null ? removeSectionUnlocked(name) : lock.write(() -> removeSectionUnlocked(name));
+   }
+
+
+   private boolean removeSectionUnlocked(String name) {
       if(isPath(name)){
          Section s = getSection(name);
          s.getParent().removeSection(this);
       }
       else{
          int index = indexOfSection(name);
-         if(index > 0)
-            this.subsections.remove(index);
+         if(index > 0) {
+            materializeLink();
+            Section removed = sections().remove(index);
+            subsectionRemoved(index, removed);
+         }
          else{
             System.out.println("Section.removeSection(): Cannot remove section ("+name+")!");
             return false;
@@ -633,18 +1257,25 @@ public class Section extends Object implements Serializable, TreeNode {
 
    /**
     * Updates the level of the according section and all it's subsections. Called when calling addSection(), as a
-    * Section can become subsection of another one when merging two files, etc.
+    * Section can become subsection of another one when merging two files, etc. The subsections also take over the
+    * journal and the lock of the tree, so that an access does not have to look for the root section.
     */
    private void updateLevel() {
       if (this.getParent() == null) {
          this.level = 0;
       } else {
          this.level = this.getParent().getLevel() + 1;
+         this.journal = this.parent.journal;
+         this.treeLock = this.parent.treeLock;
       }
-      if (this.subsections != null) {
-         for (int i = 0; i < this.sectionCount(); i++) {
-            this.getSection(i).updateLevel();
-         }
+      // subsections that are not loaded yet get their level when they are added
+      Deque<Section> pending = new ArrayDeque<Section>(subsections);
+      while (!pending.isEmpty()) {
+         Section section = pending.poll();
+         section.level = section.parent.level + 1;
+         section.journal = section.parent.journal;
+         section.treeLock = section.parent.treeLock;
+         pending.addAll(section.subsections);
       }
    }
 
@@ -666,6 +1297,7 @@ public class Section extends Object implements Serializable, TreeNode {
          return false;
       }
       this.type = type;
+      markModified();
       return true;
    }
 
@@ -683,6 +1315,7 @@ public class Section extends Object implements Serializable, TreeNode {
          return false;
       }
       this.name = name;
+      markModified();
       return true;
    }
 
@@ -695,6 +1328,7 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public void setReference(String reference) {
       this.reference = reference;
+      markModified();
    }
 
 
@@ -716,6 +1350,7 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public void setDefinition(String definition) {
       this.definition = definition;
+      markModified();
    }
 
 
@@ -744,11 +1379,13 @@ public class Section extends Object implements Serializable, TreeNode {
          this.repositoryURL = null;
          System.out.println("An error occurred when setting the repository: " + e.getMessage());
       }
+      markModified();
    }
 
 
    public void setRepository(URL url) {
       this.repositoryURL = url;
+      markModified();
    }
 
 
@@ -840,35 +1477,167 @@ public class Section extends Object implements Serializable, TreeNode {
    //
    /**
     * Ask this section to follow its links and to resolve it. In case this section is linked to another one it will be
-    * extended by the properties found in the linked section.
+    * extended by the properties found in the linked section. The linked section is resolved first; each section is
+    * merged only once, see {@link #isLinkResolved()}. Circular links are reported and not resolved.
     * 
     * @return {@link Boolean} true if this section is linked to another section and has been merged otherwise false.
     */
    public boolean resolveLink() {
-      if (this.link != null) {
-         Section linkedSection = getSection(this.link);
-         if (linkedSection != null) {
-            linkedSection.resolveLink();
-         } else {
-            System.out.println("Section.resolveLink: could not find referenced section!");
-            return false;
-         }
-         this.merge(getSection(this.link), MERGE_THIS_OVERRIDES_OTHER);
-         return true;
-      } else {
-         return false;
+      return resolveLink(false);
+   }
+
+
+   /**
+    * Resolves the link of this section like {@link #resolveLink()}. If virtual is true, the linked content is not
+    * copied: the properties and subsections of the linked section are seen through this section as long as it is not
+    * changed, see {@link #getProperties()} and {@link #getSections()}. Adding or removing properties or subsections,
+    * or merging, first copies the linked content into this section. Note that properties and sections seen through a
+    * virtual link belong to the linked section; changing them changes the linked section. Links are resolved by
+    * copying if this section has properties or subsections of the same name (and type) as the linked section, which
+    * merging combines, or if the linked content would contain this section itself.
+    * 
+    * @param virtual
+    *            {@link Boolean} true to share the linked content instead of copying it.
+    * @return {@link Boolean} true if this section is linked to another section and has been resolved otherwise
+    *         false.
+    */
+   public boolean resolveLink(boolean virtual) {
+      TreeLock lock = treeLock();
+      return lock == null ? resolveLinkUnlocked(virtual) : lock.write(() -> resolveLinkUnlocked(virtual));
+   }
+
+
+   private boolean resolveLinkUnlocked(boolean virtual) {
+      return new LinkResolver(virtual).resolve(this);
+   }
+
+
+   /**
+    * Returns whether the link of this section is resolved virtually, see {@link #resolveLink(boolean)}.
+    * 
+    * @return {@link Boolean} true if linked content is seen through this section but not copied into it.
+    */
+   public boolean isLinkVirtual() {
+      return linkedSection != null;
+   }
+
+
+   /**
+    * Returns the section whose content is seen through a virtual link, or null.
+    */
+   Section getVirtualTarget() {
+      return linkedSection;
+   }
+
+
+   /**
+    * Resolves the link of this section virtually, see {@link #resolveLink(boolean)}.
+    */
+   void setVirtualTarget(Section target) {
+      linkedSection = target;
+      overlay = null;
+      contentVersion++;
+      linkResolved = true;
+   }
+
+
+   private void dropLinkedSection() {
+      if (linkedSection != null) {
+         linkedSection = null;
+         overlay = null;
+         contentVersion++;
+      }
+   }
+
+
+   /**
+    * Copies the content seen through a virtual link into this section before it is changed.
+    */
+   private void materializeLink() {
+      Section target = linkedSection;
+      if (target != null) {
+         dropLinkedSection();
+         merge(target, MERGE_THIS_OVERRIDES_OTHER);
+      }
+   }
+
+
+   /**
+    * Returns the properties as seen by readers: the own properties, or those of the overlay of a virtual link.
+    */
+   List<Property> propertyView() {
+      return linkedSection == null ? properties : overlay().properties;
+   }
+
+
+   /**
+    * Returns the subsections as seen by readers, see {@link #propertyView()}.
+    */
+   List<Section> sectionView() {
+      return linkedSection == null ? sections() : overlay().sections;
+   }
+
+
+   /**
+    * Returns the content seen through the virtual link. It is rebuilt when this section or a section along the chain
+    * of virtual links changed its properties or subsections.
+    */
+   private Overlay overlay() {
+      long stamp = 0;
+      for (Section s = this; s != null; s = s.linkedSection) {
+         stamp += s.contentVersion + 1;
       }
+      Overlay current = overlay;
+      if (current == null || current.stamp != stamp) {
+         current = new Overlay(stamp, properties, sections(), linkedSection);
+         overlay = current;
+      }
+      return current;
+   }
+
+
+   /**
+    * Returns whether the link of this section has been resolved, i.e. whether this section was merged with the
+    * linked section. Setting a new link resets this flag.
+    * 
+    * @return {@link Boolean} true if the link has been resolved, false otherwise or if there is no link.
+    */
+   public boolean isLinkResolved() {
+      return linkResolved;
+   }
+
+
+   void setLinkResolved(boolean linkResolved) {
+      this.linkResolved = linkResolved;
    }
 
 
    /**
-    * Cycles through all subsections and resolves all links. Uses resolveLink() recursively. Call it on
+    * Cycles through all subsections and resolves all links. Links of subsections are resolved before the link of
+    * their parent. Call it on the root section to resolve all links of the tree.
     */
    public void resolveAllLinks() {
-      for (int i = 0; i < sectionCount(); i++) {
-         getSection(i).resolveAllLinks();
+      resolveAllLinks(false);
+   }
+
+
+   /**
+    * Resolves all links of the tree starting at this section like {@link #resolveAllLinks()}, virtually if virtual
+    * is true, see {@link #resolveLink(boolean)}.
+    * 
+    * @param virtual
+    *            {@link Boolean} true to share the linked content instead of copying it.
+    */
+   public void resolveAllLinks(boolean virtual) {
+      TreeLock lock = treeLock();
+      if (lock == null) {
+         new LinkResolver(virtual).resolveAll(this);
+      } else {
+         lock.write(() -> {
+            new LinkResolver(virtual).resolveAll(this);
+            return null;
+         });
       }
-      this.resolveLink();
    }
 
 
@@ -880,6 +1649,12 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Integer}: the index of the added property in the properties vector or -1 if command failed.
     */
    public int add(Property property) {
+      TreeLock lock = treeLock();
+      return lock == null ? addUnlocked(property) : lock.write(() -> addUnlocked(property));
+   }
+
+
+   private int addUnlocked(Property property) {
       if (this.isRoot() && this.type == null) {
          System.out.println("! property must not be added to the root section (level == 0 && type == null)!");
          return -1;
@@ -887,6 +1662,7 @@ public class Section extends Object implements Serializable, TreeNode {
       if (property == null) {
          return -1;
       }
+      materializeLink();
       int index = indexOfProperty(property.getName());
       if (index > -1) {
          if (properties.get(index).equals(property)) {
@@ -901,6 +1677,7 @@ public class Section extends Object implements Serializable, TreeNode {
          properties.add(property);
          property.setParent(this);
       }
+      markModified();
       return propertyCount() - 1;
    }
 
@@ -977,6 +1754,12 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Boolean} true if successful, false if not.
     */
    public boolean removeProperty(String name) {
+      TreeLock lock = treeLock();
+      return lock == null ? removePropertyUnlocked(name) : lock.write(() -> removePropertyUnlocked(name));
+   }
+
+
+   private boolean removePropertyUnlocked(String name) {
       boolean result = false;
       if(isPath(name)){
          SectionPath sp = new SectionPath(name);
@@ -1004,10 +1787,18 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Boolean} :true if operation succeeded and false otherwise.
     */
    public boolean removeProperty(int index) {
-      if (properties.size() < index || index < 0) {
+      TreeLock lock = treeLock();
+      return lock == null ? removePropertyUnlocked(index) : lock.write(() -> removePropertyUnlocked(index));
+   }
+
+
+   private boolean removePropertyUnlocked(int index) {
+      materializeLink();
+      if (properties.size() <= index || index < 0) {
          return false;
       } else {
-         properties.removeElementAt(index);
+         properties.remove(index);
+         markModified();
       }
       return true;
    }
@@ -1036,7 +1827,7 @@ public class Section extends Object implements Serializable, TreeNode {
       if (properties == null) {
          return 0;
       }
-      return properties.size();
+      return propertyView().size();
    }
 
 
@@ -1048,6 +1839,13 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Property}: the property or null if index exceeds the propertyCount.
     */
    public Property getProperty(int index) {
+      TreeLock lock = treeLock();
+      return lock == null ? getPropertyUnlocked(index) : lock.read(() -> getPropertyUnlocked(index));
+   }
+
+
+   private Property getPropertyUnlocked(int index) {
+      List<Property> properties = propertyView();
       if (index < properties.size()) {
          return properties.get(index);
       } else {
@@ -1218,29 +2016,54 @@ public class Section extends Object implements Serializable, TreeNode {
          }
       }
       else{
-         Iterator<Property> iter = properties.iterator();
-         while(iter.hasNext()){
-            Property temp = iter.next();
-            if(temp.getName().equalsIgnoreCase(name)){
-               p = temp;
-            }
+         // the link is resolved outside of the read, resolving it changes the tree
+         TreeLock lock = treeLock();
+         p = lock == null ? findProperty(name) : lock.read(() -> findProperty(name));
+      }
+      if (p == null && resolveLink && link != null && !linkResolved) {
+         if (this.resolveLink()) { // search again if the link was resolved
+            p = this.getProperty(name, false);
          }
       }
-      if(p == null){
-         if (this.resolveLink())  // search again if the link was resolved
-             this.getProperty(name, true);
+      return p;
+   }
+
+
+   /**
+    * Returns the last property in this section that matches the name, ignoring the case.
+    */
+   private Property findProperty(String name) {
+      Property p = null;
+      for (Property temp : propertyView()) {
+         if (temp.getName().equalsIgnoreCase(name)) {
+            p = temp;
+         }
       }
       return p;
    }
 
 
    /**
-    * Returns all properties stored in this section.
+    * Returns all properties stored in this section. For a section with a virtual link these are its own properties
+    * followed by those of the linked section that are not hidden by an own property of the same name.
+    * <b>Note:</b> the vector is a copy. Unlike in earlier versions, adding or removing elements does not change this
+    * section; use {@link #add(Property)} and {@link #removeProperty(int)} for that, and {@link #getPropertyList()}
+    * to read the properties without copying them.
     * 
-    * @return - Vector<odMLProperty>: returns the properties Vector which may be empty.
+    * @return - Vector<odMLProperty>: a copy of the properties, which may be empty.
     */
    public Vector<Property> getProperties() {
-      return properties;
+      return new Vector<Property>(propertyView());
+   }
+
+
+   /**
+    * Returns the properties like {@link #getProperties()}, but as a read-only view instead of a copy.
+    * 
+    * @return {@link List} of {@link Property}s: an unmodifiable view of the properties, which may be empty.
+    */
+   public List<Property> getPropertyList() {
+      return Collections.unmodifiableList(propertyView());
    }
 
 
@@ -1264,12 +2087,21 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link URL}: the URL of the terminology may be null.
     */
    public URL getRepository() {
-      URL url = null;
-      if (this.repositoryURL == null && this.parent != null) {
-         url = parent.getRepository();
-      } else
-         url = this.repositoryURL;
-      return url;
+      Section section = this;
+      while (section.repositoryURL == null && section.parent != null) {
+         section = section.parent;
+      }
+      return section.repositoryURL;
+   }
+
+
+   /**
+    * Returns the repository URL stored in this section itself, without looking at its ancestors.
+    *
+    * @return {@link URL}: the locally stored repository or null.
+    */
+   URL getLocalRepository() {
+      return repositoryURL;
    }
 
 
@@ -1293,6 +2125,19 @@ public class Section extends Object implements Serializable, TreeNode {
     * 
     */
    public void merge(Section otherSection, int mergeOption) {
+      TreeLock lock = treeLock();
+      if (lock == null) {
+         mergeUnlocked(otherSection, mergeOption);
+      } else {
+         lock.write(() -> {
+            mergeUnlocked(otherSection, mergeOption);
+            return null;
+         });
+      }
+   }
+
+
+   private void mergeUnlocked(Section otherSection, int mergeOption) {
       if (otherSection == null) {
          return;
       }
@@ -1314,6 +2159,7 @@ public class Section extends Object implements Serializable, TreeNode {
          System.out.println("Section.merge error: cannot merge sections mapping to different sections!");
          return;
       }
+      materializeLink();
       for (int i = 0; i < otherSection.propertyCount(); i++) {
          Property temp = null;
          try {
@@ -1409,7 +2255,7 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return boolean 
     */
    public boolean containsSection(String name){
-      Iterator<Section> iter = subsections.iterator();
+      Iterator<Section> iter = sectionView().iterator();
       while (iter.hasNext()){
          if(iter.next().getName().equalsIgnoreCase(name)){
             return true;
@@ -1442,6 +2288,7 @@ public class Section extends Object implements Serializable, TreeNode {
    public int indexOfProperty(String propertyName) {
       int index = -1;
       if (properties != null) {
+         List<Property> properties = propertyView();
          for (int i = 0; i < properties.size(); i++) {
             if (properties.get(i).getName().equalsIgnoreCase(propertyName)) {
                index = i;
@@ -1464,10 +2311,11 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public int indexOfSection(String sectionName, String sectionType) {
       int index = -1;
-      if (subsections != null) {
-         for (int i = 0; i < subsections.size(); i++) {
-            if (subsections.get(i).getType().equalsIgnoreCase(sectionType)
-                  && subsections.get(i).getName().equalsIgnoreCase(sectionName)) {
+      List<Section> sections = sectionView();
+      if (sections != null) {
+         for (int i = 0; i < sections.size(); i++) {
+            if (sections.get(i).getType().equalsIgnoreCase(sectionType)
+                  && sections.get(i).getName().equalsIgnoreCase(sectionName)) {
                index = i;
                break;
             }
@@ -1484,9 +2332,10 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public int indexOfSection(String sectionName) {
       int index = -1;
-      if (subsections != null) {
-         for (int i = 0; i < subsections.size(); i++) {
-            if (subsections.get(i).getName().equalsIgnoreCase(sectionName)) {
+      List<Section> sections = sectionView();
+      if (sections != null) {
+         for (int i = 0; i < sections.size(); i++) {
+            if (sections.get(i).getName().equalsIgnoreCase(sectionName)) {
                index = i;
                break;
             }
@@ -1525,29 +2374,82 @@ public class Section extends Object implements Serializable, TreeNode {
 
 
    /**
-    * Creates a copy of this section via serialization. This copy is an exact doublet
+    * Creates a copy of this section and its subtree in memory. This copy is an exact doublet without a parent; it
+    * refers to the same terminology as this section. Content seen through virtual links is copied, the copy does
+    * not depend on the linked sections.
     * 
     * @return Section: returns an exact copy of the section
-    * @throws IOException
-    * @throws ClassNotFoundException
+    * @throws IOException never, declared for compatibility with the former serialization based copy.
+    * @throws ClassNotFoundException never, declared for compatibility.
     */
    public Section copy() throws IOException, ClassNotFoundException {
-      File tempFile = File.createTempFile("section", ".ser");
-      tempFile.deleteOnExit();
-      ObjectOutputStream objOut = new ObjectOutputStream(new BufferedOutputStream(
-            new FileOutputStream(tempFile)));
-      objOut.writeObject(this);
-      objOut.close();
-
-      ObjectInputStream objIn = new ObjectInputStream(new BufferedInputStream(new FileInputStream(
-            tempFile)));
-      Section copy = (Section) objIn.readObject();
-      objIn.close();
+      Section copy = copyNode(null);
+      Deque<Section[]> pending = new ArrayDeque<Section[]>();
+      pending.push(new Section[] { this, copy });
+      while (!pending.isEmpty()) {
+         Section[] pair = pending.pop();
+         for (Section child : pair[0].sectionView()) {
+            Section childCopy = child.copyNode(pair[1]);
+            pair[1].subsections.add(childCopy);
+            pending.push(new Section[] { child, childCopy });
+         }
+      }
       copy.setParent(null);
       return copy;
    }
 
 
+   /**
+    * Creates an immutable snapshot of this section and its subtree that can be read by several threads without
+    * locking, see {@link SectionSnapshot}. Content seen through virtual links is included. The tree must not be
+    * changed while the snapshot is taken; {@link SectionSnapshot#thaw()} creates a mutable tree again.
+    *
+    * @return {@link SectionSnapshot}: the snapshot.
+    */
+   public SectionSnapshot freeze() {
+      TreeLock lock = treeLock();
+      return lock == null ? SectionSnapshot.of(this) : lock.readLocked(() -> SectionSnapshot.of(this));
+   }
+
+
+   /**
+    * Copies the fields and properties of this section, but not its subsections.
+    */
+   private Section copyNode(Section parent) {
+      Section copy;
+      try {
+         copy = (Section) super.clone();
+      } catch (CloneNotSupportedException e) {
+         throw new AssertionError(e);
+      }
+      copy.parent = parent;
+      copy.date = date == null ? null : (Date) date.clone();
+      List<Property> properties = propertyView();
+      copy.properties = new ArrayList<Property>(properties.size());
+      for (Property property : properties) {
+         copy.properties.add(property.copy(copy));
+      }
+      copy.linkedSection = null;
+      copy.overlay = null;
+      copy.ownSummary = null;
+      copy.subsectionSummary = null;
+      copy.subsections = new ArrayList<Section>();
+      copy.loader = null;
+      copy.stored = null;
+      copy.loading = false;
+      copy.journal = null;
+      copy.treeLock = null;
+      return copy;
+   }
+
+
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      // serialize lazily read sections completely
+      sections();
+      out.defaultWriteObject();
+   }
+
+
    /**
     * Sets the mapping to the given one.
     * 
@@ -1557,6 +2459,7 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public void setMapping(URL mapping) {
       this.mapping = mapping;
+      markModified();
    }
 
 
@@ -1582,6 +2485,7 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public void removeMapping() {
       this.mapping = null;
+      markModified();
    }
 
 
@@ -1602,32 +2506,19 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link URL} the repository url if set locally or by this section's parent or null if none found.
     */
    public URL findRepositoryURL() {
-      if (this.repositoryURL != null) {
-         return this.repositoryURL;
-      } else {
-         if (this.parent != null) {
-            return this.getParent().findRepositoryURL();
-         } else {
-            return null;
-         }
-      }
+      return getRepository();
    }
 
 
    /**
-    * Validate the whole metadata tree against the terminologies.
+    * Validate the whole metadata tree against the terminologies. Use a {@link Validator} to validate large trees in
+    * parallel and to obtain a {@link ValidationReport} instead of printed messages.
     */
    public void validateTree() {
       System.out.println("Starting validation ...");
-      getRootSection().validateRecursively();
-   }
-
-
-   private void validateRecursively() {
-      this.validate();
-      for (int i = 0; i < sectionCount(); i++) {
-         getSection(i).validate();
-      }
+      Section root = getRootSection();
+      root.validate();
+      root.descendants().forEachOrdered(Section::validate);
    }
 
 
@@ -1639,15 +2530,28 @@ public class Section extends Object implements Serializable, TreeNode {
    public void validate() {
       System.out.println("Validating section " + this.getPath()
             + " against terminology located in repository "
-            + findRepositoryURL().toString());
-      findTerminology();
-      if (terminology != null) {
-         validateSection();
-         for (int i = 0; i < propertyCount(); i++) {
-            Property termProp = terminology.getProperty(getProperty(i).getName());
-            if (termProp != null) {
-               getProperty(i).validate(termProp);
-            }
+            + findRepositoryURL());
+      validate(new ValidationReport(true));
+   }
+
+
+   /**
+    * Validates this section and its properties against the related terminology and adds the findings to the
+    * report. Sections sharing a terminology may be validated concurrently.
+    * 
+    * @param report {@link ValidationReport}: the report receiving the findings.
+    */
+   void validate(ValidationReport report) {
+      report.sectionValidated();
+      if (!findTerminology(report)) {
+         return;
+      }
+      validateSection(report);
+      CompiledTerminology table = TerminologyManager.instance().compile(terminology);
+      for (int i = 0; i < propertyCount(); i++) {
+         CompiledTerminology.Entry termProp = table.get(getProperty(i).getName());
+         if (termProp != null) {
+            getProperty(i).validate(termProp, report);
          }
       }
    }
@@ -1658,15 +2562,16 @@ public class Section extends Object implements Serializable, TreeNode {
     * If there is no terminology already stored, it tries to load it from 
     * the repository.
     * 
+    * @param report {@link ValidationReport}: receives a warning if no terminology is found.
     * @return {@link Boolean} true, if a terminology is present, false otherwise.
     */
-   private boolean findTerminology() {
+   private boolean findTerminology(ValidationReport report) {
       boolean success = true;
       if (terminology == null && findRepositoryURL() != null) {
          terminology = TerminologyManager.instance().loadTerminology(getRepository(), this.type);
       }
       if (this.terminology == null) {
-         System.out.println("Validation of section: " + this.getPath()
+         report.add(ValidationReport.Severity.WARNING, this.getPath(), "Validation of section: " + this.getPath()
                + " aborted! Could not locate a terminology equivalent!");
          success = false;
       }
@@ -1710,17 +2615,18 @@ public class Section extends Object implements Serializable, TreeNode {
 
    /**
     * Removes those Properties that have not value in them. If this section isTerminology 
-    * nothing will be removed.
+    * nothing will be removed. Properties seen through a virtual link are left to the linked section.
     * 
     */
    private void removeEmptyProperties() {
       if (this.isTerminology) {
          return;
       }
-      for (int i = propertyCount() - 1; i >= 0; i--) {
-         this.getProperty(i).removeEmptyValues();
-         if (this.getProperty(i).isEmpty()) {
-            this.removeProperty(i);
+      for (int i = properties.size() - 1; i >= 0; i--) {
+         properties.get(i).removeEmptyValues();
+         if (properties.get(i).isEmpty()) {
+            properties.remove(i);
+            markModified();
          }
       }
    }
@@ -1734,10 +2640,12 @@ public class Section extends Object implements Serializable, TreeNode {
       if (this.isTerminology) {
          return;
       }
-      for (int i = sectionCount() - 1; i >= 0; i--) {
-         getSection(i).removeEmptyProperties();
-         if (getSection(i).isEmpty())
-            this.removeSection(i);
+      List<Section> sections = sections();
+      for (int i = sections.size() - 1; i >= 0; i--) {
+         sections.get(i).removeEmptyProperties();
+         if (sections.get(i).isEmpty()) {
+            subsectionRemoved(i, sections.remove(i));
+         }
       }
    }
 
@@ -1756,8 +2664,9 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    private void compareToLink() {
       Section linkSection = this.getLinkedSection();
-      for (int i = propertyCount() - 1; i >= 0; i--) {
-         Property mine = this.getProperty(i);
+      // properties seen through a virtual link are those of the linked section, only the own ones are compared
+      for (int i = properties.size() - 1; i >= 0; i--) {
+         Property mine = properties.get(i);
          Property his = linkSection.getProperty(mine.getName());
          if (his != null) {
             for (int j = mine.valueCount() - 1; j >= 0; j--) {
@@ -1771,7 +2680,8 @@ public class Section extends Object implements Serializable, TreeNode {
             }
          }
          if (mine.valueCount() == 0) {
-            this.removeProperty(i);
+            properties.remove(i);
+            markModified();
          }
       }
    }
@@ -1798,7 +2708,7 @@ public class Section extends Object implements Serializable, TreeNode {
             + ") on level: " + level
             + "; complete path: " + this.getPath() + "\n\t- ");
 
-      if (this.subsections != null && this.sectionCount() != 0 && this.getSections() != null) {
+      if (sections() != null && this.sectionCount() != 0 && this.getSections() != null) {
          info += (this.sectionCount() + " subsection(s) named: ");
          for (String name : this.subsectionsNames()) {
             info += name + ", ";
@@ -1833,7 +2743,7 @@ public class Section extends Object implements Serializable, TreeNode {
       info += ("definition: \t" + this.definition + "\n");
       info += ("\n\t- repository: \t" + this.repositoryURL + "\n\t- mapping: \t" + this.mapping);
       info += ("\n\t- ");
-      if (this.subsections != null && this.sectionCount() != 0 && this.getSections() != null) {
+      if (sections() != null && this.sectionCount() != 0 && this.getSections() != null) {
          info += (this.sectionCount() + " subsection(s) named: ");
          for (String name : this.subsectionsNames()) {
             info += name + ", ";
@@ -1864,19 +2774,21 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link String} returns the path as a String, different Sections / levels separated with '/'
     */
    public String getPath() {
-      String completePath = "";
-      if (this.getParent() != null) {
-         completePath = parent.getPath() + "/" + this.getName();
+      Deque<String> names = new ArrayDeque<String>();
+      for (Section section = this; section.getParent() != null; section = section.getParent()) {
+         names.push(section.getName());
       }
-      return completePath;
+      StringBuilder completePath = new StringBuilder();
+      for (String name : names) {
+         completePath.append("/").append(name);
+      }
+      return completePath.toString();
    }
 
 
    private Vector<TreeNode> getTreeNodeSections() {
       Vector<TreeNode> tnSections = new Vector<TreeNode>();
-      for (int i = 0; i < (this.subsections).size(); i++) {
-         tnSections.add(this.subsections.elementAt(i));
-      }
+      tnSections.addAll(sectionView());
       return tnSections;
    }
 
@@ -1995,10 +2907,16 @@ public class Section extends Object implements Serializable, TreeNode {
    public void setLink(String link, boolean ignore) {
       if (link == null) {
          this.link = null;
+         this.linkResolved = false;
+         dropLinkedSection();
+         markModified();
          return;
       }
       if (ignore) {
          this.link = link;
+         this.linkResolved = false;
+         dropLinkedSection();
+         markModified();
       } else {
 
          if (!link.startsWith("/")) {
@@ -2019,6 +2937,9 @@ public class Section extends Object implements Serializable, TreeNode {
             return;
          }
          this.link = link;
+         this.linkResolved = false;
+         dropLinkedSection();
+         markModified();
       }
    }
 
@@ -2042,6 +2963,7 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public void setInclude(String include) {
       this.include = include;
+      markModified();
    }
 
 
@@ -2066,6 +2988,14 @@ public class Section extends Object implements Serializable, TreeNode {
          System.out.println("Author information is only allowed in Root sections. Otherwise it will be ignored.");
       }
       this.author = author;
+      documentChanged();
+   }
+
+
+   private void documentChanged() {
+      if (journal != null && parent == null) {
+         journal.documentChanged(this);
+      }
    }
 
 
@@ -2090,6 +3020,7 @@ public class Section extends Object implements Serializable, TreeNode {
          System.out.println("Version information is only allowed in Root sections. Otherwise it will be ignored.");
       }
       this.version = version;
+      documentChanged();
    }
 
 
@@ -2115,6 +3046,7 @@ public class Section extends Object implements Serializable, TreeNode {
          System.out.println("Version information is only allowed in Root sections. Otherwise it will be ignored.");
       }
       this.date = date;
+      documentChanged();
    }
 
 
@@ -2154,6 +3086,8 @@ public class Section extends Object implements Serializable, TreeNode {
          this.merge(includeSection, Section.MERGE_THIS_OVERRIDES_OTHER);
       }
       this.include = null;
+      ownSummary = null;
+      subtreeChanged(parent);
    }
 
    private Section locateIncludeSection(Section temp, String includePath) {
@@ -2212,10 +3146,17 @@ public class Section extends Object implements Serializable, TreeNode {
     * call this function on the rootSection.
     */
    public void loadAllIncludes() {
-      this.loadInclude();
-      for (int i = 0; i < sectionCount(); i++) {
-         this.getSection(i).loadAllIncludes();
-      }
+      // the include of a section is loaded before its subsections are read, they may come from the include
+      walkOwn(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            if (section.getTreeIncludeCount() == 0) {
+               return Result.SKIP_SUBSECTIONS;
+            }
+            section.loadInclude();
+            return Result.CONTINUE;
+         }
+      });
    }
 
 
@@ -2249,11 +3190,9 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Section} the root section.
     */
    public Section getRootSection() {
-      Section root = null;
-      if (this.getParent()== null) {
-         root = this;
-      } else {
-         root = parent.getRootSection();
+      Section root = this;
+      while (root.getParent() != null) {
+         root = root.getParent();
       }
       return root;
    }
@@ -2265,15 +3204,7 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Boolean} true if there are includes, false otherwise.
     */
    public boolean containsIncludes() {
-      if (this.include != null && !this.include.isEmpty()) {
-         return true;
-      }
-      for (int i = 0; i < sectionCount(); i++) {
-         if (getSection(i).containsIncludes()) {
-            return true;
-         }
-      }
-      return false;
+      return getTreeIncludeCount() > 0;
    }
 
 
@@ -2283,15 +3214,7 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Boolean} true if there are links.
     */
    public boolean containsLinks() {
-      if (this.link != null && !this.link.isEmpty()) {
-         return true;
-      }
-      for (int i = 0; i < sectionCount(); i++) {
-         if (getSection(i).containsLinks()) {
-            return true;
-         }
-      }
-      return false;
+      return getTreeLinkCount() > 0;
    }
 
 
@@ -2301,20 +3224,7 @@ public class Section extends Object implements Serializable, TreeNode {
     * @return {@link Boolean} true if mapping information is present, false otherwise.
     */
    public boolean containsMappings() {
-      if (this.mapping != null) {
-         return true;
-      }
-      for (int i = 0; i < propertyCount(); i++) {
-         if (getProperty(i).getMapping() != null) {
-            return true;
-         }
-      }
-      for (int i = 0; i < sectionCount(); i++) {
-         if (getSection(i).containsMappings()) {
-            return true;
-         }
-      }
-      return false;
+      return getTreeMappingCount() > 0;
    }
 
 
@@ -2335,6 +3245,7 @@ public class Section extends Object implements Serializable, TreeNode {
     */
    public void setAsTerminology(boolean isTerminology) {
       this.isTerminology = isTerminology;
+      markModified();
    }
 
    /**
@@ -2353,6 +3264,38 @@ public class Section extends Object implements Serializable, TreeNode {
      */
     @Override
     public int hashCode() {
+        // the hash of a section depends on the hashes of its subsections, which are combined like the
+        // hash of a list while the subsections are left
+        final Deque<int[]> sectionHashes = new ArrayDeque<int[]>();
+        final int[] result = new int[1];
+        walk(new SectionVisitor() {
+            @Override
+            public Result preVisit(Section section) {
+                sectionHashes.push(new int[] { 1 });
+                return Result.CONTINUE;
+            }
+
+
+            @Override
+            public Result postVisit(Section section) {
+                int hash = section.hashCode(sectionHashes.pop()[0]);
+                if (sectionHashes.isEmpty()) {
+                    result[0] = hash;
+                } else {
+                    int[] parentHash = sectionHashes.peek();
+                    parentHash[0] = 31 * parentHash[0] + hash;
+                }
+                return Result.CONTINUE;
+            }
+        });
+        return result[0];
+    }
+
+
+    /**
+     * Returns the hash of this section given the combined hash of its subsections.
+     */
+    private int hashCode(int sectionsHash) {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((author == null) ? 0 : author.hashCode());
@@ -2369,10 +3312,10 @@ public class Section extends Object implements Serializable, TreeNode {
         // cannot use parent - would cause infinite loop
         //result = prime * result + ((parent == null) ? 0 : parent.hashCode());
         
-        result = prime * result + ((properties == null) ? 0 : properties.hashCode());
+        result = prime * result + ((properties == null) ? 0 : propertyView().hashCode());
         result = prime * result + ((reference == null) ? 0 : reference.hashCode());
         result = prime * result + ((repositoryURL == null) ? 0 : repositoryURL.hashCode());
-        result = prime * result + ((subsections == null) ? 0 : subsections.hashCode());
+        result = prime * result + sectionsHash;
         result = prime * result + ((terminology == null) ? 0 : terminology.hashCode());
         result = prime * result + ((type == null) ? 0 : type.hashCode());
         result = prime * result + ((version == null) ? 0 : version.hashCode());
@@ -2388,7 +3331,29 @@ public class Section extends Object implements Serializable, TreeNode {
         if (this == obj) { return true; }
         if (obj == null) { return false; }
         if (getClass() != obj.getClass()) { return false; }
-        Section other = (Section) obj;
+        // compare the trees pairwise instead of letting the subsection vectors compare their elements recursively
+        Deque<Section[]> pairs = new ArrayDeque<Section[]>();
+        pairs.push(new Section[] { this, (Section) obj });
+        while (!pairs.isEmpty()) {
+            Section[] pair = pairs.pop();
+            Section section = pair[0], other = pair[1];
+            if (section == other) { continue; }
+            if (section == null || other == null || section.getClass() != other.getClass()) { return false; }
+            if (!section.equalsIgnoringSections(other)) { return false; }
+            List<Section> sections = section.sectionView(), otherSections = other.sectionView();
+            if (sections.size() != otherSections.size()) { return false; }
+            for (int i = sections.size() - 1; i >= 0; i--) {
+                pairs.push(new Section[] { sections.get(i), otherSections.get(i) });
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Compares the fields of this section except for the subsections.
+     */
+    private boolean equalsIgnoringSections(Section other) {
         if (author == null) {
             if (other.author != null) { return false; }
         } else if (!author.equals(other.author)) { return false; }
@@ -2423,16 +3388,13 @@ public class Section extends Object implements Serializable, TreeNode {
         
         if (properties == null) {
             if (other.properties != null) { return false; }
-        } else if (!properties.equals(other.properties)) { return false; }
+        } else if (!propertyView().equals(other.propertyView())) { return false; }
         if (reference == null) {
             if (other.reference != null) { return false; }
         } else if (!reference.equals(other.reference)) { return false; }
         if (repositoryURL == null) {
             if (other.repositoryURL != null) { return false; }
         } else if (!repositoryURL.equals(other.repositoryURL)) { return false; }
-        if (subsections == null) {
-            if (other.subsections != null) { return false; }
-        } else if (!subsections.equals(other.subsections)) { return false; }
         if (terminology == null) {
             if (other.terminology != null) { return false; }
         } else if (!terminology.equals(other.terminology)) { return false; }
@@ -2447,6 +3409,31 @@ public class Section extends Object implements Serializable, TreeNode {
 
 
     public Map<String, Object> getMap() {
+        // the lists the maps of the subsections of the sections on the current path are added to
+        final Deque<List<Map<String, Object>>> sectionLists = new ArrayDeque<List<Map<String, Object>>>();
+        final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(1);
+        sectionLists.push(result);
+        walk(new SectionVisitor() {
+            @Override
+            public Result preVisit(Section section) {
+                ArrayList<Map<String, Object>> _sections = new ArrayList<Map<String, Object>>();
+                sectionLists.peek().add(section.getNodeMap(_sections));
+                sectionLists.push(_sections);
+                return Result.CONTINUE;
+            }
+
+
+            @Override
+            public Result postVisit(Section section) {
+                sectionLists.pop();
+                return Result.CONTINUE;
+            }
+        });
+        return result.get(0);
+    }
+
+
+    private Map<String, Object> getNodeMap(List<Map<String, Object>> _sections) {
         Map<String, Object> self = new HashMap<String, Object>();
         self.put("type", type);
         self.put("definition", definition);
@@ -2457,11 +3444,52 @@ public class Section extends Object implements Serializable, TreeNode {
         self.put("repository", repositoryURL);
         self.put("mapping", mapping);
         ArrayList<Map<String, Object>> _properties = new ArrayList<Map<String, Object>>();
-        for(Property property:properties) _properties.add(property.getMap());
+        for(Property property:propertyView()) _properties.add(property.getMap());
         self.put("property", _properties);
-        ArrayList<Map<String, Object>> _sections = new ArrayList<Map<String, Object>>();
-        for (Section section: subsections) _sections.add(section.getMap());
         self.put("section", _sections);
         return self;
     }
+
+
+    /**
+     * The properties and subsections of a section with a virtual link: its own ones followed by those of the
+     * linked section that are not hidden by own ones, in the order a merge would add them.
+     */
+    private static final class Overlay {
+
+        private final long                stamp;
+        private final ArrayList<Property> properties;
+        private final ArrayList<Section>  sections;
+
+
+        Overlay(long stamp, List<Property> ownProperties, List<Section> ownSections, Section target) {
+            this.stamp = stamp;
+            properties = new ArrayList<Property>(ownProperties);
+            Set<String> names = new HashSet<String>();
+            for (Property property : ownProperties) {
+                names.add(property.getName().toLowerCase());
+            }
+            for (Property property : target.propertyView()) {
+                if (names.add(property.getName().toLowerCase())) {
+                    properties.add(property);
+                }
+            }
+            sections = new ArrayList<Section>(ownSections);
+            Set<String> keys = new HashSet<String>();
+            for (Section section : ownSections) {
+                keys.add(key(section));
+            }
+            for (Section section : target.sectionView()) {
+                if (keys.add(key(section))) {
+                    sections.add(section);
+                }
+            }
+        }
+
+
+        private static String key(Section section) {
+            return String.valueOf(section.getName()).toLowerCase() + "\n" + String.valueOf(section.getType())
+                    .toLowerCase();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,32 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Creates the subsections of a lazily read {@link Section} when they are first accessed.
+ *
+ * @since 10.2026
+ *
+ */
+interface SectionLoader {
+
+   /**
+    * Adds the subsections to the given section. Called at most once per section.
+    *
+    * @param section {@link Section}: the section whose subsections are needed.
+    * @throws Exception if the subsections can not be read.
+    */
+   void loadSubsections(Section section) throws Exception;
+}
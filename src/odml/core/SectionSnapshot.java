@@ -0,0 +1,648 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * An immutable copy of a tree of sections, see {@link Section#freeze()}. All fields are final, subsections and
+ * properties are kept in arrays that are never changed and sections with many children index them by name when the
+ * snapshot is created. A snapshot can thus be published to and read by any number of threads without locking, e.g.
+ * through a volatile field that a writer replaces with a new snapshot after each change.
+ *
+ * Snapshots are changed by creating new ones: {@link #withProperty(PropertySnapshot)},
+ * {@link #withSection(SectionSnapshot)}, the corresponding removals and {@link #update(String, UnaryOperator)} return
+ * a new snapshot that shares all unchanged subtrees with this one. Therefore snapshots have no parent; paths are
+ * relative to the snapshot they are passed to. {@link #thaw()} creates a mutable tree again.
+ *
+ * @since 10.2026
+ *
+ */
+public final class SectionSnapshot {
+
+   // children are indexed by name only if there are more of them, fewer are searched
+   private static final int                INDEX_THRESHOLD = 8;
+   private static final SectionSnapshot[]  NO_SECTIONS     = new SectionSnapshot[0];
+   private static final PropertySnapshot[] NO_PROPERTIES   = new PropertySnapshot[0];
+
+   private final String                    name, type, definition, reference, link, include, author, version;
+   private final URL                       repository, mapping, fileUrl;
+   private final Date                      date;
+   private final boolean                   terminology;
+   private final SectionSnapshot[]         sections;
+   private final PropertySnapshot[]        properties;
+   // lower case names to the index of the first section and of the last property of that name, as in
+   // Section.getSection(String) and Section.getProperty(String); null if there are few children
+   private final Map<String, Integer>      sectionIndex, propertyIndex;
+
+
+   private SectionSnapshot(Section section, SectionSnapshot[] sections, PropertySnapshot[] properties) {
+      name = section.getName();
+      type = section.getType();
+      definition = section.getDefinition();
+      reference = section.getReference();
+      link = section.getLink();
+      include = section.getInclude();
+      author = section.getDocumentAuthor();
+      version = section.getDocumentVersion();
+      repository = section.getRepository();
+      mapping = section.getMapping();
+      fileUrl = section.getFileUrl();
+      date = section.getDocumentDate() == null ? null : new Date(section.getDocumentDate().getTime());
+      terminology = section.isTerminology();
+      this.sections = sections;
+      this.properties = properties;
+      sectionIndex = index(sections, false);
+      propertyIndex = index(properties, true);
+   }
+
+
+   private SectionSnapshot(SectionSnapshot fields, SectionSnapshot[] sections, PropertySnapshot[] properties) {
+      name = fields.name;
+      type = fields.type;
+      definition = fields.definition;
+      reference = fields.reference;
+      link = fields.link;
+      include = fields.include;
+      author = fields.author;
+      version = fields.version;
+      repository = fields.repository;
+      mapping = fields.mapping;
+      fileUrl = fields.fileUrl;
+      date = fields.date;
+      terminology = fields.terminology;
+      this.sections = sections;
+      this.properties = properties;
+      sectionIndex = sections == fields.sections ? fields.sectionIndex : index(sections, false);
+      propertyIndex = properties == fields.properties ? fields.propertyIndex : index(properties, true);
+   }
+
+
+   /**
+    * Copies the tree starting at the given section, including the content seen through virtual links. Sections and
+    * properties seen at several places through virtual links are copied once and shared in the snapshot. The tree
+    * must not be changed while it is copied.
+    */
+   static SectionSnapshot of(Section start) {
+      final Map<Section, SectionSnapshot> frozen = new IdentityHashMap<Section, SectionSnapshot>();
+      final Map<Property, PropertySnapshot> frozenProperties = new IdentityHashMap<Property, PropertySnapshot>();
+      final Deque<List<SectionSnapshot>> children = new ArrayDeque<List<SectionSnapshot>>();
+      children.push(new ArrayList<SectionSnapshot>(1));
+      start.walk(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            SectionSnapshot done = frozen.get(section);
+            if (done != null) {
+               children.peek().add(done);
+               return Result.SKIP_SUBSECTIONS;
+            }
+            children.push(new ArrayList<SectionSnapshot>(section.sectionCount()));
+            return Result.CONTINUE;
+         }
+
+
+         @Override
+         public Result postVisit(Section section) {
+            List<SectionSnapshot> subsections = children.pop();
+            List<Property> own = section.propertyView();
+            PropertySnapshot[] properties = own.isEmpty() ? NO_PROPERTIES : new PropertySnapshot[own.size()];
+            for (int i = 0; i < properties.length; i++) {
+               properties[i] = frozenProperties.computeIfAbsent(own.get(i), PropertySnapshot::of);
+            }
+            SectionSnapshot snapshot = new SectionSnapshot(section, subsections.toArray(NO_SECTIONS), properties);
+            frozen.put(section, snapshot);
+            children.peek().add(snapshot);
+            return Result.CONTINUE;
+         }
+      });
+      return children.pop().get(0);
+   }
+
+
+   private static Map<String, Integer> index(Object[] children, boolean lastWins) {
+      if (children.length <= INDEX_THRESHOLD) {
+         return null;
+      }
+      Map<String, Integer> index = new HashMap<String, Integer>(children.length * 2);
+      for (int i = 0; i < children.length; i++) {
+         String key = key(children[i] instanceof SectionSnapshot ? ((SectionSnapshot) children[i]).name
+               : ((PropertySnapshot) children[i]).getName());
+         if (lastWins) {
+            index.put(key, i);
+         } else {
+            index.putIfAbsent(key, i);
+         }
+      }
+      return index;
+   }
+
+
+   private static String key(String name) {
+      return name == null ? "" : name.toLowerCase(Locale.ROOT);
+   }
+
+
+   /**
+    * Creates a new, mutable tree with the content of this snapshot. The returned section has no parent.
+    *
+    * @return {@link Section}: the root of the new tree.
+    */
+   public Section thaw() {
+      Section root = thawNode();
+      Deque<SectionSnapshot> pending = new ArrayDeque<SectionSnapshot>();
+      Deque<Section> parents = new ArrayDeque<Section>();
+      // children are pushed in reverse order so that each parent receives them in document order
+      for (int i = sections.length - 1; i >= 0; i--) {
+         pending.push(sections[i]);
+         parents.push(root);
+      }
+      while (!pending.isEmpty()) {
+         SectionSnapshot snapshot = pending.pop();
+         Section section = snapshot.thawNode();
+         parents.pop().add(section);
+         for (int i = snapshot.sections.length - 1; i >= 0; i--) {
+            pending.push(snapshot.sections[i]);
+            parents.push(section);
+         }
+      }
+      return root;
+   }
+
+
+   private Section thawNode() {
+      Section section = new Section();
+      if (name != null) {
+         section.setName(name);
+      }
+      if (type != null) {
+         section.setType(type);
+      }
+      section.setReference(reference);
+      section.setDefinition(definition);
+      section.setRepository(repository);
+      section.setMapping(mapping);
+      section.setLink(link, true);
+      section.setInclude(include);
+      section.setAsTerminology(terminology);
+      section.setFileUrl(fileUrl);
+      if (author != null) {
+         section.setDocumentAuthor(author);
+      }
+      if (version != null) {
+         section.setDocumentVersion(version);
+      }
+      if (date != null) {
+         section.setDocumentDate(new Date(date.getTime()));
+      }
+      for (PropertySnapshot property : properties) {
+         section.add(property.thaw());
+      }
+      return section;
+   }
+
+
+   /**
+    * @return {@link String}: the section name.
+    */
+   public String getName() {
+      return name;
+   }
+
+
+   /**
+    * @return {@link String}: the section type.
+    */
+   public String getType() {
+      return type;
+   }
+
+
+   /**
+    * @return {@link String}: the definition, may be null.
+    */
+   public String getDefinition() {
+      return definition;
+   }
+
+
+   /**
+    * @return {@link String}: the reference, may be null.
+    */
+   public String getReference() {
+      return reference;
+   }
+
+
+   /**
+    * @return {@link String}: the link of the section, may be null.
+    */
+   public String getLink() {
+      return link;
+   }
+
+
+   /**
+    * @return {@link String}: the include of the section, may be null.
+    */
+   public String getInclude() {
+      return include;
+   }
+
+
+   /**
+    * @return {@link URL}: the terminology repository, may be null.
+    */
+   public URL getRepository() {
+      return repository;
+   }
+
+
+   /**
+    * @return {@link URL}: the mapping of the section, may be null.
+    */
+   public URL getMapping() {
+      return mapping;
+   }
+
+
+   /**
+    * @return {@link URL}: the file the tree was read from, may be null.
+    */
+   public URL getFileUrl() {
+      return fileUrl;
+   }
+
+
+   /**
+    * @return boolean: whether the section was part of a terminology.
+    */
+   public boolean isTerminology() {
+      return terminology;
+   }
+
+
+   /**
+    * @return {@link String}: the document author if this snapshot was taken of a root section, may be null.
+    */
+   public String getDocumentAuthor() {
+      return author;
+   }
+
+
+   /**
+    * @return {@link String}: the document version if this snapshot was taken of a root section, may be null.
+    */
+   public String getDocumentVersion() {
+      return version;
+   }
+
+
+   /**
+    * @return {@link Date}: a copy of the document date if this snapshot was taken of a root section, may be null.
+    */
+   public Date getDocumentDate() {
+      return date == null ? null : new Date(date.getTime());
+   }
+
+
+   /**
+    * @return int: the number of subsections.
+    */
+   public int sectionCount() {
+      return sections.length;
+   }
+
+
+   /**
+    * @param index int: the index of the subsection.
+    * @return {@link SectionSnapshot}: the subsection or null if the index is out of range.
+    */
+   public SectionSnapshot getSection(int index) {
+      if (index < 0 || index >= sections.length) {
+         return null;
+      }
+      return sections[index];
+   }
+
+
+   /**
+    * Returns the first subsection of the given name or, if the name is a path like "a/b", the section found by
+    * following it. Paths are relative to this snapshot, a leading "/" is ignored. Matching is case-insensitive.
+    *
+    * @param path {@link String}: the name or path.
+    * @return {@link SectionSnapshot}: the section or null if there is none.
+    */
+   public SectionSnapshot getSection(String path) {
+      if (path == null) {
+         return null;
+      }
+      SectionSnapshot current = this;
+      for (String name : path.split("/")) {
+         if (name.isEmpty()) {
+            continue;
+         }
+         int index = current.indexOfSection(name);
+         if (index == -1) {
+            return null;
+         }
+         current = current.sections[index];
+      }
+      return current;
+   }
+
+
+   /**
+    * Returns the index of the first subsection of the given name.
+    *
+    * @param name {@link String}: the section name, matching is case-insensitive.
+    * @return int: the index or -1 if there is no such subsection.
+    */
+   public int indexOfSection(String name) {
+      if (sectionIndex != null) {
+         Integer index = sectionIndex.get(key(name));
+         return index == null ? -1 : index;
+      }
+      for (int i = 0; i < sections.length; i++) {
+         if (sections[i].name != null && sections[i].name.equalsIgnoreCase(name)) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+
+   /**
+    * @return {@link List} of {@link SectionSnapshot}s: an unmodifiable list of the subsections.
+    */
+   public List<SectionSnapshot> getSections() {
+      return Collections.unmodifiableList(Arrays.asList(sections));
+   }
+
+
+   /**
+    * Returns the subsections of the given type like {@link Section#getSectionsByType(String)}.
+    *
+    * @param type {@link String}: the section type.
+    * @return {@link List} of {@link SectionSnapshot}s: the matching subsections, may be empty.
+    */
+   public List<SectionSnapshot> getSectionsByType(String type) {
+      List<SectionSnapshot> found = new ArrayList<SectionSnapshot>();
+      for (SectionSnapshot section : sections) {
+         if (section.hasType(type)) {
+            found.add(section);
+         }
+      }
+      return found;
+   }
+
+
+   /**
+    * Finds all sections of the given type below this section like {@link Section#findSectionsByType(String)}.
+    *
+    * @param type {@link String}: the section type.
+    * @return {@link List} of {@link SectionSnapshot}s: the matching sections, may be empty.
+    */
+   public List<SectionSnapshot> findSectionsByType(String type) {
+      List<SectionSnapshot> found = new ArrayList<SectionSnapshot>();
+      Deque<SectionSnapshot> pending = new ArrayDeque<SectionSnapshot>();
+      pending.push(this);
+      while (!pending.isEmpty()) {
+         SectionSnapshot section = pending.pop();
+         found.addAll(section.getSectionsByType(type));
+         for (int i = section.sections.length - 1; i >= 0; i--) {
+            pending.push(section.sections[i]);
+         }
+      }
+      return found;
+   }
+
+
+   private boolean hasType(String type) {
+      if (this.type == null) {
+         return false;
+      }
+      int slash = this.type.indexOf("/");
+      return this.type.equalsIgnoreCase(type) || (slash != -1 && this.type.substring(0, slash).equalsIgnoreCase(type));
+   }
+
+
+   /**
+    * @return int: the number of properties.
+    */
+   public int propertyCount() {
+      return properties.length;
+   }
+
+
+   /**
+    * @param index int: the index of the property.
+    * @return {@link PropertySnapshot}: the property or null if the index is out of range.
+    */
+   public PropertySnapshot getProperty(int index) {
+      if (index < 0 || index >= properties.length) {
+         return null;
+      }
+      return properties[index];
+   }
+
+
+   /**
+    * Returns the property of the given name or, for paths like "a/b#name", the property of a section below this one,
+    * see {@link #getSection(String)}. Matching is case-insensitive.
+    *
+    * @param name {@link String}: the property name or path.
+    * @return {@link PropertySnapshot}: the property or null if there is none.
+    */
+   public PropertySnapshot getProperty(String name) {
+      if (name == null) {
+         return null;
+      }
+      int hash = name.indexOf('#');
+      if (hash != -1) {
+         SectionSnapshot section = getSection(name.substring(0, hash));
+         return section == null ? null : section.getProperty(name.substring(hash + 1));
+      }
+      return getProperty(indexOfProperty(name));
+   }
+
+
+   /**
+    * Returns the index of the property of the given name.
+    *
+    * @param name {@link String}: the property name, matching is case-insensitive.
+    * @return int: the index or -1 if there is no such property.
+    */
+   public int indexOfProperty(String name) {
+      if (propertyIndex != null) {
+         Integer index = propertyIndex.get(key(name));
+         return index == null ? -1 : index;
+      }
+      for (int i = properties.length - 1; i >= 0; i--) {
+         if (properties[i].getName().equalsIgnoreCase(name)) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+
+   /**
+    * @return {@link List} of {@link PropertySnapshot}s: an unmodifiable list of the properties.
+    */
+   public List<PropertySnapshot> getProperties() {
+      return Collections.unmodifiableList(Arrays.asList(properties));
+   }
+
+
+   /**
+    * Returns a snapshot in which the given property replaces the property of the same name or, if there is none, is
+    * appended.
+    *
+    * @param property {@link PropertySnapshot}: the new property.
+    * @return {@link SectionSnapshot}: the changed snapshot.
+    */
+   public SectionSnapshot withProperty(PropertySnapshot property) {
+      int index = indexOfProperty(property.getName());
+      PropertySnapshot[] changed;
+      if (index == -1) {
+         changed = Arrays.copyOf(properties, properties.length + 1);
+         changed[properties.length] = property;
+      } else {
+         changed = properties.clone();
+         changed[index] = property;
+      }
+      return new SectionSnapshot(this, sections, changed);
+   }
+
+
+   /**
+    * Returns a snapshot without the property of the given name.
+    *
+    * @param name {@link String}: the property name.
+    * @return {@link SectionSnapshot}: the changed snapshot, or this one if there is no such property.
+    */
+   public SectionSnapshot withoutProperty(String name) {
+      int index = indexOfProperty(name);
+      if (index == -1) {
+         return this;
+      }
+      return new SectionSnapshot(this, sections, remove(properties, index, NO_PROPERTIES));
+   }
+
+
+   /**
+    * Returns a snapshot in which the given section replaces the first subsection of the same name or, if there is
+    * none, is appended.
+    *
+    * @param section {@link SectionSnapshot}: the new subsection.
+    * @return {@link SectionSnapshot}: the changed snapshot.
+    */
+   public SectionSnapshot withSection(SectionSnapshot section) {
+      int index = indexOfSection(section.name);
+      if (index == -1) {
+         SectionSnapshot[] changed = Arrays.copyOf(sections, sections.length + 1);
+         changed[sections.length] = section;
+         return new SectionSnapshot(this, changed, properties);
+      }
+      return withSection(index, section);
+   }
+
+
+   /**
+    * Returns a snapshot without the first subsection of the given name.
+    *
+    * @param name {@link String}: the section name.
+    * @return {@link SectionSnapshot}: the changed snapshot, or this one if there is no such subsection.
+    */
+   public SectionSnapshot withoutSection(String name) {
+      int index = indexOfSection(name);
+      if (index == -1) {
+         return this;
+      }
+      return withSection(index, null);
+   }
+
+
+   /**
+    * Returns a snapshot in which the section at the given path is replaced by the result of the change. Only the
+    * sections along the path are copied, all others are shared with this snapshot.
+    *
+    * @param path {@link String}: the path of the section relative to this one, see {@link #getSection(String)}.
+    * @param change {@link UnaryOperator}: returns the new section for the current one, or null to remove it. The root
+    *        of the snapshot can not be removed.
+    * @return {@link SectionSnapshot}: the changed snapshot or null if the path does not exist or the root was removed.
+    */
+   public SectionSnapshot update(String path, UnaryOperator<SectionSnapshot> change) {
+      Deque<SectionSnapshot> ancestors = new ArrayDeque<SectionSnapshot>();
+      Deque<Integer> indices = new ArrayDeque<Integer>();
+      SectionSnapshot current = this;
+      for (String name : path == null ? new String[0] : path.split("/")) {
+         if (name.isEmpty()) {
+            continue;
+         }
+         int index = current.indexOfSection(name);
+         if (index == -1) {
+            System.out.println("SectionSnapshot.update: could not locate section: " + path);
+            return null;
+         }
+         ancestors.push(current);
+         indices.push(index);
+         current = current.sections[index];
+      }
+      SectionSnapshot changed = change.apply(current);
+      while (!ancestors.isEmpty()) {
+         changed = ancestors.pop().withSection(indices.pop(), changed);
+      }
+      return changed;
+   }
+
+
+   private SectionSnapshot withSection(int index, SectionSnapshot section) {
+      if (section == null) {
+         return new SectionSnapshot(this, remove(sections, index, NO_SECTIONS), properties);
+      }
+      SectionSnapshot[] changed = sections.clone();
+      changed[index] = section;
+      return new SectionSnapshot(this, changed, properties);
+   }
+
+
+   private static <T> T[] remove(T[] array, int index, T[] empty) {
+      if (array.length == 1) {
+         return empty;
+      }
+      T[] changed = Arrays.copyOf(array, array.length - 1);
+      System.arraycopy(array, index + 1, changed, index, array.length - index - 1);
+      return changed;
+   }
+
+
+   @Override
+   public String toString() {
+      return name;
+   }
+}
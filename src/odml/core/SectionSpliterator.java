@@ -0,0 +1,136 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Traverses subtrees of sections in document order without recursion. The pending subtrees are kept on a stack, the
+ * next one on top. Sections whose subtrees have been split off are kept in a queue and returned before the stack.
+ *
+ * Splitting hands the first half of the pending subtrees to a new spliterator. If only one subtree is pending, its
+ * root is moved to the queue and its subsections become the pending subtrees, so that a single tree splits into its
+ * branches. Subsections are taken as seen through virtual links, so a shared section can be returned more than once.
+ *
+ * @since 10.2026
+ *
+ */
+final class SectionSpliterator implements Spliterator<Section> {
+
+   private static final int     CHARACTERISTICS = ORDERED | NONNULL;
+
+   private final Deque<Section> single;
+   private final Deque<Section> stack;
+
+
+   /**
+    * Creates a spliterator over the subtree of the given section, including the section itself.
+    */
+   SectionSpliterator(Section root) {
+      this(new ArrayDeque<Section>(), new ArrayDeque<Section>());
+      stack.push(root);
+   }
+
+
+   /**
+    * Creates a spliterator over the subtrees of the given sections.
+    */
+   SectionSpliterator(List<Section> roots) {
+      this(new ArrayDeque<Section>(), new ArrayDeque<Section>());
+      if (roots != null) {
+         for (int i = roots.size() - 1; i >= 0; i--) {
+            stack.push(roots.get(i));
+         }
+      }
+   }
+
+
+   private SectionSpliterator(Deque<Section> single, Deque<Section> stack) {
+      this.single = single;
+      this.stack = stack;
+   }
+
+
+   @Override
+   public boolean tryAdvance(Consumer<? super Section> action) {
+      Section section = single.pollFirst();
+      if (section == null) {
+         section = stack.pollFirst();
+         if (section == null) {
+            return false;
+         }
+         pushChildren(section);
+      }
+      action.accept(section);
+      return true;
+   }
+
+
+   @Override
+   public void forEachRemaining(Consumer<? super Section> action) {
+      Section section;
+      while ((section = single.pollFirst()) != null) {
+         action.accept(section);
+      }
+      while ((section = stack.pollFirst()) != null) {
+         pushChildren(section);
+         action.accept(section);
+      }
+   }
+
+
+   @Override
+   public Spliterator<Section> trySplit() {
+      if (stack.size() == 1 && stack.peekFirst().sectionCount() > 1) {
+         Section section = stack.pollFirst();
+         single.addLast(section);
+         pushChildren(section);
+      }
+      if (stack.size() < 2) {
+         return null;
+      }
+      Deque<Section> prefix = new ArrayDeque<Section>();
+      for (int i = stack.size() / 2; i > 0; i--) {
+         prefix.addLast(stack.pollFirst());
+      }
+      Deque<Section> prefixSingle = new ArrayDeque<Section>(single);
+      single.clear();
+      return new SectionSpliterator(prefixSingle, prefix);
+   }
+
+
+   @Override
+   public long estimateSize() {
+      return single.isEmpty() && stack.isEmpty() ? 0 : Long.MAX_VALUE;
+   }
+
+
+   @Override
+   public int characteristics() {
+      return CHARACTERISTICS;
+   }
+
+
+   private void pushChildren(Section section) {
+      List<Section> children = section.sectionView();
+      for (int i = children.size() - 1; i >= 0; i--) {
+         stack.push(children.get(i));
+      }
+   }
+}
@@ -0,0 +1,64 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * A visitor of the sections of a tree, see {@link Section#walk(SectionVisitor)}. Each section is visited twice:
+ * {@link #preVisit(Section)} is called before its subsections are visited, {@link #postVisit(Section)} after all of
+ * them have been visited. The traversal keeps its state on an explicit stack, so that trees of any depth can be
+ * visited with constant stack usage.
+ *
+ * Both methods continue the traversal by default; implementations override the ones they need.
+ *
+ * @since 10.2026
+ *
+ */
+public interface SectionVisitor {
+
+   /**
+    * Controls how the traversal continues after a visit.
+    */
+   enum Result {
+      /** Continue with the subsections, or with the next section after a post-order visit. */
+      CONTINUE,
+      /** Do not visit the subsections of the section; its {@link SectionVisitor#postVisit(Section)} is skipped. */
+      SKIP_SUBSECTIONS,
+      /** Stop the traversal. */
+      TERMINATE
+   }
+
+
+   /**
+    * Called before the subsections of the section are visited. The subsections are read after this method returned,
+    * it may thus add or load subsections.
+    *
+    * @param section {@link Section}: the visited section.
+    * @return {@link Result}: how to continue.
+    */
+   default Result preVisit(Section section) {
+      return Result.CONTINUE;
+   }
+
+
+   /**
+    * Called after all subsections of the section have been visited.
+    *
+    * @param section {@link Section}: the visited section.
+    * @return {@link Result}: {@link Result#TERMINATE} to stop the traversal, otherwise it continues.
+    */
+   default Result postVisit(Section section) {
+      return Result.CONTINUE;
+   }
+}
@@ -0,0 +1,86 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import odml.core.SectionVisitor.Result;
+
+/**
+ * Walks a tree of sections in document order and calls a {@link SectionVisitor} before and after the subsections of
+ * each section. The path from the start section to the current section is kept on a stack of frames, each holding
+ * the index of the next subsection to visit.
+ *
+ * Subsections are read from the live subsection list each time the next one is needed, like a loop over
+ * {@link Section#sectionCount()} would do: sections added by a visit are visited as well, removing sections that
+ * have already been visited skips the following ones.
+ *
+ * @since 10.2026
+ *
+ */
+final class SectionWalker {
+
+   private SectionWalker() {
+   }
+
+
+   /**
+    * Visits the given section and all sections below it. If overlays is false, subsections seen through virtual
+    * links are not visited, see {@link Section#resolveLink(boolean)}.
+    *
+    * @return boolean: false if the visitor terminated the traversal, true otherwise.
+    */
+   static boolean walk(Section start, SectionVisitor visitor, boolean overlays) {
+      Result result = visitor.preVisit(start);
+      if (result != Result.CONTINUE) {
+         return result != Result.TERMINATE;
+      }
+      Deque<Frame> stack = new ArrayDeque<Frame>();
+      stack.push(new Frame(start));
+      while (!stack.isEmpty()) {
+         Frame frame = stack.peek();
+         List<Section> children = overlays ? frame.section.sectionView() : frame.section.getOwnSections();
+         if (frame.next < children.size()) {
+            Section child = children.get(frame.next++);
+            result = visitor.preVisit(child);
+            if (result == Result.TERMINATE) {
+               return false;
+            } else if (result == Result.CONTINUE) {
+               stack.push(new Frame(child));
+            }
+         } else {
+            stack.pop();
+            if (visitor.postVisit(frame.section) == Result.TERMINATE) {
+               return false;
+            }
+         }
+      }
+      return true;
+   }
+
+
+   private static final class Frame {
+
+      private final Section section;
+      private int           next = 0;
+
+
+      Frame(Section section) {
+         this.section = section;
+      }
+   }
+}
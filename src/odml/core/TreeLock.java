@@ -0,0 +1,121 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * The read-write lock of a tree of sections, see {@link Section#setLocking(boolean)}. Reads first run without
+ * locking and are validated afterwards; only if a write happened meanwhile, or the read failed because it saw the
+ * tree in the middle of a change, they are repeated holding the read lock. Writes hold the write lock.
+ *
+ * The lock is reentrant for the calls of a thread: reads and writes within a write and reads within a read run
+ * directly, they are covered by the outer one. Writes within a read would wait for themselves and are rejected.
+ *
+ * @since 10.2026
+ *
+ */
+final class TreeLock {
+
+   private final StampedLock        lock    = new StampedLock();
+   private volatile Thread          writer  = null;
+   // the number of reads the current thread is inside of
+   private final ThreadLocal<int[]> reading = ThreadLocal.withInitial(() -> new int[1]);
+
+
+   /**
+    * Runs a read of the tree. The read may be run twice, it must not change the tree.
+    */
+   <T> T read(Supplier<T> action) {
+      if (writer == Thread.currentThread()) {
+         return action.get();
+      }
+      int[] depth = reading.get();
+      if (depth[0] > 0) {
+         return action.get();
+      }
+      depth[0]++;
+      try {
+         long stamp = lock.tryOptimisticRead();
+         if (stamp != 0) {
+            try {
+               T result = action.get();
+               if (lock.validate(stamp)) {
+                  return result;
+               }
+            } catch (RuntimeException e) {
+               // a read that saw a change in progress is repeated, other failures are the caller's
+               if (lock.validate(stamp)) {
+                  throw e;
+               }
+            }
+         }
+         stamp = lock.readLock();
+         try {
+            return action.get();
+         } finally {
+            lock.unlockRead(stamp);
+         }
+      } finally {
+         depth[0]--;
+      }
+   }
+
+
+   /**
+    * Runs a read of the tree holding the read lock, for reads that are too long to be repeated.
+    */
+   <T> T readLocked(Supplier<T> action) {
+      if (writer == Thread.currentThread()) {
+         return action.get();
+      }
+      int[] depth = reading.get();
+      if (depth[0] > 0) {
+         return action.get();
+      }
+      depth[0]++;
+      long stamp = lock.readLock();
+      try {
+         return action.get();
+      } finally {
+         lock.unlockRead(stamp);
+         depth[0]--;
+      }
+   }
+
+
+   /**
+    * Runs a change of the tree holding the write lock.
+    *
+    * @throws IllegalStateException if the current thread is reading the tree.
+    */
+   <T> T write(Supplier<T> action) {
+      if (writer == Thread.currentThread()) {
+         return action.get();
+      }
+      if (reading.get()[0] > 0) {
+         throw new IllegalStateException("The tree can not be changed while it is read by the same thread!");
+      }
+      long stamp = lock.writeLock();
+      writer = Thread.currentThread();
+      try {
+         return action.get();
+      } finally {
+         writer = null;
+         lock.unlockWrite(stamp);
+      }
+   }
+}
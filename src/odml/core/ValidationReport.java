@@ -0,0 +1,194 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of validating an odML tree against its terminologies, see {@link Validator}. The report lists the
+ * deviations from the terminologies and the information taken over from them, in document order.
+ *
+ * @since 10.2026
+ *
+ */
+public class ValidationReport {
+
+   /**
+    * The severity of an {@link Issue}.
+    */
+   public enum Severity {
+      /** The tree violates the terminology, e.g. a required sibling property is missing. */
+      ERROR,
+      /** The tree deviates from the terminology or could not be checked, nothing was changed. */
+      WARNING,
+      /** Information missing in the tree was taken over from the terminology. */
+      INFO
+   }
+
+   private final List<Issue> issues   = new ArrayList<Issue>();
+   private final boolean     echo;
+   private int               sections = 0;
+
+
+   ValidationReport() {
+      this(false);
+   }
+
+
+   /**
+    * @param echo boolean: whether messages are also printed when they are added.
+    */
+   ValidationReport(boolean echo) {
+      this.echo = echo;
+   }
+
+
+   void add(Severity severity, String path, String message) {
+      if (echo) {
+         System.out.println(message);
+      }
+      issues.add(new Issue(severity, path, message));
+   }
+
+
+   void addAll(ValidationReport other) {
+      issues.addAll(other.issues);
+      sections += other.sections;
+   }
+
+
+   void sectionValidated() {
+      sections++;
+   }
+
+
+   /**
+    * Returns the number of sections that were validated.
+    *
+    * @return int: the number of validated sections.
+    */
+   public int getSectionCount() {
+      return sections;
+   }
+
+
+   /**
+    * Returns all issues in document order.
+    *
+    * @return {@link List} of {@link Issue}s: the issues, may be empty.
+    */
+   public List<Issue> getIssues() {
+      return Collections.unmodifiableList(issues);
+   }
+
+
+   /**
+    * Returns the issues of the given severity in document order.
+    *
+    * @param severity {@link Severity}: the requested severity.
+    * @return {@link List} of {@link Issue}s: the issues, may be empty.
+    */
+   public List<Issue> getIssues(Severity severity) {
+      List<Issue> result = new ArrayList<Issue>();
+      for (Issue issue : issues) {
+         if (issue.getSeverity() == severity) {
+            result.add(issue);
+         }
+      }
+      return result;
+   }
+
+
+   /**
+    * Returns whether the tree violates its terminologies.
+    *
+    * @return boolean: true if the report contains errors.
+    */
+   public boolean hasErrors() {
+      for (Issue issue : issues) {
+         if (issue.getSeverity() == Severity.ERROR) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append("Validated ").append(sections).append(" sections, ").append(issues.size()).append(" issues");
+      for (Issue issue : issues) {
+         sb.append("\n").append(issue);
+      }
+      return sb.toString();
+   }
+
+
+   /**
+    * A single finding of the validation.
+    */
+   public static class Issue {
+
+      private final Severity severity;
+      private final String   path, message;
+
+
+      Issue(Severity severity, String path, String message) {
+         this.severity = severity;
+         this.path = path;
+         this.message = message;
+      }
+
+
+      /**
+       * Returns the severity of the issue.
+       *
+       * @return {@link Severity}: the severity.
+       */
+      public Severity getSeverity() {
+         return severity;
+      }
+
+
+      /**
+       * Returns the path of the section or property the issue refers to. Property paths have the form
+       * /section/subsection#property.
+       *
+       * @return {@link String}: the path.
+       */
+      public String getPath() {
+         return path;
+      }
+
+
+      /**
+       * Returns the description of the issue.
+       *
+       * @return {@link String}: the message.
+       */
+      public String getMessage() {
+         return message;
+      }
+
+
+      @Override
+      public String toString() {
+         return severity + " " + path + ": " + message;
+      }
+   }
+}
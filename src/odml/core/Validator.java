@@ -0,0 +1,122 @@
+package odml.core;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import odml.util.TerminologyManager;
+
+/**
+ * The {@link Validator} validates a whole odML tree against its terminologies. Unlike
+ * {@link Section#validateTree()} it does not print its findings but returns them as a {@link ValidationReport}.
+ *
+ * Validation runs in two phases. First, the terminologies of all sections are fetched concurrently with
+ * {@link TerminologyManager#prefetch(Section)}. Then the sections are validated in parallel on a
+ * {@link ForkJoinPool}; the report lists the findings in document order independent of the parallelism.
+ *
+ * Validation takes over missing information such as units and definitions from the terminologies, i.e. it modifies
+ * the tree. The tree must not be modified otherwise while it is validated.
+ *
+ * @since 10.2026
+ *
+ */
+public class Validator {
+
+   private static final int THRESHOLD   = 32;
+   private int              parallelism = Runtime.getRuntime().availableProcessors();
+
+
+   /**
+    * Sets the number of threads used to validate sections. The default is the number of available processors.
+    *
+    * @param parallelism int: the number of threads. Values smaller than 1 are treated as 1.
+    */
+   public void setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+   }
+
+
+   /**
+    * Returns the number of threads used for validation.
+    *
+    * @return int: the parallelism.
+    */
+   public int getParallelism() {
+      return parallelism;
+   }
+
+
+   /**
+    * Validates the given section and all sections below it.
+    *
+    * @param root {@link Section}: the section the validation starts at.
+    * @return {@link ValidationReport}: the findings.
+    */
+   public ValidationReport validate(Section root) {
+      List<Section> sections = Stream.concat(Stream.of(root), root.descendants()).collect(Collectors.toList());
+      TerminologyManager.instance().prefetch(root);
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         ValidationReport[] reports = new ValidationReport[sections.size()];
+         pool.invoke(new ValidationTask(sections, reports, 0, sections.size()));
+         ValidationReport report = new ValidationReport();
+         for (ValidationReport sectionReport : reports) {
+            report.addAll(sectionReport);
+         }
+         return report;
+      } finally {
+         pool.shutdown();
+      }
+   }
+
+
+   /**
+    * Validates a range of sections, splitting it as long as it is larger than {@link #THRESHOLD}.
+    */
+   private static class ValidationTask extends RecursiveAction {
+
+      private static final long        serialVersionUID = 1L;
+      private final List<Section>      sections;
+      private final ValidationReport[] reports;
+      private final int                from, to;
+
+
+      ValidationTask(List<Section> sections, ValidationReport[] reports, int from, int to) {
+         this.sections = sections;
+         this.reports = reports;
+         this.from = from;
+         this.to = to;
+      }
+
+
+      @Override
+      protected void compute() {
+         if (to - from <= THRESHOLD) {
+            for (int i = from; i < to; i++) {
+               reports[i] = new ValidationReport();
+               sections.get(i).validate(reports[i]);
+            }
+         } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new ValidationTask(sections, reports, from, middle),
+                  new ValidationTask(sections, reports, middle, to));
+         }
+      }
+   }
+}
@@ -54,10 +54,13 @@ public class Value implements Serializable, Cloneable, TreeNode {
    private Object                        content, uncertainty;
    private String                        definition, filename, checksum, encoder;
    private Property                      parent;
-   private final static SimpleDateFormat dateFormat       = new SimpleDateFormat("yyyy-MM-dd");
-   private final static SimpleDateFormat datetimeFormat   = new SimpleDateFormat(
-                                                                "yyyy-MM-dd hh:mm:ss");
-   private final static SimpleDateFormat timeFormat       = new SimpleDateFormat("hh:mm:ss");
+   // SimpleDateFormat is not thread-safe, each thread gets its own instances
+   private final static ThreadLocal<SimpleDateFormat> dateFormat     =
+         ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+   private final static ThreadLocal<SimpleDateFormat> datetimeFormat =
+         ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd hh:mm:ss"));
+   private final static ThreadLocal<SimpleDateFormat> timeFormat     =
+         ThreadLocal.withInitial(() -> new SimpleDateFormat("hh:mm:ss"));
    private final static String           regExNTuple;
 
    static {
@@ -65,6 +68,14 @@ public class Value implements Serializable, Cloneable, TreeNode {
    }
 
 
+   /**
+    * Creates an empty Value whose fields are filled in through the setters, e.g. by the {@link BinaryReader}. The
+    * content is taken as it is, no type checking or encoding is done.
+    */
+   Value() {
+   }
+
+
    /**
     * Creates a new Value instance.
     *
@@ -290,13 +301,13 @@ public class Value implements Serializable, Cloneable, TreeNode {
          if (type.matches("(?i)date")) {
             if (content instanceof Date) {
                try {
-                  return dateFormat.parse(dateFormat.format(content));
+                  return dateFormat.get().parse(dateFormat.get().format(content));
                } catch (Exception e) {
                   System.out.println(e.getMessage());
                }
             } else if (content instanceof String) {
                try {
-                  return dateFormat.parse((String) content);
+                  return dateFormat.get().parse((String) content);
                } catch (Exception e) {
                   System.out.println("Cannot convert passed String : " + content
                           + " to a date value!");
@@ -311,13 +322,13 @@ public class Value implements Serializable, Cloneable, TreeNode {
          } else if (type.matches("(?i)time")) {
             if (content instanceof Date) {
                try {
-                  return timeFormat.parse(timeFormat.format(content));
+                  return timeFormat.get().parse(timeFormat.get().format(content));
                } catch (Exception e) {
                   System.out.println(e.getMessage());
                }
             } else if (content instanceof String) {
                try {
-                  return timeFormat.parse((String) content);
+                  return timeFormat.get().parse((String) content);
                } catch (Exception e) {
                   System.out.println(e.getLocalizedMessage());
                }
@@ -330,13 +341,13 @@ public class Value implements Serializable, Cloneable, TreeNode {
          } else if (type.matches("(?i)datetime")) {
             if (content instanceof Date) {
                try {
-                  return datetimeFormat.parse(datetimeFormat.format(content));
+                  return datetimeFormat.get().parse(datetimeFormat.get().format(content));
                } catch (Exception e) {
                   System.out.println(e.getLocalizedMessage());
                }
             } else if (content instanceof String) {
                try {
-                  return datetimeFormat.parse((String) content);
+                  return datetimeFormat.get().parse((String) content);
                } catch (Exception e) {
                   System.out.println(e.getLocalizedMessage());
                }
@@ -487,8 +498,19 @@ public class Value implements Serializable, Cloneable, TreeNode {
    }
 
 
+   /**
+    * Marks the section of the associated property as changed, see {@link Section#isModified()}.
+    */
+   private void markModified() {
+      if (parent != null) {
+         parent.markModified();
+      }
+   }
+
+
    protected void setContent(Object content) {
       this.content = content;
+      markModified();
    }
 
 
@@ -499,6 +521,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
 
    protected void setUnit(String unit) {
       this.unit = unit;
+      markModified();
    }
 
 
@@ -509,6 +532,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
 
    protected void setUncertainty(Object uncertainty) {
       this.uncertainty = uncertainty;
+      markModified();
    }
 
 
@@ -519,6 +543,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
 
    protected void setType(String type) {
       this.type = type;
+      markModified();
    }
 
 
@@ -529,6 +554,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
 
    protected void setFilename(String filename) {
       this.filename = filename;
+      markModified();
    }
 
 
@@ -539,6 +565,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
 
    protected void setDefinition(String comment) {
       this.definition = comment;
+      markModified();
    }
 
 
@@ -549,6 +576,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
 
    protected void setReference(String reference) {
       this.reference = reference;
+      markModified();
    }
 
 
@@ -562,6 +590,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
          this.encoder = "";
       else
          this.encoder = encoder;
+      markModified();
    }
 
 
@@ -575,6 +604,7 @@ public class Value implements Serializable, Cloneable, TreeNode {
          this.checksum = "";
       else
          this.checksum = checksum;
+      markModified();
    }
 
 
@@ -597,6 +627,31 @@ public class Value implements Serializable, Cloneable, TreeNode {
    }
 
 
+   /**
+    * Creates a copy of this value that belongs to the given property. Date contents are copied, other contents are
+    * immutable and shared.
+    *
+    * @param parent {@link Property}: the property of the copy.
+    * @return {@link Value}: the copy.
+    */
+   Value copy(Property parent) {
+      Value copy;
+      try {
+         copy = (Value) super.clone();
+      } catch (CloneNotSupportedException e) {
+         throw new AssertionError(e);
+      }
+      copy.parent = parent;
+      if (content instanceof Date) {
+         copy.content = ((Date) content).clone();
+      }
+      if (uncertainty instanceof Date) {
+         copy.uncertainty = ((Date) uncertainty).clone();
+      }
+      return copy;
+   }
+
+
    /**
     * Validates a {@link Value} against the value definition in a terminology. 
     * 
@@ -605,9 +660,21 @@ public class Value implements Serializable, Cloneable, TreeNode {
     * 
     */
    public void validate(Property terminologyProperty) {
+      validate(CompiledTerminology.Entry.of(terminologyProperty), null, new ValidationReport(true));
+   }
+
+
+   /**
+    * Validates the value against the terminology and adds the findings to the report.
+    * 
+    * @param terminologyProperty {@link CompiledTerminology.Entry}: the property that defines the kind of value.
+    * @param path {@link String}: the path of the property the value belongs to.
+    * @param report {@link ValidationReport}: the report receiving the findings.
+    */
+   void validate(CompiledTerminology.Entry terminologyProperty, String path, ValidationReport report) {
       if (this.type != null && !this.type.isEmpty()) {
          if (!this.type.equalsIgnoreCase(terminologyProperty.getType())) {
-            System.out.println("Value type (" + this.type
+            report.add(ValidationReport.Severity.WARNING, path, "Value type (" + this.type
                     + ") does not match the one given in the terminology("
                     + terminologyProperty.getType()
                     + ")! To guarantee interoperability please ckeck. However, kept provided type.");
@@ -616,24 +683,25 @@ public class Value implements Serializable, Cloneable, TreeNode {
          try {
             checkDatatype(this.content, terminologyProperty.getType());
             this.setType(terminologyProperty.getType());
-            System.out.println("Added type information to value.");
+            report.add(ValidationReport.Severity.INFO, path, "Added type information to value.");
          } catch (Exception e) {
-            System.out.println("Value is not compatible with the type information the terminology suggests ("
+            report.add(ValidationReport.Severity.ERROR, path, "Value is not compatible with the type information the terminology suggests ("
                     + terminologyProperty.getType()
                     + "). Did not change anything, but please check");
          }
       }
       if (this.unit != null && !this.unit.isEmpty()) {
-         if (!this.unit.equalsIgnoreCase(terminologyProperty.getUnit(0))) {
-            System.out.println("Value unit (" + this.unit
+         if (!this.unit.equalsIgnoreCase(terminologyProperty.getUnit())) {
+            report.add(ValidationReport.Severity.WARNING, path, "Value unit (" + this.unit
                     + ") does not match the one given in the terminology("
                     + terminologyProperty.getUnit()
                     + ")! To guarantee interoperability please ckeck. However, kept provided unit.");
          }
       } else {
-         if (terminologyProperty.getUnit() != null && !terminologyProperty.getUnit(0).isEmpty()) {
-            this.setUnit(terminologyProperty.getUnit(0));
-            System.out.println("Added unit " + terminologyProperty.getUnit() + " information to value.");
+         if (terminologyProperty.getUnit() != null && !terminologyProperty.getUnit().isEmpty()) {
+            this.setUnit(terminologyProperty.getUnit());
+            report.add(ValidationReport.Severity.INFO, path, "Added unit " + terminologyProperty.getUnit()
+                    + " information to value.");
          }
       }
    }
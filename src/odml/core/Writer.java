@@ -18,11 +18,15 @@ package odml.core;
  * along with this software. If not, see <http://www.gnu.org/licenses/>.
  */
 
+import org.jdom2.Comment;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.ProcessingInstruction;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
+import org.jdom2.output.support.AbstractXMLOutputProcessor;
+import org.jdom2.output.support.FormatStack;
+import org.jdom2.util.NamespaceStack;
 
 import java.io.*;
 import java.lang.reflect.InvocationTargetException;
@@ -30,6 +34,8 @@ import java.lang.reflect.Method;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import static java.lang.System.*;
 
@@ -48,10 +54,19 @@ public class Writer implements Serializable {
    private Document                      doc;
    private final File                    file;
    private Section                       odmlTree         = null;
-
-   private final static SimpleDateFormat dateFormat       = new SimpleDateFormat("yyyy-MM-dd");
-   private final static SimpleDateFormat datetimeFormat   = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss");
-   private final static SimpleDateFormat timeFormat       = new SimpleDateFormat("hh:mm:ss");
+   private int                           parallelism      = 1;
+   private boolean                       atomic           = false, sync = false, compactLinks = false;
+   private int                           compression      = NO_COMPRESSION;
+   public static final int               NO_COMPRESSION   = 0, GZIP = 1, ZLIB = 2, PARALLEL_GZIP = 3;
+   private final static String           SECTION_PLACEHOLDER = "odml-section-";
+
+   // SimpleDateFormat is not thread-safe, each thread gets its own instances
+   private final static ThreadLocal<SimpleDateFormat> dateFormat     =
+         ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd"));
+   private final static ThreadLocal<SimpleDateFormat> datetimeFormat =
+         ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd hh:mm:ss"));
+   private final static ThreadLocal<SimpleDateFormat> timeFormat     =
+         ThreadLocal.withInitial(() -> new SimpleDateFormat("hh:mm:ss"));
 
    private String[] section_fields = {"type","name", "definition", "repository", "mapping", "link",
            "include", "reference" };
@@ -134,8 +149,127 @@ public class Writer implements Serializable {
       this.asTerminology = asTerminology;
    }
 
+
+   /**
+    * Sets the number of threads that are used to serialize the document. With a parallelism of 1, the default, the
+    * tree is serialized sequentially. With a larger value the top-level sections are rendered concurrently on a
+    * {@link ForkJoinPool} and written to the output in document order. The output is identical to the one of the
+    * sequential writer.
+    *
+    * @param parallelism int: the number of worker threads. Values smaller than 1 are treated as 1.
+    */
+   public void setParallelism(int parallelism) {
+      this.parallelism = Math.max(1, parallelism);
+   }
+
+
+   /**
+    * Returns the number of threads used to serialize the document.
+    *
+    * @return int: the parallelism, 1 if the document is written sequentially.
+    */
+   public int getParallelism() {
+      return parallelism;
+   }
+
+
    /**
-    * Writes the odML serialization to a file with the given name.
+    * Sets whether and how the document is compressed. {@link #GZIP} and {@link #ZLIB} compress the output on the
+    * writing thread, {@link #PARALLEL_GZIP} compresses blocks of the output on all available processors and yields a
+    * gzip stream that is slightly larger than the one of {@link #GZIP}. The {@link Reader} recognizes compressed
+    * documents by their content. The default is {@link #NO_COMPRESSION}.
+    *
+    * @param compression int: {@link #NO_COMPRESSION}, {@link #GZIP}, {@link #ZLIB} or {@link #PARALLEL_GZIP}.
+    */
+   public void setCompression(int compression) {
+      if (compression < NO_COMPRESSION || compression > PARALLEL_GZIP) {
+         throw new IllegalArgumentException("Unknown compression " + compression + "!");
+      }
+      this.compression = compression;
+   }
+
+
+   /**
+    * Returns how the document is compressed.
+    *
+    * @return int: the compression, {@link #NO_COMPRESSION} if the document is written as plain xml.
+    */
+   public int getCompression() {
+      return compression;
+   }
+
+
+   /**
+    * Sets whether files are written atomically. An atomic write goes to a temporary file in the directory of the
+    * target, which is moved over the target when the document is complete. A failed or interrupted write then leaves
+    * the previous file intact. The default is false, i.e. the target file is written directly.
+    *
+    * @param atomic boolean: whether to write files atomically.
+    */
+   public void setAtomic(boolean atomic) {
+      this.atomic = atomic;
+   }
+
+
+   /**
+    * Returns whether files are written atomically.
+    *
+    * @return boolean: true if files are written through a temporary file, false otherwise.
+    */
+   public boolean isAtomic() {
+      return atomic;
+   }
+
+
+   /**
+    * Sets whether the written file is forced to the storage device before {@link #write(String)} returns. Combined
+    * with {@link #setAtomic(boolean)} the new document survives a system crash once the write has returned. The
+    * default is false.
+    *
+    * @param sync boolean: whether to sync the file.
+    */
+   public void setSync(boolean sync) {
+      this.sync = sync;
+   }
+
+
+   /**
+    * Returns whether written files are forced to the storage device.
+    *
+    * @return boolean: true if files are synced, false otherwise.
+    */
+   public boolean isSync() {
+      return sync;
+   }
+
+
+   /**
+    * Sets how sections with a virtual link are written, see {@link Section#resolveLink(boolean)}. Compact links are
+    * written with their own properties and subsections only, the linked content is restored when the link is
+    * resolved after reading. Otherwise the content seen through the link is written as well, like for links
+    * resolved by copying. The default is false.
+    *
+    * @param compactLinks boolean: whether to write only the own content of virtually linked sections.
+    */
+   public void setCompactLinks(boolean compactLinks) {
+      this.compactLinks = compactLinks;
+   }
+
+
+   /**
+    * Returns whether sections with a virtual link are written with their own content only.
+    *
+    * @return boolean: true if virtual links are written compactly.
+    */
+   public boolean isCompactLinks() {
+      return compactLinks;
+   }
+
+
+   /**
+    * Writes the odML serialization to a file with the given name. The file is written through a buffer and closed
+    * before the method returns. See {@link #setAtomic(boolean)} and {@link #setSync(boolean)} for crash-safe
+    * writing.
     *
     * @param fileName {@link String}: the name of the output file
     * @return {@link Boolean} true if operation was successful, false otherwise.
@@ -146,18 +280,42 @@ public class Writer implements Serializable {
          System.out.println("Writer.write error: there is no metadata to write!");
          return false;
       }
-      createDom(odmlTree, asTerminology);
       try {
-         FileOutputStream stream = new FileOutputStream(fileName);
-         return writeToStream(stream);
-      } catch (FileNotFoundException e) {
-         System.out.println(e.getMessage());
+         if (atomic) {
+            AtomicFile file = new AtomicFile(new File(fileName), sync);
+            try {
+               if (!write(file.getStream())) {
+                  return false;
+               }
+               file.commit();
+               return true;
+            } finally {
+               file.close();
+            }
+         }
+         FileOutputStream fileStream = new FileOutputStream(fileName);
+         OutputStream stream = new BufferedOutputStream(fileStream, AtomicFile.BUFFER_SIZE);
+         try {
+            if (!write(stream)) {
+               return false;
+            }
+            stream.flush();
+            if (sync) {
+               fileStream.getChannel().force(true);
+            }
+            return true;
+         } finally {
+            stream.close();
+         }
+      } catch (IOException e) {
+         System.out.println("Write to file failed: " + e.getMessage());
          return false;
       }
    }
 
    /**
-    * Writes the odML serialization to the given output stream.
+    * Writes the odML serialization to the given output stream. The document is compressed as set by
+    * {@link #setCompression(int)}; the stream is not closed.
     *
     * @param stream {@link OutputStream}: output stream to which to write the document
     * @return {@link Boolean} true if operation was successful, false otherwise.
@@ -168,8 +326,31 @@ public class Writer implements Serializable {
          System.out.println("Writer.write error: there is no metadata to write!");
          return false;
       }
-      createDom(odmlTree, asTerminology);
-      return writeToStream(stream);
+      if (compression == NO_COMPRESSION) {
+         return writeDocument(stream);
+      }
+      try {
+         OutputStream compressed = Compression.encode(stream, compression);
+         boolean success;
+         try {
+            success = writeDocument(compressed);
+         } finally {
+            compressed.close();
+         }
+         return success;
+      } catch (IOException e) {
+         System.out.println("Write to file failed: " + e.getMessage());
+         return false;
+      }
+   }
+
+
+   private boolean writeDocument(OutputStream stream) {
+      if (parallelism > 1) {
+         return writeInParallel(stream);
+      }
+      Section dummyRoot = createDom(odmlTree, asTerminology);
+      return writeToStream(stream, dummyRoot);
    }
 
 
@@ -228,14 +409,7 @@ public class Writer implements Serializable {
          out.println("Writer.write error: there is no metadata to write!");
          return false;
       }
-      try {
-         FileOutputStream stream = new FileOutputStream(file);
-         createDom(odmlTree, asTerminology);
-         return (write(stream));
-      } catch (Exception e) {
-         System.out.println(e.getMessage());
-         return false;
-      }
+      return write(file.getPath());
    }
 
    public Map<String, Object> getMap() {
@@ -254,9 +428,11 @@ public class Writer implements Serializable {
     *
     * @param rootSection {@link Section}: the section to start the dom creation.
     * @param asTerminology {@link boolean}: flag to indicate whether Template is used or not
+    * @return {@link Section}: the section whose subsections are the top-level sections of the document. They are
+    *         not appended but replaced by placeholder comments that are filled in when the document is written.
     *
     */
-   private void createDom(Section rootSection, boolean asTerminology) {
+   private Section createDom(Section rootSection, boolean asTerminology) {
       doc = new Document();
       ProcessingInstruction instruction;
       ProcessingInstruction alternativeInstruction;
@@ -318,8 +494,9 @@ public class Writer implements Serializable {
          rootElement.addContent(repElement);
       }
       for (int i = 0; i < dummyRoot.sectionCount(); i++) {
-         appendSection(rootElement, dummyRoot.getSection(i), asTerminology);
+         rootElement.addContent(new Comment(SECTION_PLACEHOLDER + i));
       }
+      return dummyRoot;
    }
 
    /**
@@ -368,24 +545,34 @@ public class Writer implements Serializable {
 
 
    /**
-    * Method to append a section-element to the dom-tree.
-    * @param parent {@link Element}: the parent where the section shall be appended
-    * @param section {@link Section}: the section to append to the parent-element
+    * Creates the element of a section without its subsections. Each subsection is represented by a placeholder
+    * comment, see {@link SectionPrinter}.
+    * @param section {@link Section}: the section
     * @param asTemplate {@link boolean}: flag to indicate whether template or not; if template then also writing 
     * value-information (e.g. unit or type) without having actual value-content
+    * @return {@link Element}: the section element.
     */
-   private void appendSection(Element parent, Section section, boolean asTemplate) {
+   private Element createSectionElement(Section section, boolean asTemplate) {
       Element sectionElement = new Element("section");
       for (String section_field : section_fields) {
          addElement(sectionElement, section_field, getFieldValue(section, section_field));
       }
-      for (int i = 0; i < section.propertyCount(); i++) {
-         appendProperty(sectionElement, section.getProperty(i), asTemplate);
+      List<Property> properties = compactLinks ? section.getOwnProperties() : section.propertyView();
+      for (int i = 0; i < properties.size(); i++) {
+         appendProperty(sectionElement, properties.get(i), asTemplate);
       }
-      for (int i = 0; i < section.sectionCount(); i++) {
-         appendSection(sectionElement, section.getSection(i), asTemplate);
+      for (int i = 0; i < subsectionCount(section); i++) {
+         sectionElement.addContent(new Comment(SECTION_PLACEHOLDER + i));
       }
-      parent.addContent(sectionElement);
+      return sectionElement;
+   }
+
+
+   /**
+    * Returns the number of subsections that are written for a section, see {@link #setCompactLinks(boolean)}.
+    */
+   private int subsectionCount(Section section) {
+      return compactLinks ? section.getOwnSections().size() : section.sectionCount();
    }
 
 
@@ -399,7 +586,7 @@ public class Writer implements Serializable {
     */
    private void appendProperty(Element parent, Property property, boolean asTerminology) {
       if (!asTerminology) {
-         property.removeEmptyValues();
+         // empty values are skipped by appendValue, the tree is not changed since properties may be shared by links
          if (property.isEmpty()) {
             out.println("Writer.appendProperty: Property " + property.getName()
                     + "is empty and will not be written to file!");
@@ -433,13 +620,13 @@ public class Writer implements Serializable {
          Object content = getFieldValue(value, value_field);
          if (content instanceof Date) {
             if (value.getType().equalsIgnoreCase("date")) {
-               content = dateFormat.format(content);
+               content = dateFormat.get().format(content);
             } else if (value.getType().equalsIgnoreCase("datetime")) {
-               content = datetimeFormat.format(content);
+               content = datetimeFormat.get().format(content);
             } else if (value.getType().equalsIgnoreCase("time")) {
-               content = timeFormat.format(content);
+               content = timeFormat.get().format(content);
             } else {
-               content = datetimeFormat.format(content);
+               content = datetimeFormat.get().format(content);
             }
          }
          addElement(valueElement, value_field, content);
@@ -449,28 +636,245 @@ public class Writer implements Serializable {
 
 
    /**
-    * Writes the dom tree to the given output stream.
+    * Writes the dom tree to the given output stream. The top-level sections are rendered one after the other into
+    * the positions of their placeholders, see {@link SectionPrinter}.
     *
     * @param stream the output stream
+    * @param dummyRoot the section whose subsections are the top-level sections of the document
     * @return true if the dom tree was successfully written to the stream, false otherwise
     *
     */
-   private boolean writeToStream(OutputStream stream) {
+   private boolean writeToStream(OutputStream stream, final Section dummyRoot) {
       if (doc == null) {
          System.out.println("Writing to Stream failed, document is empty!");
          return false;
       }
       try {
-         org.jdom2.output.Format format = org.jdom2.output.Format.getPrettyFormat().setIndent("    ");
-         XMLOutputter outputter = new XMLOutputter();
-         outputter.setFormat(Format.getPrettyFormat());
-         outputter.output(doc, stream);
+         Format format = Format.getPrettyFormat();
+         final SectionPrinter printer = new SectionPrinter(format);
+         writeSkeleton(stream, format, dummyRoot.sectionCount(),
+               (out, i) -> printer.print(out, dummyRoot.getSection(i)));
+      } catch (IOException ie) {
+         System.out.println("Write to file failed: " + ie.getMessage());
+         return false;
+      }
+      System.out.println("Writing to file successful!");
+      return true;
+   }
+
+
+   /**
+    * Serializes the dom tree and writes it to the stream, writing the top-level sections in place of their
+    * placeholders.
+    */
+   private void writeSkeleton(OutputStream stream, Format format, int sections, SectionOutput sectionOutput)
+         throws IOException {
+      String skeleton = new XMLOutputter(format).outputString(doc);
+      java.io.Writer out = new BufferedWriter(new OutputStreamWriter(stream, format.getEncoding()));
+      int position = 0;
+      for (int i = 0; i < sections; i++) {
+         String placeholder = placeholder(i);
+         int index = skeleton.indexOf(placeholder, position);
+         out.write(skeleton, position, index - position);
+         sectionOutput.write(out, i);
+         position = index + placeholder.length();
+      }
+      out.write(skeleton, position, skeleton.length() - position);
+      out.flush();
+   }
+
+
+   private static String placeholder(int index) {
+      return "<!--" + SECTION_PLACEHOLDER + index + "-->";
+   }
+
+
+   /**
+    * Writes the top-level section with the given index.
+    */
+   private interface SectionOutput {
+
+      void write(java.io.Writer out, int index) throws IOException;
+   }
+
+
+   /**
+    * Writes the document with the top-level sections rendered concurrently. The document is first serialized with
+    * placeholders in place of the top-level sections. The sections are then rendered on a {@link ForkJoinPool} and
+    * written into the positions of the placeholders in document order, as soon as they are available.
+    *
+    * @param stream the output stream
+    * @return true if the document was successfully written to the stream, false otherwise
+    */
+   private boolean writeInParallel(OutputStream stream) {
+      Section dummyRoot = createDom(odmlTree, asTerminology);
+      Format format = Format.getPrettyFormat();
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+         final List<SectionRenderer> tasks = new ArrayList<SectionRenderer>(dummyRoot.sectionCount());
+         for (int i = 0; i < dummyRoot.sectionCount(); i++) {
+            SectionRenderer task = new SectionRenderer(dummyRoot.getSection(i), format);
+            tasks.add(task);
+            pool.execute(task);
+         }
+         writeSkeleton(stream, format, tasks.size(), (out, i) -> out.write(render(tasks.get(i))));
       } catch (IOException ie) {
          System.out.println("Write to file failed: " + ie.getMessage());
          return false;
+      } finally {
+         // sections that are still pending after a failure are not needed anymore
+         pool.shutdownNow();
       }
       System.out.println("Writing to file successful!");
       return true;
    }
 
+
+   /**
+    * Waits for the given renderer and returns the rendered section. An {@link IOException} that occurred while the
+    * section was rendered is thrown again, so that it is reported like one of the sequential writer.
+    */
+   private static String render(SectionRenderer task) throws IOException {
+      try {
+         return task.join();
+      } catch (RuntimeException e) {
+         for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+               throw (IOException) cause;
+            }
+         }
+         throw e;
+      }
+   }
+
+
+   /**
+    * Renders one top-level section at the indentation it has in the document.
+    */
+   private class SectionRenderer extends RecursiveTask<String> {
+
+      private static final long serialVersionUID = 1L;
+      private final Section     section;
+      private final Format      format;
+
+
+      SectionRenderer(Section section, Format format) {
+         this.section = section;
+         this.format = format;
+      }
+
+
+      @Override
+      protected String compute() {
+         StringWriter out = new StringWriter();
+         try {
+            new SectionPrinter(format).print(out, section);
+         } catch (IOException e) {
+            throw new UncheckedIOException(e);
+         }
+         return out.toString();
+      }
+   }
+
+
+   /**
+    * Prints a top-level section and its subsections with the indentation they have in the document. Each section is
+    * converted into an element on its own, see {@link #createSectionElement(Section, boolean)}, and printed at the
+    * indentation of its level; the printed subsections are written into the positions of the placeholders. The
+    * sections are visited without recursion and the format stack follows the visited path, so that trees of any
+    * depth can be written with constant stack usage and only the elements of the current path in memory.
+    */
+   private class SectionPrinter extends AbstractXMLOutputProcessor {
+
+      private final Format format;
+
+
+      SectionPrinter(Format format) {
+         this.format = format;
+      }
+
+
+      void print(final java.io.Writer out, Section section) throws IOException {
+         final FormatStack fstack = new FormatStack(format);
+         final NamespaceStack nstack = new NamespaceStack();
+         // the printed sections on the current path, split at the placeholders of their subsections
+         final Deque<PrintedSection> path = new ArrayDeque<PrintedSection>();
+         final IOException[] failure = new IOException[1];
+         // top-level sections are indented by one level
+         fstack.push();
+         SectionVisitor visitor = new SectionVisitor() {
+            @Override
+            public Result preVisit(Section section) {
+               try {
+                  StringWriter element = new StringWriter();
+                  printElement(element, fstack, nstack, createSectionElement(section, asTerminology));
+                  PrintedSection printed = new PrintedSection(element.toString(), subsectionCount(section));
+                  out.write(printed.next());
+                  path.push(printed);
+                  fstack.push();
+                  return Result.CONTINUE;
+               } catch (IOException e) {
+                  failure[0] = e;
+                  return Result.TERMINATE;
+               }
+            }
+
+
+            @Override
+            public Result postVisit(Section section) {
+               fstack.pop();
+               path.pop();
+               try {
+                  if (!path.isEmpty()) {
+                     out.write(path.peek().next());
+                  }
+                  return Result.CONTINUE;
+               } catch (IOException e) {
+                  failure[0] = e;
+                  return Result.TERMINATE;
+               }
+            }
+         };
+         if (compactLinks) {
+            section.walkOwn(visitor);
+         } else {
+            section.walk(visitor);
+         }
+         if (failure[0] != null) {
+            throw failure[0];
+         }
+      }
+   }
+
+
+   /**
+    * A printed section element split at the placeholders of its subsections.
+    */
+   private static final class PrintedSection {
+
+      private final String[] parts;
+      private int            next = 0;
+
+
+      PrintedSection(String element, int sections) {
+         parts = new String[sections + 1];
+         int position = 0;
+         for (int i = 0; i < sections; i++) {
+            String placeholder = placeholder(i);
+            int index = element.indexOf(placeholder, position);
+            parts[i] = element.substring(position, index);
+            position = index + placeholder.length();
+         }
+         parts[sections] = element.substring(position);
+      }
+
+
+      /**
+       * Returns the text up to the next placeholder or the end of the element.
+       */
+      String next() {
+         return parts[next++];
+      }
+   }
+
 }
@@ -19,24 +19,36 @@ import odml.core.Section;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
 
 /**
  * The {@link Mapper} controls the mapping procedure. Mapping information can be given for {@link Property} and
  * {@link Section} elements and is used to transform from one, custom, organization of the metadata structure, to
- * another, the odml standard or any else, structure. Rough sketch of the mapping algorithm: 1: recursively cycle
- * through all sections and apply section mappings. 2a: recursively cycle through all sections, starting at root, and
- * try apply property mappings. 2b: if no mapping provided for a property, just add to the section the property's parent
- * section was mapped into. 2c: if mapping provided check for destination section type. if provided and matching the
- * parent section's destination, just add. 2d: if property maps to a different type of section than the parent section's
- * destination, check if
+ * another, the odml standard or any else, structure. Rough sketch of the mapping algorithm: 1: cycle once through all
+ * sections, complete missing mapping information from the terminologies and apply section mappings. 2a: cycle through
+ * the properties in document order and try apply property mappings. 2b: if no mapping provided for a property, just
+ * add to the section the property's parent section was mapped into. 2c: if mapping provided check for destination
+ * section type. if provided and matching the parent section's destination, just add. 2d: if property maps to a
+ * different type of section than the parent section's destination, look for a unique subsection or sibling of that
+ * type, otherwise create one.
+ * 
+ * The terminology lookups are resolved once per terminology and mapping url by a {@link MappingPlan} that the
+ * {@link TerminologyManager} shares between all mappers until its cache is cleared. Sections taken from
+ * terminologies are copied, the cached terminologies are never modified. A mapper keeps no state besides the tree it
+ * maps, so that mappers of different trees can run concurrently; see {@link odml.core.BatchConverter}.
  * 
  */
 public class Mapper {
 
-   private Section                       original   = null, mapped = null;
-   private final HashMap<String, String> forwardMap = new HashMap<String, String>();
-   private final HashMap<String, String> reverseMap = new HashMap<String, String>();
+   private Section                     original     = null, mapped = null;
+   private MappingPlan                 plan         = null;
+   private final Map<Section, Section> destinations = new IdentityHashMap<Section, Section>();
 
 
    /**
@@ -64,38 +76,65 @@ public class Mapper {
          original.resolveAllLinks();// before start of mapping resolve all
          // links and
          original.loadAllIncludes();// load all external information.
-         checkMapping();
-         if (mapped == null && original.isRoot()) {// the original Section is
-            // a root section...
-            mapped = new Section();
-            mapped.setDocumentAuthor(original.getDocumentAuthor());
-            mapped.setDocumentDate(original.getDocumentDate());
-            mapped.setDocumentVersion(original.getDocumentVersion());
-         }
-         for (int i = 0; i < original.sectionCount(); i++) { // map all
-            // subsections
-            mapSection(original.getSection(i), mapped);
+         // fetch all terminologies concurrently instead of one by one while mapping
+         TerminologyManager.instance().prefetch(original.getRootSection());
+         plan = TerminologyManager.instance().mappingPlan();
+         destinations.clear();
+         Section root = original.getRootSection();
+         mapped = new Section();
+         mapped.setDocumentAuthor(root.getDocumentAuthor());
+         mapped.setDocumentDate(root.getDocumentDate());
+         mapped.setDocumentVersion(root.getDocumentVersion());
+         List<Property> properties = mapSections();
+         for (Property p : properties) { // map the properties
+            mapProperty(p);
          }
-         mapProperties(original.getRootSection());// map the properties
          mapped.optimizeTree(); // optimize the tree, i.e. remove empty
          // properties and section that may result
          // from loading terminologies etc.
       } catch (Exception e) {
          e.printStackTrace();
       }
-      // mapped.optimizeTree();
       return mapped;
    }
 
 
    /**
-    * Recursively runs through the tree completing missing mapping information with terminology definitions while
-    * keeping locally provided ones.
+    * Runs once through the tree below the original section, completes missing mapping information with terminology
+    * definitions while keeping locally provided ones, and maps each section. Subsections of skipped sections are
+    * mapped into the destination of the nearest mapped ancestor.
+    * 
+    * @return {@link List} of {@link Property}s: the properties of the tree in document order.
+    * @throws Exception
     */
-   private void checkMapping() {
-      Section root = original.getRootSection();
-      for (int i = 0; i < root.sectionCount(); i++) {
-         fillMappings(root.getSection(i));
+   private List<Property> mapSections() throws Exception {
+      List<Property> properties = new ArrayList<Property>();
+      destinations.put(original, mapped);
+      properties.addAll(original.getPropertyList());
+      // pairs of original section and the section it is mapped into
+      Deque<Section[]> stack = new ArrayDeque<Section[]>();
+      pushChildren(stack, original, mapped);
+      while (!stack.isEmpty()) {
+         Section[] pair = stack.pop();
+         Section origin = pair[0];
+         fillMappings(origin);
+         Section dest = mapSection(origin);
+         if (dest != null) {
+            pair[1].add(dest);
+         } else {
+            dest = pair[1];
+         }
+         destinations.put(origin, dest);
+         properties.addAll(origin.getPropertyList());
+         pushChildren(stack, origin, dest);
+      }
+      return properties;
+   }
+
+
+   private static void pushChildren(Deque<Section[]> stack, Section origin, Section dest) {
+      for (int i = origin.sectionCount() - 1; i >= 0; i--) {
+         stack.push(new Section[] { origin.getSection(i), dest });
       }
    }
 
@@ -107,109 +146,54 @@ public class Mapper {
     *            , the {@link Section} to fill up.
     */
    private void fillMappings(Section section) {
-      // load the terminology
-      Section terminology = TerminologyManager.instance().loadTerminology(section.getRepository(),
-            section.getType());
-      if (terminology != null) {
-         // 1st section mapping
-         if (section.getMapping() == null) {
-            section.setMapping(terminology.getMapping());
-         }
-         // 2nd property mapping
-         for (int i = 0; i < section.propertyCount(); i++) {
-            if (section.getProperty(i).getMapping() == null) {
-               if (terminology.getProperty(section.getProperty(i).getName()) != null) {
-                  section.getProperty(i).setMapping(
-                        terminology.getProperty(section.getProperty(i).getName()).getMapping());
-               }
+      MappingPlan.Rule rule = plan.rule(section.getRepository(), section.getType());
+      // 1st section mapping
+      if (section.getMapping() == null && rule.sectionMapping() != null) {
+         section.setMapping(rule.sectionMapping());
+      }
+      // 2nd property mapping
+      for (int i = 0; i < section.propertyCount(); i++) {
+         Property property = section.getProperty(i);
+         if (property.getMapping() == null) {
+            URL mapping = rule.propertyMapping(property.getName());
+            if (mapping != null) {
+               property.setMapping(mapping);
             }
          }
       }
-      // 3rd recursive call on subsections
-      for (int i = 0; i < section.sectionCount(); i++) {
-         fillMappings(section.getSection(i));
-      }
    }
 
 
    /**
-    * Controls the mapping of a {@link Section}.
+    * Creates the destination of a {@link Section}.
     * 
     * @param origin
     *            {@link Section} the original section that needs to be mapped
-    * @param mappedParent
-    *            {@link Section} the parent section in the mapped tree.
+    * @return {@link Section} the destination or null if the section is skipped.
     * @throws Exception
     */
-   private void mapSection(Section origin, Section mappedParent) throws Exception {
+   private Section mapSection(Section origin) throws Exception {
       Section dest = null; // the destination
       if (origin.getMapping() == null) {// no mapping information could be
          // found just create a copy
          dest = new Section(origin.getName(), origin.getType());
          dest.setDefinition(origin.getDefinition());
          dest.setReference(origin.getReference());
-      } else {// there is mapping information
-         URL url = origin.getMapping(); // get the mapping
-         String destType = url.getRef(); // find the reference part, i.e. the
-         // part following the '#' which is
-         // the destination type
-
-         if (destType != null && !destType.isEmpty()) { // there is a
-            // destination type;
-            // load terminology
-            dest = TerminologyManager.instance().loadTerminology(origin.getMapping(), destType);
+      } else {// there is mapping information, the destination type is
+         // the reference part of the url or, if missing, the only type
+         // defined in the terminology.
+         Section terminology = plan.sectionTarget(origin.getMapping());
+         if (terminology != null) {
+            dest = copy(terminology);
             dest.setName(origin.getName());
             dest.setReference(origin.getReference());
-         } else {// there is no type definition: try if an assignment can be
-            // uniquely made.
-            dest = TerminologyManager.instance().loadTerminology(origin.getMapping(), null);
-            if (dest.getSections().size() == 1) {// yes, only one type
-               // defined in the
-               // terminology, use it!
-               dest = dest.getSection(0);
-               dest.setName(origin.getName());
-               dest.setReference(origin.getReference());
-            } else {// error, not unique, raise an error
-               System.out.println("\tMapper.mapSection(): cannot uniquely map section: "
-                           + origin.getName()
-                           + ". Section skipped! Extend the desired section type to the mapping url as reference (#someType)");
-               dest = null;
-            }
+         } else {// error, not unique or not found, raise an error
+            System.out.println("\tMapper.mapSection(): cannot uniquely map section: "
+                        + origin.getName()
+                        + ". Section skipped! Extend the desired section type to the mapping url as reference (#someType)");
          }
       }
-      if (mappedParent == null) {// if there is no section so far
-         mappedParent = dest;
-         forwardMap.put(origin.getPath(), dest.getPath());
-         reverseMap.put(dest.getPath(), origin.getPath());
-      } else {// otherwise add it
-         mappedParent.add(dest);
-         forwardMap.put(origin.getPath(), dest.getPath()); // take a note of
-         // the origin.
-         reverseMap.put(dest.getPath(), origin.getPath());// reverse map (not
-         // used, so far)
-      }
-      for (int i = 0; i < origin.sectionCount(); i++) {// recursively map all
-         // subsections.
-         mapSection(origin.getSection(i), dest);
-      }
-   }
-
-
-   /**
-    * Map all Properties of the section
-    * 
-    * @param sec
-    *            {@link Section} the section.
-    */
-   private void mapProperties(Section sec) {
-      // map the Properties of this section
-      for (int i = 0; i < sec.propertyCount(); i++) {
-         mapProperty(sec.getProperty(i));
-      }
-      // recursive call to map the properties of subsections.
-      for (int i = 0; i < sec.sectionCount(); i++) {
-         mapProperties(sec.getSection(i));
-      }
+      return dest;
    }
 
 
@@ -220,6 +204,14 @@ public class Mapper {
     *            {@link Property} the Property.
     */
    public void mapProperty(Property p) {
+      if (plan == null) {
+         plan = TerminologyManager.instance().mappingPlan();
+      }
+      Section parentDest = destinations.get(p.getParent());// find the destination section
+      if (parentDest == null) {
+         System.out.println("Mapper.mapProperty: the section of property " + p.getName() + " has not been mapped!");
+         return;
+      }
       // create a copy of the property.
       Property myCopy = null;
       try {
@@ -229,140 +221,107 @@ public class Mapper {
       } catch (ClassNotFoundException e) {
          e.printStackTrace();
       }
-
-      Section parentDest = mapped.getSection(forwardMap.get(p.getParent().getPath()));// find the destination
-      // section
       if (p.getMapping() == null) { // no mapping defined, just add to
          // destination
          parentDest.add(myCopy);
-      } else {// there is mapping information
-         String ref = p.getMapping().getRef(); // get the reference part of
-         // the URL
-         String destType = null;
-         String mapName = null;
-         if (ref == null || ref.isEmpty()) {// mapping has no reference part
-            System.out.println("Property mapping does not containt reference information! Just appending to current section!");
-            parentDest.add(myCopy);
-         } else if (!ref.contains(":")) {// there is a reference part but no
-            // section type
-            mapName = ref;
-            System.out.println("Property.mapProperty: reference part of mapping does not indicate the type of destination section! Please change!");
-            Section temp = TerminologyManager.instance().loadTerminology(p.getMapping(), null); // load the
-            // terminology
+         return;
+      }
+      MappingPlan.PropertyTarget target = plan.propertyTarget(p.getMapping());
+      if (target.name == null) {// mapping has no reference part
+         System.out.println("Property mapping does not containt reference information! Just appending to current section!");
+         parentDest.add(myCopy);
+         return;
+      }
+      if (!target.typed) {
+         System.out.println("Property.mapProperty: reference part of mapping does not indicate the type of destination section! Please change!");
+      }
+      if (target.defined) {
+         myCopy.setName(target.name);
+      } else {
+         // otherwise, keep it
+         System.out.println("Property.mapProperty: terminology does not contain a property with the name specified in the mapping!");
+      }
+      if (target.ambiguous) {
+         // there is more than one section type defined in the terminology --> not unique assignment possible
+         System.out.println("Property.mapProperty: Could not uniquely map the property due to missing section type in reference part of mapping url.");
+      } else if (target.type != null) {
+         place(p, myCopy, parentDest, target);
+      }
+   }
 
-            if (temp.getSection(0).getProperty(mapName) != null)
-               myCopy.setName(mapName);
-            else
-               // otherwise, keep it
-               System.out.println("Property.mapProperty: terminology does not contain a property with the name specidied in the mapping!");
 
-            if (temp.sectionCount() > 1) {
-               // there is more than one section type defined in the terminology --> not unique assignment possible
-               System.out.println("Property.mapProperty: Could not uniquely map the property due to missing section type in reference part of mapping url.");
-            } else {// only one type: assuming that this will be the target
-               destType = temp.getSection(0).getType();
-               if (parentDest.getType().equalsIgnoreCase(destType)) {
-               // if the destination type matches the terminology type, add the property
-                  parentDest.add(myCopy);// add to destination section
-               } else if (parentDest.getSectionsByType(destType).size() > 0) {
-                  if (parentDest.getSectionsByType(destType).size() > 1)
-                     System.out.println("Cannot uniquely assign property: " + p.getName()
-                           + " in section: "
-                           + p.getParent().getPath());
-                  else {
-                     parentDest.getSectionByType(destType).add(myCopy);
-                  }
-               } else if (parentDest.getParent().getSectionByType(destType) != null) {
-                  if (parentDest.getParent().getSectionsByType(destType).size() > 1)
-                     System.out.println("Cannot uniquely assign property: " + p.getName()
-                           + " in section: "
-                           + p.getParent().getPath());
-                  else {// check if there are multiple dependencies,
-                     // create subsection and create a link
-                     Section destSection = parentDest.getParent().getSectionByType(destType);
-                     if (destSection.getRelatedSections(parentDest.getType()).size() > 1) {// there
-                        // are
-                        // multiple
-                        // dependencies
-                        temp.add(myCopy);
-                        parentDest.add(temp);
-                        temp.setLink(destSection.getPath());
-                     } else {// no multiple dependencies, just add.
-                        destSection.add(myCopy);
-                     }
-                  }
-               }
-               // else
-               // if(destination.getParent().getSectionByType(destType)!=
-               // null){//else try a sibling section
-               // destination.getParent().getSectionByType(destType).add(myCopy);
-               // }
-               else {// if neither mapped Section nor sibling is of
-                  // matching type add the terminology
-                  temp.getSection(0).add(myCopy);
-                  parentDest.getParent().add(temp.getSection(0));
-               }
-            }
-         } else {// there is a reference part and it contains section-type
-            // information TODO!!!! do not work with terminology section here!!!
-            String type = ref.substring(0, ref.indexOf(":"));
-            mapName = ref.substring(ref.indexOf(":") + 1);
-            Section termSection = TerminologyManager.instance().loadTerminology(p.getMapping(),
-                  type);
-            Section temp = null;
+   /**
+    * Figures out the section of the destination type a mapped property belongs to.
+    * 
+    * @param p
+    *            {@link Property} the original property.
+    * @param myCopy
+    *            {@link Property} the renamed copy that is added to the mapped tree.
+    * @param parentDest
+    *            {@link Section} the destination of the property's parent section.
+    * @param target
+    *            {@link MappingPlan.PropertyTarget} the destination of the property mapping.
+    */
+   private void place(Property p, Property myCopy, Section parentDest, MappingPlan.PropertyTarget target) {
+      String type = target.type;
+      if (parentDest.getType() != null && parentDest.getType().equalsIgnoreCase(type)) {
+         // if it is the destination section itself, add property
+         parentDest.add(myCopy);
+         return;
+      }
+      Vector<Section> children = parentDest.getSectionsByType(type);
+      if (children.size() > 1) {
+         System.out.println("Cannot uniquely assign property: " + p.getName() + " in section: "
+               + p.getParent().getPath());
+         return;
+      } else if (children.size() == 1) {
+         children.get(0).add(myCopy);
+         return;
+      }
+      Section grandParent = parentDest.getParent();
+      Vector<Section> siblings = grandParent == null ? new Vector<Section>() : grandParent.getSectionsByType(type);
+      if (siblings.size() > 1) {
+         System.out.println("Cannot uniquely assign property: " + p.getName() + " in section: "
+               + p.getParent().getPath());
+      } else if (siblings.size() == 1) {// check if there are unique or multiple dependencies
+         Section destSection = siblings.get(0);
+         if (destSection.getRelatedSections(parentDest.getType()).size() > 1) {
+            // there are multiple dependencies, create a subsection linking to the destination
             try {
-               temp = new Section(termSection.getName(), termSection.getType());
+               Section link = new Section(target.section.getName(), type);
+               link.add(myCopy);
+               parentDest.add(link);
+               link.setLink(destSection.getPath());
             } catch (Exception e) {
+               e.printStackTrace();
             }
-            // check for propertyName
-            if (termSection.getProperty(mapName) != null)
-               myCopy.setName(mapName);
-            else
-               System.out.println("Property.mapProperty: terminology does not contain a property with the name specified in the mapping!");
-            // figure out the right destination
-            if (parentDest.getType().equalsIgnoreCase(type)) { // if it is
-               // the
-               // destination
-               // section
-               // itself,
-               // add
-               // property
-               parentDest.add(myCopy);
-            } else if (parentDest.getSectionsByType(type).size() > 0) {
-               if (parentDest.getSectionsByType(type).size() > 1)
-                  System.out.println("Cannot uniquely assign property: " + p.getName() + " in section: "
-                        + p.getParent().getPath());
-               else {
-                  parentDest.getSectionByType(type).add(myCopy);
-               }
-            } else if (parentDest.getParent().getSectionByType(type) != null) {
-               if (parentDest.getParent().getSectionsByType(type).size() > 1)
-                  System.out.println("Cannot uniquely assign property: " + p.getName() + " in section: "
-                        + p.getParent().getPath());
-               else {// check if there are unique or multiple dependencies
-                  Section destSection = parentDest.getParent().getSectionByType(type);
-                  if (destSection.getRelatedSections(parentDest.getType()).size() > 1) {// there are
-                     // multiple
-                     // dependencies
-                     temp.add(myCopy);
-                     parentDest.add(temp);
-                     temp.setLink(destSection.getPath());
-                  } else {// there is a single dependency
-                     destSection.add(myCopy);
-                  }
-               }
-            } else {// neither itself nor sibling is of the given type
-               // System.out.println("\tMapper.mapProperty: neither mappedSection nor sibling is of desired type.");
-               if (temp != null) {
-                  temp.add(myCopy);
-                  parentDest.getParent().add(temp);
-               } else {
-                  System.out.println("Property.mapProperty: could not find section of type: " + type
-                        + " in the mapped terminology!");
-               }
-            }
+         } else {// there is a single dependency
+            destSection.add(myCopy);
+         }
+      } else if (target.section == null || grandParent == null) {
+         System.out.println("Property.mapProperty: could not find section of type: " + type
+               + " in the mapped terminology!");
+      } else {// neither itself nor sibling is of the given type
+         try {
+            Section created = target.typed ? new Section(target.section.getName(), type) : copy(target.section);
+            created.add(myCopy);
+            grandParent.add(created);
+         } catch (Exception e) {
+            e.printStackTrace();
          }
       }
    }
 
+
+   /**
+    * Copies a section of the terminology cache so that the mapped tree never shares sections with it. The
+    * {@link TerminologyManager} modifies a cached terminology only while holding the lock on its root, mappers
+    * running on other threads may copy from it at the same time.
+    */
+   private static Section copy(Section terminology) throws Exception {
+      synchronized (terminology.getRootSection()) {
+         return terminology.copy();
+      }
+   }
+
 }
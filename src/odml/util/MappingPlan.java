@@ -0,0 +1,214 @@
+package odml.util;
+
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.net.URL;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import odml.core.CompiledTerminology;
+import odml.core.Section;
+
+/**
+ * The mapping information the {@link Mapper} needs, resolved once per terminology instead of once per section and
+ * property. A plan answers three questions:
+ * <ol>
+ * <li>which mappings the terminology defines for a section type and its properties ({@link #rule(URL, String)}),</li>
+ * <li>which terminology section a section mapping points to ({@link #sectionTarget(URL)}),</li>
+ * <li>into which section type and under which name a property mapping puts a property
+ * ({@link #propertyTarget(URL)}).</li>
+ * </ol>
+ * The answers are kept in hash maps keyed by the repository or mapping url, so that a terminology is loaded and
+ * searched only once. The {@link TerminologyManager} holds one plan that is shared by all mappers and threads, see
+ * {@link TerminologyManager#mappingPlan()}, and is cleared together with the terminology cache; a plan refers to
+ * the cached terminology sections and must not outlive them.
+ *
+ * @since 10.2026
+ *
+ */
+final class MappingPlan {
+
+   private final TerminologyManager                           manager;
+   private final ConcurrentHashMap<String, Rule>              rules           =
+         new ConcurrentHashMap<String, Rule>();
+   private final ConcurrentHashMap<String, Optional<Section>> sectionTargets  =
+         new ConcurrentHashMap<String, Optional<Section>>();
+   private final ConcurrentHashMap<String, PropertyTarget>    propertyTargets =
+         new ConcurrentHashMap<String, PropertyTarget>();
+
+
+   MappingPlan(TerminologyManager manager) {
+      this.manager = manager;
+   }
+
+
+   /**
+    * Returns the mappings defined by the terminology of the given section type.
+    *
+    * @param repository {@link URL}: the repository of the section, may be null.
+    * @param type {@link String}: the section type.
+    * @return {@link Rule}: the mappings, never null.
+    */
+   Rule rule(URL repository, String type) {
+      String key = (repository == null ? "" : TerminologyManager.repositoryKey(repository)) + "#" + type;
+      Rule rule = rules.get(key);
+      if (rule == null) {
+         // resolved outside of the map so that loading a terminology does not block other keys
+         Section terminology = repository == null ? null : manager.loadTerminology(repository, type);
+         rule = terminology == null ? Rule.NONE
+               : new Rule(terminology.getMapping(), manager.compile(terminology));
+         Rule previous = rules.putIfAbsent(key, rule);
+         rule = previous == null ? rule : previous;
+      }
+      return rule;
+   }
+
+
+   /**
+    * Returns the terminology section a section mapping points to. If the mapping names no type, the terminology must
+    * define exactly one section.
+    *
+    * @param mapping {@link URL}: the section mapping.
+    * @return {@link Section}: the terminology section or null if the mapping cannot be resolved uniquely. The section
+    *         belongs to the terminology cache and must be copied before it is modified.
+    */
+   Section sectionTarget(URL mapping) {
+      String key = mapping.toString();
+      Optional<Section> cached = sectionTargets.get(key);
+      if (cached != null) {
+         return cached.orElse(null);
+      }
+      String type = mapping.getRef();
+      Section target;
+      if (type != null && !type.isEmpty()) {
+         target = manager.loadTerminology(mapping, type);
+      } else {
+         Section root = manager.loadTerminology(mapping, null);
+         target = root != null && root.sectionCount() == 1 ? root.getSection(0) : null;
+      }
+      sectionTargets.putIfAbsent(key, Optional.ofNullable(target));
+      return target;
+   }
+
+
+   /**
+    * Returns the destination of a property mapping. The reference part of the mapping has the form type:name or,
+    * deprecated, just name, in which case the terminology must define exactly one section.
+    *
+    * @param mapping {@link URL}: the property mapping.
+    * @return {@link PropertyTarget}: the destination, never null.
+    */
+   PropertyTarget propertyTarget(URL mapping) {
+      String key = mapping.toString();
+      PropertyTarget target = propertyTargets.get(key);
+      if (target == null) {
+         target = resolve(mapping);
+         PropertyTarget previous = propertyTargets.putIfAbsent(key, target);
+         target = previous == null ? target : previous;
+      }
+      return target;
+   }
+
+
+   /**
+    * Forgets all resolved mappings.
+    */
+   void clear() {
+      rules.clear();
+      sectionTargets.clear();
+      propertyTargets.clear();
+   }
+
+
+   private PropertyTarget resolve(URL mapping) {
+      String ref = mapping.getRef();
+      if (ref == null || ref.isEmpty()) {
+         return new PropertyTarget(null, null, null, false, false, false);
+      }
+      Section section;
+      String type, name;
+      boolean typed = ref.contains(":");
+      boolean ambiguous = false;
+      if (typed) {
+         type = ref.substring(0, ref.indexOf(":"));
+         name = ref.substring(ref.indexOf(":") + 1);
+         section = manager.loadTerminology(mapping, type);
+      } else {
+         name = ref;
+         Section root = manager.loadTerminology(mapping, null);
+         section = root == null || root.sectionCount() == 0 ? null : root.getSection(0);
+         ambiguous = root != null && root.sectionCount() > 1;
+         type = section == null ? null : section.getType();
+      }
+      boolean defined = section != null && manager.compile(section).get(name) != null;
+      return new PropertyTarget(type, name, section, typed, defined, ambiguous);
+   }
+
+
+   /**
+    * The mappings a terminology defines for a section type.
+    */
+   static final class Rule {
+
+      static final Rule                 NONE = new Rule(null, null);
+      private final URL                 mapping;
+      private final CompiledTerminology properties;
+
+
+      Rule(URL mapping, CompiledTerminology properties) {
+         this.mapping = mapping;
+         this.properties = properties;
+      }
+
+
+      /**
+       * @return {@link URL}: the section mapping, may be null.
+       */
+      URL sectionMapping() {
+         return mapping;
+      }
+
+
+      /**
+       * @return {@link URL}: the mapping of the named property, may be null.
+       */
+      URL propertyMapping(String propertyName) {
+         CompiledTerminology.Entry entry = properties == null ? null : properties.get(propertyName);
+         return entry == null ? null : entry.getMapping();
+      }
+   }
+
+
+   /**
+    * The destination of a property mapping.
+    */
+   static final class PropertyTarget {
+
+      final String  type, name;
+      final Section section;
+      final boolean typed, defined, ambiguous;
+
+
+      PropertyTarget(String type, String name, Section section, boolean typed, boolean defined,
+            boolean ambiguous) {
+         this.type = type;
+         this.name = name;
+         this.section = section;
+         this.typed = typed;
+         this.defined = defined;
+         this.ambiguous = ambiguous;
+      }
+   }
+}
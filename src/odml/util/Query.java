@@ -0,0 +1,692 @@
+package odml.util;
+/************************************************************************
+ * odML - open metadata Markup Language - Copyright (C) 2009, 2010 Jan Grewe, Jan Benda
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License (LGPL) as published by the Free Software Foundation; either version 3 of the License, or (at your
+ * option) any later version.
+ *
+ * odML is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with this software. If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import odml.core.Property;
+import odml.core.Section;
+
+/**
+ * A query selects the properties of an odML tree that fulfill a set of conditions on the property, its values and
+ * the section it belongs to, e.g. all "Resistance" properties of sections of type "cell" with a value larger than
+ * 100 MOhm:
+ *
+ * <pre>
+ * Stream&lt;Property&gt; resistances = new Query().sectionType("cell").name("Resistance")
+ *       .value(Query.Comparison.GREATER, 100, "MOhm").properties(root);
+ * </pre>
+ *
+ * All conditions are checked in a single walk over the tree. Section conditions are checked once per section, the
+ * properties of a section that fails them are skipped, and {@link #within(String)} restricts the walk to a subtree.
+ * The results are streamed while the tree is walked, so that e.g. {@link Stream#findFirst()} stops the walk early.
+ *
+ * Queries run repeatedly on the same tree can use an {@link Index} of section types and property names. The
+ * planner then starts from the smallest candidate set the index offers instead of walking the tree.
+ *
+ * Sections with virtual links are searched with the content seen through the link, as by
+ * {@link Section#descendants()}. A section that is shared by several links is visited, and its properties are
+ * returned, once per place it is seen at.
+ *
+ * Type matching follows {@link Section#getSectionsByType(String)}, i.e. it is case-insensitive and a type matches its
+ * sub-types ("stimulus" matches "stimulus/white_noise"). Property and section names are matched case-insensitively.
+ *
+ * @since 10.2026
+ *
+ */
+public class Query {
+
+   /**
+    * The comparisons of a value condition.
+    */
+   public enum Comparison {
+      EQUAL, NOT_EQUAL, LESS, LESS_OR_EQUAL, GREATER, GREATER_OR_EQUAL;
+
+
+      boolean test(int order) {
+         switch (this) {
+         case EQUAL:
+            return order == 0;
+         case NOT_EQUAL:
+            return order != 0;
+         case LESS:
+            return order < 0;
+         case LESS_OR_EQUAL:
+            return order <= 0;
+         case GREATER:
+            return order > 0;
+         default:
+            return order >= 0;
+         }
+      }
+   }
+
+   private static final String[]               PREFIXES          = { "Y", "Z", "E", "P", "T", "G", "M", "k", "h",
+         "da", "d", "c", "m", "u", "\u00b5", "n", "p", "f", "a", "z", "y" };
+   private static final double[]               PREFIX_FACTORS    = { 1e24, 1e21, 1e18, 1e15, 1e12, 1e9, 1e6, 1e3,
+         1e2, 1e1, 1e-1, 1e-2, 1e-3, 1e-6, 1e-6, 1e-9, 1e-12, 1e-15, 1e-18, 1e-21, 1e-24 };
+
+   private String                              sectionType       = null, sectionName = null, propertyName = null;
+   private String                              within            = null;
+   private final List<ValueCondition>          valueConditions   = new ArrayList<ValueCondition>();
+   private final List<Predicate<? super Section>>  sectionFilters  = new ArrayList<Predicate<? super Section>>();
+   private final List<Predicate<? super Property>> propertyFilters = new ArrayList<Predicate<? super Property>>();
+
+
+   /**
+    * Restricts the query to sections of the given type or one of its sub-types.
+    *
+    * @param type {@link String}: the section type.
+    * @return {@link Query}: this query.
+    */
+   public Query sectionType(String type) {
+      this.sectionType = type;
+      return this;
+   }
+
+
+   /**
+    * Restricts the query to sections with the given name.
+    *
+    * @param name {@link String}: the section name.
+    * @return {@link Query}: this query.
+    */
+   public Query sectionName(String name) {
+      this.sectionName = name;
+      return this;
+   }
+
+
+   /**
+    * Restricts the query to the subtree at the given path. Sections outside of this subtree are not visited.
+    *
+    * @param path {@link String}: the path of the subtree, relative to the root the query is run on.
+    * @return {@link Query}: this query.
+    */
+   public Query within(String path) {
+      this.within = path;
+      return this;
+   }
+
+
+   /**
+    * Restricts the query to properties with the given name.
+    *
+    * @param name {@link String}: the property name.
+    * @return {@link Query}: this query.
+    */
+   public Query name(String name) {
+      this.propertyName = name;
+      return this;
+   }
+
+
+   /**
+    * Restricts the query to properties with at least one value that compares to the given operand as requested.
+    * Numbers are compared numerically, other operands by their string representation.
+    *
+    * @param comparison {@link Comparison}: the comparison of value and operand.
+    * @param operand {@link Object}: the operand.
+    * @return {@link Query}: this query.
+    */
+   public Query value(Comparison comparison, Object operand) {
+      return value(comparison, operand, null);
+   }
+
+
+   /**
+    * Restricts the query to properties with at least one numeric value that compares to the given quantity as
+    * requested. Values whose unit differs from the given one by an SI prefix are scaled, e.g. a value of 2 kOhm is
+    * less than 1 MOhm. Values with other units do not match.
+    *
+    * @param comparison {@link Comparison}: the comparison of value and operand.
+    * @param operand {@link Number}: the operand.
+    * @param unit {@link String}: the unit of the operand, may be null to ignore units.
+    * @return {@link Query}: this query.
+    */
+   public Query value(Comparison comparison, Object operand, String unit) {
+      valueConditions.add(new ValueCondition(comparison, operand, unit));
+      return this;
+   }
+
+
+   /**
+    * Adds an arbitrary condition on the sections.
+    *
+    * @param filter {@link Predicate}: the condition a section must fulfill.
+    * @return {@link Query}: this query.
+    */
+   public Query whereSection(Predicate<? super Section> filter) {
+      sectionFilters.add(filter);
+      return this;
+   }
+
+
+   /**
+    * Adds an arbitrary condition on the properties.
+    *
+    * @param filter {@link Predicate}: the condition a property must fulfill.
+    * @return {@link Query}: this query.
+    */
+   public Query where(Predicate<? super Property> filter) {
+      propertyFilters.add(filter);
+      return this;
+   }
+
+
+   /**
+    * Runs the query on the tree below the given section.
+    *
+    * @param root {@link Section}: the section the query starts at, it is part of the searched tree.
+    * @return {@link Stream} of {@link Property}s: the matching properties in document order.
+    */
+   public Stream<Property> properties(Section root) {
+      Section start = start(root);
+      if (start == null) {
+         return Stream.empty();
+      }
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new TreeIterator(start),
+            Spliterator.ORDERED | Spliterator.NONNULL), false);
+   }
+
+
+   /**
+    * Runs the query using the given index. Candidates are taken from the type or the name index, whichever yields
+    * fewer of them, and checked against the remaining conditions. Without a type or name condition the tree is
+    * walked as by {@link #properties(Section)}.
+    *
+    * @param index {@link Index}: the index of the tree.
+    * @return {@link Stream} of {@link Property}s: the matching properties.
+    */
+   public Stream<Property> properties(Index index) {
+      final Section start = start(index.root);
+      if (start == null) {
+         return Stream.empty();
+      }
+      if (sectionType == null && propertyName == null) {
+         return properties(index.root);
+      }
+      // the positions of the searched subtree in the walk of the indexed tree
+      final int from;
+      final int to;
+      if (start == index.root) {
+         from = 0;
+         to = index.order.size();
+      } else {
+         Integer position = index.first.get(start);
+         if (position == null) {
+            return Stream.empty();
+         }
+         from = position;
+         to = index.ends[position];
+      }
+      List<Integer> typed = sectionType == null ? null : index.positions(index.typePositions, sectionType);
+      final List<Property> named = propertyName == null ? null : index.properties(propertyName);
+      Stream<Property> candidates;
+      if (named != null && (typed == null || named.size() <= typed.size())) {
+         final List<Integer> positions = index.positions(index.namePositions, propertyName);
+         candidates = IntStream.range(0, named.size())
+               .filter(i -> positions.get(i) >= from && positions.get(i) < to
+                     && sectionMatches(index.order.get(positions.get(i))))
+               .mapToObj(named::get);
+      } else {
+         candidates = typed.stream().filter(position -> position >= from && position < to)
+               .map(index.order::get).filter(this::sectionMatches).flatMap(this::sectionProperties);
+      }
+      return candidates.filter(this::propertyMatches);
+   }
+
+
+   /**
+    * Returns the sections that contain matching properties. Without property or value conditions these are all
+    * sections that match the section conditions.
+    *
+    * @param root {@link Section}: the section the query starts at.
+    * @return {@link Stream} of {@link Section}s: the matching sections.
+    */
+   public Stream<Section> sections(Section root) {
+      Section start = start(root);
+      if (start == null) {
+         return Stream.empty();
+      }
+      Stream<Section> sections = StreamSupport.stream(Spliterators.spliteratorUnknownSize(
+            new SectionIterator(start), Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .filter(this::sectionMatches);
+      if (!hasPropertyConditions()) {
+         return sections;
+      }
+      // the properties seen through a virtual link belong to the link target, not to the linking section
+      return sections.filter(s -> s.getPropertyList().stream().anyMatch(this::propertyMatches));
+   }
+
+
+   /**
+    * Runs the query and projects each matching property, e.g. to its number or unit.
+    *
+    * @param root {@link Section}: the section the query starts at.
+    * @param projection {@link Function}: maps a property to the result.
+    * @return {@link Stream}: the projected results.
+    */
+   public <R> Stream<R> select(Section root, Function<? super Property, ? extends R> projection) {
+      return properties(root).map(projection);
+   }
+
+
+   /**
+    * Runs the query using the given index and projects each matching property.
+    *
+    * @param index {@link Index}: the index of the tree.
+    * @param projection {@link Function}: maps a property to the result.
+    * @return {@link Stream}: the projected results.
+    */
+   public <R> Stream<R> select(Index index, Function<? super Property, ? extends R> projection) {
+      return properties(index).map(projection);
+   }
+
+
+   /**
+    * Builds the type and name index of the tree below the given section in one walk. The index reflects the tree
+    * at the time it was built; it must be rebuilt after sections or properties were added, removed or renamed.
+    *
+    * @param root {@link Section}: the root of the indexed tree.
+    * @return {@link Index}: the index.
+    */
+   public static Index index(Section root) {
+      return new Index(root);
+   }
+
+
+   private Section start(Section root) {
+      if (within == null || within.isEmpty()) {
+         return root;
+      }
+      return root.getSection(within);
+   }
+
+
+   private boolean hasPropertyConditions() {
+      return propertyName != null || !valueConditions.isEmpty() || !propertyFilters.isEmpty();
+   }
+
+
+   private boolean sectionMatches(Section section) {
+      if (sectionType != null && !typeMatches(section.getType(), sectionType)) {
+         return false;
+      }
+      if (sectionName != null && !sectionName.equalsIgnoreCase(section.getName())) {
+         return false;
+      }
+      for (Predicate<? super Section> filter : sectionFilters) {
+         if (!filter.test(section)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   private boolean propertyMatches(Property property) {
+      if (propertyName != null && !propertyName.equalsIgnoreCase(property.getName())) {
+         return false;
+      }
+      for (ValueCondition condition : valueConditions) {
+         if (!condition.test(property)) {
+            return false;
+         }
+      }
+      for (Predicate<? super Property> filter : propertyFilters) {
+         if (!filter.test(property)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+
+   private Stream<Property> sectionProperties(Section section) {
+      if (propertyName != null) {
+         List<Property> matches = new ArrayList<Property>(1);
+         for (int i = 0; i < section.propertyCount(); i++) {
+            if (propertyName.equalsIgnoreCase(section.getProperty(i).getName())) {
+               matches.add(section.getProperty(i));
+            }
+         }
+         return matches.stream();
+      }
+      return section.getPropertyList().stream();
+   }
+
+
+   private static boolean typeMatches(String sectionType, String type) {
+      if (sectionType == null) {
+         return false;
+      }
+      return sectionType.equalsIgnoreCase(type) || (sectionType.contains("/")
+            && sectionType.substring(0, sectionType.indexOf("/")).equalsIgnoreCase(type));
+   }
+
+
+   private static String key(String name) {
+      return name == null ? "" : name.toLowerCase(Locale.ROOT);
+   }
+
+
+   /**
+    * Returns the factor that converts a quantity in the given unit to the target unit, if both differ only by an SI
+    * prefix.
+    *
+    * @return double: the factor or NaN if the units are not compatible.
+    */
+   static double unitFactor(String unit, String target) {
+      if (unit == null || target == null) {
+         return Double.NaN;
+      }
+      unit = unit.trim();
+      target = target.trim();
+      if (unit.equals(target)) {
+         return 1.0;
+      }
+      for (int i = -1; i < PREFIXES.length; i++) {
+         String prefix = i < 0 ? "" : PREFIXES[i];
+         if (!unit.startsWith(prefix) || unit.length() == prefix.length()) {
+            continue;
+         }
+         String base = unit.substring(prefix.length());
+         if (!target.endsWith(base)) {
+            continue;
+         }
+         double from = i < 0 ? 1.0 : PREFIX_FACTORS[i];
+         String targetPrefix = target.substring(0, target.length() - base.length());
+         if (targetPrefix.isEmpty()) {
+            return from;
+         }
+         for (int j = 0; j < PREFIXES.length; j++) {
+            if (PREFIXES[j].equals(targetPrefix)) {
+               return from / PREFIX_FACTORS[j];
+            }
+         }
+      }
+      return Double.NaN;
+   }
+
+
+   /**
+    * Walks the tree in document order and returns the matching properties of the sections that match the section
+    * conditions. The properties of other sections are not looked at.
+    */
+   private class TreeIterator implements Iterator<Property> {
+
+      private final SectionIterator sections;
+      private Section               current  = null;
+      private int                   index    = 0;
+      private Property              next     = null;
+
+
+      TreeIterator(Section start) {
+         this.sections = new SectionIterator(start);
+      }
+
+
+      @Override
+      public boolean hasNext() {
+         while (next == null) {
+            if (current != null && index < current.propertyCount()) {
+               Property candidate = current.getProperty(index++);
+               if (propertyMatches(candidate)) {
+                  next = candidate;
+               }
+            } else if (sections.hasNext()) {
+               Section section = sections.next();
+               current = sectionMatches(section) ? section : null;
+               index = 0;
+            } else {
+               return false;
+            }
+         }
+         return true;
+      }
+
+
+      @Override
+      public Property next() {
+         if (!hasNext()) {
+            throw new NoSuchElementException();
+         }
+         Property result = next;
+         next = null;
+         return result;
+      }
+   }
+
+
+   /**
+    * Returns the sections of a subtree in document order.
+    */
+   private static class SectionIterator implements Iterator<Section> {
+
+      private final Deque<Section> stack = new ArrayDeque<Section>();
+
+
+      SectionIterator(Section start) {
+         stack.push(start);
+      }
+
+
+      @Override
+      public boolean hasNext() {
+         return !stack.isEmpty();
+      }
+
+
+      @Override
+      public Section next() {
+         Section section = stack.pop();
+         for (int i = section.sectionCount() - 1; i >= 0; i--) {
+            stack.push(section.getSection(i));
+         }
+         return section;
+      }
+   }
+
+
+   /**
+    * A condition on the values of a property.
+    */
+   private static class ValueCondition {
+
+      private final Comparison comparison;
+      private final Object     operand;
+      private final String     unit;
+
+
+      ValueCondition(Comparison comparison, Object operand, String unit) {
+         if (unit != null && !(operand instanceof Number)) {
+            throw new IllegalArgumentException("A quantity with unit must have a numeric operand!");
+         }
+         this.comparison = comparison;
+         this.operand = operand;
+         this.unit = unit;
+      }
+
+
+      boolean test(Property property) {
+         for (int i = 0; i < property.valueCount(); i++) {
+            Object content = property.getValue(i);
+            if (content == null) {
+               continue;
+            }
+            if (operand instanceof Number) {
+               double value = number(content);
+               if (unit != null) {
+                  value *= unitFactor(property.getUnit(i), unit);
+               }
+               if (!Double.isNaN(value)
+                     && comparison.test(Double.compare(value, ((Number) operand).doubleValue()))) {
+                  return true;
+               }
+            } else if (comparison.test(content.toString().compareTo(String.valueOf(operand)))) {
+               return true;
+            }
+         }
+         return false;
+      }
+
+
+      private static double number(Object content) {
+         if (content instanceof Number) {
+            return ((Number) content).doubleValue();
+         }
+         try {
+            return Double.parseDouble(content.toString().trim());
+         } catch (NumberFormatException e) {
+            return Double.NaN;
+         }
+      }
+   }
+
+
+   /**
+    * An index of the sections of a tree by type and of its properties by name. Besides the sections and properties,
+    * the index keeps the position in the walk of the tree at which each of them is seen, so that candidates are
+    * checked against the section they are seen in, which for a virtual link is not their parent.
+    */
+   public static class Index {
+
+      private final Section                     root;
+      private final Map<String, List<Section>>  types         = new HashMap<String, List<Section>>();
+      private final Map<String, List<Property>> names         = new HashMap<String, List<Property>>();
+      // the sections in the order of the walk, and the positions of the indexed sections and properties in it
+      private final List<Section>               order         = new ArrayList<Section>();
+      private final Map<String, List<Integer>>  typePositions = new HashMap<String, List<Integer>>();
+      private final Map<String, List<Integer>>  namePositions = new HashMap<String, List<Integer>>();
+      // the position after the subtree of each position, and the first position of each section
+      private final int[]                       ends;
+      private final Map<Section, Integer>       first         = new IdentityHashMap<Section, Integer>();
+
+
+      Index(Section root) {
+         this.root = root;
+         List<Integer> depths = new ArrayList<Integer>();
+         Deque<Section> stack = new ArrayDeque<Section>();
+         Deque<Integer> stackDepths = new ArrayDeque<Integer>();
+         stack.push(root);
+         stackDepths.push(0);
+         while (!stack.isEmpty()) {
+            Section section = stack.pop();
+            int depth = stackDepths.pop();
+            for (int i = section.sectionCount() - 1; i >= 0; i--) {
+               stack.push(section.getSection(i));
+               stackDepths.push(depth + 1);
+            }
+            int position = order.size();
+            order.add(section);
+            depths.add(depth);
+            if (!first.containsKey(section)) {
+               first.put(section, position);
+            }
+            String type = key(section.getType());
+            add(types, type, section);
+            add(typePositions, type, position);
+            if (type.contains("/")) {
+               add(types, type.substring(0, type.indexOf("/")), section);
+               add(typePositions, type.substring(0, type.indexOf("/")), position);
+            }
+            for (int i = 0; i < section.propertyCount(); i++) {
+               Property property = section.getProperty(i);
+               add(names, key(property.getName()), property);
+               add(namePositions, key(property.getName()), position);
+            }
+         }
+         // a subtree ends at the next position that is not deeper than its root
+         ends = new int[order.size()];
+         Deque<Integer> open = new ArrayDeque<Integer>();
+         for (int position = 0; position < order.size(); position++) {
+            while (!open.isEmpty() && depths.get(open.peek()) >= depths.get(position)) {
+               ends[open.pop()] = position;
+            }
+            open.push(position);
+         }
+         while (!open.isEmpty()) {
+            ends[open.pop()] = order.size();
+         }
+      }
+
+
+      private List<Integer> positions(Map<String, List<Integer>> map, String key) {
+         List<Integer> list = map.get(key(key));
+         return list == null ? Collections.<Integer> emptyList() : list;
+      }
+
+
+      private static <T> void add(Map<String, List<T>> map, String key, T item) {
+         List<T> list = map.get(key);
+         if (list == null) {
+            list = new ArrayList<T>();
+            map.put(key, list);
+         }
+         list.add(item);
+      }
+
+
+      /**
+       * Returns the root of the indexed tree.
+       *
+       * @return {@link Section}: the root section.
+       */
+      public Section getRootSection() {
+         return root;
+      }
+
+
+      /**
+       * Returns the sections of the given type or one of its sub-types.
+       *
+       * @param type {@link String}: the section type.
+       * @return {@link List} of {@link Section}s: the sections in document order, may be empty.
+       */
+      public List<Section> sections(String type) {
+         List<Section> list = types.get(key(type));
+         return list == null ? Collections.<Section> emptyList() : Collections.unmodifiableList(list);
+      }
+
+
+      /**
+       * Returns the properties with the given name.
+       *
+       * @param name {@link String}: the property name.
+       * @return {@link List} of {@link Property}s: the properties in document order, may be empty.
+       */
+      public List<Property> properties(String name) {
+         List<Property> list = names.get(key(name));
+         return list == null ? Collections.<Property> emptyList() : Collections.unmodifiableList(list);
+      }
+   }
+}
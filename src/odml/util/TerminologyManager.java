@@ -14,18 +14,44 @@ package odml.util;
  * <http://www.gnu.org/licenses/>.
  */
 
+import odml.core.CompiledTerminology;
+import odml.core.Property;
 import odml.core.Reader;
 import odml.core.Section;
 
 import java.io.*;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static java.lang.System.out;
 
+/**
+ * The {@link TerminologyManager} loads terminologies and caches them by repository url and section type. It may be
+ * used by several threads at once; each repository is loaded only once, also if it is requested concurrently, while
+ * different repositories are loaded in parallel.
+ *
+ * Terminologies are loaded lazily when they are first requested. To avoid stalls during validation or mapping, the
+ * terminologies a tree refers to can be fetched concurrently up front with {@link #prefetch(Section)}. Services can
+ * load their standard terminologies at startup with {@link #preload(Collection)} or by listing the repository urls,
+ * separated by commas, in the system property {@value #PRELOAD_PROPERTY}; these are loaded in the background as soon
+ * as the {@link TerminologyManager} is first used.
+ */
 public class TerminologyManager {
 
+   /** The system property listing repository urls that are loaded when the manager is created. */
+   public static final String             PRELOAD_PROPERTY   = "odml.terminologies.preload";
    private static TerminologyManager      instance           = null;
    private static final String            TERMINOLOGIES_FILE = System.getProperty("user.home")
                                                                    + System
@@ -42,9 +68,16 @@ public class TerminologyManager {
                                                                          .getProperty("file.separator")
                                                                    + "redirections.properties";
    private static final String            COMMENT            = "locally stored odml terminologies.";
-   private final HashMap<String, Section> urlSectionHash     = new HashMap<String, Section>();
+   private final ConcurrentHashMap<String, Section> urlSectionHash = new ConcurrentHashMap<String, Section>();
+   private final ConcurrentHashMap<String, FutureTask<Section>> repositories =
+         new ConcurrentHashMap<String, FutureTask<Section>>();
+   // keyed by identity, Section.hashCode hashes the whole subtree and changes with it
+   private final ConcurrentHashMap<SectionKey, CompiledTerminology> compiled =
+         new ConcurrentHashMap<SectionKey, CompiledTerminology>();
+   private final MappingPlan              mappingPlan        = new MappingPlan(this);
    // Properties hash for user settings
    private Properties                     localTerminologies, redirections;
+   private int                            prefetchThreads    = 8;
 
 
    /**
@@ -97,13 +130,157 @@ public class TerminologyManager {
     * 
     * @return The only instance of this {@link TerminologyManager}
     */
-   public static TerminologyManager instance() {
-      if (instance == null)
+   public static synchronized TerminologyManager instance() {
+      if (instance == null) {
          instance = new TerminologyManager();
+         instance.preloadFromSystemProperty();
+      }
       return instance;
    }
 
 
+   /**
+    * Sets the number of repositories that are downloaded concurrently by {@link #prefetch(Section)}. The default is
+    * 8.
+    * 
+    * @param threads int: the number of concurrent downloads. Values smaller than 1 are treated as 1.
+    */
+   public void setPrefetchThreads(int threads) {
+      this.prefetchThreads = Math.max(1, threads);
+   }
+
+
+   /**
+    * Returns the number of repositories that are downloaded concurrently.
+    * 
+    * @return int: the number of concurrent downloads.
+    */
+   public int getPrefetchThreads() {
+      return prefetchThreads;
+   }
+
+
+   /**
+    * Loads all terminologies the tree refers to into the cache: the repositories of the sections, with the section
+    * types defined there, and the targets of section and property mappings. Repositories are downloaded
+    * concurrently; the method returns when all of them are loaded.
+    * 
+    * @param root {@link Section}: the section whose subtree is scanned, including the section itself.
+    */
+   public void prefetch(Section root) {
+      Map<String, URL> repositories = new LinkedHashMap<String, URL>();
+      Map<String, Object[]> types = new LinkedHashMap<String, Object[]>();
+      List<Section> sections = new ArrayList<Section>();
+      sections.add(root);
+      root.descendants().forEachOrdered(sections::add);
+      for (Section section : sections) {
+         URL repository = section.getRepository();
+         if (repository != null) {
+            repositories.put(repositoryKey(repository), repository);
+            if (section.getType() != null) {
+               types.put(repositoryKey(repository) + "#" + section.getType(),
+                     new Object[] { repository, section.getType() });
+            }
+         }
+         URL mapping = section.getMapping();
+         if (mapping != null) {
+            repositories.put(repositoryKey(mapping), mapping);
+            String type = mapping.getRef() == null || mapping.getRef().isEmpty() ? null : mapping.getRef();
+            types.put(repositoryKey(mapping) + "#" + type, new Object[] { mapping, type });
+         }
+         for (int i = 0; i < section.propertyCount(); i++) {
+            Property property = section.getProperty(i);
+            if (property.getMapping() != null) {
+               repositories.put(repositoryKey(property.getMapping()), property.getMapping());
+            }
+         }
+      }
+      load(repositories.values());
+      // the repositories are cached, looking up the types does not block on the network any more
+      for (Object[] type : types.values()) {
+         loadTerminology((URL) type[0], (String) type[1]);
+      }
+   }
+
+
+   /**
+    * Loads the given repositories into the cache. Repositories are downloaded concurrently; the method returns when
+    * all of them are loaded.
+    * 
+    * @param repositories {@link Collection} of {@link URL}s: the repository urls.
+    */
+   public void prefetch(Collection<URL> repositories) {
+      load(repositories);
+   }
+
+
+   /**
+    * Starts loading the given repositories in the background and returns immediately. Terminologies requested
+    * while a repository is still loading wait for it instead of loading it again. Use this at startup to preload the
+    * standard terminologies of a service.
+    * 
+    * @param repositories {@link Collection} of {@link URL}s: the repository urls.
+    * @return {@link Future}: completes when all repositories are loaded.
+    */
+   public Future<?> preload(final Collection<URL> repositories) {
+      final List<URL> copy = new ArrayList<URL>(repositories);
+      ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+         Thread thread = new Thread(r, "odml-terminology-preload");
+         thread.setDaemon(true);
+         return thread;
+      });
+      try {
+         return executor.submit(() -> load(copy));
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+
+   private void preloadFromSystemProperty() {
+      String urls = System.getProperty(PRELOAD_PROPERTY);
+      if (urls == null || urls.trim().isEmpty()) {
+         return;
+      }
+      List<URL> repositories = new ArrayList<URL>();
+      for (String url : urls.split(",")) {
+         if (!url.trim().isEmpty()) {
+            try {
+               repositories.add(new URL(url.trim()));
+            } catch (MalformedURLException e) {
+               System.out.println("TerminologyManager: invalid url in " + PRELOAD_PROPERTY + ": " + url);
+            }
+         }
+      }
+      preload(repositories);
+   }
+
+
+   private void load(Collection<URL> repositories) {
+      if (repositories.size() == 1) {
+         getRepository(repositories.iterator().next());
+         return;
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(prefetchThreads,
+            Math.max(1, repositories.size())));
+      try {
+         List<Future<Section>> loads = new ArrayList<Future<Section>>(repositories.size());
+         for (final URL repository : repositories) {
+            loads.add(executor.submit(() -> getRepository(repository)));
+         }
+         for (Future<Section> load : loads) {
+            load.get();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+         e.getCause().printStackTrace();
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+
    /**
     * See loadTerminology(url,string) for information.
     */
@@ -129,31 +306,35 @@ public class TerminologyManager {
     */
    public Section loadTerminology(URL repository, String sectionType) {
       // check Hash
-      Section s = null;
-      String key = repository.getProtocol() + "://" + repository.getAuthority()
-            + repository.getPath() + "#"
-            + sectionType;
-      if (urlSectionHash.containsKey(key)) {
+      String key = repositoryKey(repository) + "#" + sectionType;
+      Section s = urlSectionHash.get(key);
+      if (s != null) {
+         return s;
+      }
+      // if not successful, get repository
+      Section rep = getRepository(repository);
+      if (rep == null) {
+         return null;
+      }
+      // searching and loading includes modifies the repository
+      synchronized (rep) {
          s = urlSectionHash.get(key);
-      } else {// if not successful, get repository
-         Section rep = getRepository(repository);
-         if (rep != null) {
-            // try to find directly
-            s = rep.findSectionByType(sectionType);
-            if (s == null && sectionType.contains("/")) {
-               // try with super-type first
-               s = rep.findSectionByType(sectionType.substring(0, sectionType.indexOf("/")));
-               if (s != null) {
-                  s.loadInclude();
-                  s = s.findSectionByType(sectionType);
-               }
+         if (s != null) {
+            return s;
+         }
+         // try to find directly
+         s = sectionType == null ? rep : rep.findSectionByType(sectionType);
+         if (s == null && sectionType.contains("/")) {
+            // try with super-type first
+            s = rep.findSectionByType(sectionType.substring(0, sectionType.indexOf("/")));
+            if (s != null) {
+               s.loadInclude();
+               s = s.findSectionByType(sectionType);
             }
          }
-      }
-      // finally check for section
-      if (s != null) {
-         s.loadInclude();
-         if (!urlSectionHash.containsKey(key)) {
+         // finally check for section
+         if (s != null) {
+            s.loadInclude();
             urlSectionHash.put(key, s);
          }
       }
@@ -166,23 +347,64 @@ public class TerminologyManager {
     * @param repository {@link URL}
     * @return {@link Section}
     */
-   private Section getRepository(URL repository) {
-      Section rep = null;
-      String key = repository.getProtocol() + "://" + repository.getAuthority()
-            + repository.getPath();
-      if (urlSectionHash.containsKey(key)) {
-         rep = urlSectionHash.get(key);
-      } else {
-         try {
+   private Section getRepository(final URL repository) {
+      String key = repositoryKey(repository);
+      FutureTask<Section> task = repositories.get(key);
+      if (task == null) {
+         FutureTask<Section> created = new FutureTask<Section>(() -> {
             Reader r = new Reader();
             r.load(repository, Reader.NO_CONVERSION, false);
-            rep = r.getRootSection();
-            urlSectionHash.put(key, rep);
-         } catch (Exception e) {
-            e.printStackTrace();
+            return r.getRootSection();
+         });
+         task = repositories.putIfAbsent(key, created);
+         if (task == null) {
+            task = created;
+            task.run();
          }
       }
-      return rep;
+      try {
+         // a repository that could not be opened stays cached as null, one that failed to load is retried
+         return task.get();
+      } catch (ExecutionException e) {
+         repositories.remove(key, task);
+         e.getCause().printStackTrace();
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      return null;
+   }
+
+
+   /**
+    * Returns the lookup table of the property definitions of a terminology section. Tables are compiled once per
+    * terminology section and cached until {@link #clearCache()} is called.
+    * 
+    * @param terminology {@link Section}: the terminology section, e.g. as returned by
+    *           {@link #loadTerminology(URL, String)}.
+    * @return {@link CompiledTerminology}: the lookup table.
+    */
+   public CompiledTerminology compile(Section terminology) {
+      return compiled.computeIfAbsent(new SectionKey(terminology), key -> CompiledTerminology.compile(key.section));
+   }
+
+
+   /**
+    * Returns the mapping information derived from the cached terminologies. The plan is shared by all
+    * {@link Mapper}s, so that repeated conversions resolve each terminology mapping only once; it is cleared by
+    * {@link #clearCache()}.
+    * 
+    * @return {@link MappingPlan}: the shared plan.
+    */
+   MappingPlan mappingPlan() {
+      return mappingPlan;
+   }
+
+
+   /**
+    * Returns the cache key of a repository, i.e. its url without the reference part.
+    */
+   static String repositoryKey(URL repository) {
+      return repository.getProtocol() + "://" + repository.getAuthority() + repository.getPath();
    }
 
 
@@ -191,6 +413,9 @@ public class TerminologyManager {
     */
    public void clearCache() {
       this.urlSectionHash.clear();
+      this.repositories.clear();
+      this.compiled.clear();
+      this.mappingPlan.clear();
    }
 
 
@@ -241,4 +466,30 @@ public class TerminologyManager {
          }
       }
    }
+
+
+   /**
+    * Identifies a section by reference.
+    */
+   private static final class SectionKey {
+
+      private final Section section;
+
+
+      SectionKey(Section section) {
+         this.section = section;
+      }
+
+
+      @Override
+      public int hashCode() {
+         return System.identityHashCode(section);
+      }
+
+
+      @Override
+      public boolean equals(Object other) {
+         return other instanceof SectionKey && ((SectionKey) other).section == section;
+      }
+   }
 }
@@ -0,0 +1,194 @@
+package test;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import odml.core.Property;
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.Writer;
+
+/**
+ *
+ * Checks of the atomic file writes of the Writer: a successful write
+ * replaces the file, a failed one leaves the previous file intact and no
+ * temporary file behind. Each check prints its result, the program exits
+ * with status 1 if one of them failed.
+ *
+ */
+public class AtomicWrites {
+   private int  failures = 0;
+   private File dir;
+
+   public AtomicWrites() {
+      try {
+         dir = File.createTempFile("odml-atomic", "");
+         dir.delete();
+         dir.mkdirs();
+         replace();
+         failingTree();
+         failingMove();
+         missingDirectory();
+         noTree();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         delete(dir);
+      }
+   }
+
+   private Section createTree(String experimenter) throws Exception {
+      Section root = new Section();
+      Section s = new Section(root, "Recording", "recording");
+      s.addProperty("Experimenter", experimenter);
+      new Section(s, "Cell", "cell").addProperty("Resistance", 100);
+      return root;
+   }
+
+   private Writer atomicWriter(Section root) {
+      Writer writer = new Writer(root);
+      writer.setAtomic(true);
+      return writer;
+   }
+
+   private void replace() throws Exception {
+      System.out.println("A successful write replaces the file...");
+      File file = new File(dir, "replace.odml");
+      check("first write", atomicWriter(createTree("First")).write(file.getPath()));
+      Writer writer = atomicWriter(createTree("Second"));
+      writer.setSync(true);
+      check("settings", writer.isAtomic() && writer.isSync());
+      check("second write", writer.write(file.getPath()));
+      check("new content", "Second".equals(experimenter(file)));
+      check("no temporary files", noTemporaryFiles());
+      writer = atomicWriter(createTree("Compressed"));
+      writer.setCompression(Writer.GZIP);
+      check("compressed write", writer.write(file.getPath()));
+      check("compressed content", "Compressed".equals(experimenter(file)));
+   }
+
+   private void failingTree() throws Exception {
+      System.out.println();
+      System.out.println("A tree that fails while it is written leaves the file intact...");
+      File file = new File(dir, "failing.odml");
+      atomicWriter(createTree("Intact")).write(file.getPath());
+      byte[] before = Files.readAllBytes(file.toPath());
+      Section root = createTree("Replaced");
+      FailingProperty failing = new FailingProperty();
+      root.getSection("Recording").add(failing);
+      failing.fail = true;
+      boolean thrown = false;
+      try {
+         atomicWriter(root).write(file.getPath());
+      } catch (IllegalStateException e) {
+         thrown = true;
+      }
+      check("exception is passed on", thrown);
+      check("previous content", Arrays.equals(before, Files.readAllBytes(file.toPath())));
+      check("temporary file deleted", noTemporaryFiles());
+
+      Writer writer = new Writer(root);
+      thrown = false;
+      try {
+         writer.write(file.getPath());
+      } catch (IllegalStateException e) {
+         thrown = true;
+      }
+      check("a direct write does not keep the previous content", thrown
+            && !Arrays.equals(before, Files.readAllBytes(file.toPath())));
+      file.delete();
+   }
+
+   private void failingMove() throws Exception {
+      System.out.println();
+      System.out.println("A write whose file can not be moved in place fails...");
+      File target = new File(dir, "directory.odml");
+      target.mkdir();
+      File inside = new File(target, "inside");
+      inside.createNewFile();
+      check("write fails", !atomicWriter(createTree("Moved")).write(target.getPath()));
+      check("target unchanged", target.isDirectory() && inside.exists());
+      check("temporary file deleted", noTemporaryFiles());
+      delete(target);
+   }
+
+   private void missingDirectory() throws Exception {
+      System.out.println();
+      System.out.println("Writing into a directory that does not exist...");
+      File file = new File(new File(dir, "missing"), "file.odml");
+      check("atomic write fails", !atomicWriter(createTree("Missing")).write(file.getPath()));
+      check("direct write fails", !new Writer(createTree("Missing")).write(file.getPath()));
+      check("nothing created", !file.getParentFile().exists() && noTemporaryFiles());
+   }
+
+   private void noTree() throws Exception {
+      System.out.println();
+      System.out.println("A writer without a tree...");
+      File file = new File(dir, "empty.odml");
+      check("write fails", !atomicWriter(null).write(file.getPath()));
+      check("no file", !file.exists() && noTemporaryFiles());
+   }
+
+   private String experimenter(File file) throws Exception {
+      Section root = new Reader().load(file.getPath());
+      return (String) root.getSection("Recording").getProperty("Experimenter").getValue();
+   }
+
+   /**
+    * Returns whether the directory holds no temporary files, whose names start with a dot.
+    */
+   private boolean noTemporaryFiles() {
+      for (String name : dir.list()) {
+         if (name.startsWith(".")) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void delete(File file) {
+      if (file != null && file.listFiles() != null) {
+         for (File f : file.listFiles()) {
+            delete(f);
+         }
+      }
+      if (file != null) {
+         file.delete();
+      }
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   /**
+    * A property that throws when its values are counted while fail is set.
+    */
+   private static class FailingProperty extends Property {
+      private static final long serialVersionUID = 1L;
+      boolean                   fail             = false;
+
+      FailingProperty() throws Exception {
+         super("Failing", 1);
+      }
+
+      @Override
+      public int valueCount() {
+         if (fail) {
+            throw new IllegalStateException("failing property");
+         }
+         return super.valueCount();
+      }
+   }
+
+   public static void main(String[] args) {
+      AtomicWrites checks = new AtomicWrites();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
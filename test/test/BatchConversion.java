@@ -0,0 +1,379 @@
+package test;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import odml.core.BatchConverter;
+import odml.core.Property;
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.Writer;
+import odml.util.TerminologyManager;
+
+/**
+ *
+ * Checks of the BatchConverter: documents are loaded, mapped with the
+ * terminologies stored in local files and written to an output directory.
+ * The output must not depend on the number of threads, files that can not
+ * be converted must be reported, and pending files must be cancelled when
+ * the callback throws or the converting thread is interrupted. Each check
+ * prints its result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class BatchConversion {
+   private static final int FILES     = 12;
+
+   private int              failures  = 0;
+   private File             dir, input;
+   private List<String>     locations = new ArrayList<String>();
+
+   public BatchConversion() {
+      try {
+         dir = File.createTempFile("odml-conversion", "");
+         dir.delete();
+         dir.mkdirs();
+         input = new File(dir, "input");
+         input.mkdir();
+         File target = new File(dir, "target.odml");
+         new Writer(createTarget(), true).write(target.getPath());
+         File source = new File(dir, "source.odml");
+         new Writer(createSource(target), true).write(source.getPath());
+         for (int i = 0; i < FILES; i++) {
+            File file = new File(input, "file" + i + ".odml");
+            new Writer(createDocument(source, i)).write(file.getPath());
+            locations.add(file.getPath());
+         }
+         TerminologyManager.instance().clearCache();
+         settings();
+         ordered();
+         unordered();
+         threads();
+         compression();
+         errors();
+         callbackFails();
+         interrupted();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         TerminologyManager.instance().clearCache();
+         delete(dir);
+      }
+   }
+
+   private Section createTarget() throws Exception {
+      Section root = new Section();
+      new Section(root, "Cell", "cell").add(new Property("InputResistance"));
+      return root;
+   }
+
+   private Section createSource(File target) throws Exception {
+      Section root = new Section();
+      Section neuron = new Section(root, "Neuron", "neuron");
+      neuron.setMapping(target.toURI().toURL() + "#cell");
+      neuron.add(new Property("Resistance"));
+      neuron.getProperty("Resistance").setMapping(target.toURI().toURL() + "#cell:InputResistance");
+      return root;
+   }
+
+   private Section createDocument(File source, int index) throws Exception {
+      Section root = new Section();
+      root.setRepository(source.toURI().toURL());
+      Section recording = new Section(root, "Recording", "recording");
+      recording.addProperty("Index", index);
+      for (int i = 0; i < 3; i++) {
+         new Section(recording, "Neuron" + i, "neuron").addProperty("Resistance", 10 * index + i);
+      }
+      return root;
+   }
+
+   private File output(String name) {
+      File output = new File(dir, name);
+      delete(output);
+      output.mkdir();
+      return output;
+   }
+
+   private List<BatchConverter.Result> convert(BatchConverter converter, List<String> batch, File output,
+         boolean ordered) throws Exception {
+      final List<BatchConverter.Result> results = new ArrayList<BatchConverter.Result>();
+      try {
+         converter.convert(batch, output, new BatchConverter.Callback() {
+
+            @Override
+            public void converted(BatchConverter.Result result) {
+               results.add(result);
+            }
+         }, ordered);
+      } finally {
+         converter.shutdown();
+      }
+      return results;
+   }
+
+   private void settings() {
+      System.out.println("Settings...");
+      BatchConverter converter = new BatchConverter(1);
+      check("defaults", converter.getCompression() == Writer.NO_COMPRESSION && !converter.isAtomic());
+      converter.setAtomic(true);
+      converter.setCompression(Writer.GZIP);
+      check("changed", converter.isAtomic() && converter.getCompression() == Writer.GZIP);
+      boolean refused = false;
+      try {
+         converter.setCompression(99);
+      } catch (IllegalArgumentException e) {
+         refused = true;
+      }
+      check("unknown compression", refused && converter.getCompression() == Writer.GZIP);
+      converter.shutdown();
+   }
+
+   private void ordered() throws Exception {
+      System.out.println();
+      System.out.println("Results in the order of the locations...");
+      File output = output("ordered");
+      List<BatchConverter.Result> results = convert(new BatchConverter(3), locations, output, true);
+      boolean inOrder = results.size() == FILES;
+      for (int i = 0; inOrder && i < FILES; i++) {
+         BatchConverter.Result result = results.get(i);
+         inOrder = result.getIndex() == i && result.getLocation().equals(locations.get(i)) && result.isSuccess()
+               && result.getError() == null && result.getOutput().equals(new File(output, "file" + i + ".odml"));
+      }
+      check("all files in order", inOrder);
+      Section converted = new Reader().load(results.get(5).getOutput().getPath());
+      Section cell = converted.getSection("Recording").getSection("Neuron2");
+      check("mapped output", cell.getType().equals("cell")
+            && cell.getProperty("InputResistance").getValue().equals(52));
+      check("result names the output", results.get(0).toString().contains("converted to"));
+   }
+
+   private void unordered() throws Exception {
+      System.out.println();
+      System.out.println("Results in the order of completion...");
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+      List<BatchConverter.Result> results = convert(new BatchConverter(executor, 1), locations,
+            output("unordered"), false);
+      boolean[] seen = new boolean[FILES];
+      boolean once = results.size() == FILES;
+      for (BatchConverter.Result result : results) {
+         once &= !seen[result.getIndex()] && result.isSuccess();
+         seen[result.getIndex()] = true;
+      }
+      check("every file once", once);
+      check("passed executor is not shut down", !executor.isShutdown());
+      executor.shutdown();
+   }
+
+   private void threads() throws Exception {
+      System.out.println();
+      System.out.println("The output does not depend on the number of threads...");
+      File single = output("single");
+      convert(new BatchConverter(1), locations, single, true);
+      File parallel = output("parallel");
+      BatchConverter converter = new BatchConverter(4);
+      converter.setAtomic(true);
+      convert(converter, locations, parallel, false);
+      boolean identical = true;
+      for (int i = 0; i < FILES; i++) {
+         String name = "file" + i + ".odml";
+         identical &= Arrays.equals(Files.readAllBytes(new File(single, name).toPath()),
+               Files.readAllBytes(new File(parallel, name).toPath()));
+      }
+      check("identical files", identical);
+      check("no temporary files", parallel.list().length == FILES);
+   }
+
+   private void compression() throws Exception {
+      System.out.println();
+      System.out.println("Compressed output...");
+      BatchConverter converter = new BatchConverter(2);
+      converter.setCompression(Writer.GZIP);
+      List<BatchConverter.Result> results = convert(converter, locations.subList(0, 2), output("compressed"), true);
+      byte[] header = new byte[2];
+      FileInputStream in = new FileInputStream(results.get(1).getOutput());
+      in.read(header);
+      in.close();
+      check("gzip file", (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b);
+      Section converted = new Reader().load(results.get(1).getOutput().getPath());
+      check("readable", converted.getSection("Recording").getProperty("Index").getValue().equals(1));
+   }
+
+   private void errors() throws Exception {
+      System.out.println();
+      System.out.println("Files that can not be converted...");
+      File broken = new File(input, "broken.odml");
+      FileOutputStream out = new FileOutputStream(broken);
+      out.write("<odML><section>".getBytes("UTF-8"));
+      out.close();
+      List<String> batch = new ArrayList<String>();
+      batch.add(locations.get(0));
+      batch.add(new File(input, "missing.odml").getPath());
+      batch.add(broken.getPath());
+      List<BatchConverter.Result> results = convert(new BatchConverter(2), batch, output("errors"), true);
+      check("one result per location", results.size() == 3);
+      check("converted file", results.get(0).isSuccess() && results.get(0).getOutput().exists());
+      check("missing file", !results.get(1).isSuccess() && results.get(1).getOutput() == null
+            && results.get(1).getError() != null);
+      check("malformed file", !results.get(2).isSuccess() && results.get(2).getError() != null);
+      check("error names the location", results.get(1).toString().startsWith(batch.get(1)));
+      check("nothing written for them", Arrays.equals(new File(dir, "errors").list(), new String[] { "file0.odml" }));
+      results = convert(new BatchConverter(2), locations.subList(0, 2), new File(dir, "no such directory"), true);
+      check("output directory missing", results.size() == 2 && !results.get(0).isSuccess()
+            && results.get(0).getError().getMessage().startsWith("Could not write"));
+   }
+
+   private void callbackFails() throws Exception {
+      System.out.println();
+      System.out.println("A failing callback cancels the pending files...");
+      GatedExecutor executor = new GatedExecutor();
+      BatchConverter converter = new BatchConverter(executor, 4);
+      boolean thrown = false;
+      try {
+         converter.convert(locations, output("failing"), new BatchConverter.Callback() {
+
+            @Override
+            public void converted(BatchConverter.Result result) {
+               throw new IllegalStateException("stop");
+            }
+         }, true);
+      } catch (IllegalStateException e) {
+         thrown = true;
+      }
+      executor.finish();
+      check("exception of the callback is passed on", thrown);
+      check("no more files submitted", executor.submitted.get() == 4);
+      check("pending files cancelled", executor.cancelled.get() == 3);
+      check("only the first file written", new File(dir, "failing").list().length == 1);
+   }
+
+   private void interrupted() throws Exception {
+      System.out.println();
+      System.out.println("Interrupting the converting thread cancels the pending files...");
+      final GatedExecutor executor = new GatedExecutor();
+      final BatchConverter converter = new BatchConverter(executor, 4);
+      final File output = output("interrupted");
+      final AtomicInteger delivered = new AtomicInteger();
+      final boolean[] interrupted = new boolean[1];
+      Thread thread = new Thread(new Runnable() {
+
+         @Override
+         public void run() {
+            try {
+               converter.convert(locations, output, new BatchConverter.Callback() {
+
+                  @Override
+                  public void converted(BatchConverter.Result result) {
+                     delivered.incrementAndGet();
+                  }
+               }, false);
+            } catch (InterruptedException e) {
+               interrupted[0] = true;
+            }
+         }
+      });
+      thread.start();
+      executor.firstDone.await();
+      // the first file is delivered, the others wait at the gate
+      while (delivered.get() == 0) {
+         Thread.sleep(10);
+      }
+      thread.interrupt();
+      thread.join();
+      executor.finish();
+      check("convert throws InterruptedException", interrupted[0]);
+      check("pending files cancelled", executor.submitted.get() > 1
+            && executor.cancelled.get() == executor.submitted.get() - 1);
+   }
+
+   private void delete(File file) {
+      if (file != null && file.listFiles() != null) {
+         for (File f : file.listFiles()) {
+            delete(f);
+         }
+      }
+      if (file != null) {
+         file.delete();
+      }
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   /**
+    * A single thread executor that runs the first task and holds back all
+    * others until finish() is called. It counts the submitted tasks and
+    * those cancelled before they ran.
+    */
+   private static class GatedExecutor extends ThreadPoolExecutor {
+      final CountDownLatch firstDone = new CountDownLatch(1);
+      final CountDownLatch gate      = new CountDownLatch(1);
+      final AtomicInteger  started   = new AtomicInteger();
+      final AtomicInteger  submitted = new AtomicInteger();
+      final AtomicInteger  cancelled = new AtomicInteger();
+
+      GatedExecutor() {
+         super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+      }
+
+      @Override
+      protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+         submitted.incrementAndGet();
+         // the completion service wraps this future, so cancellation is counted here
+         return new FutureTask<T>(callable) {
+
+            @Override
+            protected void done() {
+               if (isCancelled()) {
+                  cancelled.incrementAndGet();
+               }
+            }
+         };
+      }
+
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+         if (started.getAndIncrement() > 0) {
+            try {
+               gate.await();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      }
+
+      @Override
+      protected void afterExecute(Runnable r, Throwable t) {
+         firstDone.countDown();
+      }
+
+      void finish() throws InterruptedException {
+         gate.countDown();
+         shutdown();
+         awaitTermination(10, TimeUnit.SECONDS);
+      }
+   }
+
+   public static void main(String[] args) {
+      BatchConversion checks = new BatchConversion();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,289 @@
+package test;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import odml.core.BatchReader;
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.Writer;
+
+/**
+ *
+ * Checks of the BatchReader: the order in which results are delivered, the
+ * results of files that can not be loaded, and the cancellation of pending
+ * files when the callback throws or the loading thread is interrupted. Each
+ * check prints its result, the program exits with status 1 if one of them
+ * failed.
+ *
+ */
+public class BatchLoading {
+   private static final int FILES = 12;
+
+   private int              failures = 0;
+   private File             dir;
+   private List<String>     locations = new ArrayList<String>();
+
+   public BatchLoading() {
+      try {
+         dir = File.createTempFile("odml-batch", "");
+         dir.delete();
+         dir.mkdirs();
+         for (int i = 0; i < FILES; i++) {
+            Section root = new Section();
+            new Section(root, "Recording" + i, "recording").addProperty("Index", i);
+            File file = new File(dir, "file" + i + ".odml");
+            new Writer(root).write(file.getPath());
+            locations.add(file.getPath());
+         }
+         ordered();
+         unordered();
+         errors();
+         callbackFails();
+         interrupted();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         if (dir != null && dir.listFiles() != null) {
+            for (File file : dir.listFiles()) {
+               file.delete();
+            }
+            dir.delete();
+         }
+      }
+   }
+
+   private void ordered() throws Exception {
+      System.out.println();
+      System.out.println("Results in the order of the locations...");
+      BatchReader reader = new BatchReader(3);
+      final List<BatchReader.Result> results = new ArrayList<BatchReader.Result>();
+      final Thread caller = Thread.currentThread();
+      final AtomicInteger otherThreads = new AtomicInteger();
+      try {
+         check("default load option", reader.getLoadOption() == Reader.NO_CONVERSION);
+         reader.setLoadOption(Reader.FULL_CONVERSION);
+         check("mapping is allowed", reader.getLoadOption() == Reader.FULL_CONVERSION);
+         reader.setLoadOption(Reader.NO_CONVERSION);
+         reader.load(locations, new BatchReader.Callback() {
+
+            @Override
+            public void loaded(BatchReader.Result result) {
+               if (Thread.currentThread() != caller) {
+                  otherThreads.incrementAndGet();
+               }
+               results.add(result);
+            }
+         }, true);
+      } finally {
+         reader.shutdown();
+      }
+      boolean inOrder = results.size() == FILES;
+      for (int i = 0; inOrder && i < FILES; i++) {
+         BatchReader.Result result = results.get(i);
+         inOrder = result.getIndex() == i && result.getLocation().equals(locations.get(i)) && result.isSuccess()
+               && result.getRootSection().getSection("Recording" + i).getProperty("Index").getValue().equals(i);
+      }
+      check("all files in order", inOrder);
+      check("callback on the calling thread", otherThreads.get() == 0);
+   }
+
+   private void unordered() throws Exception {
+      System.out.println();
+      System.out.println("Results in the order of completion...");
+      ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+      BatchReader reader = new BatchReader(executor, 1);
+      final boolean[] seen = new boolean[FILES];
+      final AtomicInteger duplicates = new AtomicInteger();
+      reader.load(locations, new BatchReader.Callback() {
+
+         @Override
+         public void loaded(BatchReader.Result result) {
+            if (seen[result.getIndex()]) {
+               duplicates.incrementAndGet();
+            }
+            seen[result.getIndex()] = true;
+         }
+      }, false);
+      boolean all = true;
+      for (boolean s : seen) {
+         all &= s;
+      }
+      check("every file once", all && duplicates.get() == 0);
+      reader.shutdown();
+      check("passed executor is not shut down", !executor.isShutdown());
+      executor.shutdown();
+   }
+
+   private void errors() throws Exception {
+      System.out.println();
+      System.out.println("Files that can not be loaded...");
+      File broken = new File(dir, "broken.odml");
+      FileOutputStream out = new FileOutputStream(broken);
+      out.write("<odML><section>".getBytes("UTF-8"));
+      out.close();
+      List<String> batch = new ArrayList<String>();
+      batch.add(locations.get(0));
+      batch.add(new File(dir, "missing.odml").getPath());
+      batch.add(broken.getPath());
+      final List<BatchReader.Result> results = new ArrayList<BatchReader.Result>();
+      BatchReader reader = new BatchReader(2);
+      try {
+         reader.load(batch, new BatchReader.Callback() {
+
+            @Override
+            public void loaded(BatchReader.Result result) {
+               results.add(result);
+            }
+         }, true);
+      } finally {
+         reader.shutdown();
+      }
+      check("one result per location", results.size() == 3);
+      check("loaded file", results.get(0).isSuccess() && results.get(0).getError() == null);
+      check("missing file", !results.get(1).isSuccess() && results.get(1).getRootSection() == null
+            && results.get(1).getError() != null);
+      check("malformed file", !results.get(2).isSuccess() && results.get(2).getError() != null);
+      check("error names the location", results.get(1).toString().startsWith(batch.get(1)));
+   }
+
+   private void callbackFails() throws Exception {
+      System.out.println();
+      System.out.println("A failing callback cancels the pending files...");
+      GatedExecutor executor = new GatedExecutor();
+      BatchReader reader = new BatchReader(executor, 4);
+      boolean thrown = false;
+      try {
+         reader.load(locations, new BatchReader.Callback() {
+
+            @Override
+            public void loaded(BatchReader.Result result) {
+               throw new IllegalStateException("stop");
+            }
+         }, true);
+      } catch (IllegalStateException e) {
+         thrown = true;
+      }
+      executor.finish();
+      check("exception of the callback is passed on", thrown);
+      check("no more files submitted", executor.submitted.get() == 4);
+      check("pending files cancelled", executor.cancelled.get() == 3);
+   }
+
+   private void interrupted() throws Exception {
+      System.out.println();
+      System.out.println("Interrupting the loading thread cancels the pending files...");
+      final GatedExecutor executor = new GatedExecutor();
+      final BatchReader reader = new BatchReader(executor, 4);
+      final AtomicInteger delivered = new AtomicInteger();
+      final boolean[] interrupted = new boolean[1];
+      Thread thread = new Thread(new Runnable() {
+
+         @Override
+         public void run() {
+            try {
+               reader.load(locations, new BatchReader.Callback() {
+
+                  @Override
+                  public void loaded(BatchReader.Result result) {
+                     delivered.incrementAndGet();
+                  }
+               }, false);
+            } catch (InterruptedException e) {
+               interrupted[0] = true;
+            }
+         }
+      });
+      thread.start();
+      executor.firstDone.await();
+      // the first file is delivered, the others wait at the gate
+      while (delivered.get() == 0) {
+         Thread.sleep(10);
+      }
+      thread.interrupt();
+      thread.join();
+      executor.finish();
+      check("load throws InterruptedException", interrupted[0]);
+      check("pending files cancelled", executor.submitted.get() > 1
+            && executor.cancelled.get() == executor.submitted.get() - 1);
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   /**
+    * A single thread executor that runs the first task and holds back all
+    * others until finish() is called. It counts the submitted tasks and
+    * those cancelled before they ran.
+    */
+   private static class GatedExecutor extends ThreadPoolExecutor {
+      final CountDownLatch firstDone = new CountDownLatch(1);
+      final CountDownLatch gate      = new CountDownLatch(1);
+      final AtomicInteger  started   = new AtomicInteger();
+      final AtomicInteger  submitted = new AtomicInteger();
+      final AtomicInteger  cancelled = new AtomicInteger();
+
+      GatedExecutor() {
+         super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+      }
+
+      @Override
+      protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+         submitted.incrementAndGet();
+         // the completion service wraps this future, so cancellation is counted here
+         return new FutureTask<T>(callable) {
+
+            @Override
+            protected void done() {
+               if (isCancelled()) {
+                  cancelled.incrementAndGet();
+               }
+            }
+         };
+      }
+
+      @Override
+      protected void beforeExecute(Thread t, Runnable r) {
+         if (started.getAndIncrement() > 0) {
+            try {
+               gate.await();
+            } catch (InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+         }
+      }
+
+      @Override
+      protected void afterExecute(Runnable r, Throwable t) {
+         firstDone.countDown();
+      }
+
+      void finish() throws InterruptedException {
+         gate.countDown();
+         shutdown();
+         awaitTermination(10, TimeUnit.SECONDS);
+      }
+   }
+
+   public static void main(String[] args) {
+      BatchLoading checks = new BatchLoading();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
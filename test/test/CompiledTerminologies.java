@@ -0,0 +1,151 @@
+package test;
+import java.net.URL;
+
+import odml.core.CompiledTerminology;
+import odml.core.CompiledTerminology.Entry;
+import odml.core.Property;
+import odml.core.Section;
+import odml.util.TerminologyManager;
+
+/**
+ *
+ * Checks of the compiled terminologies: the lookup tables must hold the
+ * definitions of all properties of a terminology section, including linked
+ * ones, and the TerminologyManager must cache one table per section. Each
+ * check prints its result, the program exits with status 1 if one of them
+ * failed.
+ *
+ */
+public class CompiledTerminologies {
+   private int failures = 0;
+
+   public CompiledTerminologies() {
+      try {
+         entries();
+         allowedValues();
+         propertiesWithoutValues();
+         linkedSections();
+         cache();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   private Section createTerminology() throws Exception {
+      Section root = new Section();
+      Section cell = new Section(root, "Cell", "cell");
+      Property resistance = new Property("Resistance", 0, "MOhm", null, "int");
+      resistance.setDefinition("The input resistance");
+      resistance.setMapping("http://example.org/terminology.xml#cell:Resistance");
+      cell.add(resistance);
+      Property drug = new Property("Drug", "TTX", "string");
+      drug.addValue("4-AP");
+      drug.setDependency("Application");
+      drug.setDependencyValue("bath");
+      cell.add(drug);
+      cell.addProperty("Application", "bath");
+      return root;
+   }
+
+   private void entries() throws Exception {
+      System.out.println("Entries of a terminology section...");
+      CompiledTerminology table = CompiledTerminology.compile(createTerminology().getSection("Cell"));
+      check("size", table.size() == 3);
+      Entry resistance = table.get("resistance");
+      check("case-insensitive names", resistance != null && resistance == table.get("RESISTANCE"));
+      check("name", resistance.getName().equals("Resistance"));
+      check("definition", resistance.getDefinition().equals("The input resistance"));
+      check("type and unit", resistance.getType().equals("int") && resistance.getUnit().equals("MOhm"));
+      check("mapping", resistance.getMapping().equals(new URL("http://example.org/terminology.xml#cell:Resistance")));
+      Entry drug = table.get("Drug");
+      check("dependency", drug.getDependency().equals("Application") && drug.getDependencyValue().equals("bath"));
+      check("no dependency", isEmpty(resistance.getDependency()) && isEmpty(resistance.getDependencyValue()));
+      check("unknown property", table.get("Temperature") == null && table.get(null) == null);
+   }
+
+   private void allowedValues() throws Exception {
+      System.out.println();
+      System.out.println("Listed values...");
+      Entry drug = CompiledTerminology.compile(createTerminology().getSection("Cell")).get("Drug");
+      check("values in lower case", drug.getAllowedValues().size() == 2 && drug.getAllowedValues().contains("ttx")
+            && drug.getAllowedValues().contains("4-ap"));
+      check("case-insensitive matching", drug.isAllowed("TTX") && drug.isAllowed("ttx") && drug.isAllowed("4-AP"));
+      check("other values", !drug.isAllowed("Cs") && !drug.isAllowed(null));
+      boolean refused = false;
+      try {
+         drug.getAllowedValues().add("cs");
+      } catch (UnsupportedOperationException e) {
+         refused = true;
+      }
+      check("values are read-only", refused && !drug.isAllowed("Cs"));
+      Property number = new Property("Trials", 10);
+      check("values are compared by their string", Entry.of(number).isAllowed(10) && Entry.of(number).isAllowed("10"));
+   }
+
+   private void propertiesWithoutValues() throws Exception {
+      System.out.println();
+      System.out.println("A terminology property without values...");
+      Property empty = new Property("Comment");
+      empty.setDefinition("Anything");
+      Entry entry = Entry.of(empty);
+      check("empty content lists no value", entry.getAllowedValues().isEmpty() && entry.isAllowed("text"));
+      empty.removeValue(0);
+      entry = Entry.of(empty);
+      check("no type and unit", empty.valueCount() == 0 && entry.getType() == null && entry.getUnit() == null);
+      check("definition", entry.getDefinition().equals("Anything"));
+      check("every value allowed", entry.getAllowedValues().isEmpty() && entry.isAllowed("text")
+            && entry.isAllowed(null));
+   }
+
+   private void linkedSections() throws Exception {
+      System.out.println();
+      System.out.println("A linked terminology section...");
+      Section root = createTerminology();
+      Section patched = new Section(root, "Patched", "cell");
+      patched.addProperty("Seal", 1.5);
+      patched.setLink("/Cell");
+      CompiledTerminology table = CompiledTerminology.compile(patched);
+      check("own properties", table.get("Seal") != null);
+      check("linked properties", table.get("Resistance") != null && table.get("Drug") != null);
+      check("size", table.size() == 4);
+      check("linked section unchanged", root.getSection("Cell").propertyCount() == 3);
+   }
+
+   private void cache() throws Exception {
+      System.out.println();
+      System.out.println("The cache of the TerminologyManager...");
+      TerminologyManager manager = TerminologyManager.instance();
+      manager.clearCache();
+      Section cell = createTerminology().getSection("Cell");
+      CompiledTerminology table = manager.compile(cell);
+      check("compiled once", manager.compile(cell) == table);
+      Section equal = createTerminology().getSection("Cell");
+      check("equal sections have their own table", equal.equals(cell) && manager.compile(equal) != table);
+      cell.addProperty("Temperature", 20);
+      check("found after the section changed", manager.compile(cell) == table);
+      check("table keeps its entries", table.get("Temperature") == null && table.size() == 3);
+      manager.clearCache();
+      CompiledTerminology recompiled = manager.compile(cell);
+      check("cleared", recompiled != table && recompiled.get("Temperature") != null);
+      manager.clearCache();
+   }
+
+   private static boolean isEmpty(String s) {
+      return s == null || s.isEmpty();
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      CompiledTerminologies checks = new CompiledTerminologies();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
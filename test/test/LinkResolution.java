@@ -0,0 +1,265 @@
+package test;
+import odml.core.Section;
+
+/**
+ *
+ * Checks of the resolution of links: a linking section is merged with its
+ * target once, chains are resolved from their end, circular and broken links
+ * are reported and leave the sections unchanged, and long chains are
+ * resolved without recursion. Each check prints its result, the program
+ * exits with status 1 if one of them failed.
+ *
+ */
+public class LinkResolution {
+   private static final int LENGTH   = 10000;
+
+   private int              failures = 0;
+
+   public LinkResolution() {
+      try {
+         singleLink();
+         repeatedResolution();
+         chains();
+         sharedTarget();
+         circularLinks();
+         brokenLinks();
+         propertyLookup();
+         resolveAll();
+         longChains();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   /**
+    * Root with Setup(Stimulus(Amplitude, Duration, Electrode(Depth))) and
+    * Recording(Stimulus(Amplitude)) linking to /Setup/Stimulus.
+    */
+   private Section createTree() throws Exception {
+      Section root = new Section();
+      Section stimulus = new Section(new Section(root, "Setup", "setup"), "Stimulus", "stimulus");
+      stimulus.addProperty("Amplitude", 1.0);
+      stimulus.addProperty("Duration", 100);
+      new Section(stimulus, "Electrode", "electrode").addProperty("Depth", 50);
+      Section linked = new Section(new Section(root, "Recording", "recording"), "Stimulus", "stimulus");
+      linked.addProperty("Amplitude", 2.0);
+      linked.setLink("/Setup/Stimulus");
+      return root;
+   }
+
+   /**
+    * A root with sections S0 ... S(length-1) of the same type, each with a
+    * property and linking to the next one; the last one links to lastLink if
+    * that is not null.
+    */
+   private Section createChain(int length, String lastLink) throws Exception {
+      return createChain(length, lastLink, true);
+   }
+
+   /**
+    * Like createChain(int, String), but only the last section has a property
+    * if all is false, so that resolving the chain copies little content.
+    */
+   private Section createChain(int length, String lastLink, boolean all) throws Exception {
+      Section root = new Section();
+      for (int i = 0; i < length; i++) {
+         Section section = new Section(root, "S" + i, "link");
+         if (all || i == length - 1) {
+            section.addProperty("Index" + i, i);
+         }
+      }
+      for (int i = 0; i < length - 1; i++) {
+         root.getSection(i).setLink("/S" + (i + 1), true);
+      }
+      if (lastLink != null) {
+         root.getSection(length - 1).setLink(lastLink, true);
+      }
+      return root;
+   }
+
+   private void singleLink() throws Exception {
+      System.out.println("Resolving a link...");
+      Section root = createTree();
+      Section linked = root.getSection("Recording").getSection("Stimulus");
+      Section target = root.getSection("Setup").getSection("Stimulus");
+      check("not resolved yet", !linked.isLinkResolved() && linked.propertyCount() == 1);
+      check("resolved", linked.resolveLink() && linked.isLinkResolved());
+      check("properties of the target", linked.getProperty("Duration") != null
+            && linked.getProperty("Duration").getValue().equals(100));
+      check("own properties take precedence", linked.getProperty("Amplitude").getNumber() == 2.0
+            && linked.getProperty("Amplitude").valueCount() == 1);
+      check("subsections of the target", linked.getSection("Electrode") != null
+            && linked.getSection("Electrode") != target.getSection("Electrode")
+            && linked.getSection("Electrode").getProperty("Depth").getValue().equals(50));
+      check("target unchanged", target.propertyCount() == 2 && target.getProperty("Amplitude").getNumber() == 1.0
+            && !target.isLinkResolved());
+      check("link is kept", "/Setup/Stimulus".equals(linked.getLink()));
+      check("section without link", !target.resolveLink() && !target.isLinkResolved());
+   }
+
+   private void repeatedResolution() throws Exception {
+      System.out.println();
+      System.out.println("Resolving again...");
+      Section root = createTree();
+      Section linked = root.getSection("Recording").getSection("Stimulus");
+      linked.resolveLink();
+      int properties = linked.propertyCount(), sections = linked.sectionCount();
+      check("returns at once", linked.resolveLink() && linked.propertyCount() == properties
+            && linked.sectionCount() == sections);
+      root.getSection("Setup").getSection("Stimulus").addProperty("Repeats", 3);
+      root.resolveAllLinks();
+      check("not merged again", linked.propertyCount() == properties && linked.getProperty("Repeats") == null);
+      linked.setLink("/Setup/Stimulus");
+      check("setting the link resets the flag", !linked.isLinkResolved());
+      check("merged with the changed target", linked.resolveLink() && linked.getProperty("Repeats") != null
+            && linked.propertyCount() == properties + 1 && linked.sectionCount() == sections);
+   }
+
+   private void chains() throws Exception {
+      System.out.println();
+      System.out.println("A chain of links...");
+      Section root = createChain(3, null);
+      Section first = root.getSection("S0"), second = root.getSection("S1"), last = root.getSection("S2");
+      check("first resolved", first.resolveLink());
+      check("resolved from the end", second.isLinkResolved() && second.getProperty("Index2") != null);
+      check("content of the whole chain", first.getProperty("Index1") != null && first.getProperty("Index2") != null
+            && first.propertyCount() == 3);
+      check("end unchanged", last.propertyCount() == 1 && !last.isLinkResolved());
+      root = createChain(3, null);
+      root.getSection("S1").resolveLink();
+      check("middle resolved", root.getSection("S1").propertyCount() == 2 && !root.getSection("S0").isLinkResolved());
+      root.getSection("S0").resolveLink();
+      check("start resolved later", root.getSection("S0").propertyCount() == 3);
+   }
+
+   private void sharedTarget() throws Exception {
+      System.out.println();
+      System.out.println("Many sections linking to the same chain...");
+      Section root = createChain(3, null);
+      for (int i = 0; i < 100; i++) {
+         Section section = new Section(root, "L" + i, "link");
+         section.setLink("/S0");
+      }
+      root.resolveAllLinks();
+      boolean all = true;
+      for (int i = 0; i < 100; i++) {
+         Section section = root.getSection("L" + i);
+         all &= section.isLinkResolved() && section.propertyCount() == 3;
+      }
+      check("all linking sections resolved", all);
+      check("chain merged once", root.getSection("S0").propertyCount() == 3
+            && root.getSection("S0").getProperty("Index2").valueCount() == 1
+            && root.getSection("S1").propertyCount() == 2);
+   }
+
+   private void circularLinks() throws Exception {
+      System.out.println();
+      System.out.println("Circular links...");
+      Section root = createChain(3, "/S0");
+      Section first = root.getSection("S0");
+      check("not resolved", !first.resolveLink() && !first.isLinkResolved());
+      boolean unchanged = true;
+      for (int i = 0; i < 3; i++) {
+         unchanged &= root.getSection(i).propertyCount() == 1 && !root.getSection(i).isLinkResolved();
+      }
+      check("no section merged", unchanged);
+      Section self = new Section(root, "Self", "link");
+      self.setLink("/Self", true);
+      check("link to itself", !self.resolveLink() && self.propertyCount() == 0);
+      // a chain that ends in a cycle it is not part of
+      Section leading = new Section(root, "Leading", "link");
+      leading.addProperty("Own", 1);
+      leading.setLink("/S1", true);
+      check("chain into a cycle", !leading.resolveLink() && leading.propertyCount() == 1);
+      root.resolveAllLinks();
+      check("resolveAllLinks completes", !first.isLinkResolved() && root.getSection("S2").propertyCount() == 1);
+      root = createChain(LENGTH, "/S0", false);
+      check("long cycle", !root.getSection(0).resolveLink() && root.getSection(0).propertyCount() == 0);
+   }
+
+   private void brokenLinks() throws Exception {
+      System.out.println();
+      System.out.println("Links to sections that do not exist...");
+      Section root = createChain(3, "/Missing");
+      Section first = root.getSection("S0");
+      check("resolved up to the broken link", first.resolveLink() && first.propertyCount() == 3
+            && root.getSection("S1").isLinkResolved());
+      check("broken link kept", !root.getSection("S2").isLinkResolved()
+            && "/Missing".equals(root.getSection("S2").getLink()));
+      Section section = new Section(root, "Relative", "link");
+      section.setLink("Nothing/Here", true);
+      check("relative link to nothing", !section.resolveLink() && section.propertyCount() == 0);
+   }
+
+   private void propertyLookup() throws Exception {
+      System.out.println();
+      System.out.println("Looking up properties of linking sections...");
+      Section root = createTree();
+      Section linked = root.getSection("Recording").getSection("Stimulus");
+      check("own property without resolving", linked.getProperty("Amplitude") != null && !linked.isLinkResolved());
+      check("property of the target", linked.getProperty("Duration") != null && linked.isLinkResolved()
+            && linked.getProperty("Duration").getParent() == linked);
+      check("unknown property", linked.getProperty("Unknown") == null);
+      root = createChain(3, "/S0");
+      check("unknown property of a cycle", root.getSection("S0").getProperty("Index2") == null);
+   }
+
+   private void resolveAll() throws Exception {
+      System.out.println();
+      System.out.println("Resolving all links of a tree...");
+      Section root = createTree();
+      Section recording = root.getSection("Recording");
+      Section cell = new Section(recording, "Cell", "cell");
+      cell.addProperty("Resistance", 100);
+      Section other = new Section(root.getSection("Setup"), "Cell", "cell");
+      other.setLink("/Recording/Cell");
+      check("links counted", root.getTreeLinkCount() == 2);
+      root.resolveAllLinks();
+      check("all resolved", recording.getSection("Stimulus").isLinkResolved() && other.isLinkResolved()
+            && other.getProperty("Resistance").getValue().equals(100));
+      check("links kept", root.getTreeLinkCount() == 2);
+      Section expected = createTree();
+      expected.getSection("Recording").getSection("Stimulus").resolveLink();
+      Section subtree = createTree();
+      subtree.getSection("Recording").resolveAllLinks();
+      check("subtree", subtree.equals(expected));
+      Section none = createChain(1, null);
+      none.resolveAllLinks();
+      check("tree without links", none.getSection("S0").propertyCount() == 1);
+   }
+
+   private void longChains() throws Exception {
+      System.out.println();
+      System.out.println("A chain of " + LENGTH + " links...");
+      Section root = createChain(LENGTH, null, false);
+      check("first section", root.getSection(0).resolveLink()
+            && root.getSection(0).getProperty("Index" + (LENGTH - 1)) != null);
+      boolean all = true;
+      for (int i = 1; i < LENGTH - 1; i++) {
+         all &= root.getSection(i).isLinkResolved() && root.getSection(i).propertyCount() == 1;
+      }
+      check("rest of the chain", all);
+      root = createChain(LENGTH, null, false);
+      root.resolveAllLinks();
+      all = true;
+      for (int i = 0; i < LENGTH - 1; i++) {
+         all &= root.getSection(i).isLinkResolved() && root.getSection(i).propertyCount() == 1;
+      }
+      check("resolveAllLinks", all);
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      LinkResolution checks = new LinkResolution();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
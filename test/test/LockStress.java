@@ -0,0 +1,122 @@
+package test;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import odml.core.Property;
+import odml.core.Section;
+
+/**
+ *
+ * Stress test of the read-write locking of a section tree (see
+ * Section.setLocking). One thread keeps changing the tree while a growing
+ * number of threads read it. Each "Counter" property holds two values, n
+ * and n + 1, that the writer always changes together, so a reader that sees
+ * any other pair saw a torn write. The reads per second are printed for each number of readers.
+ * The program exits with status 1 if a torn read or an exception occurred.
+ *
+ */
+public class LockStress {
+   private static final int    SECTIONS = 100;
+   private static final long   DURATION = 1000;
+
+   private Section             root;
+   private final AtomicBoolean running  = new AtomicBoolean();
+   private final AtomicLong    reads    = new AtomicLong();
+   private final AtomicLong    torn     = new AtomicLong();
+   private final AtomicLong    errors   = new AtomicLong();
+
+   public LockStress() throws Exception {
+      root = new Section("root", "test");
+      for (int i = 0; i < SECTIONS; i++) {
+         Section s = new Section(root, "Section" + i, "test");
+         s.addProperty("Counter", 0);
+         s.getProperty("Counter").addValue(1);
+      }
+      root.setLocking(true);
+      System.out.println("Read-write locking stress test, " + DURATION + " ms per run");
+      for (int readers = 1; readers <= Math.max(4, Runtime.getRuntime().availableProcessors()); readers *= 2) {
+         run(readers);
+      }
+      System.out.println();
+      System.out.println("torn reads: " + torn.get() + ", exceptions: " + errors.get());
+   }
+
+   private void run(int readerCount) {
+      reads.set(0);
+      running.set(true);
+      Thread writer = new Thread(this::write);
+      Thread[] readers = new Thread[readerCount];
+      for (int i = 0; i < readerCount; i++) {
+         readers[i] = new Thread(this::read);
+      }
+      writer.start();
+      for (Thread reader : readers) {
+         reader.start();
+      }
+      try {
+         Thread.sleep(DURATION);
+         running.set(false);
+         writer.join();
+         for (Thread reader : readers) {
+            reader.join();
+         }
+      } catch (InterruptedException e) {
+         Thread.currentThread().interrupt();
+      }
+      System.out.println(readerCount + " readers: " + (reads.get() * 1000 / DURATION) + " reads/s");
+   }
+
+   /**
+    * Changes both values of a counter in one write, and adds and removes a
+    * section now and then.
+    */
+   private void write() {
+      int count = 0;
+      try {
+         while (running.get()) {
+            final int value = ++count;
+            final Property counter = root.getSection(count % SECTIONS).getProperty("Counter");
+            root.withWriteLock(() -> {
+               counter.setValueAt(value, 0);
+               counter.setValueAt(value + 1, 1);
+               return null;
+            });
+            if (count % 100 == 0) {
+               new Section(root, "Temporary", "test");
+               root.removeSection(root.sectionCount() - 1);
+            }
+         }
+      } catch (Exception e) {
+         e.printStackTrace();
+         errors.incrementAndGet();
+      }
+   }
+
+   /**
+    * Looks up sections and properties without taking the lock and reads both
+    * values of a counter under the read lock.
+    */
+   private void read() {
+      int i = 0;
+      try {
+         while (running.get()) {
+            Section s = root.getSection("Section" + (i++ % SECTIONS));
+            final Property counter = s.getProperty("Counter");
+            boolean consistent = root.withReadLock(
+                  () -> (Integer) counter.getValue(0) + 1 == (Integer) counter.getValue(1));
+            if (!consistent) {
+               torn.incrementAndGet();
+            }
+            reads.incrementAndGet();
+         }
+      } catch (RuntimeException e) {
+         e.printStackTrace();
+         errors.incrementAndGet();
+      }
+   }
+
+   public static void main(String[] args) throws Exception {
+      LockStress test = new LockStress();
+      System.exit(test.torn.get() == 0 && test.errors.get() == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,160 @@
+package test;
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import odml.core.Property;
+import odml.core.Section;
+import odml.core.Writer;
+import odml.util.Mapper;
+import odml.util.TerminologyManager;
+
+/**
+ *
+ * Checks of the mapping information that the TerminologyManager shares
+ * between all mappers: it is resolved once, so later changes of the
+ * terminology files are only seen after the cache is cleared, and mappers
+ * running on several threads at once produce the same trees. Each check
+ * prints its result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class MappingCache {
+   private int  failures = 0;
+   private File dir, sourceFile;
+   private URL  source, target;
+
+   public MappingCache() {
+      try {
+         dir = File.createTempFile("odml-mapping-cache", "");
+         dir.delete();
+         dir.mkdirs();
+         File targetFile = new File(dir, "target.odml");
+         target = targetFile.toURI().toURL();
+         new Writer(createTarget(), true).write(targetFile.getPath());
+         sourceFile = new File(dir, "source.odml");
+         source = sourceFile.toURI().toURL();
+         new Writer(createSource("cell"), true).write(sourceFile.getPath());
+         TerminologyManager.instance().clearCache();
+         sharedPlan();
+         concurrentMappers();
+         unmappedProperty();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         TerminologyManager.instance().clearCache();
+         if (dir != null && dir.listFiles() != null) {
+            for (File file : dir.listFiles()) {
+               file.delete();
+            }
+            dir.delete();
+         }
+      }
+   }
+
+   private Section createTarget() throws Exception {
+      Section root = new Section();
+      new Section(root, "Cell", "cell").add(new Property("InputResistance"));
+      new Section(root, "Stimulus", "stimulus").add(new Property("Amplitude"));
+      return root;
+   }
+
+   /**
+    * The terminology of the data; neurons are mapped to the given type of
+    * the target terminology.
+    */
+   private Section createSource(String type) throws Exception {
+      Section root = new Section();
+      Section neuron = new Section(root, "Neuron", "neuron");
+      neuron.setMapping(target + "#" + type);
+      neuron.add(new Property("Resistance"));
+      neuron.getProperty("Resistance").setMapping(target + "#cell:InputResistance");
+      return root;
+   }
+
+   private Section createTree(int neurons) throws Exception {
+      Section root = new Section();
+      root.setRepository(source);
+      Section recording = new Section(root, "Recording", "recording");
+      for (int i = 0; i < neurons; i++) {
+         Section neuron = new Section(recording, "Neuron" + i, "neuron");
+         neuron.addProperty("Resistance", 50 + i);
+         neuron.addProperty("Depth", 100 + i);
+      }
+      return root;
+   }
+
+   private String neuronType(Section mapped) {
+      return mapped.getSection("Recording").getSection("Neuron0").getType();
+   }
+
+   private void sharedPlan() throws Exception {
+      System.out.println("Mappers share the resolved mappings...");
+      check("first mapper", neuronType(new Mapper(createTree(2)).map()).equals("cell"));
+      // the terminology now maps neurons to stimuli, the mappers keep the resolved mapping
+      new Writer(createSource("stimulus"), true).write(sourceFile.getPath());
+      check("second mapper", neuronType(new Mapper(createTree(2)).map()).equals("cell"));
+      TerminologyManager.instance().clearCache();
+      check("changed terminology after clearing", neuronType(new Mapper(createTree(2)).map()).equals("stimulus"));
+      new Writer(createSource("cell"), true).write(sourceFile.getPath());
+      TerminologyManager.instance().clearCache();
+      check("changed back", neuronType(new Mapper(createTree(2)).map()).equals("cell"));
+   }
+
+   private void concurrentMappers() throws Exception {
+      System.out.println();
+      System.out.println("Mappers on several threads...");
+      TerminologyManager.instance().clearCache();
+      final Section expected = new Mapper(createTree(10)).map();
+      TerminologyManager.instance().clearCache();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<Section>> results = new ArrayList<Future<Section>>();
+      try {
+         for (int i = 0; i < 32; i++) {
+            final Section original = createTree(10);
+            results.add(executor.submit(() -> new Mapper(original).map()));
+         }
+         boolean equal = true;
+         for (Future<Section> result : results) {
+            equal &= expected.equals(result.get());
+         }
+         check("the same trees", equal);
+      } finally {
+         executor.shutdown();
+      }
+      Section cell = TerminologyManager.instance().loadTerminology(target, "cell");
+      check("terminology unchanged", cell.getName().equals("Cell") && cell.propertyCount() == 1
+            && cell.sectionCount() == 0);
+      Section mapped = results.get(0).get().getSection("Recording").getSection("Neuron9");
+      check("mapped properties", mapped.getProperty("InputResistance").getValue().equals(59)
+            && mapped.getProperty("Depth").getValue().equals(109));
+   }
+
+   private void unmappedProperty() throws Exception {
+      System.out.println();
+      System.out.println("A property of a section that was not mapped...");
+      Section original = createTree(1);
+      Property property = original.getSection("Recording").getSection("Neuron0").getProperty("Resistance");
+      Mapper mapper = new Mapper(original);
+      mapper.mapProperty(property);
+      check("is ignored", property.getParent() != null && property.getName().equals("Resistance"));
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      MappingCache checks = new MappingCache();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,248 @@
+package test;
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import odml.core.Property;
+import odml.core.Section;
+import odml.core.Writer;
+import odml.util.Mapper;
+import odml.util.TerminologyManager;
+
+/**
+ *
+ * Checks of the Mapper against terminologies stored in local files: missing
+ * mappings are completed from the terminology, sections and properties end
+ * up in the destination types, sections whose mapping can not be resolved
+ * are skipped, and the cached terminologies are never changed. Each check
+ * prints its result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class Mappings {
+   private int  failures = 0;
+   private File dir;
+   private URL  source, target;
+
+   public Mappings() {
+      try {
+         dir = File.createTempFile("odml-mapping", "");
+         dir.delete();
+         dir.mkdirs();
+         File targetFile = new File(dir, "target.odml");
+         target = targetFile.toURI().toURL();
+         new Writer(createTarget(), true).write(targetFile.getPath());
+         File sourceFile = new File(dir, "source.odml");
+         source = sourceFile.toURI().toURL();
+         new Writer(createSource()).write(sourceFile.getPath());
+         TerminologyManager.instance().clearCache();
+         completion();
+         repeatedTypes();
+         localMappings();
+         unresolvedMappings();
+         terminologyCache();
+         repeatedMapping();
+         copies();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         TerminologyManager.instance().clearCache();
+         if (dir != null && dir.listFiles() != null) {
+            for (File file : dir.listFiles()) {
+               file.delete();
+            }
+            dir.delete();
+         }
+      }
+   }
+
+   /**
+    * The terminology the data is mapped to, its properties have no values.
+    */
+   private Section createTarget() throws Exception {
+      Section root = new Section();
+      new Section(root, "Subject", "subject").add(new Property("Species"));
+      new Section(root, "Cell", "cell").add(new Property("InputResistance"));
+      new Section(root, "Stimulus", "stimulus").add(new Property("Amplitude"));
+      return root;
+   }
+
+   /**
+    * The terminology of the data, which maps animals to subjects and
+    * neurons to cells.
+    */
+   private Section createSource() throws Exception {
+      Section root = new Section();
+      Section animal = new Section(root, "Animal", "animal");
+      animal.setMapping(target + "#subject");
+      animal.addProperty("Kind", "mouse");
+      animal.getProperty("Kind").setMapping(target + "#subject:Species");
+      Section neuron = new Section(root, "Neuron", "neuron");
+      neuron.setMapping(target + "#cell");
+      neuron.addProperty("Resistance", 100);
+      neuron.getProperty("Resistance").setMapping(target + "#cell:InputResistance");
+      return root;
+   }
+
+   private Section createTree(int neurons) throws Exception {
+      Section root = new Section();
+      root.setRepository(source);
+      Section animal = new Section(root, "Animal", "animal");
+      animal.addProperty("Kind", "rat");
+      for (int i = 0; i < neurons; i++) {
+         new Section(animal, "Neuron" + i, "neuron").addProperty("Resistance", 50 + i);
+      }
+      new Section(animal, "Notes", "notes").addProperty("Text", "none");
+      return root;
+   }
+
+   private List<Section> sectionsOfType(Section root, String type) {
+      return root.descendants().filter(s -> type.equals(s.getType())).collect(Collectors.toList());
+   }
+
+   private void completion() throws Exception {
+      System.out.println("Mappings are completed from the terminology...");
+      Section original = createTree(1);
+      Section mapped = new Mapper(original).map();
+      check("mapped tree", mapped != null && mapped != original);
+      Section subject = mapped.getSection("Animal");
+      check("section type", subject != null && subject.getType().equals("subject"));
+      check("property renamed", subject.getProperty("Species") != null
+            && subject.getProperty("Species").getValue().equals("rat") && subject.getProperty("Kind") == null
+            && subject.getProperty("Species").valueCount() == 1);
+      Section cell = subject.getSection("Neuron0");
+      check("subsection", cell != null && cell.getType().equals("cell")
+            && cell.getProperty("InputResistance").getValue().equals(50));
+      Section notes = subject.getSection("Notes");
+      check("sections without mapping are copied", notes != null && notes.getType().equals("notes")
+            && notes.getProperty("Text").getValue().equals("none"));
+      check("original keeps its names", original.getSection("Animal").getType().equals("animal")
+            && original.getSection("Animal").getProperty("Kind") != null);
+      check("mappings were filled in", original.getSection("Animal").getMapping() != null
+            && original.getSection("Animal").getProperty("Kind").getMapping() != null);
+   }
+
+   private void repeatedTypes() throws Exception {
+      System.out.println();
+      System.out.println("A type that occurs many times...");
+      Section mapped = new Mapper(createTree(20)).map();
+      List<Section> cells = sectionsOfType(mapped, "cell");
+      check("every section mapped", cells.size() == 20);
+      boolean inOrder = true;
+      for (int i = 0; i < cells.size(); i++) {
+         inOrder &= cells.get(i).getName().equals("Neuron" + i)
+               && cells.get(i).getProperty("InputResistance").getValue().equals(50 + i);
+      }
+      check("names and properties in document order", inOrder);
+      check("no neurons left", sectionsOfType(mapped, "neuron").isEmpty());
+   }
+
+   private void localMappings() throws Exception {
+      System.out.println();
+      System.out.println("Locally given mappings are kept...");
+      Section original = createTree(2);
+      Section neuron = original.getSection("Animal").getSection("Neuron1");
+      neuron.setMapping(target + "#stimulus");
+      neuron.addProperty("Current", 0.5);
+      neuron.getProperty("Current").setMapping(target + "#stimulus:Amplitude");
+      Section mapped = new Mapper(original).map();
+      Section stimulus = mapped.getSection("Animal").getSection("Neuron1");
+      check("local section mapping", stimulus != null && stimulus.getType().equals("stimulus"));
+      check("local property mapping", stimulus.getProperty("Amplitude") != null
+            && stimulus.getProperty("Amplitude").getNumber() == 0.5);
+      // the terminology maps the resistance to the only cell next to the stimulus
+      Section cell = mapped.getSection("Animal").getSection("Neuron0");
+      check("other properties follow the terminology", stimulus.getProperty("Resistance") == null
+            && cell.getType().equals("cell") && cell.getProperty("InputResistance").valueCount() == 2);
+   }
+
+   private void unresolvedMappings() throws Exception {
+      System.out.println();
+      System.out.println("Mappings that can not be resolved...");
+      Section original = createTree(1);
+      Section animal = original.getSection("Animal");
+      // the target terminology defines three types, a mapping without type is ambiguous
+      Section group = new Section(animal, "Group", "group");
+      group.setMapping(target.toString());
+      new Section(group, "Inner", "notes").addProperty("Text", "inner");
+      Section missing = new Section(animal, "Missing", "notes");
+      missing.setMapping(new File(dir, "missing.odml").toURI().toURL() + "#cell");
+      Section notes = animal.getSection("Notes");
+      notes.addProperty("Unknown", 1);
+      notes.getProperty("Unknown").setMapping(target + "#cell:Unknown");
+      Section mapped = new Mapper(original).map();
+      check("mapping completes", mapped != null && mapped.getSection("Animal") != null);
+      Section subject = mapped.getSection("Animal");
+      check("ambiguous section skipped", subject.getSection("Group") == null);
+      check("its subsections move up", subject.getSection("Inner") != null
+            && subject.getSection("Inner").getProperty("Text").getValue().equals("inner"));
+      check("missing terminology skipped", subject.getSection("Missing") == null);
+      // the only cell next to the notes is related to other sections as well, so the notes get a link to it
+      Section link = subject.getSection("Notes").getSection("Cell");
+      check("undefined property keeps its name", link != null && link.getProperty("Unknown") != null
+            && link.getLink().equals("/Animal/Neuron0"));
+      check("other properties", subject.getSection("Notes").getProperty("Text") != null);
+   }
+
+   private void terminologyCache() throws Exception {
+      System.out.println();
+      System.out.println("The cached terminologies are not changed...");
+      TerminologyManager manager = TerminologyManager.instance();
+      Section cell = manager.loadTerminology(target, "cell");
+      Section mapped = new Mapper(createTree(3)).map();
+      check("name and parent", cell.getName().equals("Cell") && cell.getParent() == manager.loadTerminology(target,
+            null));
+      check("properties", cell.propertyCount() == 1 && cell.getProperty("InputResistance").isEmpty());
+      boolean shared = mapped.descendants().anyMatch(s -> s == cell);
+      check("mapped tree holds copies", !shared);
+   }
+
+   private void repeatedMapping() throws Exception {
+      System.out.println();
+      System.out.println("Mapping again gives the same tree...");
+      Section original = createTree(5);
+      Section first = new Mapper(original).map();
+      Section second = new Mapper(original).map();
+      check("equal trees", first.equals(second));
+      TerminologyManager.instance().clearCache();
+      check("after clearing the cache", first.equals(new Mapper(createTree(5)).map()));
+   }
+
+   private void copies() throws Exception {
+      System.out.println();
+      System.out.println("Copies of sections and properties...");
+      Section root = createTree(3);
+      check("equal copy of a tree", root.copy().equals(root) && root.copy() != root);
+      Section original = root.getSection("Animal");
+      Section copy = original.copy();
+      check("copy of a subtree becomes a root", copy.getParent() == null && copy.getLevel() == 0
+            && copy.getSection("Neuron1").getLevel() == 1 && original.getParent() == root);
+      check("same content", copy.getProperty("Kind").equals(original.getProperty("Kind"))
+            && copy.sectionCount() == original.sectionCount());
+      check("subsections belong to the copy", copy.getSection("Neuron1").getParent() == copy
+            && copy.getSection("Neuron1") != original.getSection("Neuron1"));
+      copy.getSection("Neuron1").getProperty("Resistance").setValue(0);
+      copy.removeSection("Notes");
+      check("original unchanged", original.getSection("Neuron1").getProperty("Resistance").getValue().equals(51)
+            && original.getSection("Notes") != null);
+      Property property = original.getProperty("Kind").copy();
+      property.addValue("mouse");
+      check("property copy", property.getParent() == null && property.valueCount() == 2
+            && original.getProperty("Kind").valueCount() == 1);
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      Mappings checks = new Mappings();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,225 @@
+package test;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import odml.core.Property;
+import odml.core.Section;
+import odml.util.Query;
+import odml.util.Query.Comparison;
+
+/**
+ *
+ * Checks of the Query: the section, property and value conditions, unit
+ * scaling, subtrees, the index and the laziness of the result streams. The
+ * indexed queries must return the same properties as the walks. Each check
+ * prints its result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class Queries {
+   private int     failures = 0;
+   private Section root;
+
+   public Queries() {
+      try {
+         root = createTree();
+         conditions();
+         units();
+         subtrees();
+         index();
+         sectionsAndSelect();
+         laziness();
+         virtualLinks();
+         errors();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   /**
+    * Four recordings with three cells each; the cell resistances are given
+    * in MOhm, kOhm or GOhm, and the cells of Recording3 have no unit.
+    */
+   private Section createTree() throws Exception {
+      Section root = new Section();
+      String[] units = { "MOhm", "kOhm", "GOhm", null };
+      for (int i = 0; i < 4; i++) {
+         Section recording = new Section(root, "Recording" + i, "recording");
+         recording.addProperty("Experimenter", "Experimenter " + i);
+         for (int j = 0; j < 3; j++) {
+            Section cell = new Section(recording, "Cell" + j, "cell");
+            cell.addProperty("Resistance", 50 * (j + 1));
+            if (units[i] != null) {
+               cell.getProperty("Resistance").setUnit(units[i]);
+            }
+            new Section(cell, "Stimulus", "stimulus/white_noise").addProperty("Contrast", 0.25 * (j + 1));
+         }
+      }
+      return root;
+   }
+
+   private void conditions() {
+      System.out.println("Conditions...");
+      check("name only", new Query().name("Resistance").properties(root).count() == 12);
+      check("names are case-insensitive", new Query().name("resistance").properties(root).count() == 12);
+      check("type", new Query().sectionType("CELL").properties(root).count() == 12);
+      check("sub-type", new Query().sectionType("stimulus").name("Contrast").properties(root).count() == 12);
+      check("full sub-type", new Query().sectionType("stimulus/white_noise").properties(root).count() == 12);
+      check("section name", new Query().sectionName("cell1").name("Resistance").properties(root).count() == 4);
+      check("numeric value", new Query().name("Resistance").value(Comparison.GREATER_OR_EQUAL, 100)
+            .properties(root).count() == 8);
+      check("equal", new Query().name("Resistance").value(Comparison.EQUAL, 150).properties(root).count() == 4);
+      check("not equal", new Query().name("Resistance").value(Comparison.NOT_EQUAL, 150)
+            .properties(root).count() == 8);
+      check("string value", new Query().value(Comparison.EQUAL, "Experimenter 2").properties(root).count() == 1);
+      check("string order", new Query().name("Experimenter").value(Comparison.LESS, "Experimenter 2")
+            .properties(root).count() == 2);
+      check("two value conditions", new Query().name("Resistance").value(Comparison.GREATER, 50)
+            .value(Comparison.LESS, 150).properties(root).count() == 4);
+      check("predicates", new Query().whereSection(s -> "Cell0".equals(s.getName()))
+            .where(p -> p.getName().startsWith("R")).properties(root).count() == 4);
+      check("no match", new Query().sectionType("nothing").properties(root).count() == 0);
+      List<String> order = new Query().name("Experimenter").properties(root).map(p -> (String) p.getValue())
+            .collect(Collectors.toList());
+      check("document order", order.get(0).equals("Experimenter 0") && order.get(3).equals("Experimenter 3"));
+   }
+
+   private void units() {
+      System.out.println();
+      System.out.println("Units that differ by a prefix are scaled...");
+      // 50, 100, 150 MOhm; 0.05, 0.1, 0.15 MOhm; 50000, 100000, 150000 MOhm; no unit
+      check("above 0.12 MOhm", new Query().name("Resistance").value(Comparison.GREATER, 0.12, "MOhm")
+            .properties(root).count() == 7);
+      check("in kOhm", new Query().name("Resistance").value(Comparison.LESS_OR_EQUAL, 100, "kOhm")
+            .properties(root).count() == 2);
+      check("in Ohm", new Query().name("Resistance").value(Comparison.EQUAL, 150e6, "Ohm")
+            .properties(root).count() == 1);
+      check("values without unit do not match", new Query().within("Recording3").name("Resistance")
+            .value(Comparison.GREATER, 0, "MOhm").properties(root).count() == 0);
+      check("other units do not match", new Query().name("Resistance").value(Comparison.GREATER, 0, "s")
+            .properties(root).count() == 0);
+   }
+
+   private void subtrees() {
+      System.out.println();
+      System.out.println("Subtrees...");
+      check("within", new Query().within("Recording1").name("Resistance").properties(root).count() == 3);
+      check("within a path", new Query().within("Recording1/Cell2").properties(root).count() == 2);
+      check("missing subtree", new Query().within("Recording9").properties(root).count() == 0);
+      check("query on a subsection", new Query().name("Contrast").properties(root.getSection("Recording2"))
+            .count() == 3);
+   }
+
+   private void index() throws Exception {
+      System.out.println();
+      System.out.println("Indexed queries return the same properties...");
+      Query.Index index = Query.index(root);
+      check("index root", index.getRootSection() == root);
+      check("sections by type", index.sections("cell").size() == 12 && index.sections("stimulus").size() == 12);
+      check("properties by name", index.properties("RESISTANCE").size() == 12);
+      check("unknown keys", index.sections("nothing").isEmpty() && index.properties("nothing").isEmpty());
+      Query[] queries = {
+            new Query().name("Resistance"),
+            new Query().sectionType("cell"),
+            new Query().sectionType("cell").name("Resistance").value(Comparison.GREATER, 0.12, "MOhm"),
+            new Query().sectionType("stimulus").name("Contrast").within("Recording2"),
+            new Query().sectionType("recording").name("Contrast"),
+            new Query().name("Resistance").within("Recording1/Cell1"),
+            new Query().name("Resistance").within("Recording9"),
+            new Query().value(Comparison.EQUAL, "Experimenter 1") };
+      for (int i = 0; i < queries.length; i++) {
+         List<Property> walked = queries[i].properties(root).collect(Collectors.toList());
+         List<Property> indexed = queries[i].properties(index).collect(Collectors.toList());
+         check("query " + i, sameProperties(walked, indexed));
+      }
+      new Section(root.getSection("Recording0"), "Cell3", "cell").addProperty("Resistance", 1);
+      check("index keeps the state it was built with", new Query().name("Resistance").properties(index)
+            .count() == 12 && new Query().name("Resistance").properties(root).count() == 13);
+      root.getSection("Recording0").removeSection("Cell3");
+   }
+
+   private void sectionsAndSelect() {
+      System.out.println();
+      System.out.println("Sections and projections...");
+      check("sections of a type", new Query().sectionType("recording").sections(root).count() == 4);
+      check("sections with matching properties", new Query().name("Resistance").value(Comparison.EQUAL, 100)
+            .sections(root).count() == 4);
+      List<String> units = new Query().within("Recording1").name("Resistance")
+            .select(root, p -> p.getUnit(0)).collect(Collectors.toList());
+      check("select", units.size() == 3 && units.get(0).equals("kOhm"));
+      check("select with index", new Query().name("Contrast").select(Query.index(root), p -> p.getNumber())
+            .mapToDouble(Double::doubleValue).sum() == 4 * (0.25 + 0.5 + 0.75));
+   }
+
+   private void laziness() {
+      System.out.println();
+      System.out.println("Results are streamed...");
+      final AtomicInteger visited = new AtomicInteger();
+      Property first = new Query().whereSection(s -> {
+         visited.incrementAndGet();
+         return true;
+      }).name("Resistance").properties(root).findFirst().orElse(null);
+      check("first match", first != null && first.getParent().getName().equals("Cell0"));
+      // the root, Recording0 and its Cell0
+      check("walk ends at the first match", visited.get() == 3);
+   }
+
+   private void virtualLinks() throws Exception {
+      System.out.println();
+      System.out.println("Sections seen through a virtual link...");
+      Section tree = new Section();
+      Section recording = new Section(tree, "Recording", "recording");
+      Section cell = new Section(recording, "Cell", "cell");
+      cell.addProperty("Resistance", 100);
+      Section other = new Section(tree, "Other", "recording");
+      Section linked = new Section(other, "Cell", "cell");
+      linked.setLink("/Recording/Cell");
+      tree.resolveAllLinks(true);
+      check("linked properties are found", new Query().name("Resistance").properties(tree).count() == 2);
+      check("same with index", new Query().name("Resistance").properties(Query.index(tree)).count() == 2);
+      check("section of the link", new Query().within("Other").sectionType("cell").name("Resistance")
+            .properties(Query.index(tree)).count() == 1);
+   }
+
+   private void errors() {
+      System.out.println();
+      System.out.println("Invalid conditions...");
+      boolean refused = false;
+      try {
+         new Query().value(Comparison.EQUAL, "fifty", "MOhm");
+      } catch (IllegalArgumentException e) {
+         refused = true;
+      }
+      check("unit with a non-numeric operand", refused);
+      Section empty = new Section();
+      check("empty tree", new Query().name("Resistance").properties(empty).count() == 0
+            && new Query().name("Resistance").properties(Query.index(empty)).count() == 0);
+   }
+
+   private static boolean sameProperties(List<Property> a, List<Property> b) {
+      if (a.size() != b.size()) {
+         return false;
+      }
+      for (int i = 0; i < a.size(); i++) {
+         if (a.get(i) != b.get(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      Queries checks = new Queries();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,342 @@
+package test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+
+import odml.core.BinaryReader;
+import odml.core.BinaryStore;
+import odml.core.BinaryWriter;
+import odml.core.Journal;
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.SectionSnapshot;
+import odml.core.Writer;
+
+/**
+ *
+ * Round trip checks of the readers and writers: a generated tree is written
+ * and read back in different ways and the xml written from the result is
+ * compared with that of the original tree. Each check prints its result, the
+ * program exits with status 1 if one of them failed.
+ *
+ */
+public class RoundTrips {
+   private int failures = 0;
+   private File dir;
+
+   public RoundTrips() {
+      try {
+         dir = File.createTempFile("odml-roundtrips", "");
+         dir.delete();
+         dir.mkdirs();
+         parallelReader();
+         parallelWriter();
+         binary();
+         binaryStore();
+         lazyStore();
+         binaryStoreUpdate();
+         journal();
+         journalEdgeCases();
+         compression();
+         snapshots();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         if (dir != null && dir.listFiles() != null) {
+            for (File file : dir.listFiles()) {
+               file.delete();
+            }
+            dir.delete();
+         }
+      }
+   }
+
+   /**
+    * Creates a tree with a few top-level sections, nested subsections and
+    * values of the different types.
+    */
+   private Section createTree() throws Exception {
+      Section root = new Section();
+      root.setDocumentAuthor("odml javalib");
+      root.setDocumentVersion("1.0");
+      root.setDocumentDate(new SimpleDateFormat("yyyy-MM-dd").parse("2026-10-19"));
+      for (int i = 0; i < 8; i++) {
+         Section s = new Section(root, "Recording" + i, "recording");
+         s.setDefinition("Recording number " + i);
+         s.addProperty("Experimenter", "Experimenter " + i);
+         s.addProperty("Trials", i * 10);
+         s.addProperty("Duration", 1.5 * i);
+         s.addProperty("Valid", i % 2 == 0);
+         s.addProperty("Date", new SimpleDateFormat("yyyy-MM-dd").parse("2026-10-" + (10 + i)));
+         for (int j = 0; j < 4; j++) {
+            Section cell = new Section(s, "Cell" + j, "cell");
+            cell.addProperty("Resistance", 100 + 10 * j);
+            cell.getProperty("Resistance").setUnit("MOhm");
+            Section stimulus = new Section(cell, "Stimulus", "stimulus/white_noise");
+            stimulus.addProperty("Contrast", 0.1 * (j + 1));
+         }
+      }
+      return root;
+   }
+
+   private String toXml(Section root, int parallelism) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      Writer writer = new Writer(root);
+      writer.setParallelism(parallelism);
+      if (!writer.write(out)) {
+         return null;
+      }
+      return new String(out.toByteArray());
+   }
+
+   private Section fromXml(String xml, int parallelism) throws Exception {
+      Reader reader = new Reader();
+      reader.setParallelism(parallelism);
+      return reader.load(new ByteArrayInputStream(xml.getBytes()));
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   private void parallelReader() throws Exception {
+      System.out.println();
+      System.out.println("Reading with one and with four threads gives the same tree...");
+      String xml = toXml(createTree(), 1);
+      Section sequential = fromXml(xml, 1);
+      Section parallel = fromXml(xml, 4);
+      check("values are read", "Experimenter 3".equals(
+            sequential.getSection("Recording3").getProperty("Experimenter").getValue()));
+      check("parallel reader", sequential.equals(parallel));
+      check("xml round trip", xml.equals(toXml(parallel, 1)));
+   }
+
+   private void parallelWriter() throws Exception {
+      System.out.println();
+      System.out.println("Writing with one and with four threads gives the same document...");
+      Section tree = createTree();
+      String sequential = toXml(tree, 1);
+      check("parallel writer", sequential.equals(toXml(tree, 4)));
+      check("tree is not changed by writing", tree.equals(createTree()));
+   }
+
+   private void binary() throws Exception {
+      System.out.println();
+      System.out.println("Binary format round trip...");
+      String xml = toXml(createTree(), 1);
+      Section tree = fromXml(xml, 1);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      check("binary write", new BinaryWriter(tree).write(out));
+      Section restored = new BinaryReader().load(new ByteArrayInputStream(out.toByteArray()));
+      check("binary read", tree.equals(restored));
+      check("xml of restored tree", xml.equals(toXml(restored, 1)));
+
+      int[] extremes = { 1073741823, 1073741824, -1073741825, Integer.MAX_VALUE, Integer.MIN_VALUE };
+      tree = new Section();
+      Section s = new Section(tree, "Extremes", "test");
+      s.addProperty("Ints", extremes[0]);
+      for (int i = 1; i < extremes.length; i++) {
+         s.getProperty("Ints").addValue(extremes[i]);
+      }
+      out = new ByteArrayOutputStream();
+      check("binary write of extreme ints", new BinaryWriter(tree).write(out));
+      restored = new BinaryReader().load(new ByteArrayInputStream(out.toByteArray()));
+      boolean same = restored != null && restored.getSection("Extremes").getProperty("Ints").valueCount() == extremes.length;
+      for (int i = 0; same && i < extremes.length; i++) {
+         same = Integer.valueOf(extremes[i]).equals(restored.getSection("Extremes").getProperty("Ints").getValue(i));
+      }
+      check("extreme ints", same);
+   }
+
+   private void binaryStore() throws Exception {
+      System.out.println();
+      System.out.println("BinaryStore round trip...");
+      String xml = toXml(createTree(), 1);
+      File file = new File(dir, "tree.odml.bin");
+      BinaryWriter writer = new BinaryWriter(fromXml(xml, 1));
+      writer.setIndexed(true);
+      check("indexed write", writer.write(file.getPath()));
+      BinaryStore store = new BinaryStore(file.getPath());
+      try {
+         check("section count", store.sectionCount() == 1 + 8 * (1 + 4 * 2));
+         check("whole tree", xml.equals(toXml(store.getRootSection(), 1)));
+         Section cell = store.getSection("/Recording2/Cell1");
+         check("single section", cell != null && cell.getProperty("Resistance").getValue().equals(110));
+      } finally {
+         store.close();
+      }
+   }
+
+   private void lazyStore() throws Exception {
+      System.out.println();
+      System.out.println("Reading a BinaryStore tree lazily...");
+      String xml = toXml(createTree(), 1);
+      File file = new File(dir, "lazy.odml.bin");
+      BinaryWriter writer = new BinaryWriter(createTree());
+      writer.setIndexed(true);
+      writer.write(file.getPath());
+      BinaryStore store = new BinaryStore(file.getPath());
+      try {
+         Section root = store.getRootSection(true);
+         check("stimulus", root.getSection("Recording6/Cell3/Stimulus").getProperty("Contrast") != null);
+         check("lazy tree", xml.equals(toXml(root, 1)));
+      } finally {
+         store.close();
+      }
+   }
+
+   private void binaryStoreUpdate() throws Exception {
+      System.out.println();
+      System.out.println("Saving the changes of a BinaryStore tree...");
+      File file = new File(dir, "updated.odml.bin");
+      BinaryWriter writer = new BinaryWriter(createTree());
+      writer.setIndexed(true);
+      writer.write(file.getPath());
+      BinaryStore store = new BinaryStore(file.getPath());
+      try {
+         Section root = store.getRootSection(true);
+         root.getSection("Recording5").getProperty("Trials").setValue(55);
+         check("only the changed section is written", store.update(root) == 1);
+         check("nothing left to write", store.update(root) == 0);
+         check("update", toXml(root, 1).equals(toXml(store.getRootSection(), 1)));
+      } finally {
+         store.close();
+      }
+      store = new BinaryStore(file.getPath());
+      try {
+         check("reopened", store.getSection("/Recording5").getProperty("Trials").getValue().equals(55));
+      } finally {
+         store.close();
+      }
+   }
+
+   private void journal() throws Exception {
+      System.out.println();
+      System.out.println("Journal replay...");
+      File snapshot = new File(dir, "journaled.xml");
+      Journal journal = Journal.open(snapshot.getPath());
+      Section root = journal.getRootSection();
+      Section s = new Section(root, "Recording", "recording");
+      s.addProperty("Trials", 10);
+      new Section(s, "Cell", "cell").addProperty("Resistance", 100);
+      new Section(root, "Removed", "recording");
+      s.getProperty("Trials").setValue(20);
+      root.removeSection("Removed");
+      root.setDocumentAuthor("odml javalib");
+      String expected = toXml(root, 1);
+      journal.close();
+      check("changes are journaled", new File(snapshot.getPath() + ".journal").length() > 0);
+
+      journal = Journal.open(snapshot.getPath());
+      check("replay", expected.equals(toXml(journal.getRootSection(), 1)));
+      journal.compact();
+      journal.getRootSection().getSection("Recording").getSection("Cell").getProperty("Resistance").setValue(120);
+      expected = toXml(journal.getRootSection(), 1);
+      journal.close();
+
+      journal = Journal.open(snapshot.getPath());
+      check("replay after compaction", expected.equals(toXml(journal.getRootSection(), 1)));
+      journal.close();
+   }
+
+   private void journalEdgeCases() throws Exception {
+      System.out.println();
+      System.out.println("Journal with removed sections, root properties and a failed compaction...");
+      File snapshot = new File(dir, "edges.xml");
+      Journal journal = Journal.open(snapshot.getPath());
+      Section root = journal.getRootSection();
+      Section kept = new Section(root, "Kept", "recording");
+      kept.addProperty("Trials", 1);
+      Section removed = new Section(root, "Removed", "recording");
+      new Section(removed, "Cell", "cell");
+      root.removeSection(removed);
+      check("removed section is detached", removed.getParent() == null);
+      removed.addProperty("Trials", 2);
+      removed.getSection("Cell").addProperty("Resistance", 100);
+      kept.getProperty("Trials").setValue(3);
+      String expected = toXml(root, 1);
+      journal.close();
+      journal = Journal.open(snapshot.getPath());
+      check("changes of removed sections are not journaled", expected.equals(toXml(journal.getRootSection(), 1)));
+
+      // the new snapshot can not be moved over a directory
+      byte[] saved = Files.readAllBytes(snapshot.toPath());
+      snapshot.delete();
+      snapshot.mkdir();
+      File blocker = new File(snapshot, "blocker");
+      blocker.createNewFile();
+      boolean failed = false;
+      try {
+         journal.compact();
+      } catch (IOException e) {
+         failed = true;
+      }
+      blocker.delete();
+      snapshot.delete();
+      Files.write(snapshot.toPath(), saved);
+      check("compaction fails", failed);
+      journal.getRootSection().getSection("Kept").getProperty("Trials").setValue(4);
+      expected = toXml(journal.getRootSection(), 1);
+      journal.close();
+      journal = Journal.open(snapshot.getPath());
+      check("journal is kept after a failed compaction", expected.equals(toXml(journal.getRootSection(), 1)));
+      journal.close();
+
+      snapshot = new File(dir, "typed.xml");
+      journal = Journal.open(snapshot.getPath());
+      journal.getRootSection().setType("root");
+      journal.getRootSection().addProperty("Experimenter", "Someone");
+      expected = toXml(journal.getRootSection(), 1);
+      journal.close();
+      journal = Journal.open(snapshot.getPath());
+      check("root properties are replayed", expected.equals(toXml(journal.getRootSection(), 1)));
+      journal.close();
+   }
+
+   private void compression() throws Exception {
+      System.out.println();
+      System.out.println("Compressed documents are read like plain ones...");
+      Section tree = createTree();
+      String xml = toXml(tree, 1);
+      for (int compression : new int[] { Writer.GZIP, Writer.ZLIB, Writer.PARALLEL_GZIP }) {
+         File file = new File(dir, "compressed" + compression + ".odml");
+         Writer writer = new Writer(tree);
+         writer.setCompression(compression);
+         check("write compression " + compression, writer.write(file.getPath()));
+         check("smaller than xml", file.length() < xml.length());
+         Section restored = new Reader().load(file.getPath());
+         check("read compression " + compression, restored != null && xml.equals(toXml(restored, 1)));
+      }
+   }
+
+   private void snapshots() throws Exception {
+      System.out.println();
+      System.out.println("Freezing and thawing a tree...");
+      Section tree = createTree();
+      String xml = toXml(tree, 1);
+      SectionSnapshot snapshot = tree.freeze();
+      check("frozen content", snapshot.getSection("Recording1").getSection("Cell2")
+            .getProperty("Resistance") != null);
+      Section thawed = snapshot.thaw();
+      check("thaw", xml.equals(toXml(thawed, 1)));
+      tree.getSection("Recording1").getProperty("Trials").setValue(11);
+      check("snapshot is not changed by the tree", xml.equals(toXml(snapshot.thaw(), 1)));
+      SectionSnapshot changed = snapshot.update("Recording1/Cell2", cell -> null);
+      check("update copies", changed.getSection("Recording1").sectionCount() == 3
+            && snapshot.getSection("Recording1").sectionCount() == 4);
+   }
+
+   public static void main(String[] args) {
+      RoundTrips checks = new RoundTrips();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
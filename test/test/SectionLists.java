@@ -0,0 +1,171 @@
+package test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+import java.util.Vector;
+
+import odml.core.Property;
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.Value;
+import odml.core.Writer;
+
+/**
+ *
+ * Checks of the lists that hold the subsections, properties and values: the
+ * Vector getters return copies, the list getters read-only views, and the
+ * lists of trees read from files can still be changed. Each check prints its
+ * result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class SectionLists {
+   private int failures = 0;
+
+   public SectionLists() {
+      try {
+         emptySection();
+         copies();
+         views();
+         values();
+         removal();
+         readTrees();
+         serialization();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   private Section createTree() throws Exception {
+      Section root = new Section();
+      Section s = new Section(root, "Recording", "recording");
+      s.addProperty("Experimenter", "Someone");
+      s.addProperty("Trials", 10);
+      new Section(s, "Cell0", "cell");
+      new Section(s, "Cell1", "cell");
+      return root;
+   }
+
+   private void emptySection() throws Exception {
+      System.out.println("A section without content...");
+      Section s = new Section("Empty", "test");
+      check("no subsections", s.getSections() == null);
+      check("empty property vector", s.getProperties() != null && s.getProperties().isEmpty());
+      check("empty section list", s.getSectionList().isEmpty());
+      check("empty property list", s.getPropertyList().isEmpty());
+   }
+
+   private void copies() throws Exception {
+      System.out.println();
+      System.out.println("The Vector getters return copies...");
+      Section s = createTree().getSection("Recording");
+      Vector<Section> sections = s.getSections();
+      sections.remove(0);
+      check("sections are not removed through the copy", s.sectionCount() == 2);
+      Vector<Property> properties = s.getProperties();
+      properties.clear();
+      check("properties are not removed through the copy", s.propertyCount() == 2);
+      check("copies hold the same sections", s.getSections().get(1) == s.getSection(1));
+   }
+
+   private void views() throws Exception {
+      System.out.println();
+      System.out.println("The list getters return read-only views...");
+      Section s = createTree().getSection("Recording");
+      List<Section> sections = s.getSectionList();
+      List<Property> properties = s.getPropertyList();
+      new Section(s, "Cell2", "cell");
+      s.addProperty("Duration", 1.5);
+      check("section view follows the section", sections.size() == 3 && sections.get(2).getName().equals("Cell2"));
+      check("property view follows the section", properties.size() == 3);
+      boolean refused = false;
+      try {
+         sections.add(new Section("Cell3", "cell"));
+      } catch (UnsupportedOperationException e) {
+         refused = true;
+      }
+      check("section view is read-only", refused && s.sectionCount() == 3);
+      refused = false;
+      try {
+         properties.remove(0);
+      } catch (UnsupportedOperationException e) {
+         refused = true;
+      }
+      check("property view is read-only", refused && s.propertyCount() == 3);
+   }
+
+   private void values() throws Exception {
+      System.out.println();
+      System.out.println("A property copies the values it is created with...");
+      Property source = new Property("Trials", 1);
+      source.addValue(2);
+      Vector<Value> values = new Vector<Value>();
+      values.add(source.getWholeValue(0));
+      values.add(source.getWholeValue(1));
+      Property property = new Property("Trials", values, null, null, null, null);
+      values.remove(1);
+      check("values are copied", property.valueCount() == 2);
+      Vector<Object> contents = property.getValues();
+      contents.clear();
+      check("value contents are a copy", property.valueCount() == 2);
+      check("values can be added", property.addValue(3) && property.valueCount() == 3);
+   }
+
+   private void removal() throws Exception {
+      System.out.println();
+      System.out.println("Removing at invalid indices...");
+      Section s = createTree().getSection("Recording");
+      check("property index equal to the size", !s.removeProperty(s.propertyCount()) && s.propertyCount() == 2);
+      check("negative property index", !s.removeProperty(-1) && s.propertyCount() == 2);
+      check("section index equal to the size", !s.removeSection(s.sectionCount()) && s.sectionCount() == 2);
+      check("valid indices", s.removeProperty(1) && s.removeSection(1)
+            && s.propertyCount() == 1 && s.sectionCount() == 1);
+   }
+
+   private void readTrees() throws Exception {
+      System.out.println();
+      System.out.println("Trees read from xml can be changed...");
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new Writer(createTree()).write(out);
+      Section root = new Reader().load(new ByteArrayInputStream(out.toByteArray()));
+      Section s = root.getSection("Recording");
+      for (int i = 2; i < 20; i++) {
+         new Section(s, "Cell" + i, "cell");
+         s.addProperty("Property" + i, i);
+      }
+      check("subsections added", s.sectionCount() == 20 && s.getSection(19).getName().equals("Cell19"));
+      check("properties added", s.propertyCount() == 20 && s.getProperty("Property19").getValue().equals(19));
+      s.getProperty("Trials").addValue(11);
+      check("values added", s.getProperty("Trials").valueCount() == 2);
+   }
+
+   private void serialization() throws Exception {
+      System.out.println();
+      System.out.println("Java serialization keeps the lists...");
+      Section tree = createTree();
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(tree);
+      out.close();
+      Section copy = (Section) new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+      check("deserialized tree", tree.equals(copy));
+      new Section(copy.getSection("Recording"), "Cell2", "cell");
+      check("deserialized lists can be changed", copy.getSection("Recording").sectionCount() == 3);
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      SectionLists checks = new SectionLists();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
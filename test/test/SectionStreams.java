@@ -0,0 +1,223 @@
+package test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import odml.core.Property;
+import odml.core.Section;
+import odml.core.Value;
+
+/**
+ *
+ * Checks of the section streams: descendants, allProperties and allValues
+ * must return the sections, properties and values in document order, also
+ * when the stream is split for parallel processing, and must not recurse on
+ * deep trees. Each check prints its result, the program exits with status 1
+ * if one of them failed.
+ *
+ */
+public class SectionStreams {
+   private int failures = 0;
+
+   public SectionStreams() {
+      try {
+         emptySections();
+         documentOrder();
+         properties();
+         splitting();
+         deepTree();
+         laziness();
+         virtualLinks();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   /**
+    * A tree of the given depth in which every section has the given number
+    * of subsections and one property with two values.
+    */
+   private Section createTree(int depth, int width) throws Exception {
+      Section root = new Section();
+      addLevel(root, depth, width);
+      return root;
+   }
+
+   private void addLevel(Section parent, int depth, int width) throws Exception {
+      if (depth == 0) {
+         return;
+      }
+      for (int i = 0; i < width; i++) {
+         Section s = new Section(parent, "Section" + i, "level" + depth);
+         s.addProperty("Index", i);
+         s.getProperty("Index").addValue(-i - 1);
+         addLevel(s, depth - 1, width);
+      }
+   }
+
+   private void preOrder(Section section, List<Section> sections) {
+      for (Section s : section.getSectionList()) {
+         sections.add(s);
+         preOrder(s, sections);
+      }
+   }
+
+   private List<Section> preOrder(Section section) {
+      List<Section> sections = new ArrayList<Section>();
+      preOrder(section, sections);
+      return sections;
+   }
+
+   private void emptySections() throws Exception {
+      System.out.println("A section without content...");
+      Section s = new Section("Empty", "test");
+      check("no descendants", s.descendants().count() == 0);
+      check("no properties", s.allProperties().count() == 0);
+      check("no values", s.allValues().count() == 0);
+      check("nothing to split", s.descendants().spliterator().trySplit() == null);
+   }
+
+   private void documentOrder() throws Exception {
+      System.out.println();
+      System.out.println("Sections in document order...");
+      Section root = createTree(4, 4);
+      List<Section> expected = preOrder(root);
+      check("sequential", sameSections(expected, root.descendants().collect(Collectors.toList())));
+      check("parallel", sameSections(expected, root.descendants().parallel().collect(Collectors.toList())));
+      Section inner = root.getSection("Section1");
+      check("subtree", sameSections(preOrder(inner), inner.descendants().collect(Collectors.toList())));
+      check("root not included", !root.descendants().anyMatch(s -> s == root));
+      List<Section> stepped = new ArrayList<Section>();
+      Spliterator<Section> spliterator = root.descendants().spliterator();
+      while (spliterator.tryAdvance(stepped::add)) {
+      }
+      check("tryAdvance", sameSections(expected, stepped));
+      check("exhausted", spliterator.estimateSize() == 0 && !spliterator.tryAdvance(s -> {
+      }));
+   }
+
+   private void properties() throws Exception {
+      System.out.println();
+      System.out.println("Properties and values of the subtree...");
+      Section root = createTree(3, 3);
+      Section first = root.getSection("Section0");
+      first.addProperty("Own", "value");
+      List<Property> properties = first.allProperties().collect(Collectors.toList());
+      check("own properties first", properties.size() == 2 + 3 + 9 && properties.get(0).getName().equals("Index")
+            && properties.get(1).getName().equals("Own") && properties.get(0).getParent() == first);
+      check("all properties", root.allProperties().count() == 3 + 9 + 27 + 1);
+      List<Value> values = first.allValues().collect(Collectors.toList());
+      check("all values", values.size() == 2 * 13 + 1);
+      check("value order", values.get(0) == first.getProperty("Index").getWholeValue(0)
+            && values.get(1) == first.getProperty("Index").getWholeValue(1)
+            && values.get(2).getParent() == first.getProperty("Own"));
+      check("parallel values", root.allValues().parallel().count() == root.allValues().count());
+   }
+
+   private void splitting() throws Exception {
+      System.out.println();
+      System.out.println("Splitting into parts...");
+      Section root = createTree(5, 4);
+      List<Section> expected = preOrder(root);
+      List<Spliterator<Section>> parts = new ArrayList<Spliterator<Section>>();
+      parts.add(root.descendants().spliterator());
+      for (int round = 0; round < 6; round++) {
+         List<Spliterator<Section>> split = new ArrayList<Spliterator<Section>>();
+         for (Spliterator<Section> part : parts) {
+            Spliterator<Section> prefix = part.trySplit();
+            if (prefix != null) {
+               split.add(prefix);
+            }
+            split.add(part);
+         }
+         parts = split;
+      }
+      check("split into many parts", parts.size() >= 32);
+      List<Section> joined = new ArrayList<Section>();
+      int largest = 0;
+      for (Spliterator<Section> part : parts) {
+         int before = joined.size();
+         part.forEachRemaining(joined::add);
+         largest = Math.max(largest, joined.size() - before);
+      }
+      check("parts in order cover the tree once", sameSections(expected, joined));
+      check("parts are balanced", largest < expected.size() / 8);
+      check("ordered and non-null", parts.get(0).hasCharacteristics(Spliterator.ORDERED | Spliterator.NONNULL));
+
+      Section chain = new Section();
+      Section s = new Section(chain, "Single", "single");
+      new Section(s, "Leaf", "leaf");
+      Spliterator<Section> single = chain.descendants().spliterator();
+      check("a single path does not split", single.trySplit() == null && single.estimateSize() > 0);
+   }
+
+   private void deepTree() throws Exception {
+      System.out.println();
+      System.out.println("A deep tree...");
+      Section root = new Section();
+      Section s = root;
+      for (int i = 0; i < 20000; i++) {
+         s = new Section(s, "Level" + i, "level");
+      }
+      s.addProperty("Deepest", 1);
+      check("descendants", root.descendants().count() == 20000);
+      check("properties", root.allProperties().count() == 1);
+   }
+
+   private void laziness() throws Exception {
+      System.out.println();
+      System.out.println("Streams are lazy...");
+      Section root = createTree(4, 4);
+      final AtomicInteger seen = new AtomicInteger();
+      Section found = root.descendants().peek(s -> seen.incrementAndGet()).filter(s -> s.getType().equals("level3"))
+            .findFirst().orElse(null);
+      check("first match", found == root.getSection(0).getSection(0));
+      check("only the sections before it are visited", seen.get() == 2);
+   }
+
+   private void virtualLinks() throws Exception {
+      System.out.println();
+      System.out.println("Sections seen through a virtual link...");
+      Section tree = new Section();
+      Section recording = new Section(tree, "Recording", "recording");
+      Section cell = new Section(recording, "Cell", "cell");
+      new Section(cell, "Stimulus", "stimulus").addProperty("Contrast", 0.5);
+      Section other = new Section(tree, "Other", "recording");
+      Section linked = new Section(other, "Cell", "cell");
+      linked.setLink("/Recording/Cell");
+      tree.resolveAllLinks(true);
+      check("shared section returned once per link", tree.descendants().filter(s -> s.getType().equals("stimulus"))
+            .count() == 2);
+      check("properties of the link", other.allProperties().count() == 1);
+      check("values of the link", tree.allValues().count() == 2);
+   }
+
+   private static boolean sameSections(List<Section> a, List<Section> b) {
+      if (a.size() != b.size()) {
+         return false;
+      }
+      for (int i = 0; i < a.size(); i++) {
+         if (a.get(i) != b.get(i)) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      SectionStreams checks = new SectionStreams();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
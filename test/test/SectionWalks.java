@@ -0,0 +1,299 @@
+package test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.SectionVisitor;
+import odml.core.Writer;
+
+/**
+ *
+ * Checks of the traversal of section trees without recursion: the visitor
+ * sees the sections in document order, can skip subsections or stop the
+ * walk, and sees changes it makes to the tree; the methods built on the walk
+ * keep their results and work on trees far deeper than the call stack
+ * allows. Each check prints its result, the program exits with status 1 if
+ * one of them failed.
+ *
+ */
+public class SectionWalks {
+   private static final int DEPTH    = 20000;
+
+   private int              failures = 0;
+
+   public SectionWalks() {
+      try {
+         order();
+         skipping();
+         terminating();
+         changesDuringTheWalk();
+         findMethods();
+         deepChain();
+         hashAndEquality();
+         roundTrip();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   /**
+    * Root with A(A1, A2(A21)) and B.
+    */
+   private Section createTree() throws Exception {
+      Section root = new Section();
+      Section a = new Section(root, "A", "group");
+      new Section(a, "A1", "cell");
+      new Section(new Section(a, "A2", "cell"), "A21", "cell");
+      new Section(root, "B", "cell");
+      return root;
+   }
+
+   private Section createChain(int depth) throws Exception {
+      Section root = new Section();
+      Section section = root;
+      for (int i = 0; i < depth; i++) {
+         section = new Section(section, "S" + i, "level");
+      }
+      section.setType("bottom");
+      section.addProperty("Bottom", depth);
+      return root;
+   }
+
+   private Section bottom(Section root) {
+      Section section = root;
+      while (section.sectionCount() > 0) {
+         section = section.getSection(0);
+      }
+      return section;
+   }
+
+   /**
+    * A visitor that records "+name" before and "-name" after the subsections
+    * and answers with the given results for the named sections.
+    */
+   private static class Recorder implements SectionVisitor {
+      final List<String> visits = new ArrayList<String>();
+      final String       preName, postName;
+      final Result       preResult, postResult;
+
+      Recorder() {
+         this(null, null, null, null);
+      }
+
+      Recorder(String preName, Result preResult, String postName, Result postResult) {
+         this.preName = preName;
+         this.preResult = preResult;
+         this.postName = postName;
+         this.postResult = postResult;
+      }
+
+      @Override
+      public Result preVisit(Section section) {
+         visits.add("+" + section.getName());
+         return section.getName() != null && section.getName().equals(preName) ? preResult : Result.CONTINUE;
+      }
+
+      @Override
+      public Result postVisit(Section section) {
+         visits.add("-" + section.getName());
+         return section.getName() != null && section.getName().equals(postName) ? postResult : Result.CONTINUE;
+      }
+   }
+
+   private void order() throws Exception {
+      System.out.println("Order of the visits...");
+      Section root = createTree();
+      Recorder recorder = new Recorder();
+      boolean complete = root.walk(recorder);
+      check("all sections visited", complete && recorder.visits.equals(Arrays.asList("+null", "+A", "+A1", "-A1",
+            "+A2", "+A21", "-A21", "-A2", "-A", "+B", "-B", "-null")));
+      recorder = new Recorder();
+      root.getSection("A").walk(recorder);
+      check("walk of a subtree", recorder.visits.equals(Arrays.asList("+A", "+A1", "-A1", "+A2", "+A21", "-A21",
+            "-A2", "-A")));
+      recorder = new Recorder();
+      check("single section", root.getSection("B").walk(recorder)
+            && recorder.visits.equals(Arrays.asList("+B", "-B")));
+      check("default visitor", root.walk(new SectionVisitor() {
+      }));
+   }
+
+   private void skipping() throws Exception {
+      System.out.println();
+      System.out.println("Skipping subsections...");
+      Section root = createTree();
+      Recorder recorder = new Recorder("A", SectionVisitor.Result.SKIP_SUBSECTIONS, null, null);
+      boolean complete = root.walk(recorder);
+      check("subsections and post-visit skipped", complete
+            && recorder.visits.equals(Arrays.asList("+null", "+A", "+B", "-B", "-null")));
+      recorder = new Recorder("A", SectionVisitor.Result.SKIP_SUBSECTIONS, null, null);
+      check("start section skipped", root.getSection("A").walk(recorder)
+            && recorder.visits.equals(Arrays.asList("+A")));
+   }
+
+   private void terminating() throws Exception {
+      System.out.println();
+      System.out.println("Stopping the walk...");
+      Section root = createTree();
+      Recorder recorder = new Recorder("A2", SectionVisitor.Result.TERMINATE, null, null);
+      check("stopped before the subsections", !root.walk(recorder)
+            && recorder.visits.equals(Arrays.asList("+null", "+A", "+A1", "-A1", "+A2")));
+      recorder = new Recorder(null, null, "A", SectionVisitor.Result.TERMINATE);
+      check("stopped after the subsections", !root.walk(recorder)
+            && recorder.visits.get(recorder.visits.size() - 1).equals("-A"));
+      recorder = new Recorder("A", SectionVisitor.Result.TERMINATE, null, null);
+      check("stopped at the start section", !root.getSection("A").walk(recorder)
+            && recorder.visits.equals(Arrays.asList("+A")));
+      recorder = new Recorder(null, null, "A", SectionVisitor.Result.SKIP_SUBSECTIONS);
+      check("skip after the subsections continues", root.walk(recorder) && recorder.visits.contains("+B"));
+   }
+
+   private void changesDuringTheWalk() throws Exception {
+      System.out.println();
+      System.out.println("Changing the tree during the walk...");
+      final Section root = createTree();
+      Recorder recorder = new Recorder() {
+         @Override
+         public Result preVisit(Section section) {
+            if ("A1".equals(section.getName())) {
+               try {
+                  new Section(section, "Added", "cell");
+               } catch (Exception e) {
+                  throw new IllegalStateException(e);
+               }
+            }
+            return super.preVisit(section);
+         }
+      };
+      root.walk(recorder);
+      check("added subsections are visited", recorder.visits.containsAll(Arrays.asList("+Added", "-Added"))
+            && recorder.visits.indexOf("+Added") == recorder.visits.indexOf("+A1") + 1);
+      recorder = new Recorder() {
+         @Override
+         public Result preVisit(Section section) {
+            if ("A1".equals(section.getName())) {
+               section.getParent().removeSection("A2");
+            }
+            return super.preVisit(section);
+         }
+      };
+      root.walk(recorder);
+      check("removed sections are not visited", !recorder.visits.contains("+A2")
+            && recorder.visits.contains("+B") && root.getSection("A").sectionCount() == 1);
+   }
+
+   private void findMethods() throws Exception {
+      System.out.println();
+      System.out.println("Searching the tree...");
+      Section root = createTree();
+      Section a = root.getSection("A");
+      check("findSection", root.findSection("A21") == a.getSection("A2").getSection("A21")
+            && root.findSection("Z") == null);
+      new Section(a.getSection("A1"), "B", "deep");
+      check("direct subsection first", root.findSection("B").getType().equals("cell"));
+      check("search below the start section", a.findSection("B").getType().equals("deep") && a.findSection("A") == null);
+      check("findSectionByType", root.findSectionByType("group") == a && root.findSectionByType("deep") != null
+            && root.findSectionByType("none") == null);
+      Vector<Section> cells = root.findSectionsByType("cell");
+      List<String> names = new ArrayList<String>();
+      for (Section cell : cells) {
+         names.add(cell.getName());
+      }
+      // the matching subsections of a section precede those further down
+      check("findSectionsByType", names.equals(Arrays.asList("B", "A1", "A2", "A21")));
+      check("nothing found", root.findSectionsByType("none").isEmpty());
+   }
+
+   private void deepChain() throws Exception {
+      System.out.println();
+      System.out.println("A chain of " + DEPTH + " sections...");
+      Section root = createChain(DEPTH);
+      final int[] count = new int[2];
+      root.walk(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            count[0]++;
+            return Result.CONTINUE;
+         }
+
+         @Override
+         public Result postVisit(Section section) {
+            count[1]++;
+            return Result.CONTINUE;
+         }
+      });
+      check("walk", count[0] == DEPTH + 1 && count[1] == DEPTH + 1);
+      Section bottom = bottom(root);
+      check("levels", bottom.getLevel() == DEPTH && bottom.getRootSection() == root);
+      check("path", bottom.getPath().startsWith("/S0/S1/") && bottom.getPath().endsWith("/S" + (DEPTH - 1)));
+      check("findSectionByType", root.findSectionByType("bottom") == bottom);
+      check("findSectionsByType", root.findSectionsByType("level").size() == DEPTH - 1);
+      check("contains", !root.containsLinks() && !root.containsIncludes() && !root.containsMappings());
+      Map<String, Object> map = root.getMap();
+      int depth = 0;
+      for (List<?> sections = (List<?>) map.get("section"); !sections.isEmpty(); depth++) {
+         sections = (List<?>) ((Map<?, ?>) sections.get(0)).get("section");
+      }
+      check("map", depth == DEPTH);
+      Section moved = root.getSection(0).getSection(0);
+      root.getSection(0).removeSection(0);
+      Section other = new Section();
+      other.add(moved);
+      check("moving a subtree updates the levels", bottom(other).getLevel() == DEPTH - 1);
+   }
+
+   private void hashAndEquality() throws Exception {
+      System.out.println();
+      System.out.println("Hash and equality of deep trees...");
+      Section first = createChain(DEPTH), second = createChain(DEPTH);
+      check("equal", first.equals(second) && second.equals(first));
+      check("same hash", first.hashCode() == second.hashCode());
+      bottom(second).getProperty("Bottom").setValue(-1);
+      check("difference at the bottom", !first.equals(second));
+      check("different hash", first.hashCode() != second.hashCode());
+      Section third = createChain(DEPTH - 1);
+      check("different depth", !first.equals(third) && !third.equals(first));
+      Section small = createTree(), reordered = createTree();
+      Section a = reordered.getSection("A");
+      reordered.removeSection(0);
+      reordered.add(a);
+      check("order of subsections matters", !small.equals(reordered));
+      check("not equal to null", !small.equals(null));
+   }
+
+   private void roundTrip() throws Exception {
+      System.out.println();
+      System.out.println("Writing and reading a deep tree...");
+      Section root = createChain(2000);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      check("written", new Writer(root).write(out));
+      Section read = new Reader().load(new ByteArrayInputStream(out.toByteArray()));
+      Section bottom = bottom(read);
+      check("read", bottom.getLevel() == 2000 && bottom.getName().equals("S1999")
+            && bottom.getProperty("Bottom").getValue().equals(2000));
+      ByteArrayOutputStream again = new ByteArrayOutputStream();
+      new Writer(read).write(again);
+      check("same document", Arrays.equals(out.toByteArray(), again.toByteArray()));
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      SectionWalks checks = new SectionWalks();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,320 @@
+package test;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import odml.core.BinaryStore;
+import odml.core.BinaryWriter;
+import odml.core.Property;
+import odml.core.Section;
+import odml.core.SectionVisitor;
+import odml.core.Writer;
+
+/**
+ *
+ * Checks of the summary counters of section trees: the numbers of links,
+ * includes, mappings, properties, values and binary values must match a
+ * count of the tree after every kind of change, also after many random
+ * changes, and sections read lazily from an indexed binary file must know
+ * the counts of their subtrees without loading them. Each check prints its
+ * result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class SummaryCounters {
+   private int  failures = 0;
+   private File dir;
+
+   public SummaryCounters() {
+      try {
+         dir = File.createTempFile("odml-summary", "");
+         dir.delete();
+         dir.mkdirs();
+         counts();
+         changes();
+         subtrees();
+         randomChanges();
+         includes();
+         lazySections();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         if (dir != null && dir.listFiles() != null) {
+            for (File file : dir.listFiles()) {
+               file.delete();
+            }
+            dir.delete();
+         }
+      }
+   }
+
+   /**
+    * Root with Recording(Trials, Cell0, Cell1, Cell2(Data)) and Stimulus;
+    * Cell1 is linked to Cell0 and the stimulus has a mapping.
+    */
+   private Section createTree() throws Exception {
+      Section root = new Section();
+      Section recording = new Section(root, "Recording", "recording");
+      recording.addProperty("Trials", 10);
+      recording.getProperty("Trials").addValue(20);
+      for (int i = 0; i < 3; i++) {
+         new Section(recording, "Cell" + i, "cell").addProperty("Resistance", 100 + i);
+      }
+      recording.getSection("Cell1").setLink("/Recording/Cell0");
+      recording.getSection("Cell2").add(new Property("Data", "aGVsbG8=", null, null, "binary"));
+      Section stimulus = new Section(root, "Stimulus", "stimulus");
+      stimulus.setMapping("http://example.org/terminology.xml#stimulus");
+      stimulus.addProperty("Amplitude", 1.5);
+      stimulus.getProperty("Amplitude").setMapping("http://example.org/terminology.xml#stimulus:Amplitude");
+      return root;
+   }
+
+   /**
+    * Counts links, includes, mappings, properties, values and binary values
+    * of the tree by visiting every section.
+    */
+   private int[] count(Section start) {
+      final int[] counts = new int[6];
+      start.walk(new SectionVisitor() {
+         @Override
+         public Result preVisit(Section section) {
+            counts[0] += section.getLink() != null && !section.getLink().isEmpty() ? 1 : 0;
+            counts[1] += section.getInclude() != null && !section.getInclude().isEmpty() ? 1 : 0;
+            counts[2] += section.getMapping() != null ? 1 : 0;
+            for (int i = 0; i < section.propertyCount(); i++) {
+               Property property = section.getProperty(i);
+               counts[2] += property.getMapping() != null ? 1 : 0;
+               counts[3]++;
+               // the values of a property share its type
+               counts[4] += property.valueCount();
+               counts[5] += "binary".equalsIgnoreCase(property.getType()) ? property.valueCount() : 0;
+            }
+            return Result.CONTINUE;
+         }
+      });
+      return counts;
+   }
+
+   private boolean matches(Section section, int links, int includes, int mappings, int properties, int values,
+         int binaries) {
+      return section.getTreeLinkCount() == links && section.getTreeIncludeCount() == includes
+            && section.getTreeMappingCount() == mappings && section.getTreePropertyCount() == properties
+            && section.getTreeValueCount() == values && section.getTreeBinaryCount() == binaries;
+   }
+
+   private boolean matchesCount(Section section) {
+      int[] c = count(section);
+      return matches(section, c[0], c[1], c[2], c[3], c[4], c[5]);
+   }
+
+   private void counts() throws Exception {
+      System.out.println("Counts of a tree...");
+      Section root = createTree();
+      check("all counters", matches(root, 1, 0, 2, 6, 7, 1));
+      check("repeated query", matches(root, 1, 0, 2, 6, 7, 1));
+      check("contains", root.containsLinks() && root.containsMappings() && !root.containsIncludes());
+      Section empty = new Section();
+      check("empty section", matches(empty, 0, 0, 0, 0, 0, 0) && !empty.containsLinks());
+      check("section without subsections", matches(root.getSection("Stimulus"), 0, 0, 2, 1, 1, 0));
+   }
+
+   private void changes() throws Exception {
+      System.out.println();
+      System.out.println("Counters follow the changes...");
+      Section root = createTree();
+      Section recording = root.getSection("Recording");
+      root.getTreeValueCount();
+      recording.getProperty("Trials").addValue(30);
+      check("value added", root.getTreeValueCount() == 8);
+      recording.getProperty("Trials").removeValue(0);
+      check("value removed", root.getTreeValueCount() == 7);
+      recording.getSection("Cell0").addProperty("Depth", 50);
+      check("property added", root.getTreePropertyCount() == 7 && root.getTreeValueCount() == 8);
+      recording.getSection("Cell0").removeProperty("Depth");
+      check("property removed", root.getTreePropertyCount() == 6 && root.getTreeValueCount() == 7);
+      recording.getSection("Cell2").setLink("/Recording/Cell0");
+      check("link set", root.getTreeLinkCount() == 2);
+      recording.getSection("Cell1").setLink(null);
+      recording.getSection("Cell2").setLink(null);
+      check("links removed", root.getTreeLinkCount() == 0 && !root.containsLinks());
+      recording.getProperty("Trials").setMapping("http://example.org/terminology.xml#recording:Trials");
+      check("property mapping set", root.getTreeMappingCount() == 3);
+      root.getSection("Stimulus").getProperty("Amplitude").removePropertyMapping();
+      check("property mapping removed", root.getTreeMappingCount() == 2);
+      recording.getSection("Cell1").setInclude("other.xml#Cell");
+      check("include set", root.getTreeIncludeCount() == 1 && root.containsIncludes());
+      Section added = new Section(recording.getSection("Cell1"), "Patch", "patch");
+      added.add(new Property("Trace", "AAAA", null, null, "binary"));
+      check("subsection added", root.getTreeBinaryCount() == 2 && root.getTreePropertyCount() == 7);
+      added.getProperty("Trace").addValue("BBBB", null, null, "binary");
+      check("value of a new subsection added", root.getTreeBinaryCount() == 3);
+      recording.removeSection(recording.getSection("Cell1"));
+      check("subsection removed", root.getTreeBinaryCount() == 1 && root.getTreeIncludeCount() == 0
+            && root.getTreePropertyCount() == 5);
+      check("all counters agree with a count", matchesCount(root));
+   }
+
+   private void subtrees() throws Exception {
+      System.out.println();
+      System.out.println("Counters of subtrees...");
+      Section root = createTree();
+      Section recording = root.getSection("Recording");
+      check("subtree", matches(recording, 1, 0, 0, 5, 6, 1));
+      root.getTreeValueCount();
+      Section cell = recording.getSection("Cell2");
+      recording.removeSection(cell);
+      Section other = new Section();
+      other.add(cell);
+      check("moved subtree left its old tree", matches(root, 1, 0, 2, 4, 5, 0));
+      check("moved subtree counted in its new tree", matches(other, 0, 0, 0, 2, 2, 1));
+      cell.getProperty("Resistance").addValue(200);
+      check("changes of the moved subtree", other.getTreeValueCount() == 3 && root.getTreeValueCount() == 5);
+      Section copy = root.copy();
+      check("copy", matches(copy, 1, 0, 2, 4, 5, 0));
+      copy.getSection("Recording").getProperty("Trials").addValue(40);
+      check("original unaffected by the copy", root.getTreeValueCount() == 5 && copy.getTreeValueCount() == 6);
+   }
+
+   private void randomChanges() throws Exception {
+      System.out.println();
+      System.out.println("Random changes...");
+      Random random = new Random(45);
+      Section root = createTree();
+      List<Section> sections = new ArrayList<Section>();
+      sections.add(root);
+      sections.add(root.getSection("Recording"));
+      sections.add(root.getSection("Stimulus"));
+      boolean agree = true;
+      for (int i = 0; i < 2000; i++) {
+         // properties can not be added to the root
+         Section section = sections.get(1 + random.nextInt(sections.size() - 1));
+         switch (random.nextInt(7)) {
+         case 0:
+            Section child = new Section(section, "S" + i, "random");
+            child.addProperty("P", i);
+            sections.add(child);
+            break;
+         case 1:
+            if (section.getParent() != null) {
+               section.getParent().removeSection(section);
+            }
+            break;
+         case 2:
+            section.addProperty("Q" + i, "text");
+            break;
+         case 3:
+            if (section.propertyCount() > 0) {
+               section.getProperty(0).addValue(i);
+            }
+            break;
+         case 4:
+            if (section.propertyCount() > 0) {
+               section.removeProperty(section.propertyCount() - 1);
+            }
+            break;
+         case 5:
+            section.setLink(random.nextBoolean() ? "/Recording" : null, true);
+            break;
+         default:
+            if (random.nextBoolean()) {
+               section.setMapping("http://example.org/t.xml#random");
+            } else {
+               section.removeMapping();
+            }
+         }
+         if (i % 10 == 0) {
+            agree &= matchesCount(root);
+         }
+      }
+      check("counters agree with a count", agree && matchesCount(root));
+   }
+
+   private void includes() throws Exception {
+      System.out.println();
+      System.out.println("Loading includes...");
+      Section included = new Section();
+      new Section(included, "Cell", "cell").addProperty("Temperature", 20);
+      File file = new File(dir, "include.xml");
+      new Writer(included).write(file.getPath());
+      Section root = createTree();
+      // includes are relative to the file of the tree
+      root.setFileUrl(new File(dir, "tree.xml").toURI().toURL());
+      Section recording = root.getSection("Recording");
+      recording.getSection("Cell0").setInclude("include.xml#Cell");
+      check("include counted", root.getTreeIncludeCount() == 1 && root.getTreePropertyCount() == 6);
+      root.loadAllIncludes();
+      check("include loaded", root.getTreeIncludeCount() == 0
+            && recording.getSection("Cell0").getProperty("Temperature") != null);
+      check("included properties counted", root.getTreePropertyCount() == 7 && matchesCount(root));
+      root.loadAllIncludes();
+      check("nothing left to load", matchesCount(root) && root.getTreePropertyCount() == 7);
+   }
+
+   private void lazySections() throws Exception {
+      System.out.println();
+      System.out.println("Sections read lazily from an indexed binary file...");
+      Section root = createTree();
+      for (int i = 0; i < 20; i++) {
+         new Section(root.getSection("Recording"), "Extra" + i, "cell").addProperty("Resistance", i);
+      }
+      int[] expected = count(root);
+      File file = new File(dir, "summary.odml.bin");
+      BinaryWriter writer = new BinaryWriter(root);
+      writer.setIndexed(true);
+      check("written", writer.write(file.getPath()));
+      BinaryStore store = new BinaryStore(file.getPath());
+      Section lazy;
+      try {
+         lazy = store.getRootSection(true);
+      } finally {
+         store.close();
+      }
+      // the store is closed, so the counts can only come from the index
+      check("counts without loading", matches(lazy, expected[0], expected[1], expected[2], expected[3], expected[4],
+            expected[5]));
+      store = new BinaryStore(file.getPath());
+      try {
+         lazy = store.getRootSection(true);
+         Section recording = lazy.getSection("Recording");
+         recording.getSection("Extra3").addProperty("Depth", 7);
+         check("changes after loading", lazy.getTreePropertyCount() == expected[3] + 1 && matchesCount(lazy));
+      } finally {
+         store.close();
+      }
+      writer = new BinaryWriter(root);
+      writer.setIndexed(true);
+      writer.write(file.getPath());
+      store = new BinaryStore(file.getPath());
+      try {
+         lazy = store.getRootSection(true);
+         lazy.getSection("Recording").getSection("Extra5").addProperty("Depth", 9);
+         check("update", store.update(lazy) == 1);
+      } finally {
+         store.close();
+      }
+      store = new BinaryStore(file.getPath());
+      try {
+         lazy = store.getRootSection(true);
+         Section recording = lazy.getSection("Recording");
+         check("updated index", lazy.getTreePropertyCount() == expected[3] + 1 && matchesCount(lazy)
+               && recording.getTreeValueCount() == expected[4]);
+      } finally {
+         store.close();
+      }
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      SummaryCounters checks = new SummaryCounters();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
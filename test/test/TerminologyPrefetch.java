@@ -0,0 +1,239 @@
+package test;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import odml.core.Section;
+import odml.core.Writer;
+import odml.util.TerminologyManager;
+
+/**
+ *
+ * Checks of the terminology prefetch and preload against repositories
+ * served over HTTP with a delay: each repository is requested once, however
+ * many sections and threads ask for it, the downloads run concurrently, and
+ * repositories that can not be loaded do not hold up the others. Each check
+ * prints its result, the program exits with status 1 if one of them failed.
+ *
+ */
+public class TerminologyPrefetch {
+   private static final int                            DELAY    = 300;
+
+   private int                                         failures = 0;
+   private HttpServer                                  server;
+   private byte[]                                      terminology;
+   private final ConcurrentHashMap<String, AtomicInteger> requests =
+         new ConcurrentHashMap<String, AtomicInteger>();
+
+   public TerminologyPrefetch() {
+      try {
+         startServer();
+         // must come first, the property is read when the manager is created
+         startupPreload();
+         prefetchTree();
+         prefetchThreads();
+         concurrentLookups();
+         preload();
+         missingRepository();
+         clearCache();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         if (server != null) {
+            server.stop(0);
+         }
+      }
+   }
+
+   private void startServer() throws Exception {
+      Section root = new Section();
+      Section recording = new Section(root, "Recording", "recording");
+      recording.addProperty("Experimenter", "Someone");
+      new Section(recording, "Cell", "cell").addProperty("Resistance", 0);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new Writer(root).write(out);
+      terminology = out.toByteArray();
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext("/", this::serve);
+      server.setExecutor(Executors.newCachedThreadPool());
+      server.start();
+   }
+
+   /**
+    * Answers every request after the delay, with 404 for paths containing
+    * "missing" and the terminology otherwise.
+    */
+   private void serve(HttpExchange exchange) {
+      String path = exchange.getRequestURI().getPath();
+      requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+      try {
+         Thread.sleep(DELAY);
+         if (path.contains("missing")) {
+            exchange.sendResponseHeaders(404, -1);
+         } else {
+            exchange.sendResponseHeaders(200, terminology.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(terminology);
+            out.close();
+         }
+      } catch (Exception e) {
+         e.printStackTrace();
+      } finally {
+         exchange.close();
+      }
+   }
+
+   private URL url(String name) throws Exception {
+      return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/" + name + ".odml");
+   }
+
+   private int requests(String name) {
+      AtomicInteger count = requests.get("/" + name + ".odml");
+      return count == null ? 0 : count.get();
+   }
+
+   private void startupPreload() throws Exception {
+      System.out.println("Repositories listed in the system property...");
+      System.setProperty(TerminologyManager.PRELOAD_PROPERTY, url("startup") + ", not a url,");
+      TerminologyManager manager = TerminologyManager.instance();
+      long deadline = System.currentTimeMillis() + 10 * DELAY;
+      while (requests("startup") == 0 && System.currentTimeMillis() < deadline) {
+         Thread.sleep(10);
+      }
+      check("loaded in the background", requests("startup") == 1);
+      check("found when requested", manager.loadTerminology(url("startup"), "cell") != null);
+      check("not requested again", requests("startup") == 1);
+   }
+
+   private void prefetchTree() throws Exception {
+      System.out.println();
+      System.out.println("Prefetching the terminologies of a tree...");
+      TerminologyManager manager = TerminologyManager.instance();
+      Section root = new Section();
+      for (int i = 0; i < 4; i++) {
+         Section recording = new Section(root, "Recording" + i, "recording");
+         recording.setRepository(url("tree" + i));
+         for (int j = 0; j < 5; j++) {
+            new Section(recording, "Cell" + j, "cell");
+         }
+      }
+      root.getSection(0).getSection(0).setMapping(url("mapping") + "#cell");
+      root.getSection(1).addProperty("Temperature", 20);
+      root.getSection(1).getProperty("Temperature").setMapping(url("property") + "#cell:Resistance");
+      long start = System.currentTimeMillis();
+      manager.prefetch(root);
+      long time = System.currentTimeMillis() - start;
+      boolean once = true;
+      for (String name : Arrays.asList("tree0", "tree1", "tree2", "tree3", "mapping", "property")) {
+         once &= requests(name) == 1;
+      }
+      check("each repository requested once", once);
+      check("downloads run concurrently", time < 3 * DELAY);
+      start = System.currentTimeMillis();
+      boolean found = true;
+      for (int i = 0; i < 4; i++) {
+         found &= manager.loadTerminology(url("tree" + i), "cell") != null
+               && manager.loadTerminology(url("tree" + i), "recording") != null;
+      }
+      found &= manager.loadTerminology(url("mapping"), "cell") != null;
+      check("types are cached", found && System.currentTimeMillis() - start < DELAY);
+      check("repository root for no type", manager.loadTerminology(url("tree0"), null) != null
+            && manager.loadTerminology(url("tree0"), null).getSection("Recording") != null);
+      check("no further requests", requests("tree0") == 1 && requests("mapping") == 1);
+   }
+
+   private void prefetchThreads() throws Exception {
+      System.out.println();
+      System.out.println("The number of concurrent downloads...");
+      TerminologyManager manager = TerminologyManager.instance();
+      check("default", manager.getPrefetchThreads() == 8);
+      manager.setPrefetchThreads(0);
+      check("at least one", manager.getPrefetchThreads() == 1);
+      long start = System.currentTimeMillis();
+      manager.prefetch(Arrays.asList(url("single0"), url("single1"), url("single2")));
+      check("one download at a time", System.currentTimeMillis() - start >= 3 * DELAY);
+      manager.setPrefetchThreads(8);
+      check("all loaded", requests("single0") == 1 && requests("single1") == 1 && requests("single2") == 1);
+   }
+
+   private void concurrentLookups() throws Exception {
+      System.out.println();
+      System.out.println("Threads asking for the same repository...");
+      final TerminologyManager manager = TerminologyManager.instance();
+      final URL url = url("shared");
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<Section>> lookups = new ArrayList<Future<Section>>();
+      for (int i = 0; i < 8; i++) {
+         lookups.add(executor.submit(() -> manager.loadTerminology(url, "cell")));
+      }
+      boolean same = true;
+      Section first = lookups.get(0).get();
+      for (Future<Section> lookup : lookups) {
+         same &= lookup.get() == first;
+      }
+      executor.shutdown();
+      check("one request", requests("shared") == 1);
+      check("the same terminology", first != null && same);
+   }
+
+   private void preload() throws Exception {
+      System.out.println();
+      System.out.println("Preloading in the background...");
+      TerminologyManager manager = TerminologyManager.instance();
+      long start = System.currentTimeMillis();
+      Future<?> loading = manager.preload(Arrays.asList(url("preload0"), url("preload1")));
+      check("returns immediately", System.currentTimeMillis() - start < DELAY);
+      Thread.sleep(DELAY / 3);
+      check("lookup waits for the loading repository", manager.loadTerminology(url("preload0"), "cell") != null);
+      loading.get(10 * DELAY, TimeUnit.MILLISECONDS);
+      check("completed", loading.isDone());
+      check("requested once", requests("preload0") == 1 && requests("preload1") == 1);
+   }
+
+   private void missingRepository() throws Exception {
+      System.out.println();
+      System.out.println("A repository that can not be loaded...");
+      TerminologyManager manager = TerminologyManager.instance();
+      manager.prefetch(Arrays.asList(url("missing"), url("present")));
+      check("others are loaded", requests("present") == 1
+            && manager.loadTerminology(url("present"), "cell") != null);
+      check("no terminology", manager.loadTerminology(url("missing"), "cell") == null);
+      check("not requested again", requests("missing") == 1);
+   }
+
+   private void clearCache() throws Exception {
+      System.out.println();
+      System.out.println("Clearing the cache...");
+      TerminologyManager manager = TerminologyManager.instance();
+      manager.clearCache();
+      check("requested again", manager.loadTerminology(url("tree0"), "cell") != null && requests("tree0") == 2);
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      TerminologyPrefetch checks = new TerminologyPrefetch();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
@@ -0,0 +1,222 @@
+package test;
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+import odml.core.Property;
+import odml.core.Section;
+import odml.core.ValidationReport;
+import odml.core.ValidationReport.Issue;
+import odml.core.ValidationReport.Severity;
+import odml.core.Validator;
+import odml.core.Writer;
+import odml.util.TerminologyManager;
+
+/**
+ *
+ * Checks of the Validator against a terminology stored in a local file: the
+ * severity and paths of the issues, their document order with one and with
+ * several threads, the completion of missing units, and trees whose
+ * terminology can not be found. Each check prints its result, the program
+ * exits with status 1 if one of them failed.
+ *
+ */
+public class Validation {
+   private static final int CELLS    = 100;
+
+   private int              failures = 0;
+   private File             dir;
+   private URL              repository;
+
+   public Validation() {
+      try {
+         dir = File.createTempFile("odml-validation", "");
+         dir.delete();
+         dir.mkdirs();
+         File terminology = new File(dir, "terminology.odml");
+         new Writer(createTerminology()).write(terminology.getPath());
+         repository = terminology.toURI().toURL();
+         TerminologyManager.instance().clearCache();
+         settings();
+         issues();
+         parallelism();
+         revalidation();
+         missingTerminology();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      } finally {
+         TerminologyManager.instance().clearCache();
+         if (dir != null && dir.listFiles() != null) {
+            for (File file : dir.listFiles()) {
+               file.delete();
+            }
+            dir.delete();
+         }
+      }
+   }
+
+   /**
+    * A cell has a resistance in MOhm and may have a drug, which requires a
+    * concentration.
+    */
+   private Section createTerminology() throws Exception {
+      Section root = new Section();
+      Section recording = new Section(root, "Recording", "recording");
+      recording.setDefinition("A recording");
+      recording.addProperty("Experimenter", "");
+      Section cell = new Section(recording, "Cell", "cell");
+      cell.add(new Property("Resistance", 0, "MOhm", null, "int"));
+      Property drug = new Property("Drug", "none", "string");
+      drug.setDependency("Concentration");
+      cell.add(drug);
+      cell.add(new Property("Concentration", 0.0, "mM", null, "float"));
+      return root;
+   }
+
+   /**
+    * Cells whose index is divisible by 10 have a resistance without unit,
+    * others divisible by 7 one in kOhm, and those divisible by 5 a drug
+    * without concentration. The last section has a type the terminology does
+    * not define.
+    */
+   private Section createTree(URL repository) throws Exception {
+      Section root = new Section();
+      root.setRepository(repository);
+      Section recording = new Section(root, "Recording", "recording");
+      recording.setDefinition("Another definition");
+      recording.addProperty("Experimenter", "Someone");
+      for (int i = 0; i < CELLS; i++) {
+         Section cell = new Section(recording, "Cell" + i, "cell");
+         cell.addProperty("Resistance", 100 + i);
+         if (i % 10 != 0) {
+            cell.getProperty("Resistance").setUnit(i % 7 == 0 ? "kOhm" : "MOhm");
+         }
+         if (i % 5 == 0) {
+            cell.addProperty("Drug", "TTX");
+         }
+      }
+      new Section(root, "Unknown", "unknown");
+      return root;
+   }
+
+   private void settings() {
+      System.out.println("Settings...");
+      Validator validator = new Validator();
+      check("default parallelism", validator.getParallelism() == Runtime.getRuntime().availableProcessors());
+      validator.setParallelism(0);
+      check("parallelism of at least one", validator.getParallelism() == 1);
+   }
+
+   private void issues() throws Exception {
+      System.out.println();
+      System.out.println("Issues of the tree...");
+      Section root = createTree(repository);
+      Validator validator = new Validator();
+      validator.setParallelism(1);
+      ValidationReport report = validator.validate(root);
+      check("all sections validated", report.getSectionCount() == CELLS + 3);
+      check("errors", report.hasErrors() && report.getIssues(Severity.ERROR).size() == 20);
+      Issue error = report.getIssues(Severity.ERROR).get(1);
+      check("error path", error.getPath().equals("/Recording/Cell5#Drug"));
+      check("error message", error.getMessage().contains("sibling property") && error.toString().startsWith("ERROR "));
+      check("units were added", report.getIssues(Severity.INFO).size() == 10
+            && "MOhm".equals(root.getSection("Recording").getSection("Cell10").getProperty("Resistance").getUnit(0)));
+      List<Issue> warnings = report.getIssues(Severity.WARNING);
+      // the definition of the recording, 13 cells in kOhm (7, 14, ..., 98 except 70) and the unknown type
+      check("warnings", warnings.size() == 1 + 13 + 1);
+      check("definition warning", warnings.get(0).getPath().equals("/Recording")
+            && root.getSection("Recording").getDefinition().equals("Another definition"));
+      check("unknown type", warnings.get(warnings.size() - 1).getPath().equals("/Unknown"));
+      check("document order", inDocumentOrder(report.getIssues()));
+      check("report summary", report.toString().startsWith("Validated " + (CELLS + 3) + " sections, "
+            + report.getIssues().size() + " issues"));
+      boolean refused = false;
+      try {
+         report.getIssues().clear();
+      } catch (UnsupportedOperationException e) {
+         refused = true;
+      }
+      check("issues are read-only", refused && !report.getIssues().isEmpty());
+   }
+
+   private void parallelism() throws Exception {
+      System.out.println();
+      System.out.println("Several threads return the same report...");
+      Validator validator = new Validator();
+      validator.setParallelism(1);
+      String single = validator.validate(createTree(repository)).toString();
+      for (int threads = 2; threads <= 8; threads *= 2) {
+         validator.setParallelism(threads);
+         check(threads + " threads", single.equals(validator.validate(createTree(repository)).toString()));
+      }
+      Section cell = createTree(repository).getSection("Recording").getSection("Cell5");
+      ValidationReport report = validator.validate(cell);
+      check("subtree", report.getSectionCount() == 1 && report.getIssues(Severity.ERROR).size() == 1);
+   }
+
+   private void revalidation() throws Exception {
+      System.out.println();
+      System.out.println("Validating a validated tree...");
+      Section root = createTree(repository);
+      Validator validator = new Validator();
+      ValidationReport first = validator.validate(root);
+      ValidationReport second = validator.validate(root);
+      check("added units are not reported again", first.getIssues(Severity.INFO).size() == 10
+            && second.getIssues(Severity.INFO).isEmpty());
+      check("errors remain", second.getIssues(Severity.ERROR).size() == 20);
+   }
+
+   private void missingTerminology() throws Exception {
+      System.out.println();
+      System.out.println("A terminology that can not be loaded...");
+      Section root = createTree(new File(dir, "missing.odml").toURI().toURL());
+      ValidationReport report = new Validator().validate(root);
+      check("every section is reported", report.getIssues().size() == CELLS + 3
+            && report.getIssues(Severity.WARNING).size() == CELLS + 3);
+      check("no errors", !report.hasErrors());
+      String unit = root.getSection("Recording").getSection("Cell0").getProperty("Resistance").getUnit(0);
+      check("tree unchanged", unit == null || unit.isEmpty());
+      Section plain = new Section();
+      new Section(plain, "Recording", "recording");
+      report = new Validator().validate(plain);
+      check("tree without repository", report.getSectionCount() == 2 && report.getIssues(Severity.WARNING)
+            .size() == 2);
+   }
+
+   /**
+    * Returns whether the issues of each section follow those of the
+    * sections before it; the cells are numbered in document order.
+    */
+   private boolean inDocumentOrder(List<Issue> issues) {
+      int previous = -1;
+      for (Issue issue : issues) {
+         String path = issue.getPath();
+         if (path.startsWith("/Recording/Cell")) {
+            int end = path.indexOf('#');
+            int index = Integer.parseInt(path.substring("/Recording/Cell".length(), end < 0 ? path.length() : end));
+            if (index < previous) {
+               return false;
+            }
+            previous = index;
+         } else if (path.equals("/Recording") && previous >= 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      Validation checks = new Validation();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}
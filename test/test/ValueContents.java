@@ -0,0 +1,77 @@
+package test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import odml.core.Reader;
+import odml.core.Section;
+import odml.core.Writer;
+
+/**
+ *
+ * Checks that the Reader reads the contents of values from the content
+ * element the Writer emits, and from the text of the value element in
+ * older files. Each check prints its result, the program exits with
+ * status 1 if one of them failed.
+ *
+ */
+public class ValueContents {
+   private int failures = 0;
+
+   public ValueContents() {
+      try {
+         written();
+         older();
+      } catch (Exception e) {
+         e.printStackTrace();
+         failures++;
+      }
+   }
+
+   private void written() throws Exception {
+      System.out.println("Values written by the Writer are read back...");
+      Section root = new Section();
+      Section s = new Section(root, "Recording", "recording");
+      s.addProperty("Experimenter", "Someone");
+      s.addProperty("Trials", 12);
+      s.addProperty("Duration", 2.5);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      check("write", new Writer(root).write(out));
+      Section read = new Reader().load(new ByteArrayInputStream(out.toByteArray()));
+      Section recording = read.getSection("Recording");
+      check("string", "Someone".equals(recording.getProperty("Experimenter").getValue()));
+      check("int", Integer.valueOf(12).equals(recording.getProperty("Trials").getValue()));
+      check("float", Float.valueOf(2.5f).equals(recording.getProperty("Duration").getValue()));
+   }
+
+   private void older() throws Exception {
+      System.out.println("Values without a content element are read from their text...");
+      String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<odML version=\"1\">\n"
+            + "  <section>\n"
+            + "    <type>recording</type>\n"
+            + "    <name>Recording</name>\n"
+            + "    <property>\n"
+            + "      <name>Experimenter</name>\n"
+            + "      <value>Someone<type>string</type></value>\n"
+            + "    </property>\n"
+            + "  </section>\n"
+            + "</odML>\n";
+      Section read = new Reader().load(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+      check("text of the value", "Someone".equals(
+            read.getSection("Recording").getProperty("Experimenter").getValue()));
+   }
+
+   private void check(String name, boolean success) {
+      System.out.println((success ? "ok     " : "FAILED ") + name);
+      if (!success) {
+         failures++;
+      }
+   }
+
+   public static void main(String[] args) {
+      ValueContents checks = new ValueContents();
+      System.out.println();
+      System.out.println(checks.failures == 0 ? "All checks passed." : checks.failures + " checks failed!");
+      System.exit(checks.failures == 0 ? 0 : 1);
+   }
+}